@@ -16,15 +16,18 @@
 package net.tirasa.connid.bundles.scim.common;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import net.tirasa.connid.bundles.scim.common.dto.BaseResourceReference;
 import net.tirasa.connid.bundles.scim.common.dto.PagedResults;
@@ -37,13 +40,18 @@ import net.tirasa.connid.bundles.scim.common.dto.SCIMEnterpriseUser;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMGenericComplex;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMGroup;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMSchema;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMServiceProviderConfig;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMUser;
+import net.tirasa.connid.bundles.scim.common.service.SCIMBulk;
 import net.tirasa.connid.bundles.scim.common.service.SCIMService;
+import net.tirasa.connid.bundles.scim.common.service.SCIMUserObjectReader;
 import net.tirasa.connid.bundles.scim.common.types.EmailCanonicalType;
 import net.tirasa.connid.bundles.scim.common.types.IMCanonicalType;
 import net.tirasa.connid.bundles.scim.common.types.PhoneNumberCanonicalType;
 import net.tirasa.connid.bundles.scim.common.types.PhotoCanonicalType;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeProjection;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributesToGet;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
 import net.tirasa.connid.bundles.scim.v11.dto.SCIMv11EnterpriseUser;
 import net.tirasa.connid.bundles.scim.v2.dto.SCIMPatchOperation;
@@ -91,31 +99,90 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
 
     protected static final Log LOG = Log.getLog(AbstractSCIMConnector.class);
 
+    /**
+     * User attributes needed to reference Users as Group members.
+     */
+    protected static final SCIMAttributeProjection MEMBER_PROJECTION = SCIMAttributeProjection.attributes(
+            SCIMAttributeUtils.ATTRIBUTE_ID,
+            SCIMAttributeUtils.USER_ATTRIBUTE_USERNAME,
+            SCIMAttributeUtils.SCIM_USER_DISPLAY_NAME);
+
+    /**
+     * User attributes needed to compute Group memberships changes.
+     */
+    protected static final SCIMAttributeProjection GROUPS_PROJECTION = SCIMAttributeProjection.attributes(
+            SCIMAttributeUtils.ATTRIBUTE_ID,
+            SCIMAttributeUtils.SCIM_USER_GROUPS);
+
+    /**
+     * User attributes needed to build patches on update delta: member references and current addresses.
+     */
+    protected static final SCIMAttributeProjection UPDATE_DELTA_PROJECTION = SCIMAttributeProjection.attributes(
+            SCIMAttributeUtils.ATTRIBUTE_ID,
+            SCIMAttributeUtils.USER_ATTRIBUTE_USERNAME,
+            SCIMAttributeUtils.SCIM_USER_DISPLAY_NAME,
+            SCIMAttributeUtils.SCIM_USER_ADDRESSES);
+
     protected SCIMConnectorConfiguration configuration;
 
     protected SCIMProvider provider;
 
     protected ST client;
 
+    protected SCIMServiceProviderConfig serviceProviderConfig;
+
     @Override
     public void init(final Configuration configuration) {
         LOG.ok("Init");
 
         this.configuration = (SCIMConnectorConfiguration) configuration;
         this.configuration.validate();
-        // check whether PATCH is supported by the SCIM server, if so enable it in the configuration
 
         provider = SCIMProvider.valueOf(this.configuration.getScimProvider().toUpperCase());
 
         client = buildSCIMClient(SCIMConnectorConfiguration.class.cast(configuration));
 
+        // check which features are supported by the SCIM server, and restrict the settings accordingly
+        if (this.configuration.getDiscoverServiceProviderConfig()) {
+            serviceProviderConfig = client.getServiceProviderConfig();
+            if (serviceProviderConfig == null) {
+                LOG.warn("No ServiceProviderConfig available, using configuration as-is");
+            } else {
+                applyServiceProviderConfig(serviceProviderConfig);
+            }
+        }
+
         LOG.ok("Connector {0} successfully inited", getClass().getName());
     }
 
+    /**
+     * Restricts the settings in effect for the SCIM service to what the SCIM server declares to support; the
+     * configuration is left unchanged.
+     *
+     * @param spc features supported by the SCIM server
+     */
+    protected void applyServiceProviderConfig(final SCIMServiceProviderConfig spc) {
+        client.restrictSettings(spc);
+    }
+
+    /**
+     * @param capabilities filter capabilities known for the configured provider
+     * @return given capabilities, or none if the SCIM server declares not to support filters
+     */
+    protected SCIMFilterCapabilities filterCapabilities(final SCIMFilterCapabilities capabilities) {
+        return serviceProviderConfig == null || serviceProviderConfig.getFilter().isSupported()
+                ? capabilities
+                : SCIMFilterCapabilities.none();
+    }
+
     @Override
     public void dispose() {
         LOG.ok("Configuration cleanup");
 
+        if (client != null) {
+            client.dispose();
+            client = null;
+        }
         configuration = null;
     }
 
@@ -134,148 +201,140 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
                     ? ((EqualsFilter) query).getAttribute()
                     : ((EqualsIgnoreCaseFilter) query).getAttribute();
 
-            if (filterAttr instanceof Uid
-                    || ObjectClass.ACCOUNT.equals(objectClass) || ObjectClass.GROUP.equals(objectClass)) {
-
+            if (filterAttr instanceof Uid || SCIMAttributeUtils.ATTRIBUTE_ID.equals(filterAttr.getName())) {
                 key = filterAttr;
             }
         }
 
-        Set<String> attributesToGet = new HashSet<>();
+        String filter = null;
+        Predicate<ConnectorObject> residual = null;
+        Set<String> residualAttributes = Collections.emptySet();
+        if (key == null && query != null) {
+            SCIMFilterTranslator.Split split = buildFilterTranslator(objectClass).split(query);
+            filter = split.getPushedDown();
+            if (split.getResidual() != null) {
+                residual = SCIMFilterEvaluator.compile(split.getResidual());
+                residualAttributes = SCIMFilterEvaluator.attributeNames(split.getResidual());
+            }
+            LOG.ok("Filter {0} split into SCIM filter {1} and residual filter {2}",
+                    query, filter, split.getResidual());
+        }
+        Predicate<ConnectorObject> matches = residual;
+
+        Set<String> requested = new HashSet<>();
         if (options.getAttributesToGet() != null) {
-            attributesToGet.addAll(Arrays.asList(options.getAttributesToGet()));
+            requested.addAll(Arrays.asList(options.getAttributesToGet()));
+        }
+        SCIMAttributesToGet plan = SCIMAttributesToGet.of(requested);
+
+        // the residual filter needs its attributes to be returned as well: they are left out of the connector objects
+        // by the plan, which only holds the requested attributes
+        Set<String> attributesToGet = requested;
+        if (!requested.isEmpty() && !requested.containsAll(residualAttributes)) {
+            attributesToGet = new HashSet<>(requested);
+            attributesToGet.addAll(residualAttributes);
         }
 
         if (ObjectClass.ACCOUNT.equals(objectClass)) {
             if (key == null) {
-                List<UT> users = null;
                 int remainingResults = -1;
                 int pagesSize = Optional.ofNullable(options.getPageSize()).orElse(-1);
                 String cookie = options.getPagedResultsCookie();
 
+                // Users can be read straight into connector objects when no residual filter needs all attributes
+                SCIMUserObjectReader reader = matches == null && configuration.getDirectSearchMapping()
+                        ? client.getUserObjectReader(plan).orElse(null)
+                        : null;
+
                 try {
                     if (pagesSize != -1) {
-                        if (StringUtil.isNotBlank(cookie)) {
-                            PagedResults<UT> pagedResult =
-                                    client.getAllUsers(Integer.valueOf(cookie), pagesSize, attributesToGet);
-                            users = pagedResult.getResources();
-
-                            cookie = users.size() >= pagesSize ? String.valueOf(
-                                    pagedResult.getStartIndex() + users.size()) : null;
-                        } else {
-                            PagedResults<UT> pagedResult = client.getAllUsers(1, pagesSize, attributesToGet);
-                            users = pagedResult.getResources();
-
-                            cookie = users.size() >= pagesSize ? String.valueOf(
-                                    pagedResult.getStartIndex() + users.size()) : null;
-                        }
+                        int startIndex = StringUtil.isNotBlank(cookie) ? Integer.valueOf(cookie) : 1;
+                        AtomicInteger handled = new AtomicInteger(0);
+                        PagedResults<?> pagedResult = reader == null
+                                ? client.getAllUsers(filter, startIndex, pagesSize, attributesToGet, user -> {
+                                    handled.incrementAndGet();
+                                    ConnectorObject object = fromUser(user, plan, matches);
+                                    return object == null || handler.handle(object);
+                                })
+                                : client.getAllUsers(filter, startIndex, pagesSize, attributesToGet, reader, object -> {
+                                    handled.incrementAndGet();
+                                    return handler.handle(object);
+                                });
+
+                        cookie = handled.get() >= pagesSize ? String.valueOf(
+                                pagedResult.getStartIndex() + handled.get()) : null;
+                    } else if (reader == null) {
+                        client.getAllUsers(filter, attributesToGet, user -> {
+                            ConnectorObject object = fromUser(user, plan, matches);
+                            return object == null || handler.handle(object);
+                        });
                     } else {
-                        users = client.getAllUsers(attributesToGet);
+                        client.getAllUsers(filter, attributesToGet, reader, handler::handle);
                     }
                 } catch (Exception e) {
                     SCIMUtils.wrapGeneralError("While getting Users!", e);
                 }
 
-                for (UT user : users) {
-                    handler.handle(fromUser(user, attributesToGet));
-                }
-
                 if (handler instanceof SearchResultsHandler) {
                     ((SearchResultsHandler) handler).handleResult(new SearchResult(cookie, remainingResults));
                 }
             } else {
                 UT result = null;
-                if (Uid.NAME.equals(key.getName()) || SCIMAttributeUtils.ATTRIBUTE_ID.equals(key.getName())) {
-                    result = null;
-                    try {
-                        result = client.getUser(AttributeUtil.getAsStringValue(key));
-                    } catch (Exception e) {
-                        SCIMUtils.wrapGeneralError(
-                                "While getting User : " + key.getName() + " - " + AttributeUtil.getAsStringValue(key),
-                                e);
-                    }
-                } else {
-                    try {
-                        List<UT> users = client.getAllUsers(
-                                (Name.NAME.equals(key.getName()) ? "username" : key.getName()) + " eq \""
-                                + AttributeUtil.getAsStringValue(key) + "\"", attributesToGet);
-                        if (!users.isEmpty()) {
-                            result = users.get(0);
-                        }
-                    } catch (Exception e) {
-                        SCIMUtils.wrapGeneralError(
-                                "While getting User : " + key.getName() + " - " + AttributeUtil.getAsStringValue(key),
-                                e);
-                    }
+                try {
+                    result = client.getUser(AttributeUtil.getAsStringValue(key));
+                } catch (Exception e) {
+                    SCIMUtils.wrapGeneralError(
+                            "While getting User : " + key.getName() + " - " + AttributeUtil.getAsStringValue(key), e);
                 }
                 if (result != null) {
-                    handler.handle(fromUser(result, attributesToGet));
+                    handler.handle(fromUser(result, plan, null));
                 }
             }
         } else if (ObjectClass.GROUP.equals(objectClass)) {
             if (key == null) {
-                List<GT> groups = null;
                 int remainingResults = -1;
                 int pagesSize = Optional.ofNullable(options.getPageSize()).orElse(-1);
                 String cookie = options.getPagedResultsCookie();
 
                 try {
                     if (pagesSize != -1) {
-                        if (StringUtil.isNotBlank(cookie)) {
-                            PagedResults<GT> pagedResult = client.getAllGroups(Integer.valueOf(cookie), pagesSize);
-                            groups = pagedResult.getResources();
-
-                            cookie = groups.size() >= pagesSize ? String.valueOf(
-                                    pagedResult.getStartIndex() + groups.size()) : null;
-                        } else {
-                            PagedResults<GT> pagedResult = client.getAllGroups(1, pagesSize);
-                            groups = pagedResult.getResources();
-
-                            cookie = groups.size() >= pagesSize ? String.valueOf(
-                                    pagedResult.getStartIndex() + groups.size()) : null;
-                        }
+                        AtomicInteger handled = new AtomicInteger(0);
+                        PagedResults<GT> pagedResult = client.getAllGroups(
+                                filter,
+                                StringUtil.isNotBlank(cookie) ? Integer.valueOf(cookie) : 1,
+                                pagesSize,
+                                group -> {
+                                    handled.incrementAndGet();
+                                    ConnectorObject object = fromGroup(group, plan, matches);
+                                    return object == null || handler.handle(object);
+                                });
+
+                        cookie = handled.get() >= pagesSize ? String.valueOf(
+                                pagedResult.getStartIndex() + handled.get()) : null;
                     } else {
-                        groups = client.getAllGroups();
+                        client.getAllGroups(filter, group -> {
+                            ConnectorObject object = fromGroup(group, plan, matches);
+                            return object == null || handler.handle(object);
+                        });
                     }
                 } catch (Exception e) {
                     LOG.error(e, "Could not search for Groups");
                     SCIMUtils.wrapGeneralError("Could not search for Groups", e);
                 }
 
-                for (GT group : groups) {
-                    handler.handle(fromGroup(group, attributesToGet));
-                }
-
                 if (handler instanceof SearchResultsHandler) {
                     ((SearchResultsHandler) handler).handleResult(new SearchResult(cookie, remainingResults));
                 }
             } else {
                 GT result = null;
-                if (Uid.NAME.equals(key.getName()) || SCIMAttributeUtils.ATTRIBUTE_ID.equals(key.getName())) {
-                    result = null;
-                    try {
-                        result = client.getGroup(AttributeUtil.getAsStringValue(key));
-                    } catch (Exception e) {
-                        SCIMUtils.wrapGeneralError(
-                                "While getting Group : " + key.getName() + " - " + AttributeUtil.getAsStringValue(key),
-                                e);
-                    }
-                } else {
-                    try {
-                        List<GT> groups = client.getAllGroups(
-                                (Name.NAME.equals(key.getName()) ? SCIMAttributeUtils.SCIM_GROUP_DISPLAY_NAME
-                                : key.getName()) + " eq \"" + AttributeUtil.getAsStringValue(key) + "\"");
-                        if (!groups.isEmpty()) {
-                            result = groups.get(0);
-                        }
-                    } catch (Exception e) {
-                        SCIMUtils.wrapGeneralError(
-                                "While getting Group : " + key.getName() + " - " + AttributeUtil.getAsStringValue(key),
-                                e);
-                    }
+                try {
+                    result = client.getGroup(AttributeUtil.getAsStringValue(key));
+                } catch (Exception e) {
+                    SCIMUtils.wrapGeneralError(
+                            "While getting Group : " + key.getName() + " - " + AttributeUtil.getAsStringValue(key), e);
                 }
                 if (result != null) {
-                    handler.handle(fromGroup(result, attributesToGet));
+                    handler.handle(fromGroup(result, plan, null));
                 }
             }
         } else {
@@ -316,11 +375,10 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
                 // manage groups
                 List<String> groups = accessor.findStringList(SCIMAttributeUtils.SCIM_USER_GROUPS);
                 LOG.info("Adding groups {0} to user {1}", groups, username);
-                List<GT> scimGroups = groups == null ? Collections.emptyList()
-                        : groups.stream().map(client::getGroup).filter(g -> g != null).collect(Collectors.toList());
-                scimGroups.forEach(g -> user.getGroups().add(new BaseResourceReference.Builder().value(g.getId())
-                        .ref(configuration.getBaseAddress() + "Groups/" + g.getId()).display(g.getDisplayName())
-                        .build()));
+                List<BaseResourceReference> groupReferences = groups == null
+                        ? Collections.emptyList()
+                        : client.getGroupReferences(groups);
+                user.getGroups().addAll(groupReferences);
 
                 if (configuration.getManageComplexEntitlements()) {
                     // manage not default entitlements
@@ -361,21 +419,31 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
                             user.fillEnterpriseUser(createAttributes, configuration.getUseColonOnExtensionAttributes());
                         });
 
-                client.createUser(user);
+                List<String> groupIds = groupReferences.stream().
+                        map(BaseResourceReference::getValue).collect(Collectors.toList());
+                boolean explicitGroupAdd = !groupIds.isEmpty() && configuration.getExplicitGroupAddOnCreate();
+                if (explicitGroupAdd && client.isBulkEnabled()) {
+                    LOG.info("Creating user {0} and explicitly adding it to groups {1} via Bulk", username, groups);
+                    createUserInBulk(user, groupIds);
+                } else {
+                    client.createUser(user);
 
-// update also groups, if needed
-                if (!scimGroups.isEmpty() && configuration.getExplicitGroupAddOnCreate()) {
-                    LOG.info("Updating groups {0} explicitly adding user {1}", groups, user.getId());
+                    // update also groups, if needed
+                    if (explicitGroupAdd) {
+                        LOG.info("Updating groups {0} explicitly adding user {1}", groups, user.getId());
 
-                    scimGroups.forEach(group -> {
-                        group.getMembers().add(SCIMUtils.buildGroupMember(user, provider));
-                        if ("PATCH".equals(configuration.getUpdateGroupMethod())) {
-                            client.updateGroup(group.getId(), buildMembersGroupPatch(
-                                    Collections.singletonList(user), SCIMAttributeUtils.SCIM_ADD));
-                        } else {
-                            client.updateGroup(group);
-                        }
-                    });
+                        client.fanOut().forEach(groupIds, groupId -> {
+                            if ("PATCH".equals(client.getSettings().getUpdateGroupMethod())) {
+                                client.updateGroup(groupId, buildMembersGroupPatch(
+                                        Collections.singletonList(user), SCIMAttributeUtils.SCIM_ADD));
+                            } else {
+                                // with PUT the whole group is sent, thus it needs to be read first
+                                GT group = client.getGroup(groupId);
+                                group.getMembers().add(SCIMUtils.buildGroupMember(user, provider));
+                                client.updateGroup(group);
+                            }
+                        });
+                    }
                 }
             } catch (Exception e) {
                 LOG.error(e, "Unable to update user {0}", username);
@@ -405,6 +473,38 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
         }
     }
 
+    /**
+     * Creates the given User and adds it to the given groups with Bulk requests, where memberships reference the User
+     * via its bulkId.
+     *
+     * @param user User to create
+     * @param groupIds ids of the groups to add the User to
+     */
+    protected void createUserInBulk(final UT user, final List<String> groupIds) {
+        SCIMBulk<UT, GT, P> bulk = client.newBulk();
+        SCIMBulk<UT, GT, P>.Operation created = bulk.createUser(user);
+
+        UT member = buildNewUserEntity(Optional.empty());
+        member.setId(created.getReference());
+        member.setUserName(user.getUserName());
+        member.setDisplayName(user.getDisplayName());
+
+        List<SCIMBulk<UT, GT, P>.Operation> memberships = groupIds.stream().map(groupId -> {
+            if ("PATCH".equals(client.getSettings().getUpdateGroupMethod())) {
+                return bulk.updateGroup(groupId, buildMembersGroupPatch(
+                        Collections.singletonList(member), SCIMAttributeUtils.SCIM_ADD));
+            }
+
+            GT group = client.getGroup(groupId);
+            group.getMembers().add(SCIMUtils.buildGroupMember(member, provider));
+            return bulk.updateGroup(group);
+        }).collect(Collectors.toList());
+        bulk.flush();
+
+        created.join();
+        memberships.forEach(SCIMBulk.Operation::join);
+    }
+
     @Override
     public Uid update(
             final ObjectClass objectClass,
@@ -458,14 +558,14 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
                 user.fromAttributes(replaceAttributes);
 
                 // manage groups
-                final Map<String, P> groupPatches = new HashMap<>();
-                if ("PATCH".equalsIgnoreCase(configuration.getUpdateGroupMethod())) {
+                final Map<String, P> groupPatches = new LinkedHashMap<>();
+                if ("PATCH".equalsIgnoreCase(client.getSettings().getUpdateGroupMethod())) {
                     // calculate groupsToAdd and groupsToRemove
                     List<String> groups =
                             Optional.ofNullable(accessor.findStringList(SCIMAttributeUtils.SCIM_USER_GROUPS))
                                     .orElse(Collections.emptyList());
                     List<String> currentGroups =
-                            client.getUser(user.getId()).getGroups().stream().map(g -> g.getValue())
+                            client.getUser(user.getId(), GROUPS_PROJECTION).getGroups().stream().map(g -> g.getValue())
                                     .collect(Collectors.toList());
                     List<String> groupsToAdd =
                             groups.stream().filter(g -> !currentGroups.contains(g)).collect(Collectors.toList());
@@ -477,13 +577,11 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
                     if (groups != null && !groups.isEmpty()) {
                         LOG.info("Updating groups {0} of user {1}", groups, user.getId());
                         groups.forEach(g -> {
-                            GT group = client.getGroup(g);
+                            BaseResourceReference group = client.getGroupReference(g);
                             if (group == null) {
                                 LOG.error("Unable to add group {0} to the user, group does not exist", g);
                             } else {
-                                user.getGroups().add(new BaseResourceReference.Builder().value(group.getId())
-                                        .ref(configuration.getBaseAddress() + "Groups/" + group.getId())
-                                        .display(group.getDisplayName()).build());
+                                user.getGroups().add(group);
                             }
                         });
                     }
@@ -504,10 +602,19 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
                     user.setPassword(decryptedPassword);
                 }
 
-                client.updateUser(user);
-                // if PATCH is enabled update also group with memberships previously calculated
-                groupPatches.entrySet()
-                        .forEach(patchEntry -> client.updateGroup(patchEntry.getKey(), patchEntry.getValue()));
+                if (!groupPatches.isEmpty() && client.isBulkEnabled()) {
+                    SCIMBulk<UT, GT, P> bulk = client.newBulk();
+                    List<SCIMBulk<UT, GT, P>.Operation> operations = new ArrayList<>();
+                    operations.add(bulk.updateUser(user));
+                    groupPatches.forEach((key, value) -> operations.add(bulk.updateGroup(key, value)));
+                    bulk.flush();
+                    operations.forEach(SCIMBulk.Operation::join);
+                } else {
+                    client.updateUser(user);
+                    // if PATCH is enabled update also group with memberships previously calculated
+                    client.fanOut().forEach(groupPatches.entrySet(),
+                            patchEntry -> client.updateGroup(patchEntry.getKey(), patchEntry.getValue()));
+                }
 
                 returnUid = new Uid(user.getId());
             } catch (Exception e) {
@@ -526,7 +633,7 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
             try {
                 group.fromAttributes(replaceAttributes, configuration.getReplaceMembersOnUpdate());
 
-                if ("PATCH".equals(configuration.getUpdateGroupMethod())) {
+                if ("PATCH".equals(client.getSettings().getUpdateGroupMethod())) {
                     client.updateGroup(uid.getUidValue(), buildPatchFromGroup(group));
 
                     if (configuration.getReplaceMembersOnUpdate()) {
@@ -540,10 +647,7 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
                             LOG.ok("Replacing all group [{0}] members with [{1}] during PATCH update",
                                     group.getId(), members);
 
-                            List<UT> scimUsers = members.stream()
-                                    .map(client::getUser)
-                                    .filter(Objects::nonNull)
-                                    .collect(Collectors.toList());
+                            List<UT> scimUsers = client.getUsers(members, MEMBER_PROJECTION);
                             client.updateGroup(
                                     group.getId(),
                                     buildMembersGroupPatch(scimUsers, SCIMAttributeUtils.SCIM_ADD));
@@ -581,12 +685,12 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
 
         if (ObjectClass.ACCOUNT.equals(objectClass)) {
             // 1. build and send a patch for the user
-            UT currentUser = client.getUser(uid.getUidValue());
+            UT currentUser = client.getUser(uid.getUidValue(), UPDATE_DELTA_PROJECTION);
             if (currentUser == null) {
                 SCIMUtils.handleGeneralError("Unable to update user because does not exist");
             }
-            Map<String, P> groupPatches = new HashMap<>();
-            boolean manageGroupsWithPatch = "PATCH".equalsIgnoreCase(configuration.getUpdateGroupMethod());
+            Map<String, P> groupPatches = new LinkedHashMap<>();
+            boolean manageGroupsWithPatch = "PATCH".equalsIgnoreCase(client.getSettings().getUpdateGroupMethod());
             if (manageGroupsWithPatch) {
                 // only values to add and remove are supported
                 modifications.stream().
@@ -609,18 +713,28 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
                 LOG.warn("Group update method must be set to PATCH while updating through UPDATE_DELTA");
             }
             try {
-                client.updateUser(
-                        uid.getUidValue(),
-                        buildUserPatch(modifications, currentUser, !manageGroupsWithPatch));
-                // 2. if any modify also groups
-                // if PATCH is enabled update also group with memberships previously calculated
-                groupPatches.forEach((key, value) -> client.updateGroup(key, value));
+                P userPatch = buildUserPatch(modifications, currentUser, !manageGroupsWithPatch);
+                if (!groupPatches.isEmpty() && client.isBulkEnabled()) {
+                    // user and group patches all in one go
+                    SCIMBulk<UT, GT, P> bulk = client.newBulk();
+                    List<SCIMBulk<UT, GT, P>.Operation> operations = new ArrayList<>();
+                    operations.add(bulk.updateUser(uid.getUidValue(), userPatch));
+                    groupPatches.forEach((key, value) -> operations.add(bulk.updateGroup(key, value)));
+                    bulk.flush();
+                    operations.forEach(SCIMBulk.Operation::join);
+                } else {
+                    client.updateUser(uid.getUidValue(), userPatch);
+                    // 2. if any modify also groups
+                    // if PATCH is enabled update also group with memberships previously calculated
+                    client.fanOut().forEach(groupPatches.entrySet(),
+                            patchEntry -> client.updateGroup(patchEntry.getKey(), patchEntry.getValue()));
+                }
             } catch (Exception e) {
                 SCIMUtils.handleGeneralError("Error while updating user", e);
             }
         } else if (ObjectClass.GROUP.equals(objectClass)) {
             try {
-                if ("PATCH".equals(configuration.getUpdateGroupMethod())) {
+                if ("PATCH".equals(client.getSettings().getUpdateGroupMethod())) {
                     client.updateGroup(uid.getUidValue(), buildGroupPatch(modifications));
                 } else {
                     LOG.warn("Group update method must be set to PATCH while updating through UPDATE_DELTA");
@@ -670,6 +784,8 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
     @Override
     public FilterTranslator<Filter> createFilterTranslator(final ObjectClass objectClass,
             final OperationOptions options) {
+        // filters are translated into SCIM filters by executeQuery, which needs the original filter to recognize
+        // lookups by id
         return filter -> Collections.singletonList(filter);
     }
 
@@ -689,29 +805,61 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
     }
 
     protected ConnectorObject fromUser(final UT user, final Set<String> attributesToGet) {
+        return fromUser(user, SCIMAttributesToGet.of(attributesToGet), null);
+    }
+
+    /**
+     * Builds the connector object for the given User, provided that it matches the given predicate.
+     *
+     * When no predicate is given, only the fields needed by the attributes to get are converted.
+     *
+     * @param user User
+     * @param attributesToGet attributes to get
+     * @param matches predicate evaluated on all the attributes of the User, can be {@code null}
+     * @return connector object, or {@code null} if not matching
+     */
+    protected ConnectorObject fromUser(
+            final UT user,
+            final SCIMAttributesToGet attributesToGet,
+            final Predicate<ConnectorObject> matches) {
+
         ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
         builder.setObjectClass(ObjectClass.ACCOUNT);
         builder.setUid(user.getId());
         builder.setName(user.getUserName());
 
         try {
-            Set<Attribute> userAttributes = user.toAttributes(user.getClass(), configuration);
-
-            for (Attribute toAttribute : userAttributes) {
-                String attributeName = toAttribute.getName();
-                for (String attributeToGetName : attributesToGet) {
-                    if (attributeName.equals(attributeToGetName)) {
-                        builder.addAttribute(toAttribute);
-                        break;
-                    }
+            Set<Attribute> userAttributes = matches == null
+                    ? user.toAttributes(user.getClass(), configuration, attributesToGet)
+                    : user.toAttributes(user.getClass(), configuration);
+
+            if (matches != null) {
+                ConnectorObjectBuilder all = new ConnectorObjectBuilder().
+                        setObjectClass(ObjectClass.ACCOUNT).
+                        setUid(user.getId()).
+                        setName(user.getUserName()).
+                        addAttributes(userAttributes);
+                if (StringUtil.isNotBlank(configuration.getCustomAttributesJSON())) {
+                    user.getReturnedCustomAttributes().forEach(all::addAttribute);
+                }
+                if (!matches.test(all.build())) {
+                    return null;
                 }
             }
 
-            // custom attributes
+            userAttributes.stream().
+                    filter(attribute -> attributesToGet.contains(attribute.getName())).
+                    forEach(builder::addAttribute);
+
+            // custom attributes, only the requested ones when others were needed by the predicate
             if (StringUtil.isNotBlank(configuration.getCustomAttributesJSON())) {
                 for (String customAttributeKey : user.getReturnedCustomAttributes().keySet()) {
-                    builder.addAttribute(customAttributeKey,
-                            user.getReturnedCustomAttributes().get(customAttributeKey));
+                    if (matches == null || attributesToGet.getNames().isEmpty()
+                            || attributesToGet.contains(customAttributeKey)) {
+
+                        builder.addAttribute(customAttributeKey,
+                                user.getReturnedCustomAttributes().get(customAttributeKey));
+                    }
                 }
             }
         } catch (IllegalArgumentException | IllegalAccessException ex) {
@@ -722,21 +870,46 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
     }
 
     protected ConnectorObject fromGroup(final GT group, final Set<String> attributesToGet) {
+        return fromGroup(group, SCIMAttributesToGet.of(attributesToGet), null);
+    }
+
+    /**
+     * Builds the connector object for the given Group, provided that it matches the given predicate.
+     *
+     * When no predicate is given, only the fields needed by the attributes to get are converted.
+     *
+     * @param group Group
+     * @param attributesToGet attributes to get
+     * @param matches predicate evaluated on all the attributes of the Group, can be {@code null}
+     * @return connector object, or {@code null} if not matching
+     */
+    protected ConnectorObject fromGroup(
+            final GT group,
+            final SCIMAttributesToGet attributesToGet,
+            final Predicate<ConnectorObject> matches) {
+
         ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
         builder.setObjectClass(ObjectClass.GROUP);
         builder.setUid(group.getId());
         builder.setName(group.getDisplayName());
 
         try {
-            for (Attribute toAttribute : group.toAttributes(group.getClass(), configuration)) {
-                String attributeName = toAttribute.getName();
-                for (String attributeToGetName : attributesToGet) {
-                    if (attributeName.equals(attributeToGetName)) {
-                        builder.addAttribute(toAttribute);
-                        break;
-                    }
-                }
+            Set<Attribute> groupAttributes = matches == null
+                    ? group.toAttributes(group.getClass(), configuration, attributesToGet)
+                    : group.toAttributes(group.getClass(), configuration);
+
+            if (matches != null && !matches.test(new ConnectorObjectBuilder().
+                    setObjectClass(ObjectClass.GROUP).
+                    setUid(group.getId()).
+                    setName(group.getDisplayName()).
+                    addAttributes(groupAttributes).build())) {
+
+                return null;
             }
+
+            groupAttributes.stream().
+                    filter(attribute -> attributesToGet.contains(attribute.getName())).
+                    forEach(builder::addAttribute);
         } catch (IllegalArgumentException | IllegalAccessException ex) {
             LOG.error(ex, "While converting to attributes for group", group);
         }
@@ -757,6 +930,8 @@ public abstract class AbstractSCIMConnector<UT extends SCIMUser<? extends SCIMBa
 
     protected abstract ST buildSCIMClient(SCIMConnectorConfiguration configuration);
 
+    protected abstract SCIMFilterTranslator buildFilterTranslator(ObjectClass objectClass);
+
     protected abstract void fillGroupPatches(
             UT user, Map<String, P> groupPatches, List<String> groupsToAdd, List<String> groupsToRemove);
 
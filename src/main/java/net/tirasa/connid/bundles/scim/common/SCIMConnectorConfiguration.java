@@ -18,6 +18,7 @@ package net.tirasa.connid.bundles.scim.common;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
 import javax.ws.rs.core.MediaType;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMSchema;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
@@ -106,6 +107,66 @@ public class SCIMConnectorConfiguration extends AbstractConfiguration implements
 
     private boolean enableMemberRemovalByPath = true;
 
+    private int maxConnections = 100;
+
+    private int maxConnectionsPerRoute = 20;
+
+    private long connectionIdleTimeout = 60000L;
+
+    private long connectionTimeToLive = 60000L;
+
+    private long connectionTimeout = 30000L;
+
+    private long receiveTimeout = 60000L;
+
+    private int searchPageSize = 0;
+
+    private int maxPrefetchedPages = 2;
+
+    private int searchConcurrency = 1;
+
+    private boolean allowUnorderedSearchResults = false;
+
+    private long accessTokenRefreshAhead = 60000L;
+
+    private String accessTokenCacheFile;
+
+    private boolean bulkEnabled = false;
+
+    private int bulkMaxOperations = 1000;
+
+    private long bulkMaxPayloadSize = 1048576L;
+
+    private boolean discoverServiceProviderConfig = false;
+
+    private long serviceProviderConfigTTL = 3600000L;
+
+    private String serviceProviderConfigFile;
+
+    private int groupReferenceCacheSize = 1000;
+
+    private long groupReferenceCacheTTL = 600000L;
+
+    private boolean prewarmGroupReferenceCache = false;
+
+    private int entitlementCacheSize = 1000;
+
+    private long entitlementCacheTTL = 600000L;
+
+    private boolean directSearchMapping = false;
+
+    private boolean requestSubAttributesOnSearch = false;
+
+    private int batchLookupSize = 100;
+
+    private int maxQueryLengthOnGet = 4000;
+
+    private String searchMethod = "AUTO";
+
+    private int fanOutParallelism = 8;
+
+    private String httpTransport = "CXF";
+
     @ConfigurationProperty(order = 1,
             displayMessageKey = "baseAddress.display",
             helpMessageKey = "baseAddress.help",
@@ -456,6 +517,336 @@ public class SCIMConnectorConfiguration extends AbstractConfiguration implements
         this.enableMemberRemovalByPath = enableMemberRemovalByPath;
     }
 
+    @ConfigurationProperty(displayMessageKey = "maxConnections.display",
+            helpMessageKey = "maxConnections.help",
+            order = 33)
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConnections(final int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "maxConnectionsPerRoute.display",
+            helpMessageKey = "maxConnectionsPerRoute.help",
+            order = 34)
+    public int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public void setMaxConnectionsPerRoute(final int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "connectionIdleTimeout.display",
+            helpMessageKey = "connectionIdleTimeout.help",
+            order = 35)
+    public long getConnectionIdleTimeout() {
+        return connectionIdleTimeout;
+    }
+
+    public void setConnectionIdleTimeout(final long connectionIdleTimeout) {
+        this.connectionIdleTimeout = connectionIdleTimeout;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "connectionTimeToLive.display",
+            helpMessageKey = "connectionTimeToLive.help",
+            order = 60)
+    public long getConnectionTimeToLive() {
+        return connectionTimeToLive;
+    }
+
+    public void setConnectionTimeToLive(final long connectionTimeToLive) {
+        this.connectionTimeToLive = connectionTimeToLive;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "connectionTimeout.display",
+            helpMessageKey = "connectionTimeout.help",
+            order = 61)
+    public long getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(final long connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "receiveTimeout.display",
+            helpMessageKey = "receiveTimeout.help",
+            order = 62)
+    public long getReceiveTimeout() {
+        return receiveTimeout;
+    }
+
+    public void setReceiveTimeout(final long receiveTimeout) {
+        this.receiveTimeout = receiveTimeout;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "searchPageSize.display",
+            helpMessageKey = "searchPageSize.help",
+            order = 36)
+    public int getSearchPageSize() {
+        return searchPageSize;
+    }
+
+    public void setSearchPageSize(final int searchPageSize) {
+        this.searchPageSize = searchPageSize;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "maxPrefetchedPages.display",
+            helpMessageKey = "maxPrefetchedPages.help",
+            order = 37)
+    public int getMaxPrefetchedPages() {
+        return maxPrefetchedPages;
+    }
+
+    public void setMaxPrefetchedPages(final int maxPrefetchedPages) {
+        this.maxPrefetchedPages = maxPrefetchedPages;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "searchConcurrency.display",
+            helpMessageKey = "searchConcurrency.help",
+            order = 38)
+    public int getSearchConcurrency() {
+        return searchConcurrency;
+    }
+
+    public void setSearchConcurrency(final int searchConcurrency) {
+        this.searchConcurrency = searchConcurrency;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "allowUnorderedSearchResults.display",
+            helpMessageKey = "allowUnorderedSearchResults.help",
+            order = 39)
+    public boolean getAllowUnorderedSearchResults() {
+        return allowUnorderedSearchResults;
+    }
+
+    public void setAllowUnorderedSearchResults(final boolean allowUnorderedSearchResults) {
+        this.allowUnorderedSearchResults = allowUnorderedSearchResults;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "accessTokenRefreshAhead.display",
+            helpMessageKey = "accessTokenRefreshAhead.help",
+            order = 40)
+    public long getAccessTokenRefreshAhead() {
+        return accessTokenRefreshAhead;
+    }
+
+    public void setAccessTokenRefreshAhead(final long accessTokenRefreshAhead) {
+        this.accessTokenRefreshAhead = accessTokenRefreshAhead;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "accessTokenCacheFile.display",
+            helpMessageKey = "accessTokenCacheFile.help",
+            order = 41)
+    public String getAccessTokenCacheFile() {
+        return accessTokenCacheFile;
+    }
+
+    public void setAccessTokenCacheFile(final String accessTokenCacheFile) {
+        this.accessTokenCacheFile = accessTokenCacheFile;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "bulkEnabled.display",
+            helpMessageKey = "bulkEnabled.help",
+            order = 42)
+    public boolean getBulkEnabled() {
+        return bulkEnabled;
+    }
+
+    public void setBulkEnabled(final boolean bulkEnabled) {
+        this.bulkEnabled = bulkEnabled;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "bulkMaxOperations.display",
+            helpMessageKey = "bulkMaxOperations.help",
+            order = 43)
+    public int getBulkMaxOperations() {
+        return bulkMaxOperations;
+    }
+
+    public void setBulkMaxOperations(final int bulkMaxOperations) {
+        this.bulkMaxOperations = bulkMaxOperations;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "bulkMaxPayloadSize.display",
+            helpMessageKey = "bulkMaxPayloadSize.help",
+            order = 44)
+    public long getBulkMaxPayloadSize() {
+        return bulkMaxPayloadSize;
+    }
+
+    public void setBulkMaxPayloadSize(final long bulkMaxPayloadSize) {
+        this.bulkMaxPayloadSize = bulkMaxPayloadSize;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "discoverServiceProviderConfig.display",
+            helpMessageKey = "discoverServiceProviderConfig.help",
+            order = 45)
+    public boolean getDiscoverServiceProviderConfig() {
+        return discoverServiceProviderConfig;
+    }
+
+    public void setDiscoverServiceProviderConfig(final boolean discoverServiceProviderConfig) {
+        this.discoverServiceProviderConfig = discoverServiceProviderConfig;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "serviceProviderConfigTTL.display",
+            helpMessageKey = "serviceProviderConfigTTL.help",
+            order = 46)
+    public long getServiceProviderConfigTTL() {
+        return serviceProviderConfigTTL;
+    }
+
+    public void setServiceProviderConfigTTL(final long serviceProviderConfigTTL) {
+        this.serviceProviderConfigTTL = serviceProviderConfigTTL;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "serviceProviderConfigFile.display",
+            helpMessageKey = "serviceProviderConfigFile.help",
+            order = 47)
+    public String getServiceProviderConfigFile() {
+        return serviceProviderConfigFile;
+    }
+
+    public void setServiceProviderConfigFile(final String serviceProviderConfigFile) {
+        this.serviceProviderConfigFile = serviceProviderConfigFile;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "groupReferenceCacheSize.display",
+            helpMessageKey = "groupReferenceCacheSize.help",
+            order = 48)
+    public int getGroupReferenceCacheSize() {
+        return groupReferenceCacheSize;
+    }
+
+    public void setGroupReferenceCacheSize(final int groupReferenceCacheSize) {
+        this.groupReferenceCacheSize = groupReferenceCacheSize;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "groupReferenceCacheTTL.display",
+            helpMessageKey = "groupReferenceCacheTTL.help",
+            order = 49)
+    public long getGroupReferenceCacheTTL() {
+        return groupReferenceCacheTTL;
+    }
+
+    public void setGroupReferenceCacheTTL(final long groupReferenceCacheTTL) {
+        this.groupReferenceCacheTTL = groupReferenceCacheTTL;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "prewarmGroupReferenceCache.display",
+            helpMessageKey = "prewarmGroupReferenceCache.help",
+            order = 50)
+    public boolean getPrewarmGroupReferenceCache() {
+        return prewarmGroupReferenceCache;
+    }
+
+    public void setPrewarmGroupReferenceCache(final boolean prewarmGroupReferenceCache) {
+        this.prewarmGroupReferenceCache = prewarmGroupReferenceCache;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "entitlementCacheSize.display",
+            helpMessageKey = "entitlementCacheSize.help",
+            order = 51)
+    public int getEntitlementCacheSize() {
+        return entitlementCacheSize;
+    }
+
+    public void setEntitlementCacheSize(final int entitlementCacheSize) {
+        this.entitlementCacheSize = entitlementCacheSize;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "entitlementCacheTTL.display",
+            helpMessageKey = "entitlementCacheTTL.help",
+            order = 52)
+    public long getEntitlementCacheTTL() {
+        return entitlementCacheTTL;
+    }
+
+    public void setEntitlementCacheTTL(final long entitlementCacheTTL) {
+        this.entitlementCacheTTL = entitlementCacheTTL;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "directSearchMapping.display",
+            helpMessageKey = "directSearchMapping.help",
+            order = 53)
+    public boolean getDirectSearchMapping() {
+        return directSearchMapping;
+    }
+
+    public void setDirectSearchMapping(final boolean directSearchMapping) {
+        this.directSearchMapping = directSearchMapping;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "requestSubAttributesOnSearch.display",
+            helpMessageKey = "requestSubAttributesOnSearch.help",
+            order = 54)
+    public boolean getRequestSubAttributesOnSearch() {
+        return requestSubAttributesOnSearch;
+    }
+
+    public void setRequestSubAttributesOnSearch(final boolean requestSubAttributesOnSearch) {
+        this.requestSubAttributesOnSearch = requestSubAttributesOnSearch;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "batchLookupSize.display",
+            helpMessageKey = "batchLookupSize.help",
+            order = 55)
+    public int getBatchLookupSize() {
+        return batchLookupSize;
+    }
+
+    public void setBatchLookupSize(final int batchLookupSize) {
+        this.batchLookupSize = batchLookupSize;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "maxQueryLengthOnGet.display",
+            helpMessageKey = "maxQueryLengthOnGet.help",
+            order = 56)
+    public int getMaxQueryLengthOnGet() {
+        return maxQueryLengthOnGet;
+    }
+
+    public void setMaxQueryLengthOnGet(final int maxQueryLengthOnGet) {
+        this.maxQueryLengthOnGet = maxQueryLengthOnGet;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "searchMethod.display",
+            helpMessageKey = "searchMethod.help",
+            order = 57)
+    public String getSearchMethod() {
+        return searchMethod;
+    }
+
+    public void setSearchMethod(final String searchMethod) {
+        this.searchMethod = searchMethod;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "fanOutParallelism.display",
+            helpMessageKey = "fanOutParallelism.help",
+            order = 58)
+    public int getFanOutParallelism() {
+        return fanOutParallelism;
+    }
+
+    public void setFanOutParallelism(final int fanOutParallelism) {
+        this.fanOutParallelism = fanOutParallelism;
+    }
+
+    @ConfigurationProperty(displayMessageKey = "httpTransport.display",
+            helpMessageKey = "httpTransport.help",
+            order = 59)
+    public String getHttpTransport() {
+        return httpTransport;
+    }
+
+    public void setHttpTransport(final String httpTransport) {
+        this.httpTransport = httpTransport;
+    }
+
     @Override
     public void validate() {
         if (StringUtil.isBlank(baseAddress)) {
@@ -527,12 +918,99 @@ public class SCIMConnectorConfiguration extends AbstractConfiguration implements
                 StringUtil.isBlank(authHttpHeaderName) && authHttpHeaderValue != null)) {
             failValidation("If provided both auth http header value and auth http header name must be set.");
         }
+        if (maxConnections <= 0 || maxConnectionsPerRoute <= 0) {
+            failValidation("Max connections and max connections per route must be greater than 0.");
+        }
+        if (maxConnectionsPerRoute > maxConnections) {
+            failValidation("Max connections per route cannot be greater than max connections.");
+        }
+        if (connectionIdleTimeout <= 0) {
+            failValidation("Connection idle timeout must be greater than 0.");
+        }
+        if (connectionTimeToLive < 0) {
+            failValidation("Connection time to live cannot be negative.");
+        }
+        if (connectionTimeout < 0 || receiveTimeout < 0) {
+            failValidation("Connection and receive timeouts cannot be negative.");
+        }
+        if (searchPageSize < 0) {
+            failValidation("Search page size cannot be negative.");
+        }
+        if (maxPrefetchedPages <= 0) {
+            failValidation("Max prefetched pages must be greater than 0.");
+        }
+        if (searchConcurrency <= 0) {
+            failValidation("Search concurrency must be greater than 0.");
+        }
+        if (accessTokenRefreshAhead < 0) {
+            failValidation("Access token refresh ahead cannot be negative.");
+        }
+        if (bulkMaxOperations <= 0) {
+            failValidation("Bulk max operations must be greater than 0.");
+        }
+        if (bulkMaxPayloadSize <= 0) {
+            failValidation("Bulk max payload size must be greater than 0.");
+        }
+        if (serviceProviderConfigTTL <= 0) {
+            failValidation("ServiceProviderConfig TTL must be greater than 0.");
+        }
+        if (groupReferenceCacheSize < 0) {
+            failValidation("Group reference cache size cannot be negative.");
+        }
+        if (groupReferenceCacheTTL <= 0) {
+            failValidation("Group reference cache TTL must be greater than 0.");
+        }
+        if (entitlementCacheSize < 0) {
+            failValidation("Entitlement cache size cannot be negative.");
+        }
+        if (entitlementCacheTTL <= 0) {
+            failValidation("Entitlement cache TTL must be greater than 0.");
+        }
+        if (batchLookupSize <= 0) {
+            failValidation("Batch lookup size must be greater than 0.");
+        }
+        if (maxQueryLengthOnGet <= 0) {
+            failValidation("Max query length on GET must be greater than 0.");
+        }
+        if (!"AUTO".equalsIgnoreCase(searchMethod)
+                && !"GET".equalsIgnoreCase(searchMethod)
+                && !"POST".equalsIgnoreCase(searchMethod)) {
+
+            failValidation("Search method must be one of AUTO, GET or POST.");
+        }
+        if (fanOutParallelism <= 0) {
+            failValidation("Fan-out parallelism must be greater than 0.");
+        }
+        if (!"CXF".equalsIgnoreCase(httpTransport) && !"JDK".equalsIgnoreCase(httpTransport)) {
+            failValidation("HTTP transport must be either CXF or JDK.");
+        }
+        if ("JDK".equalsIgnoreCase(httpTransport) && StringUtil.isNotBlank(proxyServerHost)
+                && !"HTTP".equalsIgnoreCase(proxyServerType)) {
+
+            failValidation("The JDK HTTP transport only supports HTTP proxies.");
+        }
+        if ("JDK".equalsIgnoreCase(httpTransport) && StringUtil.isNotBlank(proxyServerHost)
+                && StringUtil.isNotBlank(proxyServerUser) && StringUtil.isNotBlank(proxyServerPassword)
+                && baseAddress.toLowerCase().startsWith("https:") && isBasicProxyTunnelingDisabled()) {
+
+            failValidation("The JDK HTTP transport cannot authenticate on the proxy with Basic for HTTPS requests, "
+                    + "unless Basic is removed from the jdk.http.auth.tunneling.disabledSchemes system property.");
+        }
     }
 
     @Override
     public void release() {
     }
 
+    /**
+     * @return whether the Java HTTP client refuses Basic authentication on proxies when tunneling HTTPS requests
+     */
+    private static boolean isBasicProxyTunnelingDisabled() {
+        // when not set as system property, the default from the Java runtime's net.properties applies
+        return Arrays.stream(System.getProperty("jdk.http.auth.tunneling.disabledSchemes", "Basic").split(",")).
+                anyMatch(scheme -> "Basic".equalsIgnoreCase(scheme.trim()));
+    }
+
     private void failValidation(final String key, final Object... args) {
         String message = getConnectorMessages().format(key, null, args);
         throw new ConfigurationException(message);
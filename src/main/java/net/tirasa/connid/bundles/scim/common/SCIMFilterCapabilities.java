@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+
+/**
+ * What a SCIM server accepts in the {@code filter} parameter: operators, attributes and value path filters.
+ */
+public final class SCIMFilterCapabilities {
+
+    public static final Set<String> ALL_OPERATORS = Set.of(
+            "eq", "co", "sw", "ew", "pr", "gt", "ge", "lt", "le", "and", "or", "not");
+
+    public static SCIMFilterCapabilities forProvider(final SCIMProvider provider) {
+        switch (provider) {
+            case AWS:
+                // only "eq", on a single attribute
+                return new SCIMFilterCapabilities(
+                        Set.of("eq"),
+                        Set.of(SCIMAttributeUtils.USER_ATTRIBUTE_USERNAME,
+                                SCIMAttributeUtils.USER_ATTRIBUTE_EXTERNAL_ID),
+                        Set.of(SCIMAttributeUtils.SCIM_GROUP_DISPLAY_NAME,
+                                SCIMAttributeUtils.USER_ATTRIBUTE_EXTERNAL_ID),
+                        false);
+
+            case SALESFORCE:
+                return new SCIMFilterCapabilities(
+                        Set.of("eq", "co", "sw", "and", "or"),
+                        Collections.emptySet(),
+                        Collections.emptySet(),
+                        false);
+
+            case EGNYTE:
+                return new SCIMFilterCapabilities(
+                        Set.of("eq"),
+                        Set.of(SCIMAttributeUtils.USER_ATTRIBUTE_USERNAME,
+                                SCIMAttributeUtils.USER_ATTRIBUTE_EXTERNAL_ID,
+                                SCIMAttributeUtils.SCIM_USER_EMAILS),
+                        Set.of(SCIMAttributeUtils.SCIM_GROUP_DISPLAY_NAME),
+                        false);
+
+            case STANDARD:
+            case WSO2:
+            case KEYCLOAK:
+            default:
+                return new SCIMFilterCapabilities(
+                        ALL_OPERATORS, Collections.emptySet(), Collections.emptySet(), true);
+        }
+    }
+
+    /**
+     * @return capabilities of a SCIM server not supporting filters
+     */
+    public static SCIMFilterCapabilities none() {
+        return new SCIMFilterCapabilities(Collections.emptySet(), Collections.emptySet(), Collections.emptySet(), false);
+    }
+
+    private final Set<String> operators;
+
+    private final Set<String> userAttributes;
+
+    private final Set<String> groupAttributes;
+
+    private final boolean valuePathFilters;
+
+    /**
+     * @param operators supported operators, including logical ones
+     * @param userAttributes User attributes which can be filtered on, empty for any
+     * @param groupAttributes Group attributes which can be filtered on, empty for any
+     * @param valuePathFilters whether filters as {@code emails[type eq "work" and value ...]} are supported
+     */
+    public SCIMFilterCapabilities(
+            final Set<String> operators,
+            final Set<String> userAttributes,
+            final Set<String> groupAttributes,
+            final boolean valuePathFilters) {
+
+        this.operators = operators;
+        this.userAttributes = userAttributes;
+        this.groupAttributes = groupAttributes;
+        this.valuePathFilters = valuePathFilters;
+    }
+
+    /**
+     * SCIM 1.1 knows neither "ew" nor "not", nor value path filters.
+     *
+     * @return capabilities restricted to SCIM 1.1 filters
+     */
+    public SCIMFilterCapabilities forSCIM11() {
+        Set<String> scim11Operators = new HashSet<>(operators);
+        scim11Operators.remove("ew");
+        scim11Operators.remove("not");
+        return new SCIMFilterCapabilities(scim11Operators, userAttributes, groupAttributes, false);
+    }
+
+    public boolean supports(final String operator) {
+        return operators.contains(operator);
+    }
+
+    /**
+     * @param objectClass object class being searched
+     * @param attribute SCIM attribute path, as {@code name.familyName}
+     * @return whether the given attribute, or the attribute it belongs to, can be filtered on; for object classes
+     * other than Users and Groups, only if no attribute restriction is known at all
+     */
+    public boolean supportsAttribute(final ObjectClass objectClass, final String attribute) {
+        Set<String> attributes;
+        if (ObjectClass.ACCOUNT.equals(objectClass)) {
+            attributes = userAttributes;
+        } else if (ObjectClass.GROUP.equals(objectClass)) {
+            attributes = groupAttributes;
+        } else {
+            return userAttributes.isEmpty() && groupAttributes.isEmpty();
+        }
+        if (attributes.isEmpty() || attributes.contains(attribute)) {
+            return true;
+        }
+
+        int dot = attribute.startsWith("urn:") ? -1 : attribute.indexOf('.');
+        return dot != -1 && attributes.contains(attribute.substring(0, dot));
+    }
+
+    public boolean supportsValuePathFilters() {
+        return valuePathFilters;
+    }
+}
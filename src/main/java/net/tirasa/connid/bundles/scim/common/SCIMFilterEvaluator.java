@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.AttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.CompositeFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsAllValuesFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsFilter;
+import org.identityconnectors.framework.common.objects.filter.EndsWithFilter;
+import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
+import org.identityconnectors.framework.common.objects.filter.EqualsIgnoreCaseFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanFilter;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.NotFilter;
+import org.identityconnectors.framework.common.objects.filter.OrFilter;
+import org.identityconnectors.framework.common.objects.filter.StartsWithFilter;
+
+/**
+ * Compiles ConnId filters into predicates, evaluated in memory against the objects built from the returned resources.
+ * Operands are resolved once, at compile time; filters of unknown type fall back to {@link Filter#accept}.
+ */
+public final class SCIMFilterEvaluator {
+
+    public static Predicate<ConnectorObject> compile(final Filter filter) {
+        if (filter instanceof AndFilter) {
+            return compile(((AndFilter) filter).getLeft()).and(compile(((AndFilter) filter).getRight()));
+        }
+        if (filter instanceof OrFilter) {
+            return compile(((OrFilter) filter).getLeft()).or(compile(((OrFilter) filter).getRight()));
+        }
+        if (filter instanceof NotFilter) {
+            return compile(((NotFilter) filter).getFilter()).negate();
+        }
+
+        if (filter instanceof EqualsFilter) {
+            return equality((AttributeFilter) filter, SCIMFilterEvaluator::sameValue);
+        }
+        if (filter instanceof EqualsIgnoreCaseFilter) {
+            return equality((AttributeFilter) filter, (found, expected) -> found != null && expected != null
+                    && found.toString().equalsIgnoreCase(expected.toString()));
+        }
+        if (filter instanceof ContainsAllValuesFilter) {
+            List<Object> expected = valuesOf((AttributeFilter) filter);
+            String name = ((AttributeFilter) filter).getName();
+            return object -> {
+                List<Object> found = valuesOf(object, name);
+                return expected.stream().allMatch(e -> found.stream().anyMatch(f -> sameValue(f, e)));
+            };
+        }
+
+        if (filter instanceof ContainsFilter) {
+            return string((AttributeFilter) filter, String::contains);
+        }
+        if (filter instanceof StartsWithFilter) {
+            return string((AttributeFilter) filter, String::startsWith);
+        }
+        if (filter instanceof EndsWithFilter) {
+            return string((AttributeFilter) filter, String::endsWith);
+        }
+
+        if (filter instanceof GreaterThanFilter) {
+            return comparison((AttributeFilter) filter, result -> result > 0);
+        }
+        if (filter instanceof GreaterThanOrEqualFilter) {
+            return comparison((AttributeFilter) filter, result -> result >= 0);
+        }
+        if (filter instanceof LessThanFilter) {
+            return comparison((AttributeFilter) filter, result -> result < 0);
+        }
+        if (filter instanceof LessThanOrEqualFilter) {
+            return comparison((AttributeFilter) filter, result -> result <= 0);
+        }
+
+        return filter::accept;
+    }
+
+    /**
+     * @param filter ConnId filter
+     * @return names of the attributes the given filter is evaluated against
+     */
+    public static Set<String> attributeNames(final Filter filter) {
+        Set<String> names = new HashSet<>();
+        collectAttributeNames(filter, names);
+        return names;
+    }
+
+    private static void collectAttributeNames(final Filter filter, final Set<String> names) {
+        if (filter instanceof CompositeFilter) {
+            collectAttributeNames(((CompositeFilter) filter).getLeft(), names);
+            collectAttributeNames(((CompositeFilter) filter).getRight(), names);
+        } else if (filter instanceof NotFilter) {
+            collectAttributeNames(((NotFilter) filter).getFilter(), names);
+        } else if (filter instanceof AttributeFilter) {
+            names.add(((AttributeFilter) filter).getName());
+        }
+    }
+
+    private static List<Object> valuesOf(final AttributeFilter filter) {
+        return CollectionUtil.nullAsEmpty(filter.getAttribute().getValue());
+    }
+
+    private static List<Object> valuesOf(final ConnectorObject object, final String name) {
+        Attribute attribute = object.getAttributeByName(name);
+        return attribute == null || attribute.getValue() == null ? Collections.emptyList() : attribute.getValue();
+    }
+
+    private static boolean sameValue(final Object found, final Object expected) {
+        // values are often returned as strings, regardless of their type in the filter
+        return Objects.equals(found, expected)
+                || (found != null && expected != null && found.toString().equals(expected.toString()));
+    }
+
+    private static Predicate<ConnectorObject> equality(
+            final AttributeFilter filter, final BiPredicate<Object, Object> matcher) {
+
+        List<Object> expected = valuesOf(filter);
+        String name = filter.getName();
+        return object -> {
+            List<Object> found = valuesOf(object, name);
+            if (found.size() != expected.size()) {
+                return false;
+            }
+            for (Object e : expected) {
+                if (found.stream().noneMatch(f -> matcher.test(f, e))) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private static Predicate<ConnectorObject> string(
+            final AttributeFilter filter, final BiPredicate<String, String> matcher) {
+
+        List<Object> expected = valuesOf(filter);
+        if (expected.size() != 1 || expected.get(0) == null) {
+            return filter::accept;
+        }
+
+        // as for SCIM, string comparisons are case insensitive
+        String value = expected.get(0).toString().toLowerCase(Locale.ROOT);
+        String name = filter.getName();
+        return object -> valuesOf(object, name).stream().
+                anyMatch(f -> f != null && matcher.test(f.toString().toLowerCase(Locale.ROOT), value));
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Predicate<ConnectorObject> comparison(final AttributeFilter filter, final IntPredicate outcome) {
+        List<Object> expected = valuesOf(filter);
+        if (expected.size() != 1 || expected.get(0) == null) {
+            return filter::accept;
+        }
+
+        Object value = expected.get(0);
+        String name = filter.getName();
+        return object -> valuesOf(object, name).stream().anyMatch(f -> {
+            if (f == null) {
+                return false;
+            }
+            if (f instanceof Comparable && f.getClass().equals(value.getClass())) {
+                return outcome.test(((Comparable) f).compareTo(value));
+            }
+            // strings in ISO 8601 format, as SCIM dates, compare lexicographically
+            return outcome.test(f.toString().compareTo(value.toString()));
+        });
+    }
+
+    private SCIMFilterEvaluator() {
+        // private constructor for static utility class
+    }
+}
@@ -0,0 +1,418 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
+import org.identityconnectors.common.CollectionUtil;
+import org.identityconnectors.common.security.GuardedByteArray;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationalAttributes;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.AbstractFilterTranslator;
+import org.identityconnectors.framework.common.objects.filter.AndFilter;
+import org.identityconnectors.framework.common.objects.filter.AttributeFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsAllValuesFilter;
+import org.identityconnectors.framework.common.objects.filter.ContainsFilter;
+import org.identityconnectors.framework.common.objects.filter.EndsWithFilter;
+import org.identityconnectors.framework.common.objects.filter.EqualsFilter;
+import org.identityconnectors.framework.common.objects.filter.EqualsIgnoreCaseFilter;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanFilter;
+import org.identityconnectors.framework.common.objects.filter.GreaterThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanFilter;
+import org.identityconnectors.framework.common.objects.filter.LessThanOrEqualFilter;
+import org.identityconnectors.framework.common.objects.filter.StartsWithFilter;
+
+/**
+ * Translates ConnId filters into SCIM filter expressions, as defined by RFC 7644, section 3.4.2.2, within the
+ * capabilities of the target SCIM server.
+ * Filters (or parts of them) which cannot be expressed are left out: {@link #split(Filter)} returns them as residual
+ * filter, to be evaluated against the returned resources.
+ * Instances are not thread-safe.
+ */
+public class SCIMFilterTranslator extends AbstractFilterTranslator<String> {
+
+    /**
+     * Outcome of {@link SCIMFilterTranslator#split(Filter)}.
+     */
+    public static final class Split {
+
+        private final String pushedDown;
+
+        private final Filter residual;
+
+        Split(final String pushedDown, final Filter residual) {
+            this.pushedDown = pushedDown;
+            this.residual = residual;
+        }
+
+        /**
+         * @return SCIM filter expression to send to the server, or {@code null} if nothing can be pushed down
+         */
+        public String getPushedDown() {
+            return pushedDown;
+        }
+
+        /**
+         * @return part of the filter to be evaluated against the returned resources, or {@code null} if none
+         */
+        public Filter getResidual() {
+            return residual;
+        }
+    }
+
+    private static final String DEFAULT_TYPE = "default";
+
+    /**
+     * Attributes defined as {@code caseExact} by RFC 7643, for which {@code eq} is case-sensitive.
+     */
+    private static final Set<String> CASE_EXACT_ATTRIBUTES = Set.of(
+            Uid.NAME, SCIMAttributeUtils.ATTRIBUTE_ID, SCIMAttributeUtils.USER_ATTRIBUTE_EXTERNAL_ID);
+
+    private final ObjectClass objectClass;
+
+    private final SCIMFilterCapabilities capabilities;
+
+    private final List<String> extensionSchemas;
+
+    private final String extensionSeparator;
+
+    private final Set<String> caseExactAttributes;
+
+    private boolean lossy;
+
+    /**
+     * @param objectClass object class being searched
+     * @param capabilities what the SCIM server accepts as filter
+     * @param extensionSchemas URIs of the extension schemas whose attributes can be used in filters
+     * @param extensionSeparator separator between extension schema URI and attribute name in filters, or
+     * {@code null} to keep the one used by the connector attribute name
+     */
+    public SCIMFilterTranslator(
+            final ObjectClass objectClass,
+            final SCIMFilterCapabilities capabilities,
+            final Set<String> extensionSchemas,
+            final String extensionSeparator) {
+
+        this(objectClass, capabilities, extensionSchemas, extensionSeparator, Set.of());
+    }
+
+    /**
+     * @param objectClass object class being searched
+     * @param capabilities what the SCIM server accepts as filter
+     * @param extensionSchemas URIs of the extension schemas whose attributes can be used in filters
+     * @param extensionSeparator separator between extension schema URI and attribute name in filters, or
+     * {@code null} to keep the one used by the connector attribute name
+     * @param caseExactAttributes connector names of the extension attributes defined as {@code caseExact}, besides
+     * the ones defined as such by RFC 7643
+     */
+    public SCIMFilterTranslator(
+            final ObjectClass objectClass,
+            final SCIMFilterCapabilities capabilities,
+            final Set<String> extensionSchemas,
+            final String extensionSeparator,
+            final Set<String> caseExactAttributes) {
+
+        this.objectClass = objectClass;
+        this.capabilities = capabilities;
+        // longest first, so that the most specific schema URI wins
+        this.extensionSchemas = extensionSchemas.stream().
+                sorted(Comparator.comparingInt(String::length).reversed()).
+                collect(Collectors.toList());
+        this.extensionSeparator = extensionSeparator;
+        this.caseExactAttributes = caseExactAttributes;
+    }
+
+    /**
+     * Splits the given filter into the largest part the SCIM server can evaluate, and the residual part.
+     *
+     * @param filter ConnId filter, can be {@code null}
+     * @return pushed down SCIM filter expression and residual filter
+     */
+    public Split split(final Filter filter) {
+        if (filter == null) {
+            return new Split(null, null);
+        }
+
+        Filter[] split = doSplit(filter);
+        return new Split(split[0] == null ? null : translateFully(split[0]), split[1]);
+    }
+
+    private Filter[] doSplit(final Filter filter) {
+        if (translateFully(filter) != null) {
+            return new Filter[] { filter, null };
+        }
+        if (!(filter instanceof AndFilter)) {
+            return new Filter[] { null, filter };
+        }
+
+        Filter[] left = doSplit(((AndFilter) filter).getLeft());
+        Filter[] right = doSplit(((AndFilter) filter).getRight());
+
+        Filter pushed;
+        Filter residual = and(left[1], right[1]);
+        if (left[0] != null && right[0] != null) {
+            pushed = FilterBuilder.and(left[0], right[0]);
+            if (translateFully(pushed) == null) {
+                // the server cannot combine them
+                pushed = left[0];
+                residual = and(right[0], residual);
+            }
+        } else {
+            pushed = left[0] == null ? right[0] : left[0];
+        }
+        return new Filter[] { pushed, residual };
+    }
+
+    private static Filter and(final Filter left, final Filter right) {
+        return left == null ? right : right == null ? left : FilterBuilder.and(left, right);
+    }
+
+    /**
+     * @param filter ConnId filter
+     * @return SCIM filter expression fully equivalent to the given filter, or {@code null} if not possible
+     */
+    public String translateFully(final Filter filter) {
+        lossy = false;
+        List<String> translated = translate(filter);
+        return !lossy && translated.size() == 1 ? translated.get(0) : null;
+    }
+
+    private String lossy(final String expression) {
+        if (expression == null) {
+            lossy = true;
+        }
+        return expression;
+    }
+
+    @Override
+    protected String createAndExpression(final String leftExpression, final String rightExpression) {
+        if (!capabilities.supports("and")) {
+            // null is not an option here
+            lossy = true;
+            return leftExpression;
+        }
+        return leftExpression + " and " + rightExpression;
+    }
+
+    @Override
+    protected String createOrExpression(final String leftExpression, final String rightExpression) {
+        // always parenthesized, since "and" takes precedence over "or"
+        return lossy(capabilities.supports("or") ? "(" + leftExpression + " or " + rightExpression + ")" : null);
+    }
+
+    @Override
+    protected String createEqualsExpression(final EqualsFilter filter, final boolean not) {
+        return lossy(createEqualsExpression(filter.getAttribute(), not));
+    }
+
+    @Override
+    protected String createEqualsIgnoreCaseExpression(final EqualsIgnoreCaseFilter filter, final boolean not) {
+        // "eq" is case-insensitive unless the attribute is caseExact: then the filter is evaluated in memory
+        return lossy(isCaseExact(filter.getName()) ? null : createEqualsExpression(filter.getAttribute(), not));
+    }
+
+    /**
+     * @param attributeName connector attribute name
+     * @return whether the SCIM attribute the given connector attribute is mapped to is {@code caseExact}
+     */
+    protected boolean isCaseExact(final String attributeName) {
+        if (CASE_EXACT_ATTRIBUTES.contains(attributeName) || caseExactAttributes.contains(attributeName)) {
+            return true;
+        }
+        // core attributes can also be qualified by the core schema URI, as with SCIM 1.1
+        int separator = Math.max(attributeName.lastIndexOf(':'), attributeName.lastIndexOf('.'));
+        return separator > 0 && CASE_EXACT_ATTRIBUTES.contains(attributeName.substring(separator + 1));
+    }
+
+    @Override
+    protected String createContainsExpression(final ContainsFilter filter, final boolean not) {
+        return lossy(negate(comparison(filter, "co"), not));
+    }
+
+    @Override
+    protected String createStartsWithExpression(final StartsWithFilter filter, final boolean not) {
+        return lossy(negate(comparison(filter, "sw"), not));
+    }
+
+    @Override
+    protected String createEndsWithExpression(final EndsWithFilter filter, final boolean not) {
+        return lossy(negate(comparison(filter, "ew"), not));
+    }
+
+    @Override
+    protected String createGreaterThanExpression(final GreaterThanFilter filter, final boolean not) {
+        return lossy(negate(comparison(filter, "gt"), not));
+    }
+
+    @Override
+    protected String createGreaterThanOrEqualExpression(final GreaterThanOrEqualFilter filter, final boolean not) {
+        return lossy(negate(comparison(filter, "ge"), not));
+    }
+
+    @Override
+    protected String createLessThanExpression(final LessThanFilter filter, final boolean not) {
+        return lossy(negate(comparison(filter, "lt"), not));
+    }
+
+    @Override
+    protected String createLessThanOrEqualExpression(final LessThanOrEqualFilter filter, final boolean not) {
+        return lossy(negate(comparison(filter, "le"), not));
+    }
+
+    @Override
+    protected String createContainsAllValuesExpression(final ContainsAllValuesFilter filter, final boolean not) {
+        // "eq" on a multi-valued attribute matches when any of the values matches
+        return lossy(negate(allEqual(filter.getAttribute()), not));
+    }
+
+    protected String createEqualsExpression(final Attribute attribute, final boolean not) {
+        if (CollectionUtil.isEmpty(attribute.getValue())) {
+            // no value: match the objects not having the attribute
+            String present = presence(attribute.getName());
+            return not ? present : negate(present, true);
+        }
+        return negate(allEqual(attribute), not);
+    }
+
+    private String allEqual(final Attribute attribute) {
+        if (CollectionUtil.isEmpty(attribute.getValue())) {
+            return null;
+        }
+
+        StringBuilder expression = new StringBuilder();
+        for (Object value : attribute.getValue()) {
+            String comparison = comparison(attribute.getName(), "eq", value);
+            if (comparison == null) {
+                return null;
+            }
+            if (expression.length() > 0) {
+                expression.append(" and ");
+            }
+            expression.append(comparison);
+        }
+        return expression.toString();
+    }
+
+    private String comparison(final AttributeFilter filter, final String operator) {
+        List<Object> values = filter.getAttribute().getValue();
+        return values == null || values.size() != 1
+                ? null
+                : comparison(filter.getName(), operator, values.get(0));
+    }
+
+    private String comparison(final String attributeName, final String operator, final Object value) {
+        String literal = toLiteral(value);
+        return literal == null || !capabilities.supports(operator)
+                ? null
+                : path(attributeName, operator + " " + literal);
+    }
+
+    private String presence(final String attributeName) {
+        return capabilities.supports("pr") ? path(attributeName, "pr") : null;
+    }
+
+    private String negate(final String expression, final boolean not) {
+        return expression == null || !not
+                ? expression
+                : capabilities.supports("not") ? "not (" + expression + ")" : null;
+    }
+
+    /**
+     * Builds the expression comparing the given connector attribute, as the attribute path in the SCIM resource
+     * it is mapped to.
+     *
+     * @param attributeName connector attribute name
+     * @param comparison operator and, when required, literal value
+     * @return SCIM filter expression, or {@code null} if the given attribute cannot be used in filters
+     */
+    protected String path(final String attributeName, final String comparison) {
+        if (Uid.NAME.equals(attributeName)) {
+            return attribute(SCIMAttributeUtils.ATTRIBUTE_ID, comparison);
+        }
+        if (Name.NAME.equals(attributeName)) {
+            return attribute(ObjectClass.GROUP.equals(objectClass)
+                    ? SCIMAttributeUtils.SCIM_GROUP_DISPLAY_NAME
+                    : SCIMAttributeUtils.USER_ATTRIBUTE_USERNAME, comparison);
+        }
+        if (OperationalAttributes.ENABLE_NAME.equals(attributeName)) {
+            return attribute(SCIMAttributeUtils.USER_ATTRIBUTE_ACTIVE, comparison);
+        }
+        if (attributeName.startsWith("__")
+                || attributeName.toLowerCase().contains(SCIMAttributeUtils.USER_ATTRIBUTE_PASSWORD.toLowerCase())) {
+
+            return null;
+        }
+
+        for (String schema : extensionSchemas) {
+            if (attributeName.length() > schema.length() + 1
+                    && attributeName.startsWith(schema)
+                    && (attributeName.charAt(schema.length()) == ':' || attributeName.charAt(schema.length()) == '.')) {
+
+                return attribute(extensionSeparator == null
+                        ? attributeName
+                        : schema + extensionSeparator + attributeName.substring(schema.length() + 1), comparison);
+            }
+        }
+
+        // typed multi-valued attributes, as emails.work.value
+        String[] split = attributeName.split("\\.");
+        if (split.length == 3) {
+            if (!capabilities.supportsAttribute(objectClass, split[0])) {
+                return null;
+            }
+            if (DEFAULT_TYPE.equals(split[1]) || !capabilities.supportsValuePathFilters()) {
+                return split[0] + "." + split[2] + " " + comparison;
+            }
+            return split[0] + "[type eq " + toLiteral(split[1]) + " and " + split[2] + " " + comparison + "]";
+        }
+
+        return attribute(attributeName, comparison);
+    }
+
+    private String attribute(final String path, final String comparison) {
+        return capabilities.supportsAttribute(objectClass, path) ? path + " " + comparison : null;
+    }
+
+    /**
+     * Renders the given value as SCIM filter literal: booleans and numbers are rendered as they are, anything else
+     * as JSON string.
+     *
+     * @param value value
+     * @return literal value, or {@code null} if the value cannot be used in filters
+     */
+    protected String toLiteral(final Object value) {
+        if (value == null || value instanceof GuardedString || value instanceof GuardedByteArray
+                || value instanceof byte[]) {
+
+            return null;
+        }
+        if (value instanceof Boolean || value instanceof Number) {
+            return value.toString();
+        }
+
+        return SCIMUtils.toFilterLiteral(value.toString());
+    }
+}
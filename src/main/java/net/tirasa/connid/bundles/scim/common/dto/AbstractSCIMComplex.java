@@ -21,14 +21,47 @@ import java.lang.reflect.Field;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
 import org.identityconnectors.framework.common.objects.Attribute;
 
 public abstract class AbstractSCIMComplex implements SCIMComplexAttribute {
 
     private static final long serialVersionUID = 4302319332020863582L;
 
+    /**
+     * Per-class plans, held apart so that reflection on the mapped classes never meets them.
+     */
+    private static final class FieldPlans {
+
+        /**
+         * Fields mapped to attributes, by complex class; computed once per class.
+         */
+        static final ClassValue<List<Field>> FIELDS = new ClassValue<List<Field>>() {
+
+            @Override
+            protected List<Field> computeValue(final Class<?> type) {
+                return SCIMUtils.getAllFieldsList(type).stream().
+                        filter(f -> !"LOG".equals(f.getName()) && !"serialVersionUID".equals(f.getName())).
+                        collect(Collectors.toUnmodifiableList());
+            }
+        };
+
+        private FieldPlans() {
+            // private constructor for static holder class
+        }
+    }
+
+    /**
+     * @param type complex class
+     * @return fields mapped to attributes by the given class; computed once per class
+     */
+    protected static List<Field> mappedFields(final Class<?> type) {
+        return FieldPlans.FIELDS.get(type);
+    }
+
     @JsonProperty
     protected String value;
 
@@ -49,7 +82,6 @@ public abstract class AbstractSCIMComplex implements SCIMComplexAttribute {
         Set<Attribute> attrs = new HashSet<>();
         for (Field field : getDeclaredFields()) {
             if (!field.isAnnotationPresent(JsonIgnore.class)) {
-                field.setAccessible(true);
                 attrs.add(SCIMAttributeUtils.doBuildAttributeFromClassField(
                         field.get(this),
                         getAttributeName(id, field, configuration),
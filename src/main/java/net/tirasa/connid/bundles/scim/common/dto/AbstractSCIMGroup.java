@@ -17,12 +17,15 @@ package net.tirasa.connid.bundles.scim.common.dto;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributesToGet;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.framework.common.objects.Attribute;
@@ -31,6 +34,44 @@ public class AbstractSCIMGroup<MT extends SCIMBaseMeta> extends AbstractSCIMBase
 
     private static final long serialVersionUID = 328618763364322821L;
 
+    /**
+     * Per-class plans, held apart so that reflection on the mapped classes never meets them.
+     */
+    private static final class FieldPlans {
+
+        /**
+         * Fields mapped to attributes, by group class; computed once per class.
+         */
+        static final ClassValue<List<Field>> FIELDS = new ClassValue<List<Field>>() {
+
+            @Override
+            protected List<Field> computeValue(final Class<?> type) {
+                return SCIMUtils.getAllFieldsList(type).stream().
+                        filter(f -> !"LOG".equals(f.getName()) && !"serialVersionUID".equals(f.getName())
+                        && !"RESOURCE_NAME".equals(f.getName()) && !"SCHEMA_URI".equals(f.getName())
+                        && !f.isAnnotationPresent(JsonIgnore.class)).
+                        collect(Collectors.toUnmodifiableList());
+            }
+        };
+
+        /**
+         * Fields holding meta information, by group class.
+         */
+        static final ClassValue<Set<Field>> META_FIELDS = new ClassValue<Set<Field>>() {
+
+            @Override
+            protected Set<Field> computeValue(final Class<?> type) {
+                return FIELDS.get(type).stream().
+                        filter(f -> f.getGenericType().toString().contains(SCIMBaseMeta.class.getName())).
+                        collect(Collectors.toUnmodifiableSet());
+            }
+        };
+
+        private FieldPlans() {
+            // private constructor for static holder class
+        }
+    }
+
     @JsonProperty
     protected String displayName;
 
@@ -62,40 +103,51 @@ public class AbstractSCIMGroup<MT extends SCIMBaseMeta> extends AbstractSCIMBase
 
     @JsonIgnore
     @Override
-    @SuppressWarnings("unchecked")
     public Set<Attribute> toAttributes(final Class<?> type, final SCIMConnectorConfiguration configuration)
             throws IllegalArgumentException, IllegalAccessException {
+
+        return toAttributes(type, configuration, null);
+    }
+
+    @JsonIgnore
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Attribute> toAttributes(
+            final Class<?> type,
+            final SCIMConnectorConfiguration configuration,
+            final SCIMAttributesToGet attributesToGet)
+            throws IllegalArgumentException, IllegalAccessException {
+
         Set<Attribute> attrs = new HashSet<>();
 
-        SCIMUtils.getAllFieldsList(type).stream()
-                .filter(f -> !"LOG".equals(f.getName()) && !"serialVersionUID".equals(f.getName())
-                && !"RESOURCE_NAME".equals(f.getName()) && !"SCHEMA_URI".equals(f.getName())).forEach(field -> {
+        for (Field field : FieldPlans.FIELDS.get(type)) {
+            if (attributesToGet != null && !attributesToGet.requiresField(field.getName())) {
+                continue;
+            }
 
             try {
-                field.setAccessible(true);
-                // manage enterprise user
-                if (!field.isAnnotationPresent(JsonIgnore.class) && !SCIMUtils.isEmptyObject(field.get(this))) {
-                    Object objInstance = field.get(this);
-
-                    if (field.getGenericType().toString().contains(SCIMBaseMeta.class.getName())) {
-                        if (field.getType().equals(List.class)) {
-                            List<MT> list = (List<MT>) objInstance;
-                            for (MT scimMeta : list) {
-                                SCIMAttributeUtils.addAttribute(scimMeta.toAttributes(), attrs,
-                                        field.getType());
-                            }
-                        } else {
-                            SCIMAttributeUtils.addAttribute(SCIMBaseMeta.class.cast(objInstance).toAttributes(),
-                                    attrs, field.getType());
+                Object objInstance = field.get(this);
+                if (SCIMUtils.isEmptyObject(objInstance)) {
+                    continue;
+                }
+
+                if (FieldPlans.META_FIELDS.get(type).contains(field)) {
+                    if (field.getType().equals(List.class)) {
+                        List<MT> list = (List<MT>) objInstance;
+                        for (MT scimMeta : list) {
+                            SCIMAttributeUtils.addAttribute(scimMeta.toAttributes(), attrs, field.getType());
                         }
                     } else {
-                        attrs.add(SCIMAttributeUtils.buildAttributeFromClassField(field, this).build());
+                        SCIMAttributeUtils.addAttribute(SCIMBaseMeta.class.cast(objInstance).toAttributes(),
+                                attrs, field.getType());
                     }
+                } else {
+                    attrs.add(SCIMAttributeUtils.buildAttributeFromClassField(field, this).build());
                 }
             } catch (IllegalAccessException e) {
                 LOG.error(e, "Unable to build user attributes by reflection");
             }
-        });
+        }
 
         return attrs;
     }
@@ -20,12 +20,15 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSetter;
 import com.fasterxml.jackson.annotation.Nulls;
 import java.io.Serializable;
+import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -36,6 +39,7 @@ import net.tirasa.connid.bundles.scim.common.types.IMCanonicalType;
 import net.tirasa.connid.bundles.scim.common.types.PhoneNumberCanonicalType;
 import net.tirasa.connid.bundles.scim.common.types.PhotoCanonicalType;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributesToGet;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
 import net.tirasa.connid.bundles.scim.v11.dto.SCIMUserName;
 import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2EnterpriseUser;
@@ -51,6 +55,130 @@ public abstract class AbstractSCIMUser<SAT extends SCIMBaseAttribute<SAT>, CT ex
 
     private static final long serialVersionUID = 9147517308573800805L;
 
+    /**
+     * How a field is converted to attributes, as inferred from its declaration.
+     */
+    private enum FieldKind {
+        ENTERPRISE_USER,
+        PHONE_NUMBERS,
+        IMS,
+        EMAILS,
+        PHOTOS,
+        NAME,
+        ADDRESSES,
+        DEFAULT_COMPLEX,
+        META,
+        GROUPS,
+        ENTITLEMENTS,
+        ROLES,
+        X509_CERTIFICATES,
+        OTHER_LIST,
+        SIMPLE
+
+    }
+
+    private static final class FieldMapping {
+
+        private final Field field;
+
+        private final FieldKind kind;
+
+        private final boolean list;
+
+        FieldMapping(final Field field, final FieldKind kind) {
+            this.field = field;
+            this.kind = kind;
+            this.list = field.getType().equals(List.class);
+        }
+    }
+
+    /**
+     * Per-class plans, held apart so that reflection on the mapped classes never meets them.
+     */
+    private static final class FieldPlans {
+
+        /**
+         * Field mappings by user class, inferred once from field declarations, so that conversion to attributes
+         * does not need to inspect fields every time.
+         */
+        static final ClassValue<List<FieldMapping>> FIELD_MAPPINGS = new ClassValue<List<FieldMapping>>() {
+
+            @Override
+            protected List<FieldMapping> computeValue(final Class<?> type) {
+                List<FieldMapping> mappings = new ArrayList<>();
+                SCIMUtils.getAllFieldsList(type).stream().
+                        filter(f -> !"LOG".equals(f.getName()) && !"serialVersionUID".equals(f.getName())
+                        && !"RESOURCE_NAME".equals(f.getName()) && !"SCHEMA_URI".equals(f.getName())).
+                        forEach(field -> Optional.ofNullable(kindOf(field)).
+                        ifPresent(kind -> mappings.add(new FieldMapping(field, kind))));
+                return Collections.unmodifiableList(mappings);
+            }
+        };
+
+        private FieldPlans() {
+            // private constructor for static holder class
+        }
+    }
+
+    private static FieldKind kindOf(final Field field) {
+        // manage enterprise user
+        if (SCIMEnterpriseUser.class.isAssignableFrom(field.getType())) {
+            return FieldKind.ENTERPRISE_USER;
+        }
+        if (field.isAnnotationPresent(JsonIgnore.class)) {
+            return null;
+        }
+
+        String genericType = field.getGenericType().toString();
+        if (genericType.contains(SCIMGenericComplex.class.getName())) {
+            if (genericType.contains(PhoneNumberCanonicalType.class.getName())) {
+                return FieldKind.PHONE_NUMBERS;
+            }
+            if (genericType.contains(IMCanonicalType.class.getName())) {
+                return FieldKind.IMS;
+            }
+            if (genericType.contains(EmailCanonicalType.class.getName())) {
+                return FieldKind.EMAILS;
+            }
+            if (genericType.contains(PhotoCanonicalType.class.getName())) {
+                return FieldKind.PHOTOS;
+            }
+            return null;
+        }
+        if (genericType.contains(SCIMUserName.class.getName())) {
+            return FieldKind.NAME;
+        }
+        if (genericType.contains(SCIMUserAddress.class.getName())) {
+            return FieldKind.ADDRESSES;
+        }
+        if (genericType.contains(SCIMDefaultComplex.class.getName())) {
+            return FieldKind.DEFAULT_COMPLEX;
+        }
+        if (genericType.contains(SCIMBaseMeta.class.getName())) {
+            return FieldKind.META;
+        }
+        if (SCIMAttributeUtils.SCIM_USER_GROUPS.equals(field.getName())) {
+            return FieldKind.GROUPS;
+        }
+        if (SCIMAttributeUtils.SCIM_USER_ENTITLEMENTS.equals(field.getName())) {
+            return FieldKind.ENTITLEMENTS;
+        }
+        if (field.getType().equals(List.class) && field.getGenericType() instanceof ParameterizedType) {
+            // properly manage lists with parametrized type
+            switch (field.getName()) {
+                case SCIMAttributeUtils.SCIM_USER_ROLES:
+                    return FieldKind.ROLES;
+
+                case SCIMAttributeUtils.SCIM_USER_X509CERTIFICATES:
+                    return FieldKind.X509_CERTIFICATES;
+
+                default:
+                    return FieldKind.OTHER_LIST;
+            }
+        }
+        return FieldKind.SIMPLE;
+    }
+
     protected Boolean active = true;
 
     protected List<SCIMUserAddress> addresses = new ArrayList<>();
@@ -910,130 +1038,87 @@ public abstract class AbstractSCIMUser<SAT extends SCIMBaseAttribute<SAT>, CT ex
 
     @JsonIgnore
     @Override
-    @SuppressWarnings("unchecked")
     public Set<Attribute> toAttributes(final Class<?> type, final SCIMConnectorConfiguration conf)
             throws IllegalArgumentException, IllegalAccessException {
 
-        Set<Attribute> attrs = new HashSet<>();
+        return toAttributes(type, conf, null);
+    }
 
-        SCIMUtils.getAllFieldsList(type).stream().
-                filter(f -> !"LOG".equals(f.getName()) && !"serialVersionUID".equals(f.getName())
-                && !"RESOURCE_NAME".equals(f.getName()) && !"SCHEMA_URI".equals(f.getName())).forEach(field -> {
+    @JsonIgnore
+    @Override
+    @SuppressWarnings("unchecked")
+    public Set<Attribute> toAttributes(
+            final Class<?> type,
+            final SCIMConnectorConfiguration conf,
+            final SCIMAttributesToGet attributesToGet)
+            throws IllegalArgumentException, IllegalAccessException {
+
+        Set<Attribute> attrs = new HashSet<>();
 
+        for (FieldMapping mapping : FieldPlans.FIELD_MAPPINGS.get(type)) {
             try {
-                field.setAccessible(true);
-                // manage enterprise user
-                if (SCIMEnterpriseUser.class.isAssignableFrom(field.getType()) && getEnterpriseUser() != null) {
-                    field.setAccessible(true);
-                    addAttribute(getEnterpriseUser().toAttributes(
-                            SCIMv2EnterpriseUser.SCHEMA_URI,
-                            conf.getUseColonOnExtensionAttributes()),
-                            attrs,
-                            field.getType());
-                } else if (!field.isAnnotationPresent(JsonIgnore.class) && !SCIMUtils.isEmptyObject(field.get(this))) {
-                    Object objInstance = field.get(this);
-
-                    if (field.getGenericType().toString().contains(SCIMGenericComplex.class.getName())) {
-                        if (field.getGenericType().toString().contains(PhoneNumberCanonicalType.class.getName())) {
-                            if (field.getType().equals(List.class)) {
-                                List<SCIMGenericComplex<PhoneNumberCanonicalType>> list =
-                                        (List<SCIMGenericComplex<PhoneNumberCanonicalType>>) objInstance;
-                                for (SCIMGenericComplex<PhoneNumberCanonicalType> complex : list) {
-                                    addAttribute(complex.toAttributes(
-                                            SCIMAttributeUtils.SCIM_USER_PHONE_NUMBERS, conf),
-                                            attrs, field.getType());
-                                }
-                            } else {
-                                SCIMGenericComplex<PhoneNumberCanonicalType> complex =
-                                        (SCIMGenericComplex<PhoneNumberCanonicalType>) objInstance;
-                                addAttribute(
-                                        complex.toAttributes(SCIMAttributeUtils.SCIM_USER_PHONE_NUMBERS,
-                                                conf),
-                                        attrs, field.getType());
-                            }
-                        } else if (field.getGenericType().toString().contains(IMCanonicalType.class.getName())) {
-                            if (field.getType().equals(List.class)) {
-                                List<SCIMGenericComplex<IMCanonicalType>> list =
-                                        (List<SCIMGenericComplex<IMCanonicalType>>) objInstance;
-                                for (SCIMGenericComplex<IMCanonicalType> complex : list) {
-                                    addAttribute(complex.toAttributes(SCIMAttributeUtils.SCIM_USER_IMS,
-                                            conf),
-                                            attrs, field.getType());
-                                }
-                            } else {
-                                SCIMGenericComplex<IMCanonicalType> complex =
-                                        (SCIMGenericComplex<IMCanonicalType>) objInstance;
-                                addAttribute(complex.toAttributes(SCIMAttributeUtils.SCIM_USER_IMS,
-                                        conf),
-                                        attrs, field.getType());
-                            }
-                        } else if (field.getGenericType().toString().contains(EmailCanonicalType.class.getName())) {
-                            if (field.getType().equals(List.class)) {
-                                List<SCIMGenericComplex<EmailCanonicalType>> list =
-                                        (List<SCIMGenericComplex<EmailCanonicalType>>) objInstance;
-                                for (SCIMGenericComplex<EmailCanonicalType> complex : list) {
-                                    addAttribute(
-                                            complex.toAttributes(SCIMAttributeUtils.SCIM_USER_EMAILS,
-                                                    conf),
-                                            attrs, field.getType());
-                                }
-                            } else {
-                                SCIMGenericComplex<EmailCanonicalType> complex =
-                                        (SCIMGenericComplex<EmailCanonicalType>) objInstance;
-                                addAttribute(complex.toAttributes(SCIMAttributeUtils.SCIM_USER_EMAILS,
-                                        conf),
-                                        attrs, field.getType());
-                            }
-                        } else if (field.getGenericType().toString().contains(PhotoCanonicalType.class.getName())) {
-                            if (field.getType().equals(List.class)) {
-                                List<SCIMGenericComplex<PhotoCanonicalType>> list =
-                                        (List<SCIMGenericComplex<PhotoCanonicalType>>) objInstance;
-                                for (SCIMGenericComplex<PhotoCanonicalType> complex : list) {
-                                    addAttribute(
-                                            complex.toAttributes(SCIMAttributeUtils.SCIM_USER_PHOTOS,
-                                                    conf),
-                                            attrs, field.getType());
-                                }
-                            } else {
-                                SCIMGenericComplex<PhotoCanonicalType> complex =
-                                        (SCIMGenericComplex<PhotoCanonicalType>) objInstance;
-                                addAttribute(complex.toAttributes(SCIMAttributeUtils.SCIM_USER_PHOTOS,
-                                        conf),
-                                        attrs, field.getType());
-                            }
-                        }
-                    } else if (field.getGenericType().toString().contains(SCIMUserName.class.getName())) {
-                        if (field.getType().equals(List.class)) {
-                            List<SCIMUserName> list = (List<SCIMUserName>) objInstance;
-                            for (SCIMUserName scimUserName : list) {
-                                addAttribute(scimUserName.toAttributes(), attrs, field.getType());
-                            }
-                        } else {
-                            addAttribute(SCIMUserName.class.cast(objInstance).toAttributes(), attrs, field.getType());
+                Field field = mapping.field;
+                if (mapping.kind == FieldKind.ENTERPRISE_USER) {
+                    if (getEnterpriseUser() != null && (attributesToGet == null
+                            || attributesToGet.requiresExtension(SCIMv2EnterpriseUser.SCHEMA_URI))) {
+
+                        addAttribute(getEnterpriseUser().toAttributes(
+                                SCIMv2EnterpriseUser.SCHEMA_URI,
+                                conf.getUseColonOnExtensionAttributes()),
+                                attrs,
+                                field.getType());
+                    }
+                    continue;
+                }
+
+                if (attributesToGet != null && mapping.kind != FieldKind.DEFAULT_COMPLEX
+                        && !attributesToGet.requiresField(field.getName())) {
+
+                    continue;
+                }
+
+                Object objInstance = field.get(this);
+                if (SCIMUtils.isEmptyObject(objInstance)) {
+                    continue;
+                }
+
+                switch (mapping.kind) {
+                    case PHONE_NUMBERS:
+                        addComplexAttributes(
+                                objInstance, mapping, SCIMAttributeUtils.SCIM_USER_PHONE_NUMBERS, conf, attrs);
+                        break;
+
+                    case IMS:
+                        addComplexAttributes(objInstance, mapping, SCIMAttributeUtils.SCIM_USER_IMS, conf, attrs);
+                        break;
+
+                    case EMAILS:
+                        addComplexAttributes(objInstance, mapping, SCIMAttributeUtils.SCIM_USER_EMAILS, conf, attrs);
+                        break;
+
+                    case PHOTOS:
+                        addComplexAttributes(objInstance, mapping, SCIMAttributeUtils.SCIM_USER_PHOTOS, conf, attrs);
+                        break;
+
+                    case NAME:
+                        for (Object scimUserName : asList(objInstance, mapping)) {
+                            addAttribute(SCIMUserName.class.cast(scimUserName).toAttributes(), attrs, field.getType());
                         }
-                    } else if (field.getGenericType().toString().contains(SCIMUserAddress.class.getName())) {
-                        if (field.getType().equals(List.class)) {
-                            List<SCIMUserAddress> list = (List<SCIMUserAddress>) objInstance;
-                            for (SCIMUserAddress scimUserAddress : list) {
-                                addAttribute(scimUserAddress.toAttributes(conf), attrs, field.getType());
-                            }
-                        } else {
-                            addAttribute(
-                                    SCIMUserAddress.class.cast(objInstance).toAttributes(conf),
+                        break;
+
+                    case ADDRESSES:
+                        for (Object scimUserAddress : asList(objInstance, mapping)) {
+                            addAttribute(SCIMUserAddress.class.cast(scimUserAddress).toAttributes(conf),
                                     attrs, field.getType());
                         }
-                    } else if (field.getGenericType().toString().contains(SCIMDefaultComplex.class.getName())) {
-                        if (field.getType().equals(List.class)) {
-                            List<CT> list = (List<CT>) objInstance;
-                            for (CT ct : list) {
-                                String localId = null;
-                                if (StringUtil.isNotBlank(ct.getValue())) {
-                                    if (roles.contains(ct)) {
-                                        localId = SCIMAttributeUtils.SCIM_USER_ROLES;
-                                    }
-                                }
-                                if (localId != null) {
-                                    addAttribute(ct.toAttributes(localId, conf), attrs, field.getType());
+                        break;
+
+                    case DEFAULT_COMPLEX:
+                        if (mapping.list) {
+                            for (CT ct : (List<CT>) objInstance) {
+                                if (StringUtil.isNotBlank(ct.getValue()) && roles.contains(ct)) {
+                                    addAttribute(ct.toAttributes(SCIMAttributeUtils.SCIM_USER_ROLES, conf),
+                                            attrs, field.getType());
                                 }
                             }
                         } else {
@@ -1052,70 +1137,73 @@ public abstract class AbstractSCIMUser<SAT extends SCIMBaseAttribute<SAT>, CT ex
                                 addAttribute(ct.toAttributes(localId, conf), attrs, field.getType());
                             }
                         }
-                    } else if (field.getGenericType().toString().contains(SCIMBaseMeta.class.getName())) {
-                        if (field.getType().equals(List.class)) {
-                            List<MT> list = (List<MT>) objInstance;
-                            for (MT scimMeta : list) {
-                                addAttribute(scimMeta.toAttributes(), attrs, field.getType());
-                            }
-                        } else {
-                            addAttribute(SCIMBaseMeta.class.cast(objInstance).toAttributes(), attrs, field.getType());
+                        break;
+
+                    case META:
+                        for (Object scimMeta : asList(objInstance, mapping)) {
+                            addAttribute(SCIMBaseMeta.class.cast(scimMeta).toAttributes(), attrs, field.getType());
                         }
-                    } else if (SCIMAttributeUtils.SCIM_USER_GROUPS.equals(field.getName())) {
+                        break;
+
+                    case GROUPS:
                         // manage groups
                         List<BaseResourceReference> groupRefs = (List<BaseResourceReference>) objInstance;
                         attrs.add(AttributeBuilder.build(SCIMAttributeUtils.SCIM_USER_GROUPS,
                                 groupRefs.stream().map(g -> g.getValue()).collect(Collectors.toList())));
-                    } else if (SCIMAttributeUtils.SCIM_USER_ENTITLEMENTS.equals(field.getName())) {
+                        break;
+
+                    case ENTITLEMENTS:
                         // manage entitlements
                         entitlementsToAttribute((List<ET>) objInstance, attrs);
-                    } else if (field.getType().equals(List.class)
-                            && field.getGenericType() instanceof ParameterizedType) {
-                        // properly manage lists with parametrized type
-                        List<CT> complexTypeList = (List<CT>) objInstance;
-                        switch (field.getName()) {
-                            case SCIMAttributeUtils.SCIM_USER_ROLES:
-                                complexTypeList.forEach(ct -> {
-                                    try {
-                                        addAttribute(
-                                                ct.toAttributes(SCIMAttributeUtils.SCIM_USER_ROLES, conf),
-                                                attrs, field.getType());
-                                    } catch (IllegalAccessException e) {
-                                        LOG.error("Unable to read by reflection [0]",
-                                                SCIMAttributeUtils.SCIM_USER_ROLES);
-                                    }
-                                });
-                                break;
-
-                            case SCIMAttributeUtils.SCIM_USER_X509CERTIFICATES:
-                                complexTypeList.forEach(ct -> {
-                                    try {
-                                        addAttribute(
-                                                ct.toAttributes(SCIMAttributeUtils.SCIM_USER_X509CERTIFICATES, conf),
-                                                attrs, field.getType());
-                                    } catch (IllegalAccessException e) {
-                                        LOG.error("Unable to read by reflection [0]",
-                                                SCIMAttributeUtils.SCIM_USER_X509CERTIFICATES);
-                                    }
-                                });
-                                break;
-
-                            default:
-                                LOG.warn("Unable to match complex type of field [0] with any known type",
-                                        field.getName());
+                        break;
+
+                    case ROLES:
+                        for (CT ct : (List<CT>) objInstance) {
+                            addAttribute(
+                                    ct.toAttributes(SCIMAttributeUtils.SCIM_USER_ROLES, conf), attrs, field.getType());
                         }
-                    } else {
-                        attrs.add(SCIMAttributeUtils.buildAttributeFromClassField(field, this).build());
-                    }
+                        break;
+
+                    case X509_CERTIFICATES:
+                        for (CT ct : (List<CT>) objInstance) {
+                            addAttribute(ct.toAttributes(SCIMAttributeUtils.SCIM_USER_X509CERTIFICATES, conf),
+                                    attrs, field.getType());
+                        }
+                        break;
+
+                    case OTHER_LIST:
+                        LOG.warn("Unable to match complex type of field [0] with any known type", field.getName());
+                        break;
+
+                    case SIMPLE:
+                    default:
+                        attrs.add(SCIMAttributeUtils.doBuildAttributeFromClassField(
+                                objInstance, field.getName(), field.getType()).build());
                 }
             } catch (IllegalAccessException e) {
                 LOG.error(e, "Unable to build user attributes by reflection");
             }
-        });
+        }
 
         return attrs;
     }
 
+    private static List<?> asList(final Object objInstance, final FieldMapping mapping) {
+        return mapping.list ? (List<?>) objInstance : Collections.singletonList(objInstance);
+    }
+
+    private void addComplexAttributes(
+            final Object objInstance,
+            final FieldMapping mapping,
+            final String id,
+            final SCIMConnectorConfiguration conf,
+            final Set<Attribute> attrs) throws IllegalAccessException {
+
+        for (Object complex : asList(objInstance, mapping)) {
+            addAttribute(SCIMGenericComplex.class.cast(complex).toAttributes(id, conf), attrs, mapping.field.getType());
+        }
+    }
+
     protected abstract void entitlementsToAttribute(List<ET> entitlementRefs, Set<Attribute> attrs);
 
     @Override
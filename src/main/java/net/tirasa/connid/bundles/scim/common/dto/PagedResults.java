@@ -21,7 +21,7 @@ import com.fasterxml.jackson.annotation.Nulls;
 import java.util.ArrayList;
 import java.util.List;
 
-public class PagedResults<T extends SCIMBaseResource<? extends SCIMBaseMeta>> {
+public class PagedResults<T> {
 
     @JsonProperty
     private int totalResults;
@@ -22,6 +22,7 @@ import java.lang.reflect.Field;
 import java.util.HashSet;
 import java.util.Set;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
 import org.identityconnectors.framework.common.objects.Attribute;
 
 public class SCIMBaseMeta implements Serializable {
@@ -74,10 +75,8 @@ public class SCIMBaseMeta implements Serializable {
 
     public Set<Attribute> toAttributes() throws IllegalArgumentException, IllegalAccessException {
         Set<Attribute> attrs = new HashSet<>();
-        Field[] fields = this.getClass().getDeclaredFields();
-        for (Field field : fields) {
+        for (Field field : SCIMUtils.getDeclaredFieldsList(getClass())) {
             if (!field.isAnnotationPresent(JsonIgnore.class)) {
-                field.setAccessible(true);
                 attrs.add(SCIMAttributeUtils.doBuildAttributeFromClassField(
                         field.get(this),
                         SCIMAttributeUtils.SCIM_USER_META.concat(".")
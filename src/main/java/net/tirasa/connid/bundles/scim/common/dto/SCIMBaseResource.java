@@ -18,6 +18,7 @@ package net.tirasa.connid.bundles.scim.common.dto;
 import java.io.Serializable;
 import java.util.Set;
 import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributesToGet;
 import org.identityconnectors.framework.common.objects.Attribute;
 
 public interface SCIMBaseResource<MT extends SCIMBaseMeta> extends Serializable {
@@ -37,6 +38,24 @@ public interface SCIMBaseResource<MT extends SCIMBaseMeta> extends Serializable
     Set<Attribute> toAttributes(Class<?> type, SCIMConnectorConfiguration configuration)
             throws IllegalArgumentException, IllegalAccessException;
 
+    /**
+     * Builds the attributes for this resource, only converting the fields needed by the given attributes to get;
+     * attributes built from the same field but not requested might still be returned.
+     *
+     * @param type resource class
+     * @param configuration configuration
+     * @param attributesToGet attributes to get
+     * @return attributes
+     * @throws IllegalArgumentException if any field cannot be converted
+     * @throws IllegalAccessException if any field cannot be read
+     */
+    default Set<Attribute> toAttributes(
+            Class<?> type, SCIMConnectorConfiguration configuration, SCIMAttributesToGet attributesToGet)
+            throws IllegalArgumentException, IllegalAccessException {
+
+        return toAttributes(type, configuration);
+    }
+
     void fromAttributes(Set<Attribute> attributes, boolean replaceMembersOnUpdate);
 
     default void fromAttributes(Set<Attribute> attributes) {
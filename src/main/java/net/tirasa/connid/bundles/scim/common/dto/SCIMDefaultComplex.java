@@ -17,9 +17,7 @@ package net.tirasa.connid.bundles.scim.common.dto;
 
 import java.lang.reflect.Field;
 import java.util.List;
-import java.util.stream.Collectors;
 import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
-import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
 
 public class SCIMDefaultComplex extends AbstractSCIMComplex {
 
@@ -27,9 +25,7 @@ public class SCIMDefaultComplex extends AbstractSCIMComplex {
 
     @Override
     protected List<Field> getDeclaredFields() {
-        return SCIMUtils.getAllFieldsList(getClass()).stream().
-                filter(f -> !"LOG".equals(f.getName()) && !"serialVersionUID".equals(f.getName())).
-                collect(Collectors.toList());
+        return mappedFields(getClass());
     }
 
     @Override
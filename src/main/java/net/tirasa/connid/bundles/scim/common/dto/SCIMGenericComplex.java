@@ -20,9 +20,7 @@ import com.fasterxml.jackson.annotation.JsonProperty.Access;
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.util.List;
-import java.util.stream.Collectors;
 import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
-import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
 import org.identityconnectors.common.StringUtil;
 
 public class SCIMGenericComplex<T extends Serializable> extends AbstractSCIMComplex {
@@ -109,9 +107,7 @@ public class SCIMGenericComplex<T extends Serializable> extends AbstractSCIMComp
 
     @Override
     protected List<Field> getDeclaredFields() {
-        return SCIMUtils.getAllFieldsList(this.getClass()).stream().
-                filter(f -> !"LOG".equals(f.getName()) && !"serialVersionUID".equals(f.getName())).
-                collect(Collectors.toList());
+        return mappedFields(getClass());
     }
 
     @Override
@@ -0,0 +1,168 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.io.Serializable;
+
+/**
+ * Features supported by the SCIM server, as returned by {@code /ServiceProviderConfig} (SCIM 2.0) or
+ * {@code /ServiceProviderConfigs} (SCIM 1.1).
+ */
+public class SCIMServiceProviderConfig implements Serializable {
+
+    private static final long serialVersionUID = 2750384213475230112L;
+
+    public static class Supported implements Serializable {
+
+        private static final long serialVersionUID = -4618370153711236097L;
+
+        @JsonProperty
+        private boolean supported;
+
+        public boolean isSupported() {
+            return supported;
+        }
+
+        public void setSupported(final boolean supported) {
+            this.supported = supported;
+        }
+    }
+
+    public static class Bulk extends Supported {
+
+        private static final long serialVersionUID = 6307294834367046785L;
+
+        @JsonProperty
+        private int maxOperations;
+
+        @JsonProperty
+        private long maxPayloadSize;
+
+        public int getMaxOperations() {
+            return maxOperations;
+        }
+
+        public void setMaxOperations(final int maxOperations) {
+            this.maxOperations = maxOperations;
+        }
+
+        public long getMaxPayloadSize() {
+            return maxPayloadSize;
+        }
+
+        public void setMaxPayloadSize(final long maxPayloadSize) {
+            this.maxPayloadSize = maxPayloadSize;
+        }
+    }
+
+    public static class Filter extends Supported {
+
+        private static final long serialVersionUID = 4017813460386296457L;
+
+        @JsonProperty
+        private int maxResults;
+
+        public int getMaxResults() {
+            return maxResults;
+        }
+
+        public void setMaxResults(final int maxResults) {
+            this.maxResults = maxResults;
+        }
+    }
+
+    @JsonProperty
+    private Supported patch = new Supported();
+
+    @JsonProperty
+    private Bulk bulk = new Bulk();
+
+    @JsonProperty
+    private Filter filter = new Filter();
+
+    @JsonProperty
+    private Supported changePassword = new Supported();
+
+    @JsonProperty
+    private Supported sort = new Supported();
+
+    @JsonProperty
+    private Supported etag = new Supported();
+
+    public Supported getPatch() {
+        return patch;
+    }
+
+    public void setPatch(final Supported patch) {
+        this.patch = patch;
+    }
+
+    public Bulk getBulk() {
+        return bulk;
+    }
+
+    public void setBulk(final Bulk bulk) {
+        this.bulk = bulk;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    public void setFilter(final Filter filter) {
+        this.filter = filter;
+    }
+
+    public Supported getChangePassword() {
+        return changePassword;
+    }
+
+    public void setChangePassword(final Supported changePassword) {
+        this.changePassword = changePassword;
+    }
+
+    public Supported getSort() {
+        return sort;
+    }
+
+    public void setSort(final Supported sort) {
+        this.sort = sort;
+    }
+
+    public Supported getEtag() {
+        return etag;
+    }
+
+    public void setEtag(final Supported etag) {
+        this.etag = etag;
+    }
+
+    @Override
+    public String toString() {
+        return "SCIMServiceProviderConfig{"
+                + "patch=" + patch.isSupported()
+                + ", bulk=" + bulk.isSupported()
+                + ", bulk.maxOperations=" + bulk.getMaxOperations()
+                + ", bulk.maxPayloadSize=" + bulk.getMaxPayloadSize()
+                + ", filter=" + filter.isSupported()
+                + ", filter.maxResults=" + filter.getMaxResults()
+                + ", changePassword=" + changePassword.isSupported()
+                + ", sort=" + sort.isSupported()
+                + ", etag=" + etag.isSupported()
+                + '}';
+    }
+}
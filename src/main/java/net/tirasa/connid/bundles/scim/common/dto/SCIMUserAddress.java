@@ -24,6 +24,7 @@ import java.util.Set;
 import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
 import net.tirasa.connid.bundles.scim.common.types.AddressCanonicalType;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
 import org.identityconnectors.common.StringUtil;
 import org.identityconnectors.framework.common.objects.Attribute;
 
@@ -131,10 +132,8 @@ public class SCIMUserAddress {
     public Set<Attribute> toAttributes(final SCIMConnectorConfiguration configuration)
             throws IllegalArgumentException, IllegalAccessException {
         Set<Attribute> attrs = new HashSet<>();
-        Field[] fields = this.getClass().getDeclaredFields();
-        for (Field field : fields) {
+        for (Field field : SCIMUtils.getDeclaredFieldsList(getClass())) {
             if (!field.isAnnotationPresent(JsonIgnore.class)) {
-                field.setAccessible(true);
                 attrs.add(SCIMAttributeUtils.doBuildAttributeFromClassField(
                         field.get(this),
                         SCIMAttributeUtils.SCIM_USER_ADDRESSES.concat(".")
@@ -15,25 +15,47 @@
  */
 package net.tirasa.connid.bundles.scim.common.service;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import javax.ws.rs.core.HttpHeaders;
-import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import net.tirasa.connid.bundles.scim.common.SCIMFilterCapabilities;
+import net.tirasa.connid.bundles.scim.common.dto.BaseResourceReference;
 import net.tirasa.connid.bundles.scim.common.dto.PagedResults;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMBaseAttribute;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMBaseMeta;
@@ -41,21 +63,22 @@ import net.tirasa.connid.bundles.scim.common.dto.SCIMBasePatch;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMBaseResource;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMEnterpriseUser;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMGroup;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMServiceProviderConfig;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMUser;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeProjection;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributesToGet;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMCustomAttributes;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
-import net.tirasa.connid.bundles.scim.v11.dto.SCIMv11Attribute;
 import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2Attribute;
 import net.tirasa.connid.bundles.scim.v2.dto.Type;
-import org.apache.cxf.configuration.security.ProxyAuthorizationPolicy;
 import org.apache.cxf.jaxrs.client.WebClient;
-import org.apache.cxf.transport.http.HTTPConduit;
-import org.apache.cxf.transports.http.configuration.HTTPClientPolicy;
-import org.apache.cxf.transports.http.configuration.ProxyServerType;
 import org.identityconnectors.common.StringUtil;
 import org.identityconnectors.common.logging.Log;
-import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
 import org.identityconnectors.framework.common.objects.Attribute;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ObjectClass;
 
 public abstract class AbstractSCIMService<UT extends SCIMUser<
         ? extends SCIMBaseMeta, ? extends SCIMEnterpriseUser<?>>, 
@@ -66,6 +89,28 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
 
     protected static final Log LOG = Log.getLog(AbstractSCIMService.class);
 
+    /**
+     * Reads one element of a list response.
+     *
+     * @param <R> element type
+     */
+    @FunctionalInterface
+    protected interface ResourceReader<R> {
+
+        R read(JsonParser parser) throws IOException;
+    }
+
+    /**
+     * Reads the response of an asynchronous request.
+     *
+     * @param <R> result type
+     */
+    @FunctionalInterface
+    protected interface ResponseReader<R> {
+
+        R read(SCIMResponse response) throws IOException;
+    }
+
     protected final SCIMConnectorConfiguration config;
 
     public static final String RESPONSE_ERRORS = "Errors";
@@ -74,96 +119,165 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
 
     public static final int MAX_RETRIES = 3;
 
+    public static final String BULK_REQUEST_SCHEMA = "urn:ietf:params:scim:api:messages:2.0:BulkRequest";
+
+    public static final String SEARCH_REQUEST_SCHEMA = "urn:ietf:params:scim:api:messages:2.0:SearchRequest";
+
+    /**
+     * Group attributes needed to build group references.
+     */
+    protected static final SCIMAttributeProjection GROUP_REFERENCE_PROJECTION = SCIMAttributeProjection.attributes(
+            SCIMAttributeUtils.ATTRIBUTE_ID, SCIMAttributeUtils.SCIM_GROUP_DISPLAY_NAME);
+
+    protected final SCIMTransport transport;
+
+    protected final SCIMTokenManager tokenManager;
+
+    protected volatile SCIMServiceSettings settings;
+
+    protected final SCIMResourceCache<BaseResourceReference> groupReferences;
+
+    private final AtomicBoolean groupReferencesWarm = new AtomicBoolean(false);
+
+    private final AtomicBoolean searchWithPostFailed = new AtomicBoolean(false);
+
+    /**
+     * Statuses telling that searches via POST are not supported, see RFC 7644, section 3.4.3; not 400, also returned
+     * for invalid searches, e.g. with {@code invalidFilter} or {@code tooMany} as {@code scimType}.
+     */
+    private static final Set<Integer> SEARCH_WITH_POST_UNSUPPORTED = Set.of(404, 405, 501);
+
+    /**
+     * Error types of 400 responses telling that a search filtered by id cannot be run, see RFC 7644, section 3.12.
+     */
+    private static final Set<String> SEARCH_BY_IDS_REJECTED = Set.of("invalidFilter", "tooMany");
+
+    /**
+     * Object class of the entitlements, only used to tell the SCIM server filtering capabilities on them.
+     */
+    protected static final ObjectClass ENTITLEMENT = new ObjectClass("Entitlement");
+
+    protected final SCIMResourceCache<ERT> entitlements;
+
+    private ExecutorService executor;
+
+    private ExecutorService fanOutExecutor;
+
+    private boolean disposed = false;
+
     public AbstractSCIMService(final SCIMConnectorConfiguration config) {
         this.config = config;
+        this.transport = SCIMTransport.forConfiguration(config, checkBearerToken());
+        this.tokenManager = checkBearerToken() ? SCIMTokenManager.forConfiguration(config) : null;
+        this.settings = SCIMServiceSettings.of(config);
+        this.groupReferences = new SCIMResourceCache<>(
+                config.getGroupReferenceCacheSize(), config.getGroupReferenceCacheTTL());
+        this.entitlements = new SCIMResourceCache<>(config.getEntitlementCacheSize(), config.getEntitlementCacheTTL());
     }
 
     protected WebClient getWebclient(final String path, final Map<String, String> params) {
-        WebClient webClient;
-        if (checkBearerToken()) {
-            webClient = WebClient.create(config.getBaseAddress()).
-                    header(HttpHeaders.AUTHORIZATION, "Bearer " + getBearerToken(false));
-        } else {
-            webClient = WebClient.create(
-                    config.getBaseAddress(),
-                    config.getUsername(),
-                    config.getPassword() == null ? null : SecurityUtil.decrypt(config.getPassword()),
-                    null);
-        }
-
-        if (StringUtil.isNotBlank(config.getProxyServerHost())) {
-            HTTPConduit conduit = WebClient.getConfig(webClient).getHttpConduit();
-
-            HTTPClientPolicy policy = new HTTPClientPolicy();
-            policy.setProxyServer(config.getProxyServerHost());
-            policy.setProxyServerPort(config.getProxyServerPort());
-            policy.setProxyServerType(ProxyServerType.valueOf(config.getProxyServerType().toUpperCase()));
-            conduit.setClient(policy);
-
-            if (StringUtil.isNotBlank(config.getProxyServerUser())
-                    && StringUtil.isNotBlank(config.getProxyServerPassword())) {
-                ProxyAuthorizationPolicy authorizationPolicy = new ProxyAuthorizationPolicy();
-                authorizationPolicy.setAuthorizationType("Basic");
-                authorizationPolicy.setUserName(config.getProxyServerUser());
-                authorizationPolicy.setPassword(config.getProxyServerPassword());
-                conduit.setProxyAuthorization(authorizationPolicy);
-            }
-        }
-
-        if (config.getFollowHttpRedirects()) {
-            HTTPConduit conduit = WebClient.getConfig(webClient).getHttpConduit();
-            final HTTPClientPolicy policy = conduit.getClient();
-            policy.setAutoRedirect(true);
-            conduit.setClient(policy);
+        WebClient webClient = newWebclient(path, params);
+        if (tokenManager != null) {
+            webClient.replaceHeader(HttpHeaders.AUTHORIZATION, "Bearer " + tokenManager.getToken());
         }
+        return webClient;
+    }
 
-        // include additional api key header if requested by configuration
-        if (StringUtil.isNotBlank(config.getAuthHttpHeaderName())) {
-            webClient.header(config.getAuthHttpHeaderName(), SecurityUtil.decrypt(config.getAuthHttpHeaderValue()));
-        }
+    /**
+     * Same as {@link #getWebclient(String, Map)}, but leaving the bearer token to be set when the request is sent,
+     * as done by {@link #executeAsync(WebClient, String, String, int)}.
+     *
+     * @param path resource endpoint
+     * @param params query parameters, or {@code null} if none
+     * @return web client for the given endpoint
+     */
+    protected WebClient newWebclient(final String path, final Map<String, String> params) {
+        WebClient webClient = transport.newRequest();
 
-        webClient.type(config.getContentType()).accept(config.getAccept()).path(path);
+        webClient.path(path);
 
         Optional.ofNullable(params).ifPresent(p -> p.forEach((k, v) -> webClient.query(k, v)));
 
         return webClient;
     }
 
-    protected String getBearerToken(final boolean forceRefresh) {
-        if (StringUtil.isNotBlank(config.getBearerToken()) && !forceRefresh) {
-            return config.getBearerToken();
-        }
+    /**
+     * @param path resource endpoint
+     * @param id resource id
+     * @param projection attributes to be returned, or {@code null} for the whole resource
+     * @return web client for the given resource, requesting only the projected attributes when allowed
+     */
+    protected WebClient getWebclient(final String path, final String id, final SCIMAttributeProjection projection) {
+        return project(getWebclient(path, null).path(SCIMUtils.getPath(id, config)), projection);
+    }
+
+    /**
+     * Same as {@link #getWebclient(String, String, SCIMAttributeProjection)}, but leaving the bearer token to be set
+     * when the request is sent.
+     *
+     * @param path resource endpoint
+     * @param id resource id
+     * @param projection attributes to be returned, or {@code null} for the whole resource
+     * @return web client for the given resource
+     */
+    protected WebClient newWebclient(final String path, final String id, final SCIMAttributeProjection projection) {
+        return project(newWebclient(path, null).path(SCIMUtils.getPath(id, config)), projection);
+    }
 
-        if (StringUtil.isEmpty(config.getAccessTokenBaseAddress())) {
-            SCIMUtils.handleGeneralError("Invalid bearer token and no access token base address configured");
+    private WebClient project(final WebClient webClient, final SCIMAttributeProjection projection) {
+        if (projection != null && config.getRequestAttributesOnSearch()) {
+            webClient.query(projection.getParameter(), projection.getValue());
         }
-        WebClient webClient = WebClient.create(config.getAccessTokenBaseAddress()).
-                type(config.getAccessTokenContentType()).accept(config.getAccessTokenAccept());
+        return webClient;
+    }
 
-        StringBuilder requestBuilder =
-                new StringBuilder("&client_id=").append(config.getClientId())
-                        .append("&client_secret=").append(config.getClientSecret());
-        // append also username and password if and only if they're not blank
-        if (StringUtil.isNotBlank(config.getUsername()) && config.getPassword() != null) {
-            requestBuilder.append("&username=").append(config.getUsername())
-                    .append("&password=").append(SecurityUtil.decrypt(config.getPassword())).toString();
+    @Override
+    public void dispose() {
+        synchronized (this) {
+            disposed = true;
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+            if (fanOutExecutor != null) {
+                fanOutExecutor.shutdownNow();
+                fanOutExecutor = null;
+            }
         }
+        if (tokenManager != null) {
+            tokenManager.release();
+        }
+        transport.close();
+    }
 
-        String token = null;
-        try {
-            Response response = webClient.post(requestBuilder.toString());
-            String body = response.readEntity(String.class);
-            JsonNode result = SCIMUtils.MAPPER.readTree(body);
-            if (result == null || !result.hasNonNull(config.getAccessTokenNodeId())) {
-                SCIMUtils.handleGeneralError("No access token found - " + body);
+    @Override
+    public SCIMFanOut fanOut() {
+        ExecutorService fanOutCalls;
+        synchronized (this) {
+            if (disposed) {
+                throw new ConnectorException("SCIM service was disposed");
             }
-            token = result.get(config.getAccessTokenNodeId()).textValue();
-            config.setBearerToken(token);
-        } catch (Exception ex) {
-            SCIMUtils.handleGeneralError("While obtaining authentication token", ex);
+            if (fanOutExecutor == null) {
+                fanOutExecutor = SCIMFanOut.newExecutor();
+            }
+            fanOutCalls = fanOutExecutor;
         }
+        return new SCIMFanOut(fanOutCalls, config.getFanOutParallelism());
+    }
 
-        return token;
+    protected synchronized ExecutorService getExecutor() {
+        if (disposed) {
+            throw new ConnectorException("SCIM service was disposed");
+        }
+        if (executor == null) {
+            AtomicInteger threadCount = new AtomicInteger(0);
+            executor = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "scim-search-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
     }
 
     protected JsonNode doGet(final WebClient webClient) {
@@ -171,15 +285,15 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
 
         JsonNode result = null;
         try {
-            Response response = executeAndRetry(WebClient::get, webClient, 0);
-            String responseAsString = checkServiceErrors(response);
-            result = SCIMUtils.MAPPER.readTree(responseAsString);
+            SCIMResponse response = executeAndRetry(webClient, "GET", null, 0);
+            checkServiceStatus(response);
+            result = readEntityTree(response);
             if (result == null) {
                 LOG.ok("Empty result from GET request");
                 result = SCIMUtils.MAPPER.createObjectNode();
             }
             if (result.isArray() && (!result.has(RESPONSE_RESOURCES) || result.get(RESPONSE_RESOURCES).isNull())) {
-                SCIMUtils.handleGeneralError("Wrong response from GET request: " + responseAsString);
+                SCIMUtils.handleGeneralError("Wrong response from GET request: " + result);
             }
             checkServiceResultErrors(result, response);
         } catch (IOException ex) {
@@ -189,85 +303,167 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
         return result;
     }
 
-    protected void doCreate(final UT user, final WebClient webClient) {
-        LOG.ok("CREATE: {0}", webClient.getCurrentURI());
+    /**
+     * Reads the resource returned by the given client straight into the given type, with a single pass over the
+     * response entity.
+     *
+     * @param <R> resource type
+     * @param webClient client, already configured for the request
+     * @param resourceType resource type
+     * @return resource, or {@code null} if the response could not be read
+     */
+    protected <R> R doGet(final WebClient webClient, final Class<R> resourceType) {
+        LOG.ok("GET: {0}", webClient.getCurrentURI());
 
+        R result = null;
         try {
-            String payload;
+            SCIMResponse response = executeAndRetry(webClient, "GET", null, 0);
+            checkServiceStatus(response);
+            result = readEntity(response, resourceType);
+        } catch (IOException ex) {
+            LOG.error(ex, "While retrieving data from SCIM API");
+        }
 
-            // check custom attributes
-            JsonNode customAttributesNode = buildCustomAttributesNode(config.getCustomAttributesJSON(), user);
-            if (customAttributesNode != null) {
-                // add custom attributes to payload
-                JsonNode userNode = null;
-                try {
-                    userNode = mergeNodes(SCIMUtils.MAPPER.readTree(SCIMUtils.MAPPER.writeValueAsString(user)),
-                            customAttributesNode);
-                } catch (JsonProcessingException ex) {
-                    SCIMUtils.handleGeneralError("While converting user to node", ex);
-                }
-                payload = SCIMUtils.MAPPER.writeValueAsString(userNode);
-            } else {
-                // no custom attributes
-                payload = SCIMUtils.MAPPER.writeValueAsString(user);
+        return result;
+    }
+
+    /**
+     * Parses the entity of the given response straight from its stream, then closes the response.
+     *
+     * @param response response, with successful status
+     * @return parsed entity, or {@code null} if empty
+     * @throws IOException if the entity could not be parsed
+     */
+    protected JsonNode readEntityTree(final SCIMResponse response) throws IOException {
+        try (InputStream entity = response.getEntity()) {
+            JsonNode node = SCIMUtils.MAPPER.readTree(entity);
+            return node == null || node.isMissingNode() ? null : node;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Reads the entity of the given response straight from its stream into the given type, failing as soon as an
+     * {@code Errors} field is found, then closes the response.
+     *
+     * @param <R> resource type
+     * @param response response, with successful status
+     * @param resourceType resource type
+     * @return resource, or {@code null} if empty
+     * @throws IOException if the entity could not be parsed
+     */
+    protected <R> R readEntity(final SCIMResponse response, final Class<R> resourceType) throws IOException {
+        try (InputStream entity = response.getEntity()) {
+            try (JsonParser parser = new SCIMResponseParser(SCIMUtils.MAPPER.createParser(entity))) {
+                return parser.nextToken() == null ? null : SCIMUtils.reader(resourceType).readValue(parser);
             }
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Same as {@link #readEntity(SCIMResponse, Class)}, going through the JSON tree when a post processor is given.
+     *
+     * @param <R> resource type
+     * @param response response, with successful status
+     * @param resourceType resource type
+     * @param postProcessor optional callback, invoked with the resource and the JSON node it was read from
+     * @return resource, or {@code null} if empty
+     * @throws IOException if the entity could not be parsed
+     */
+    protected <R> R readEntity(
+            final SCIMResponse response,
+            final Class<R> resourceType,
+            final BiConsumer<R, JsonNode> postProcessor) throws IOException {
+
+        if (postProcessor == null) {
+            return readEntity(response, resourceType);
+        }
+
+        JsonNode node = readEntityTree(response);
+        if (node == null) {
+            return null;
+        }
+        checkServiceResultErrors(node, response);
+        R resource = SCIMUtils.reader(resourceType).readValue(node);
+        postProcessor.accept(resource, node);
+        return resource;
+    }
+
+    protected String buildUserPayload(final UT user) throws JsonProcessingException {
+        // check custom attributes
+        JsonNode customAttributesNode = buildCustomAttributesNode(config.getCustomAttributesJSON(), user);
+        if (customAttributesNode == null) {
+            // no custom attributes
+            return SCIMUtils.MAPPER.writeValueAsString(user);
+        }
+
+        // add custom attributes to payload
+        JsonNode userNode = null;
+        try {
+            userNode = mergeNodes(SCIMUtils.MAPPER.readTree(SCIMUtils.MAPPER.writeValueAsString(user)),
+                    customAttributesNode);
+        } catch (JsonProcessingException ex) {
+            SCIMUtils.handleGeneralError("While converting user to node", ex);
+        }
+        return SCIMUtils.MAPPER.writeValueAsString(userNode);
+    }
+
+    protected void doCreate(final UT user, final WebClient webClient) {
+        LOG.ok("CREATE: {0}", webClient.getCurrentURI());
+
+        try {
+            String payload = buildUserPayload(user);
             LOG.ok("CREATE payload is {0}: ", payload);
-            Response response = executeAndRetry(wc -> wc.post(payload), webClient, 0);
-            String responseAsString = checkServiceErrors(response);
-            String value = SCIMAttributeUtils.ATTRIBUTE_ID;
-            JsonNode responseObj = SCIMUtils.MAPPER.readTree(responseAsString);
-            if (responseObj.hasNonNull(value)) {
-                user.setId(responseObj.get(value).textValue());
-            } else {
-                LOG.error("CREATE payload {0}: ", payload);
-                SCIMUtils.handleGeneralError(
-                        "While getting " + value + " value for created User - Response : " + responseAsString);
-            }
+            SCIMResponse response = executeAndRetry(webClient, "POST", payload, 0);
+            readCreatedId(user, payload, response);
         } catch (IOException ex) {
             LOG.error(ex, "Error while creating entity");
             SCIMUtils.handleGeneralError("While creating User", ex);
         }
     }
 
+    /**
+     * Sets on the given User, just created, the id returned by the SCIM server.
+     *
+     * @param user created User
+     * @param payload create payload
+     * @param response create response
+     * @throws IOException if the response could not be parsed
+     */
+    protected void readCreatedId(final UT user, final String payload, final SCIMResponse response) throws IOException {
+        checkServiceStatus(response);
+        String value = SCIMAttributeUtils.ATTRIBUTE_ID;
+        JsonNode responseObj = readEntityTree(response);
+        if (responseObj != null && responseObj.hasNonNull(value)) {
+            user.setId(responseObj.get(value).textValue());
+        } else {
+            LOG.error("CREATE payload {0}: ", payload);
+            SCIMUtils.handleGeneralError(
+                    "While getting " + value + " value for created User - Response : " + responseObj);
+        }
+    }
+
     protected JsonNode doUpdate(final UT user, final WebClient webClient) {
         LOG.ok("UPDATE: {0}", webClient.getCurrentURI());
 
-        if (config.getUpdateUserMethod().equalsIgnoreCase("PATCH")) {
-            WebClient.getConfig(webClient).getRequestContext().put("use.async.http.conduit", true);
-        }
-
         JsonNode result = null;
         try {
-            String payload;
-
-            // check custom attributes
-            JsonNode customAttributesNode = buildCustomAttributesNode(config.getCustomAttributesJSON(), user);
-            if (customAttributesNode != null) {
-                // add custom attributes to payload
-                JsonNode userNode = null;
-                try {
-                    userNode = mergeNodes(SCIMUtils.MAPPER.readTree(SCIMUtils.MAPPER.writeValueAsString(user)),
-                            customAttributesNode);
-                } catch (JsonProcessingException ex) {
-                    SCIMUtils.handleGeneralError("While converting user to node", ex);
-                }
-                payload = SCIMUtils.MAPPER.writeValueAsString(userNode);
-            } else {
-                // no custom attributes
-                payload = SCIMUtils.MAPPER.writeValueAsString(user);
-            }
+            String payload = buildUserPayload(user);
 
             LOG.ok("UPDATE payload is {0}: ", payload);
 
-            Response response;
-            if (config.getUpdateUserMethod().equalsIgnoreCase("PATCH")) {
-                response = executeAndRetry(wc -> wc.invoke("PATCH", payload), webClient, 0);
+            SCIMResponse response;
+            if (settings.getUpdateUserMethod().equalsIgnoreCase("PATCH")) {
+                response = executeAndRetry(webClient, "PATCH", payload, 0);
             } else {
-                response = executeAndRetry(wc -> wc.put(payload), webClient, 0);
+                response = executeAndRetry(webClient, "PUT", payload, 0);
             }
 
-            String responseAsString = checkServiceErrors(response);
-            result = SCIMUtils.MAPPER.readTree(responseAsString);
+            checkServiceStatus(response);
+            result = readEntityTree(response);
             checkServiceResultErrors(result, response);
         } catch (IOException ex) {
             LOG.error(ex, "Error while updating entity");
@@ -285,8 +481,6 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
     protected JsonNode doUpdatePatch(final P patch, final Set<Attribute> replaceAttributes, final WebClient webClient) {
         LOG.ok("UPDATE PATCH: {0}", webClient.getCurrentURI());
 
-        WebClient.getConfig(webClient).getRequestContext().put("use.async.http.conduit", true);
-
         JsonNode result = null;
         try {
             // no custom attributes
@@ -295,13 +489,16 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
 
             LOG.ok("UPDATE PATCH payload is {0}: ", payload);
 
-            Response response = executeAndRetry(wc -> webClient.invoke("PATCH", payload), webClient, 0);
-            String responseAsString = checkServiceErrors(response);
+            SCIMResponse response = executeAndRetry(webClient, "PATCH", payload, 0);
+            checkServiceStatus(response);
 
             // some providers, like AWS, return no result, thus a new read is needed
-            result = Status.NO_CONTENT.getStatusCode() == response.getStatus()
-                    ? doGet(webClient)
-                    : SCIMUtils.MAPPER.readTree(responseAsString);
+            if (Status.NO_CONTENT.getStatusCode() == response.getStatus()) {
+                response.close();
+                result = doGet(webClient);
+            } else {
+                result = readEntityTree(response);
+            }
             checkServiceResultErrors(result, response);
         } catch (IOException ex) {
             LOG.error(ex, "Error while updating entity");
@@ -315,9 +512,14 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
 
     protected void doDeleteUser(final String userId, final WebClient webClient) {
         LOG.ok("DELETE: {0}", webClient.getCurrentURI());
-        int status = webClient.delete().getStatus();
+        checkDeleted(userId, transport.execute(webClient, "DELETE", null));
+    }
+
+    protected void checkDeleted(final String id, final SCIMResponse response) {
+        int status = response.getStatus();
+        response.close();
         if (status != Status.NO_CONTENT.getStatusCode() && status != Status.OK.getStatusCode()) {
-            throw new NoSuchEntityException(userId);
+            throw new NoSuchEntityException(id);
         }
     }
 
@@ -332,11 +534,11 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
 
             LOG.ok("Activate payload is {0}", payload);
 
-            Response response = executeAndRetry(wc -> wc.post(payload), webClient, 0);
+            SCIMResponse response = executeAndRetry(webClient, "POST", payload, 0);
             if (response == null) {
                 SCIMUtils.handleGeneralError("While activating User - no response");
             } else {
-                String responseAsString = response.readEntity(String.class);
+                String responseAsString = response.readEntity();
                 LOG.ok("Response after activating user: {0}", responseAsString);
             }
         } catch (IOException ex) {
@@ -344,35 +546,53 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
         }
     }
 
-    protected String checkServiceErrors(final Response response) {
+    protected void checkServiceStatus(final SCIMResponse response) {
         if (response == null) {
             SCIMUtils.handleGeneralError("While executing request - no response");
         }
 
-        String responseAsString = response.readEntity(String.class);
         if (response.getStatus() == Status.NOT_FOUND.getStatusCode()) {
+            response.close();
             throw new NoSuchEntityException("No SCIM entity found");
         }
 
         if (response.getStatus() == Status.UNAUTHORIZED.getStatusCode()) {
+            response.close();
             throw new NoSuchEntityException("Unauthorized");
         }
 
         if (response.getStatus() == Status.FORBIDDEN.getStatusCode()) {
+            response.close();
             throw new NoSuchEntityException("Forbidden");
         }
 
-        if (response.getStatusInfo().getFamily() != Status.Family.SUCCESSFUL) {
-            SCIMUtils.handleGeneralError(
-                    "While executing SCIM request: status is " + response.getStatus() + " and response "
-                            + responseAsString);
+        if (!response.isSuccessful()) {
+            String entity = response.readEntity();
+            String message = "While executing SCIM request: status is " + response.getStatus() + " and response "
+                    + entity;
+            LOG.error("General error : {0}", message);
+            throw new SCIMServiceException(message, response.getStatus(), readScimType(entity));
+        }
+    }
+
+    private static String readScimType(final String entity) {
+        try {
+            JsonNode scimType = SCIMUtils.MAPPER.readTree(entity).path("scimType");
+            return scimType.isTextual() ? scimType.asText() : null;
+        } catch (IOException | RuntimeException e) {
+            // not a SCIM error response
+            return null;
         }
-        return responseAsString;
     }
 
-    protected void checkServiceResultErrors(final JsonNode node, final Response response) {
-        if (node.has(RESPONSE_ERRORS)) {
-            SCIMUtils.handleGeneralError(response.readEntity(String.class));
+    protected String checkServiceErrors(final SCIMResponse response) {
+        checkServiceStatus(response);
+        return response.readEntity();
+    }
+
+    protected void checkServiceResultErrors(final JsonNode node, final SCIMResponse response) {
+        if (node != null && node.has(RESPONSE_ERRORS)) {
+            SCIMUtils.handleGeneralError("While executing SCIM request: " + node.get(RESPONSE_ERRORS));
         }
     }
 
@@ -405,8 +625,7 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
         List<Object> values = user.getSCIMCustomAttributes().get(scimAttribute);
 
         Object nodeValue = scimAttribute.getMultiValued() ? values : (values.isEmpty() ? null : values.get(0));
-        String mainNodeKey = scimAttribute instanceof SCIMv2Attribute ? SCIMv2Attribute.class.cast(scimAttribute)
-                .getExtensionSchema() : SCIMv11Attribute.class.cast(scimAttribute).getSchema();
+        String mainNodeKey = SCIMCustomAttributes.getExtensionUri(scimAttribute);
         String currentNodeKey = scimAttribute.getName();
 
         if (scimAttribute.getType().equals(SCIMAttributeUtils.SCIM_SCHEMA_TYPE_COMPLEX)) {
@@ -461,38 +680,48 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
         return mainNode;
     }
 
+    /**
+     * Reads the custom attributes of the given user from the JSON object it was read from.
+     *
+     * @param <T> custom attribute type
+     * @param user user
+     * @param node JSON object of the given user only
+     * @param attrType custom attribute type
+     */
     protected <T extends SCIMBaseAttribute<T>> void readCustomAttributes(
             final UT user, final JsonNode node, final Class<T> attrType) {
 
-        SCIMUtils.extractSCIMSchemas(config.getCustomAttributesJSON(), attrType).ifPresent(scimSchema -> {
-            for (T attr : scimSchema.getAttributes()) {
-                List<JsonNode> foundWithSchemaAsKey = node.findValues(
-                        attr instanceof SCIMv2Attribute
-                                ? SCIMv2Attribute.class.cast(attr).getExtensionSchema()
-                                : SCIMv11Attribute.class.cast(attr).getSchema());
-                if (!foundWithSchemaAsKey.isEmpty() && foundWithSchemaAsKey.get(0).has(attr.getName())) {
-                    List<Object> values = new ArrayList<>();
-
-                    // manage multiple types
-                    JsonNode jsonNode = foundWithSchemaAsKey.get(0).get(attr.getName());
-                    if (jsonNode.isArray()) {
-                        values.addAll(extractValuesFromJsonNode(attr, jsonNode));
-                    } else {
-                        values.add(Type.integer.name().equals(attr.getType())
-                                ? jsonNode.intValue()
-                                : Type.BOOLEAN.name().toLowerCase().equals(attr.getType())
-                                ? jsonNode.booleanValue()
-                                : jsonNode.textValue());
+        SCIMCustomAttributes.of(config.getCustomAttributesJSON(), attrType).getAttributesByExtensionUri().
+                forEach((extensionUri, attrs) -> {
+                    // extensions are expected at top level, look deeper only if not found there
+                    JsonNode extension = Optional.ofNullable(node.get(extensionUri)).
+                            orElseGet(() -> node.findValue(extensionUri));
+                    if (extension == null) {
+                        return;
                     }
-                    user.getReturnedCustomAttributes().put(
-                            (attr instanceof SCIMv2Attribute
-                                    ? SCIMv2Attribute.class.cast(attr).getExtensionSchema()
-                                    : SCIMv11Attribute.class.cast(attr).getSchema())
-                            + (config.getUseColonOnExtensionAttributes() ? ":" : ".") + attr.getName(),
-                            values);
-                }
-            }
-        });
+
+                    for (T attr : attrs) {
+                        JsonNode jsonNode = extension.get(attr.getName());
+                        if (jsonNode != null) {
+                            List<Object> values = new ArrayList<>();
+
+                            // manage multiple types
+                            if (jsonNode.isArray()) {
+                                values.addAll(extractValuesFromJsonNode(attr, jsonNode));
+                            } else {
+                                values.add(Type.integer.name().equals(attr.getType())
+                                        ? jsonNode.intValue()
+                                        : Type.BOOLEAN.name().toLowerCase().equals(attr.getType())
+                                        ? jsonNode.booleanValue()
+                                        : jsonNode.textValue());
+                            }
+                            user.getReturnedCustomAttributes().put(
+                                    SCIMCustomAttributes.getQualifiedName(
+                                            attr, config.getUseColonOnExtensionAttributes()),
+                                    values);
+                        }
+                    }
+                });
     }
 
     protected <T extends SCIMBaseAttribute<T>> List<Object> extractValuesFromJsonNode(
@@ -509,9 +738,15 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
         return values;
     }
 
+    /**
+     * Reads the custom attributes of the given users, each from its own element of the given JSON array.
+     *
+     * @param resources users, in the same order as they appear in the given JSON array
+     * @param node {@code Resources} JSON array
+     */
     protected void readCustomAttributes(final PagedResults<UT> resources, final JsonNode node) {
-        for (UT resource : resources.getResources()) {
-            readCustomAttributes(resource, node, SCIMv2Attribute.class);
+        for (int i = 0; i < resources.getResources().size() && i < node.size(); i++) {
+            readCustomAttributes(resources.getResources().get(i), node.get(i), SCIMv2Attribute.class);
         }
     }
 
@@ -533,6 +768,15 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
 
     protected <T extends SCIMBaseAttribute<T>> UT doGetUser(final WebClient webClient, final Class<UT> userType,
             final Class<T> attrType) {
+        // without custom attributes there is no need to go through JSON tree
+        if (SCIMCustomAttributes.of(config.getCustomAttributesJSON(), attrType).isEmpty()) {
+            UT user = doGet(webClient, userType);
+            if (user == null) {
+                SCIMUtils.handleGeneralError("While retrieving User from service");
+            }
+            return user;
+        }
+
         UT user = null;
         JsonNode node = doGet(webClient);
         if (node == null) {
@@ -540,7 +784,7 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
         }
 
         try {
-            user = SCIMUtils.MAPPER.readValue(node.toString(), userType);
+            user = SCIMUtils.reader(userType).readValue(node);
         } catch (IOException ex) {
             LOG.error(ex, "While converting from JSON to User");
         }
@@ -573,7 +817,7 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
         }
 
         try {
-            updated = SCIMUtils.MAPPER.readValue(node.toString(), userType);
+            updated = SCIMUtils.reader(userType).readValue(node);
         } catch (IOException ex) {
             LOG.error(ex, "While converting from JSON to User");
         }
@@ -592,7 +836,7 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
 
         UT updated = null;
         JsonNode node =
-                config.getUpdateUserMethod().equalsIgnoreCase("PATCH") && !replaceAttributes.isEmpty()
+                settings.getUpdateUserMethod().equalsIgnoreCase("PATCH") && !replaceAttributes.isEmpty()
                 ? doUpdatePatch(replaceAttributes, getWebclient("Users", null).path(
                         SCIMUtils.getPath(user.getId(), config)))
                 : doUpdate(user, getWebclient("Users", null).path(
@@ -602,7 +846,7 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
         }
 
         try {
-            updated = SCIMUtils.MAPPER.readValue(node.toString(), userType);
+            updated = SCIMUtils.reader(userType).readValue(node);
         } catch (IOException ex) {
             LOG.error(ex, "While converting from JSON to User");
         }
@@ -627,13 +871,7 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
      */
     @Override
     public List<UT> getAllUsers(final Set<String> attributesToGet) {
-        Map<String, String> params = new HashMap<>();
-        if (!attributesToGet.isEmpty() && config.getRequestAttributesOnSearch()) {
-            params.put("attributes", SCIMUtils.cleanAttributesToGet(attributesToGet, config.getCustomAttributesJSON(),
-                    config.getUseColonOnExtensionAttributes(), SCIMv2Attribute.class));
-        }
-        WebClient webClient = getWebclient("Users", params);
-        return doGetAllUsers(webClient).getResources();
+        return doGetAllUsers(buildUserSearchParams(null, null, null, attributesToGet)).getResources();
     }
 
     /**
@@ -643,14 +881,7 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
      */
     @Override
     public List<UT> getAllUsers(final String filterQuery, final Set<String> attributesToGet) {
-        Map<String, String> params = new HashMap<>();
-        params.put("filter", filterQuery);
-        if (!attributesToGet.isEmpty() && config.getRequestAttributesOnSearch()) {
-            params.put("attributes", SCIMUtils.cleanAttributesToGet(attributesToGet, config.getCustomAttributesJSON(),
-                    config.getUseColonOnExtensionAttributes(), SCIMv2Attribute.class));
-        }
-        WebClient webClient = getWebclient("Users", params);
-        return doGetAllUsers(webClient).getResources();
+        return doGetAllUsers(buildUserSearchParams(filterQuery, null, null, attributesToGet)).getResources();
     }
 
     /**
@@ -665,15 +896,7 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
             final Integer count,
             final Set<String> attributesToGet) {
 
-        Map<String, String> params = new HashMap<>();
-        params.put("startIndex", String.valueOf(startIndex));
-        Optional.ofNullable(count).ifPresent(c -> params.put("count", String.valueOf(c)));
-        if (!attributesToGet.isEmpty() && config.getRequestAttributesOnSearch()) {
-            params.put("attributes", SCIMUtils.cleanAttributesToGet(attributesToGet, config.getCustomAttributesJSON(),
-                    config.getUseColonOnExtensionAttributes(), SCIMv2Attribute.class));
-        }
-        WebClient webClient = getWebclient("Users", params);
-        return doGetAllUsers(webClient);
+        return doGetAllUsers(buildUserSearchParams(null, startIndex, count, attributesToGet));
     }
 
     /**
@@ -686,132 +909,690 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
     public PagedResults<UT> getAllUsers(final String filterQuery, final Integer startIndex, final Integer count,
             final Set<String> attributesToGet) {
 
-        Map<String, String> params = new HashMap<>();
-        params.put("startIndex", String.valueOf(startIndex));
-        if (count != null) {
-            params.put("count", String.valueOf(count));
-        }
-        params.put("filter", filterQuery);
-        if (!attributesToGet.isEmpty() && config.getRequestAttributesOnSearch()) {
-            params.put("attributes",
-                    SCIMUtils.cleanAttributesToGet(attributesToGet,
-                            config.getCustomAttributesJSON(),
-                            config.getUseColonOnExtensionAttributes(),
-                            SCIMv2Attribute.class));
-        }
-        WebClient webClient = getWebclient("Users", params);
-        return doGetAllUsers(webClient);
+        return doGetAllUsers(buildUserSearchParams(filterQuery, startIndex, count, attributesToGet));
     }
 
-    protected PagedResults<UT> doGetAllUsers(final WebClient webClient) {
-        PagedResults<UT> pagedResults = null;
-        JsonNode node = doGet(webClient);
-        if (node == null) {
-            SCIMUtils.handleGeneralError("While retrieving Users from service");
-        }
+    protected PagedResults<UT> doGetAllUsers(final Map<String, String> params) {
+        return collectPage(handler -> doSearchUsers(params, handler));
+    }
 
-        try {
-            pagedResults = deserializeUserPagedResults(node.toString());
-        } catch (IOException ex) {
-            LOG.error(ex, "While converting from JSON to Users");
-        }
+    /**
+     * Reads a list response from the given client, one resource at a time, handing each resource to the given
+     * handler as soon as it is parsed; stops reading as soon as the handler returns {@code false}.
+     *
+     * @param <R> resource type
+     * @param webClient client, already configured for the search request
+     * @param resourceType resource type
+     * @param postProcessor optional callback, invoked with each resource and the JSON node it was read from
+     * @param handler resource handler
+     * @return paging information from the list response, without resources
+     */
+    protected <R extends SCIMBaseResource<? extends SCIMBaseMeta>> PagedResults<R> doStreamResources(
+            final WebClient webClient,
+            final Class<R> resourceType,
+            final BiConsumer<R, JsonNode> postProcessor,
+            final Predicate<R> handler) {
 
-        if (pagedResults == null) {
-            SCIMUtils.handleGeneralError("While retrieving Users from service");
-        } else {
-            // check custom attributes
-            if (!pagedResults.getResources().isEmpty()) {
-                readCustomAttributes(pagedResults, node.get(RESPONSE_RESOURCES));
+        return doStreamList(webClient, resourceReader(resourceType, postProcessor), handler);
+    }
+
+    /**
+     * @param <R> resource type
+     * @param resourceType resource type
+     * @param postProcessor optional callback, invoked with each resource and the JSON node it was read from
+     * @return reader for the given resource type
+     */
+    protected <R> ResourceReader<R> resourceReader(
+            final Class<R> resourceType,
+            final BiConsumer<R, JsonNode> postProcessor) {
+
+        return parser -> {
+            if (postProcessor == null) {
+                return SCIMUtils.reader(resourceType).readValue(parser);
             }
-        }
 
-        return pagedResults;
+            JsonNode node = SCIMUtils.MAPPER.readTree(parser);
+            R resource = SCIMUtils.reader(resourceType).readValue(node);
+            postProcessor.accept(resource, node);
+            return resource;
+        };
     }
 
-    protected GT doGetGroup(final WebClient webClient, final Class<GT> groupType) {
-        GT group = null;
-        JsonNode node = doGet(webClient);
-        if (node == null) {
-            SCIMUtils.handleGeneralError("While retrieving Group from service");
-        }
+    /**
+     * Reads a list response from the given client, handing each element of {@code Resources}, as read by the given
+     * reader, to the given handler; stops reading as soon as the handler returns {@code false}.
+     *
+     * @param <R> element type
+     * @param webClient client, already configured for the search request
+     * @param reader reads one element, starting at the current token of the given parser
+     * @param handler element handler
+     * @return paging information from the list response, without elements
+     */
+    protected <R> PagedResults<R> doStreamList(
+            final WebClient webClient,
+            final ResourceReader<R> reader,
+            final Predicate<R> handler) {
 
-        try {
-            group = SCIMUtils.MAPPER.readValue(node.toString(), groupType);
+        return doStreamList(webClient, null, reader, handler);
+    }
+
+    /**
+     * Same as {@link #doStreamList(WebClient, ResourceReader, Predicate)}, sending the given search request via POST
+     * when provided.
+     *
+     * @param <R> element type
+     * @param webClient client, already configured for the search request
+     * @param searchRequest search request to send via POST, or {@code null} to send GET
+     * @param reader reads one element, starting at the current token of the given parser
+     * @param handler element handler
+     * @return paging information from the list response, without elements
+     */
+    protected <R> PagedResults<R> doStreamList(
+            final WebClient webClient,
+            final String searchRequest,
+            final ResourceReader<R> reader,
+            final Predicate<R> handler) {
+
+        LOG.ok("{0} (streaming): {1}", searchRequest == null ? "GET" : "POST", webClient.getCurrentURI());
+
+        SCIMResponse response = executeAndRetry(webClient, searchRequest == null ? "GET" : "POST", searchRequest, 0);
+        return readList(response, reader, handler);
+    }
+
+    /**
+     * Reads the given list response, handing each element of {@code Resources}, as read by the given reader, to the
+     * given handler; stops reading as soon as the handler returns {@code false}.
+     *
+     * @param <R> element type
+     * @param response list response
+     * @param reader reads one element, starting at the current token of the given parser
+     * @param handler element handler
+     * @return paging information from the list response, without elements
+     */
+    protected <R> PagedResults<R> readList(
+            final SCIMResponse response,
+            final ResourceReader<R> reader,
+            final Predicate<R> handler) {
+
+        checkServiceStatus(response);
+
+        PagedResults<R> pagedResults = new PagedResults<>();
+        try (JsonParser parser = SCIMUtils.MAPPER.createParser(response.getEntity())) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                SCIMUtils.handleGeneralError("Wrong response from search request: JSON object expected");
+            }
+
+            boolean proceed = true;
+            while (proceed && parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("totalResults".equals(field)) {
+                    pagedResults.setTotalResults(parser.getValueAsInt());
+                } else if ("itemsPerPage".equals(field)) {
+                    pagedResults.setItemsPerPage(parser.getValueAsInt());
+                } else if ("startIndex".equals(field)) {
+                    pagedResults.setStartIndex(parser.getValueAsInt());
+                } else if (RESPONSE_ERRORS.equals(field)) {
+                    SCIMUtils.handleGeneralError("While executing SCIM request: " + SCIMUtils.MAPPER.readTree(parser));
+                } else if (RESPONSE_RESOURCES.equals(field) && token == JsonToken.START_ARRAY) {
+                    while (proceed && parser.nextToken() == JsonToken.START_OBJECT) {
+                        proceed = handler.test(reader.read(parser));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
         } catch (IOException ex) {
-            LOG.error(ex, "While converting from JSON to Group");
+            SCIMUtils.handleGeneralError("While reading list response from SCIM API", ex);
+        } finally {
+            response.close();
         }
 
-        if (group == null) {
-            SCIMUtils.handleGeneralError("While retrieving group from service");
+        return pagedResults;
+    }
+
+    /**
+     * Walks all the pages returned by the given fetcher, prefetching the next pages in background (possibly in
+     * parallel, according to configuration), and hands each resource to the given handler until it returns
+     * {@code false}.
+     *
+     * @param <R> resource type
+     * @param pageFetcher fetches the page starting at the given index
+     * @param handler resource handler
+     */
+    protected <R> void doIteratePages(
+            final IntFunction<PagedResults<R>> pageFetcher,
+            final Predicate<R> handler) {
+
+        try (PagedResourcesIterator<R> iterator =
+                new PagedResourcesIterator<>(
+                        pageFetcher,
+                        config.getMaxPrefetchedPages(),
+                        config.getSearchConcurrency(),
+                        !config.getAllowUnorderedSearchResults(),
+                        getExecutor())) {
+
+            boolean proceed = true;
+            while (proceed && iterator.hasNext()) {
+                proceed = handler.test(iterator.next());
+            }
         }
+    }
 
-        return group;
+    protected <R> PagedResults<R> collectPage(
+            final Function<Predicate<R>, PagedResults<R>> streamer) {
+
+        List<R> resources = new ArrayList<>();
+        PagedResults<R> page = streamer.apply(resources::add);
+        page.setResources(resources);
+        return page;
     }
 
-    protected GT doCreateGroup(final GT group) {
-        doCreate(group, getWebclient("Groups", null));
-        return group;
+    protected Map<String, String> buildUserSearchParams(
+            final String filter,
+            final Integer startIndex,
+            final Integer count,
+            final Set<String> attributesToGet) {
+
+        Map<String, String> params = new HashMap<>();
+        Optional.ofNullable(startIndex).ifPresent(s -> params.put("startIndex", String.valueOf(s)));
+        Optional.ofNullable(count).ifPresent(c -> params.put("count", String.valueOf(c)));
+        Optional.ofNullable(filter).ifPresent(f -> params.put("filter", f));
+        if (!attributesToGet.isEmpty() && config.getRequestAttributesOnSearch()) {
+            SCIMAttributeProjection.compile(
+                    attributesToGet,
+                    config.getCustomAttributesJSON(),
+                    SCIMv2Attribute.class,
+                    true,
+                    config.getUseColonOnExtensionAttributes(),
+                    config.getRequestSubAttributesOnSearch()).applyTo(params);
+        }
+        return params;
     }
 
     @Override
-    public PagedResults<GT> getAllGroups(final Integer startIndex, final Integer count) {
-        Map<String, String> params = new HashMap<>();
-        params.put("startIndex", String.valueOf(startIndex));
-        if (count != null) {
-            params.put("count", String.valueOf(count));
+    public void getAllUsers(final String filter, final Set<String> attributesToGet, final Predicate<UT> handler) {
+        if (settings.getSearchPageSize() > 0) {
+            doIteratePages(startIndex -> collectPage(pageHandler -> getAllUsers(
+                    filter, startIndex, settings.getSearchPageSize(), attributesToGet, pageHandler)), handler);
+        } else {
+            doSearchUsers(buildUserSearchParams(filter, null, null, attributesToGet), handler);
         }
-        WebClient webClient = getWebclient("Groups", params);
-        return doGetAllGroups(webClient);
     }
 
     @Override
-    public List<GT> getAllGroups() {
-        WebClient webClient = getWebclient("Groups", Collections.emptyMap());
-        return doGetAllGroups(webClient).getResources();
+    public PagedResults<UT> getAllUsers(
+            final String filter,
+            final Integer startIndex,
+            final Integer count,
+            final Set<String> attributesToGet,
+            final Predicate<UT> handler) {
+
+        return doSearchUsers(buildUserSearchParams(filter, startIndex, count, attributesToGet), handler);
     }
 
     @Override
-    public List<GT> getAllGroups(final String filterQuery) {
-        Map<String, String> params = new HashMap<>();
-        params.put("filter", filterQuery);
-        WebClient webClient = getWebclient("Groups", params);
-        return doGetAllGroups(webClient).getResources();
+    public Optional<SCIMUserObjectReader> getUserObjectReader(final SCIMAttributesToGet attributesToGet) {
+        return SCIMUserObjectReader.of(
+                getUserType(),
+                attributesToGet,
+                SCIMCustomAttributes.of(config.getCustomAttributesJSON(), SCIMv2Attribute.class),
+                config.getUseColonOnExtensionAttributes());
     }
 
-    public PagedResults<GT> getAllGroups(final String filterQuery, final Integer startIndex, final Integer count) {
+    @Override
+    public void getAllUsers(
+            final String filter,
+            final Set<String> attributesToGet,
+            final SCIMUserObjectReader reader,
+            final Predicate<ConnectorObject> handler) {
+
+        if (settings.getSearchPageSize() > 0) {
+            doIteratePages(startIndex -> collectPage(pageHandler -> getAllUsers(
+                    filter, startIndex, settings.getSearchPageSize(), attributesToGet, reader, pageHandler)), handler);
+        } else {
+            doSearch("Users", buildUserSearchParams(filter, null, null, attributesToGet), reader::read, handler);
+        }
+    }
+
+    @Override
+    public PagedResults<ConnectorObject> getAllUsers(
+            final String filter,
+            final Integer startIndex,
+            final Integer count,
+            final Set<String> attributesToGet,
+            final SCIMUserObjectReader reader,
+            final Predicate<ConnectorObject> handler) {
+
+        return doSearch(
+                "Users", buildUserSearchParams(filter, startIndex, count, attributesToGet), reader::read, handler);
+    }
+
+    protected PagedResults<UT> doSearchUsers(final Map<String, String> params, final Predicate<UT> handler) {
+        return doSearch("Users", params, resourceReader(getUserType(), getUserPostProcessor()), handler);
+    }
+
+    protected PagedResults<GT> doSearchGroups(final Map<String, String> params, final Predicate<GT> handler) {
+        return doSearch("Groups", params, resourceReader(getGroupType(), null), handler);
+    }
+
+    /**
+     * @return callback reading custom attributes into Users found by searches, if any custom attribute is defined
+     */
+    protected BiConsumer<UT, JsonNode> getUserPostProcessor() {
+        return StringUtil.isBlank(config.getCustomAttributesJSON())
+                ? null
+                : (user, node) -> readCustomAttributes(user, node, SCIMv2Attribute.class);
+    }
+
+    protected GT doGetGroup(final WebClient webClient, final Class<GT> groupType) {
+        GT group = doGet(webClient, groupType);
+        if (group == null) {
+            SCIMUtils.handleGeneralError("While retrieving group from service");
+        }
+
+        groupReferences.put(group.getId(), buildGroupReference(group.getId(), group.getDisplayName()));
+        return group;
+    }
+
+    protected GT doCreateGroup(final GT group) {
+        doCreate(group, getWebclient("Groups", null));
+        groupReferences.put(group.getId(), buildGroupReference(group.getId(), group.getDisplayName()));
+        return group;
+    }
+
+    protected BaseResourceReference buildGroupReference(final String groupId, final String displayName) {
+        return new BaseResourceReference.Builder().value(groupId).
+                ref(config.getBaseAddress() + "Groups/" + groupId).display(displayName).build();
+    }
+
+    private void checkGroupReferencesWarm() {
+        if (config.getPrewarmGroupReferenceCache() && groupReferences.isEnabled()
+                && groupReferencesWarm.compareAndSet(false, true)) {
+
+            prewarmGroupReferences();
+        }
+    }
+
+    @Override
+    public BaseResourceReference getGroupReference(final String groupId) {
+        checkGroupReferencesWarm();
+
+        BaseResourceReference reference = groupReferences.get(groupId).orElseGet(() -> {
+            GT group = getGroup(groupId, GROUP_REFERENCE_PROJECTION);
+            return group == null ? null : buildGroupReference(group.getId(), group.getDisplayName());
+        });
+        // cached instances are never handed out, as callers may modify them
+        return reference == null
+                ? null
+                : buildGroupReference(reference.getValue(), reference.getDisplay());
+    }
+
+    @Override
+    public List<BaseResourceReference> getGroupReferences(final Collection<String> groupIds) {
+        checkGroupReferencesWarm();
+
+        Map<String, BaseResourceReference> found = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        groupIds.forEach(id -> groupReferences.get(id).ifPresentOrElse(
+                reference -> found.put(id, reference), () -> missing.add(id)));
+        doGetByIds("Groups", ObjectClass.GROUP, missing, getGroupType(), GROUP_REFERENCE_PROJECTION, null,
+                id -> getGroup(id, GROUP_REFERENCE_PROJECTION)).
+                forEach((id, group) -> found.put(id, buildGroupReference(group.getId(), group.getDisplayName())));
+
+        // cached instances are never handed out, as callers may modify them
+        return groupIds.stream().map(found::get).filter(Objects::nonNull).
+                map(reference -> buildGroupReference(reference.getValue(), reference.getDisplay())).
+                collect(Collectors.toList());
+    }
+
+    @Override
+    public List<GT> getGroups(final Collection<String> groupIds, final SCIMAttributeProjection projection) {
+        Map<String, GT> groups = doGetByIds(
+                "Groups", ObjectClass.GROUP, groupIds, getGroupType(), projection, null,
+                id -> getGroup(id, projection));
+        groups.values().stream().filter(group -> group.getDisplayName() != null).forEach(group -> groupReferences.
+                put(group.getId(), buildGroupReference(group.getId(), group.getDisplayName())));
+        return new ArrayList<>(groups.values());
+    }
+
+    @Override
+    public List<UT> getUsers(final Collection<String> userIds, final SCIMAttributeProjection projection) {
+        return new ArrayList<>(doGetByIds(
+                "Users", ObjectClass.ACCOUNT, userIds, getUserType(), projection, getUserPostProcessor(),
+                id -> getUser(id, projection)).
+                values());
+    }
+
+    /**
+     * @param objectClass object class of the resources
+     * @return whether resources of the given object class can be searched by several ids at once, as
+     * {@code id eq "..." or id eq "..."}
+     */
+    protected boolean isSearchByIdsSupported(final ObjectClass objectClass) {
+        SCIMFilterCapabilities capabilities = settings.getFilterCapabilities();
+        return capabilities.supports("eq") && capabilities.supports("or")
+                && capabilities.supportsAttribute(objectClass, SCIMAttributeUtils.ATTRIBUTE_ID);
+    }
+
+    /**
+     * Tells whether the SCIM server rejected a search filtered by id as such, rather than failing for any other
+     * reason, as authentication or availability: only in the former case resources can still be read one by one.
+     *
+     * @param e error response to a search filtered by id
+     * @return whether the resources shall be read one by one
+     */
+    protected boolean isSearchByIdsRejected(final SCIMServiceException e) {
+        return e.getStatus() == 501
+                || (e.getStatus() == 400
+                && (e.getScimType() == null || SEARCH_BY_IDS_REJECTED.contains(e.getScimType())));
+    }
+
+    /**
+     * Reads the resources with the given ids through searches filtered by id, each matching up to
+     * {@code batchLookupSize} ids, if {@link #isSearchByIdsSupported(ObjectClass)}; searches not to be sent via POST
+     * which exceed {@code maxQueryLengthOnGet} are split further. Resources not returned by such searches, or by
+     * searches rejected as per {@link #isSearchByIdsRejected(SCIMServiceException)}, are then read one by one.
+     *
+     * @param <R> resource type
+     * @param endpoint resource endpoint
+     * @param objectClass object class of the resources
+     * @param ids resource ids
+     * @param resourceType resource type
+     * @param projection attributes to be returned, including id, or {@code null} for the whole resources
+     * @param postProcessor optional callback, invoked with each resource and the JSON node it was read from
+     * @param single reads a single resource by id
+     * @return resources by id, in the same order as the given ids
+     */
+    protected <R extends SCIMBaseResource<? extends SCIMBaseMeta>> Map<String, R> doGetByIds(
+            final String endpoint,
+            final ObjectClass objectClass,
+            final Collection<String> ids,
+            final Class<R> resourceType,
+            final SCIMAttributeProjection projection,
+            final BiConsumer<R, JsonNode> postProcessor,
+            final Function<String, R> single) {
+
+        Map<String, R> found = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>(ids);
+        if (missing.size() > 1 && config.getBatchLookupSize() > 1 && isSearchByIdsSupported(objectClass)) {
+            int chunkSize = settings.getSearchPageSize() > 0
+                    ? Math.min(config.getBatchLookupSize(), settings.getSearchPageSize())
+                    : config.getBatchLookupSize();
+            List<String> pending = new ArrayList<>(missing);
+            for (int i = 0; i < pending.size(); i += chunkSize) {
+                doSearchByIds(
+                        endpoint,
+                        pending.subList(i, Math.min(i + chunkSize, pending.size())),
+                        resourceType,
+                        projection,
+                        postProcessor,
+                        resource -> {
+                            if (missing.remove(resource.getId())) {
+                                found.put(resource.getId(), resource);
+                            }
+                            return true;
+                        });
+            }
+            LOG.ok("{0} of {1} {2} found by batch lookup", found.size(), pending.size(), endpoint);
+        }
+
+        missing.forEach(id -> found.put(id, single.apply(id)));
+
+        Map<String, R> result = new LinkedHashMap<>();
+        ids.stream().filter(found::containsKey).forEach(id -> result.put(id, found.get(id)));
+        return result;
+    }
+
+    private <R extends SCIMBaseResource<? extends SCIMBaseMeta>> void doSearchByIds(
+            final String endpoint,
+            final List<String> ids,
+            final Class<R> resourceType,
+            final SCIMAttributeProjection projection,
+            final BiConsumer<R, JsonNode> postProcessor,
+            final Predicate<R> handler) {
 
+        Map<String, String> params = new HashMap<>();
+        params.put("filter", ids.stream().
+                map(id -> SCIMAttributeUtils.ATTRIBUTE_ID + " eq " + SCIMUtils.toFilterLiteral(id)).
+                collect(Collectors.joining(" or ")));
+        params.put("startIndex", "1");
+        params.put("count", String.valueOf(ids.size()));
+        if (projection != null && config.getRequestAttributesOnSearch()) {
+            projection.applyTo(params);
+        }
+
+        if (ids.size() > 1 && !isSearchWithPost(params) && getQueryLength(params) > config.getMaxQueryLengthOnGet()) {
+            doSearchByIds(endpoint, ids.subList(0, ids.size() / 2), resourceType, projection, postProcessor, handler);
+            doSearchByIds(endpoint, ids.subList(ids.size() / 2, ids.size()),
+                    resourceType, projection, postProcessor, handler);
+            return;
+        }
+
+        try {
+            doSearch(endpoint, params, resourceReader(resourceType, postProcessor), handler);
+        } catch (SCIMServiceException e) {
+            if (!isSearchByIdsRejected(e)) {
+                throw e;
+            }
+            LOG.warn("Search of {0} by id rejected with status {1}, reading them one by one", endpoint, e.getStatus());
+        }
+    }
+
+    /**
+     * Runs a search on the given endpoint, handing each element of the list response, as read by the given reader,
+     * to the given handler. The search is sent via POST to {@code .search} as per RFC 7644, section 3.4.3, when
+     * {@link #isSearchWithPost(Map)}, otherwise via GET; searches via POST rejected as not supported, see
+     * {@link #isSearchWithPostUnsupported(SCIMResponse)}, are sent again via GET, as all the following ones.
+     *
+     * @param <R> element type
+     * @param endpoint resource endpoint
+     * @param params search parameters
+     * @param reader reads one element, starting at the current token of the given parser
+     * @param handler element handler
+     * @return paging information from the list response, without elements
+     */
+    protected <R> PagedResults<R> doSearch(
+            final String endpoint,
+            final Map<String, String> params,
+            final ResourceReader<R> reader,
+            final Predicate<R> handler) {
+
+        if (!isSearchWithPost(params)) {
+            return doStreamList(getWebclient(endpoint, params), reader, handler);
+        }
+
+        WebClient webClient = getWebclient(endpoint + "/.search", null);
+        LOG.ok("POST (streaming): {0}", webClient.getCurrentURI());
+
+        SCIMResponse response = executeAndRetry(webClient, "POST", buildSearchRequest(params), 0);
+        if (isSearchWithPostUnsupported(response)) {
+            response.close();
+            LOG.warn("Search via POST on {0} rejected with status {1}, using GET from now on",
+                    endpoint, response.getStatus());
+            searchWithPostFailed.set(true);
+            return doStreamList(getWebclient(endpoint, params), reader, handler);
+        }
+        return readList(response, reader, handler);
+    }
+
+    /**
+     * @param params search parameters
+     * @return whether the search with the given parameters shall be sent via POST, according to configuration and
+     * to the length of its query
+     */
+    protected boolean isSearchWithPost(final Map<String, String> params) {
+        if (getSearchRequestSchema() == null || searchWithPostFailed.get()) {
+            return false;
+        }
+        if ("POST".equalsIgnoreCase(config.getSearchMethod())) {
+            return true;
+        }
+        return "AUTO".equalsIgnoreCase(config.getSearchMethod())
+                && getQueryLength(params) > config.getMaxQueryLengthOnGet();
+    }
+
+    /**
+     * Tells whether the SCIM server rejected a search via POST as not supported, rather than rejecting the search
+     * itself: never the case when searches via POST are explicitly configured.
+     *
+     * @param response response to a search sent via POST
+     * @return whether the search shall be sent again via GET
+     */
+    protected boolean isSearchWithPostUnsupported(final SCIMResponse response) {
+        return !"POST".equalsIgnoreCase(config.getSearchMethod())
+                && SEARCH_WITH_POST_UNSUPPORTED.contains(response.getStatus());
+    }
+
+    /**
+     * @param params search parameters
+     * @return length of the query string, as sent via GET
+     */
+    protected int getQueryLength(final Map<String, String> params) {
+        // spaces are sent as %20
+        return params.entrySet().stream().
+                mapToInt(param -> URLEncoder.encode(param.getKey(), StandardCharsets.UTF_8).length() + 1
+                + URLEncoder.encode(param.getValue(), StandardCharsets.UTF_8).replace("+", "%20").length()).
+                sum()
+                + Math.max(0, params.size() - 1);
+    }
+
+    /**
+     * @return schema of search requests sent via POST to {@code .search}, or {@code null} if not supported
+     */
+    protected String getSearchRequestSchema() {
+        return SEARCH_REQUEST_SCHEMA;
+    }
+
+    /**
+     * Converts the given search parameters into a search request, to be sent via POST to {@code .search}.
+     *
+     * @param params search parameters
+     * @return search request payload
+     */
+    protected String buildSearchRequest(final Map<String, String> params) {
+        ObjectNode request = SCIMUtils.MAPPER.createObjectNode();
+        request.putArray("schemas").add(getSearchRequestSchema());
+        params.forEach((name, value) -> {
+            switch (name) {
+                case "startIndex":
+                case "count":
+                    request.put(name, Integer.parseInt(value));
+                    break;
+
+                case SCIMAttributeProjection.ATTRIBUTES:
+                case SCIMAttributeProjection.EXCLUDED_ATTRIBUTES:
+                    ArrayNode names = request.putArray(name);
+                    Arrays.stream(value.split(",")).forEach(names::add);
+                    break;
+
+                default:
+                    request.put(name, value);
+            }
+        });
+        return request.toString();
+    }
+
+    /**
+     * Fills the group reference cache with a single scan of all groups, only reading id and displayName if attributes
+     * can be requested on search.
+     */
+    protected void prewarmGroupReferences() {
+        LOG.ok("Pre-warming group reference cache");
+
+        Map<String, String> params = new HashMap<>();
+        if (config.getRequestAttributesOnSearch()) {
+            params.put(GROUP_REFERENCE_PROJECTION.getParameter(), GROUP_REFERENCE_PROJECTION.getValue());
+        }
+        Predicate<GT> handler = group -> {
+            groupReferences.put(group.getId(), buildGroupReference(group.getId(), group.getDisplayName()));
+            return true;
+        };
+
+        try {
+            if (settings.getSearchPageSize() > 0) {
+                doIteratePages(startIndex -> collectPage(pageHandler -> {
+                    Map<String, String> pageParams = new HashMap<>(params);
+                    pageParams.put("startIndex", String.valueOf(startIndex));
+                    pageParams.put("count", String.valueOf(settings.getSearchPageSize()));
+                    return doSearchGroups(pageParams, pageHandler);
+                }), handler);
+            } else {
+                doSearchGroups(params, handler);
+            }
+        } catch (Exception e) {
+            LOG.error(e, "While pre-warming group reference cache, groups will be read on demand");
+        }
+    }
+
+    @Override
+    public PagedResults<GT> getAllGroups(final Integer startIndex, final Integer count) {
         Map<String, String> params = new HashMap<>();
         params.put("startIndex", String.valueOf(startIndex));
         if (count != null) {
             params.put("count", String.valueOf(count));
         }
+        return doGetAllGroups(params);
+    }
+
+    @Override
+    public List<GT> getAllGroups() {
+        return doGetAllGroups(Collections.emptyMap()).getResources();
+    }
+
+    @Override
+    public List<GT> getAllGroups(final String filterQuery) {
+        Map<String, String> params = new HashMap<>();
         params.put("filter", filterQuery);
-        WebClient webClient = getWebclient("Groups", params);
-        return doGetAllGroups(webClient);
+        return doGetAllGroups(params).getResources();
     }
 
-    protected PagedResults<GT> doGetAllGroups(final WebClient webClient) {
-        PagedResults<GT> pagedResults = null;
-        JsonNode node = doGet(webClient);
-        if (node == null) {
-            SCIMUtils.handleGeneralError("While retrieving Groups from service");
-        }
+    public PagedResults<GT> getAllGroups(final String filterQuery, final Integer startIndex, final Integer count) {
 
-        try {
-            pagedResults = deserializeGroupPagedResults(node.toString());
-        } catch (IOException ex) {
-            LOG.error(ex, "While converting from JSON to Users");
+        Map<String, String> params = new HashMap<>();
+        params.put("startIndex", String.valueOf(startIndex));
+        if (count != null) {
+            params.put("count", String.valueOf(count));
         }
+        params.put("filter", filterQuery);
+        return doGetAllGroups(params);
+    }
+
+    protected PagedResults<GT> doGetAllGroups(final Map<String, String> params) {
+        return collectPage(handler -> doSearchGroups(params, handler));
+    }
 
-        if (pagedResults == null) {
-            SCIMUtils.handleGeneralError("While retrieving Groups from service");
+    @Override
+    public void getAllGroups(final String filter, final Predicate<GT> handler) {
+        if (settings.getSearchPageSize() > 0) {
+            doIteratePages(startIndex -> collectPage(pageHandler -> getAllGroups(
+                    filter, startIndex, settings.getSearchPageSize(), pageHandler)), handler);
+        } else {
+            Map<String, String> params = new HashMap<>();
+            Optional.ofNullable(filter).ifPresent(f -> params.put("filter", f));
+            doSearchGroups(params, handler);
         }
+    }
 
-        return pagedResults;
+    @Override
+    public PagedResults<GT> getAllGroups(
+            final String filter,
+            final Integer startIndex,
+            final Integer count,
+            final Predicate<GT> handler) {
+
+        Map<String, String> params = new HashMap<>();
+        params.put("startIndex", String.valueOf(startIndex));
+        if (count != null) {
+            params.put("count", String.valueOf(count));
+        }
+        Optional.ofNullable(filter).ifPresent(f -> params.put("filter", f));
+        return doSearchGroups(params, handler);
     }
 
     @Override
     public void deleteGroup(final String groupId) {
+        groupReferences.invalidate(groupId);
         doDeleteGroup(groupId,
                 getWebclient("Groups", null).path(SCIMUtils.getPath(groupId, config)));
     }
@@ -822,25 +1603,48 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
     }
 
     protected ERT doGetEntitlement(final WebClient webClient, final Class<ERT> entitlementType) {
-        ERT entitlement = null;
-        JsonNode node = doGet(webClient);
-        if (node == null) {
-            SCIMUtils.handleGeneralError("While retrieving Entitlement from service");
-        }
-
-        try {
-            entitlement = SCIMUtils.MAPPER.readValue(node.toString(), entitlementType);
-        } catch (IOException ex) {
-            LOG.error(ex, "While converting from JSON to Entitlement");
-        }
-
+        ERT entitlement = doGet(webClient, entitlementType);
         if (entitlement == null) {
             SCIMUtils.handleGeneralError("While retrieving Entitlement from service");
         }
 
+        entitlements.put(entitlement.getId(), copyEntitlement(entitlement));
         return entitlement;
     }
 
+    /**
+     * @param entitlement entitlement
+     * @return copy of the given entitlement, as cached instances are never handed out, callers may modify them
+     */
+    @SuppressWarnings("unchecked")
+    protected ERT copyEntitlement(final ERT entitlement) {
+        return SCIMUtils.MAPPER.convertValue(entitlement, (Class<ERT>) entitlement.getClass());
+    }
+
+    /**
+     * Reads the given entitlements, taking them from cache when possible and otherwise with queries filtered by id;
+     * the entitlements not returned by such queries are then read one by one.
+     *
+     * @param entitlementIds entitlement ids
+     * @param entitlementType entitlement type
+     * @return entitlements, in the same order as the given ids
+     */
+    protected List<ERT> doGetEntitlements(final Collection<String> entitlementIds, final Class<ERT> entitlementType) {
+        Map<String, ERT> found = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        entitlementIds.forEach(id -> entitlements.get(id).ifPresentOrElse(
+                entitlement -> found.put(id, copyEntitlement(entitlement)), () -> missing.add(id)));
+
+        doGetByIds("Entitlements", ENTITLEMENT, missing, entitlementType, null, null, id -> doGetEntitlement(
+                getWebclient("Entitlements", null).path(SCIMUtils.getPath(id, config)), entitlementType)).
+                forEach((id, entitlement) -> {
+                    found.put(id, entitlement);
+                    entitlements.put(entitlement.getId(), copyEntitlement(entitlement));
+                });
+
+        return entitlementIds.stream().map(found::get).collect(Collectors.toList());
+    }
+
     protected void doCreate(final GT group, final WebClient webClient) {
         LOG.ok("CREATE: {0}", webClient.getCurrentURI());
 
@@ -849,17 +1653,17 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
 
             LOG.ok("CREATE payload is {0}: ", payload);
 
-            Response response = executeAndRetry(wc -> wc.post(payload), webClient, 0);
+            SCIMResponse response = executeAndRetry(webClient, "POST", payload, 0);
 
-            String responseAsString = checkServiceErrors(response);
+            checkServiceStatus(response);
             String value = SCIMAttributeUtils.ATTRIBUTE_ID;
-            JsonNode responseObj = SCIMUtils.MAPPER.readTree(responseAsString);
-            if (responseObj.hasNonNull(value)) {
+            JsonNode responseObj = readEntityTree(response);
+            if (responseObj != null && responseObj.hasNonNull(value)) {
                 group.setId(responseObj.get(value).textValue());
             } else {
-                LOG.error("CREATE payload {0} error {1}", payload, responseAsString);
+                LOG.error("CREATE payload {0} error {1}", payload, responseObj);
                 SCIMUtils.handleGeneralError(
-                        "While getting " + value + " value for created Group - Response : " + responseAsString);
+                        "While getting " + value + " value for created Group - Response : " + responseObj);
             }
         } catch (IOException ex) {
             LOG.error(ex, "Unable to create entity");
@@ -877,8 +1681,9 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
             SCIMUtils.handleGeneralError("Missing required group id attribute for update");
         }
 
+        groupReferences.invalidate(group.getId());
         GT updated = null;
-        JsonNode node = config.getUpdateGroupMethod().equalsIgnoreCase("PATCH") && patch != null
+        JsonNode node = settings.getUpdateGroupMethod().equalsIgnoreCase("PATCH") && patch != null
                 ? doUpdatePatch(patch, replaceAttributes,
                         getWebclient("Groups", null).path(SCIMUtils.getPath(group.getId(), config)))
                 : doUpdate(group, getWebclient("Groups", null).path(
@@ -888,7 +1693,7 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
         }
 
         try {
-            updated = SCIMUtils.MAPPER.readValue(node.toString(), groupType);
+            updated = SCIMUtils.reader(groupType).readValue(node);
         } catch (IOException ex) {
             LOG.error(ex, "While converting from JSON to Group");
         }
@@ -897,13 +1702,14 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
             SCIMUtils.handleGeneralError("While retrieving group from service after update");
         }
 
+        groupReferences.put(updated.getId(), buildGroupReference(updated.getId(), updated.getDisplayName()));
         return updated;
     }
 
     protected JsonNode doUpdate(final GT group, final WebClient webClient) {
         LOG.ok("UPDATE: {0}", webClient.getCurrentURI());
         JsonNode result = null;
-        Response response;
+        SCIMResponse response;
         String payload;
 
         try {
@@ -912,13 +1718,14 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
 
             LOG.ok("UPDATE payload is {0}: ", payload);
 
-            response = executeAndRetry(wc -> wc.put(payload), webClient, 0);
+            response = executeAndRetry(webClient, "PUT", payload, 0);
 
-            String responseEntity = checkServiceErrors(response);
+            checkServiceStatus(response);
+            result = readEntityTree(response);
             // some servers like Salesforce return empty response on group update with PUT, thus  a re-read is needed
-            result = StringUtil.isNotBlank(responseEntity) ? SCIMUtils.MAPPER.readTree(responseEntity)
-                    : doGet(getWebclient("Groups", null).path(
-                            SCIMUtils.getPath(group.getId(), config)));
+            if (result == null) {
+                result = doGet(getWebclient("Groups", null).path(SCIMUtils.getPath(group.getId(), config)));
+            }
             checkServiceResultErrors(result, response);
         } catch (IOException ex) {
             LOG.error(ex, "Unable to update entity");
@@ -930,33 +1737,403 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
 
     protected void doDeleteGroup(final String groupId, final WebClient webClient) {
         LOG.ok("DELETE Group: {0}", webClient.getCurrentURI());
-        int status = executeAndRetry(WebClient::delete, webClient, 0).getStatus();
-        if (status != Status.NO_CONTENT.getStatusCode() && status != Status.OK.getStatusCode()) {
-            throw new NoSuchEntityException(groupId);
+        checkDeleted(groupId, executeAndRetry(webClient, "DELETE", null, 0));
+    }
+
+    @Override
+    public SCIMServiceProviderConfig getServiceProviderConfig() {
+        return SCIMServiceProviderConfigCache.get(config, this::doGetServiceProviderConfig).orElse(null);
+    }
+
+    protected String getServiceProviderConfigPath() {
+        return "ServiceProviderConfig";
+    }
+
+    protected SCIMServiceProviderConfig doGetServiceProviderConfig() {
+        SCIMServiceProviderConfig serviceProviderConfig =
+                doGet(getWebclient(getServiceProviderConfigPath(), null), SCIMServiceProviderConfig.class);
+        if (serviceProviderConfig == null) {
+            SCIMUtils.handleGeneralError("While reading " + getServiceProviderConfigPath());
+        }
+        return serviceProviderConfig;
+    }
+
+    @Override
+    public boolean isBulkEnabled() {
+        return settings.isBulkEnabled();
+    }
+
+    @Override
+    public SCIMServiceSettings getSettings() {
+        return settings;
+    }
+
+    @Override
+    public void restrictSettings(final SCIMServiceProviderConfig spc) {
+        settings = settings.restrictTo(spc);
+        LOG.ok("Settings restricted after {0}: {1}", spc, settings);
+    }
+
+    @Override
+    public SCIMBulk<UT, GT, P> newBulk() {
+        return new SCIMBulk<>(this);
+    }
+
+    protected String getBulkRequestSchema() {
+        return BULK_REQUEST_SCHEMA;
+    }
+
+    protected JsonNode doBulk(final String payload) {
+        WebClient webClient = getWebclient("Bulk", null);
+        LOG.ok("BULK: {0}", webClient.getCurrentURI());
+
+        JsonNode result = null;
+        try {
+            SCIMResponse response = executeAndRetry(webClient, "POST", payload, 0);
+            checkServiceStatus(response);
+            result = readEntityTree(response);
+        } catch (IOException ex) {
+            LOG.error(ex, "Error while sending Bulk request");
+            SCIMUtils.handleGeneralError("While sending Bulk request", ex);
+        }
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<UT> getUserAsync(final String userId, final SCIMAttributeProjection projection) {
+        return executeAsync(newWebclient("Users", userId, projection), "GET", null,
+                "While retrieving User from service", response -> {
+                    checkServiceStatus(response);
+                    UT user = readEntity(response, getUserType(), getUserPostProcessor());
+                    if (user == null) {
+                        SCIMUtils.handleGeneralError("While retrieving User from service");
+                    }
+                    return user;
+                });
+    }
+
+    @Override
+    public CompletableFuture<PagedResults<UT>> getAllUsersAsync(
+            final String filter,
+            final Integer startIndex,
+            final Integer count,
+            final Set<String> attributesToGet) {
+
+        return doSearchAsync("Users", buildUserSearchParams(filter, startIndex, count, attributesToGet),
+                resourceReader(getUserType(), getUserPostProcessor()));
+    }
+
+    @Override
+    public CompletableFuture<UT> createUserAsync(final UT user) {
+        String payload;
+        try {
+            payload = buildUserPayload(user);
+        } catch (JsonProcessingException ex) {
+            LOG.error(ex, "Error while creating entity");
+            return CompletableFuture.failedFuture(new ConnectorException("While creating User", ex));
+        }
+
+        LOG.ok("CREATE payload is {0}: ", payload);
+        return executeAsync(newWebclient("Users", null), "POST", payload, "While creating User", response -> {
+            readCreatedId(user, payload, response);
+            return user;
+        });
+    }
+
+    @Override
+    public CompletableFuture<UT> updateUserAsync(final String userId, final P userPatch) {
+        return doUpdatePatchAsync("Users", userId, userPatch).thenApply(node -> readNode(
+                node, getUserType(), "While retrieving user from service after update"));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteUserAsync(final String userId) {
+        return executeAsync(newWebclient("Users", userId, null), "DELETE", null, "While deleting User", response -> {
+            checkDeleted(userId, response);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<GT> getGroupAsync(final String groupId, final SCIMAttributeProjection projection) {
+        return executeAsync(newWebclient("Groups", groupId, projection), "GET", null,
+                "While retrieving group from service", response -> {
+                    checkServiceStatus(response);
+                    GT group = readEntity(response, getGroupType());
+                    if (group == null) {
+                        SCIMUtils.handleGeneralError("While retrieving group from service");
+                    }
+                    // projected reads might lack the displayName
+                    if (projection == null) {
+                        groupReferences.put(
+                                group.getId(), buildGroupReference(group.getId(), group.getDisplayName()));
+                    }
+                    return group;
+                });
+    }
+
+    @Override
+    public CompletableFuture<PagedResults<GT>> getAllGroupsAsync(
+            final String filter,
+            final Integer startIndex,
+            final Integer count) {
+
+        Map<String, String> params = new HashMap<>();
+        Optional.ofNullable(startIndex).ifPresent(s -> params.put("startIndex", String.valueOf(s)));
+        Optional.ofNullable(count).ifPresent(c -> params.put("count", String.valueOf(c)));
+        Optional.ofNullable(filter).ifPresent(f -> params.put("filter", f));
+        return doSearchAsync("Groups", params, resourceReader(getGroupType(), null));
+    }
+
+    @Override
+    public CompletableFuture<GT> updateGroupAsync(final String groupId, final P groupPatch) {
+        groupReferences.invalidate(groupId);
+        return doUpdatePatchAsync("Groups", groupId, groupPatch).thenApply(node -> {
+            GT updated = readNode(node, getGroupType(), "While retrieving group from service after update");
+            groupReferences.put(updated.getId(), buildGroupReference(updated.getId(), updated.getDisplayName()));
+            return updated;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteGroupAsync(final String groupId) {
+        groupReferences.invalidate(groupId);
+        return executeAsync(newWebclient("Groups", groupId, null), "DELETE", null, "While deleting Group",
+                response -> {
+                    checkDeleted(groupId, response);
+                    return null;
+                });
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #doSearch(String, Map, ResourceReader, Predicate)}, collecting the
+     * elements of the list response.
+     *
+     * @param <R> element type
+     * @param endpoint resource endpoint
+     * @param params search parameters
+     * @param reader reads one element, starting at the current token of the given parser
+     * @return list response
+     */
+    protected <R> CompletableFuture<PagedResults<R>> doSearchAsync(
+            final String endpoint,
+            final Map<String, String> params,
+            final ResourceReader<R> reader) {
+
+        if (!isSearchWithPost(params)) {
+            return doSearchPageAsync(newWebclient(endpoint, params), null, reader);
         }
+
+        WebClient webClient = newWebclient(endpoint + "/.search", null);
+        LOG.ok("POST (async): {0}", webClient.getCurrentURI());
+
+        return executeAsync(webClient, "POST", buildSearchRequest(params), 0).thenCompose(response -> {
+            if (isSearchWithPostUnsupported(response)) {
+                response.close();
+                LOG.warn("Search via POST on {0} rejected with status {1}, using GET from now on",
+                        endpoint, response.getStatus());
+                searchWithPostFailed.set(true);
+                return doSearchPageAsync(newWebclient(endpoint, params), null, reader);
+            }
+            return readAsync(response, "While reading list response from SCIM API",
+                    listResponse -> collectPage(handler -> readList(listResponse, reader, handler)));
+        });
+    }
+
+    private <R> CompletableFuture<PagedResults<R>> doSearchPageAsync(
+            final WebClient webClient,
+            final String searchRequest,
+            final ResourceReader<R> reader) {
+
+        return executeAsync(webClient, searchRequest == null ? "GET" : "POST", searchRequest,
+                "While reading list response from SCIM API",
+                response -> collectPage(handler -> readList(response, reader, handler)));
     }
 
-    protected Response executeAndRetry(
-            final Function<WebClient, Response> action,
+    /**
+     * Sends the given patch via PATCH, then reads the patched resource, reading it again when not returned.
+     *
+     * @param endpoint resource endpoint
+     * @param id resource id
+     * @param patch patch
+     * @return patched resource
+     */
+    protected CompletableFuture<JsonNode> doUpdatePatchAsync(final String endpoint, final String id, final P patch) {
+        String payload;
+        try {
+            payload = SCIMUtils.MAPPER.writeValueAsString(patch);
+        } catch (JsonProcessingException ex) {
+            LOG.error(ex, "Error while updating entity");
+            return CompletableFuture.failedFuture(new ConnectorException("While updating with patch", ex));
+        }
+
+        LOG.ok("UPDATE PATCH payload is {0}: ", payload);
+        return executeAsync(newWebclient(endpoint, id, null), "PATCH", payload, "While updating with patch",
+                response -> {
+                    checkServiceStatus(response);
+                    // some providers, like AWS, return no result, thus a new read is needed
+                    return Status.NO_CONTENT.getStatusCode() == response.getStatus()
+                            ? null
+                            : readEntityTree(response);
+                }).thenCompose(node -> node == null
+                ? executeAsync(newWebclient(endpoint, id, null), "GET", null, "While reading after update patch",
+                        response -> {
+                            checkServiceStatus(response);
+                            return readEntityTree(response);
+                        })
+                : CompletableFuture.completedFuture(node)).
+                thenApply(node -> {
+                    if (node == null) {
+                        SCIMUtils.handleGeneralError("While running update patch on service");
+                    }
+                    checkServiceResultErrors(node, null);
+                    return node;
+                });
+    }
+
+    private <R> R readNode(final JsonNode node, final Class<R> resourceType, final String errorMessage) {
+        R resource = null;
+        try {
+            resource = SCIMUtils.reader(resourceType).readValue(node);
+        } catch (IOException ex) {
+            LOG.error(ex, "While converting from JSON to {0}", resourceType.getSimpleName());
+        }
+
+        if (resource == null) {
+            SCIMUtils.handleGeneralError(errorMessage);
+        }
+        return resource;
+    }
+
+    /**
+     * Sends the given request without waiting for its response, which is then read by the service executor, so that
+     * parsing and mapping never hold the HTTP client threads.
+     *
+     * @param <R> result type
+     * @param webClient client, already configured for the request
+     * @param method HTTP method
+     * @param payload request payload, or {@code null} if none
+     * @param errorMessage error message, when the response could not be read
+     * @param reader reads the response
+     * @return result of the request
+     */
+    protected <R> CompletableFuture<R> executeAsync(
+            final WebClient webClient,
+            final String method,
+            final String payload,
+            final String errorMessage,
+            final ResponseReader<R> reader) {
+
+        LOG.ok("{0} (async): {1}", method, webClient.getCurrentURI());
+
+        return executeAsync(webClient, method, payload, 0).
+                thenCompose(response -> readAsync(response, errorMessage, reader));
+    }
+
+    private <R> CompletableFuture<R> readAsync(
+            final SCIMResponse response,
+            final String errorMessage,
+            final ResponseReader<R> reader) {
+
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return reader.read(response);
+                } catch (IOException ex) {
+                    SCIMUtils.handleGeneralError(errorMessage, ex);
+                    return null;
+                } finally {
+                    response.close();
+                }
+            }, getExecutor());
+        } catch (ConnectorException | RejectedExecutionException e) {
+            // disposed meanwhile: the response will never be read
+            response.close();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #executeAndRetry(WebClient, String, String, int)}.
+     *
+     * @param webClient client, already configured for the request
+     * @param method HTTP method
+     * @param payload request payload, or {@code null} if none
+     * @param retry retry count
+     * @return response
+     */
+    protected CompletableFuture<SCIMResponse> executeAsync(
+            final WebClient webClient,
+            final String method,
+            final String payload,
+            final int retry) {
+
+        if (tokenManager == null) {
+            return transport.executeAsync(webClient, method, payload);
+        }
+
+        // getting or refreshing the token might call the token endpoint, which must block neither the calling
+        // thread nor the HTTP client threads
+        return supplyAsync(tokenManager::getToken).thenCompose(token -> transport.executeAsync(
+                webClient.replaceHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token), method, payload).
+                thenCompose(response -> {
+                    if (response.getStatus() == Status.UNAUTHORIZED.getStatusCode()) {
+                        if (retry < MAX_RETRIES) {
+                            LOG.ok("Refreshing bearer token after UNAUTHORIZED response, try #{0}", retry);
+                            response.close();
+                            // concurrent requests rejected with the same token share a single refresh
+                            return supplyAsync(() -> tokenManager.refresh(token)).
+                                    thenCompose(refreshed -> executeAsync(webClient, method, payload, retry + 1));
+                        }
+
+                        LOG.error("Max retries {0} reached after unauthorized error", MAX_RETRIES);
+                    }
+                    return CompletableFuture.completedFuture(response);
+                }));
+    }
+
+    private <T> CompletableFuture<T> supplyAsync(final Supplier<T> supplier) {
+        try {
+            return CompletableFuture.supplyAsync(supplier, getExecutor());
+        } catch (ConnectorException | RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Sends the given request through the configured transport, refreshing the bearer token and sending the request
+     * again when rejected as unauthorized.
+     *
+     * @param webClient client, already configured for the request
+     * @param method HTTP method
+     * @param payload request payload, or {@code null} if none
+     * @param retry retry count
+     * @return response
+     */
+    protected SCIMResponse executeAndRetry(
             final WebClient webClient,
+            final String method,
+            final String payload,
             final int retry) {
 
-        if (checkBearerToken()) {
-            Response response = action.apply(
-                    webClient.replaceHeader(HttpHeaders.AUTHORIZATION, "Bearer " + config.getBearerToken()));
+        if (tokenManager != null) {
+            String token = tokenManager.getToken();
+            SCIMResponse response = transport.execute(
+                    webClient.replaceHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token), method, payload);
             if (response.getStatus() == Status.UNAUTHORIZED.getStatusCode()) {
                 if (retry < MAX_RETRIES) {
                     LOG.ok("Refreshing bearer token after UNAUTHORIZED response, try #{0}", retry);
-                    // regenerate the token and update configuration
-                    getBearerToken(true);
-                    return executeAndRetry(action, webClient, retry + 1);
+                    response.close();
+                    // concurrent requests rejected with the same token share a single refresh
+                    tokenManager.refresh(token);
+                    return executeAndRetry(webClient, method, payload, retry + 1);
                 }
 
                 LOG.error("Max retries {0} reached after unauthorized error", MAX_RETRIES);
             }
             return response;
         } else {
-            return action.apply(webClient);
+            return transport.execute(webClient, method, payload);
         }
     }
 
@@ -969,8 +2146,8 @@ public abstract class AbstractSCIMService<UT extends SCIMUser<
                 && StringUtil.isNotBlank(config.getAccessTokenNodeId()));
     }
 
-    protected abstract PagedResults<UT> deserializeUserPagedResults(String node) throws JsonProcessingException;
+    protected abstract Class<UT> getUserType();
 
-    protected abstract PagedResults<GT> deserializeGroupPagedResults(String node) throws JsonProcessingException;
+    protected abstract Class<GT> getGroupType();
 
 }
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import net.tirasa.connid.bundles.scim.common.dto.PagedResults;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMBaseMeta;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMBasePatch;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMEnterpriseUser;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMGroup;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMUser;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeProjection;
+
+/**
+ * Non-blocking counterpart of {@link SCIMService}: requests are sent without waiting for their responses, which are
+ * then handled on the HTTP client threads, so that several requests can be pipelined without holding a thread each.
+ * Futures complete exceptionally with the same exceptions thrown by the matching blocking methods.
+ *
+ * @param <UT> User type
+ * @param <GT> Group type
+ * @param <P> patch type
+ */
+public interface AsyncSCIMService<UT extends SCIMUser<? extends SCIMBaseMeta, ? extends SCIMEnterpriseUser<?>>,
+        GT extends SCIMGroup<? extends SCIMBaseMeta>, P extends SCIMBasePatch> {
+
+    /**
+     * @param userId User id
+     * @param projection attributes to be returned, or {@code null} for the whole User
+     * @return User with the given id, only holding the projected attributes
+     */
+    CompletableFuture<UT> getUserAsync(String userId, SCIMAttributeProjection projection);
+
+    /**
+     * @param filter SCIM filter expression, or {@code null} for all Users
+     * @param startIndex start index, or {@code null} for the server default
+     * @param count page size, or {@code null} for the server default
+     * @param attributesToGet attributes to get
+     * @return page of Users
+     */
+    CompletableFuture<PagedResults<UT>> getAllUsersAsync(
+            String filter, Integer startIndex, Integer count, Set<String> attributesToGet);
+
+    /**
+     * @param user User to create
+     * @return the given User, with the id assigned by the SCIM server
+     */
+    CompletableFuture<UT> createUserAsync(UT user);
+
+    /**
+     * @param userId User id
+     * @param userPatch patch, sent via PATCH
+     * @return updated User
+     */
+    CompletableFuture<UT> updateUserAsync(String userId, P userPatch);
+
+    CompletableFuture<Void> deleteUserAsync(String userId);
+
+    /**
+     * @param groupId Group id
+     * @param projection attributes to be returned, or {@code null} for the whole Group
+     * @return Group with the given id, only holding the projected attributes
+     */
+    CompletableFuture<GT> getGroupAsync(String groupId, SCIMAttributeProjection projection);
+
+    /**
+     * @param filter SCIM filter expression, or {@code null} for all Groups
+     * @param startIndex start index, or {@code null} for the server default
+     * @param count page size, or {@code null} for the server default
+     * @return page of Groups
+     */
+    CompletableFuture<PagedResults<GT>> getAllGroupsAsync(String filter, Integer startIndex, Integer count);
+
+    /**
+     * @param groupId Group id
+     * @param groupPatch patch, sent via PATCH
+     * @return updated Group
+     */
+    CompletableFuture<GT> updateGroupAsync(String groupId, P groupPatch);
+
+    CompletableFuture<Void> deleteGroupAsync(String groupId);
+}
@@ -0,0 +1,292 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import net.tirasa.connid.bundles.scim.common.dto.PagedResults;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+/**
+ * Iterates over all the resources of a search by walking {@code startIndex} / {@code count} until
+ * {@code totalResults} is reached; when {@code totalResults} is missing, or lower than the resources returned so far,
+ * until an empty page or a page shorter than the first one.
+ * Pages are fetched in background: while the caller handles page N, page N+1 is already being fetched; the number of
+ * fetched pages waiting to be handled is bounded.
+ * When concurrency is greater than 1, once the first page has returned a reliable {@code totalResults} the remaining
+ * pages are fetched in parallel by random access through {@code startIndex}, and handed over either in order or as
+ * soon as they are available.
+ *
+ * @param <R> resource type
+ */
+public class PagedResourcesIterator<R> implements Iterator<R>, AutoCloseable {
+
+    private static final Log LOG = Log.getLog(PagedResourcesIterator.class);
+
+    private static final class Page<R> {
+
+        private final List<R> resources;
+
+        private final boolean last;
+
+        private final RuntimeException error;
+
+        Page(final List<R> resources, final boolean last, final RuntimeException error) {
+            this.resources = resources;
+            this.last = last;
+            this.error = error;
+        }
+    }
+
+    private final IntFunction<PagedResults<R>> pageFetcher;
+
+    private final int concurrency;
+
+    private final boolean ordered;
+
+    private final ExecutorService executor;
+
+    private final BlockingQueue<Page<R>> pages;
+
+    private final Future<?> producer;
+
+    private volatile boolean closed = false;
+
+    private boolean lastPut = false;
+
+    private boolean unreliableTotalResultsLogged = false;
+
+    private Iterator<R> current = Collections.emptyIterator();
+
+    private boolean lastTaken = false;
+
+    /**
+     * @param pageFetcher fetches the page starting at the given (1-based) index
+     * @param maxPagesInFlight maximum number of fetched pages waiting to be handled
+     * @param concurrency maximum number of pages fetched at the same time
+     * @param ordered whether pages must be handed over in order
+     * @param executor executor running the background fetches
+     */
+    public PagedResourcesIterator(
+            final IntFunction<PagedResults<R>> pageFetcher,
+            final int maxPagesInFlight,
+            final int concurrency,
+            final boolean ordered,
+            final ExecutorService executor) {
+
+        this.pageFetcher = pageFetcher;
+        this.concurrency = concurrency;
+        this.ordered = ordered;
+        this.executor = executor;
+        this.pages = new ArrayBlockingQueue<>(maxPagesInFlight);
+        this.producer = executor.submit(this::fetchPages);
+    }
+
+    private PagedResults<R> fetchPage(final int startIndex) {
+        PagedResults<R> page = pageFetcher.apply(startIndex);
+        LOG.ok("Fetched page starting at {0} with {1} resources out of {2}",
+                startIndex, page.getResources().size(), page.getTotalResults());
+        return page;
+    }
+
+    /**
+     * @param startIndex index of the first resource of the page
+     * @param page fetched page
+     * @return whether the page reports a {@code totalResults} covering at least the resources returned so far
+     */
+    private boolean isTotalResultsReliable(final int startIndex, final PagedResults<R> page) {
+        int returnedSoFar = startIndex - 1 + page.getResources().size();
+        boolean reliable = page.getTotalResults() > 0 && page.getTotalResults() >= returnedSoFar;
+        if (!reliable && !unreliableTotalResultsLogged) {
+            unreliableTotalResultsLogged = true;
+            LOG.warn("totalResults {0} is missing or lower than the {1} resources returned so far: "
+                    + "fetching pages until an empty or short one", page.getTotalResults(), returnedSoFar);
+        }
+        return reliable;
+    }
+
+    private void fetchPages() {
+        RuntimeException failure = null;
+        try {
+            PagedResults<R> page = fetchPage(1);
+            int returned = page.getResources().size();
+            // some servers ignore count and return everything, others cap the page size to their maxResults:
+            // totalResults tells when to stop, unless missing or wrong
+            boolean reliable = returned == 0 || isTotalResultsReliable(1, page);
+            boolean last = returned == 0 || (reliable && returned >= page.getTotalResults());
+            put(new Page<>(page.getResources(), last, null));
+
+            if (!last) {
+                if (concurrency > 1 && reliable) {
+                    fetchPagesInParallel(returned, page.getTotalResults());
+                } else {
+                    if (concurrency > 1) {
+                        LOG.ok("No reliable totalResults to fetch pages in parallel, fetching them sequentially");
+                    }
+                    fetchPagesSequentially(1 + returned, returned);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            failure = e;
+        } catch (Error e) {
+            failure = new ConnectorException("While fetching search pages", e);
+            throw e;
+        } finally {
+            // whatever happened, the consumer must not be left waiting for a page that will never come
+            if (!lastPut && !closed) {
+                error(failure == null
+                        ? new ConnectorException("Search pages fetching was interrupted")
+                        : failure);
+            }
+        }
+    }
+
+    private void fetchPagesSequentially(final int firstStartIndex, final int pageSize) throws InterruptedException {
+        int startIndex = firstStartIndex;
+        boolean last = false;
+        while (!closed && !last) {
+            PagedResults<R> page = fetchPage(startIndex);
+            int returned = page.getResources().size();
+            last = returned == 0 || (isTotalResultsReliable(startIndex, page)
+                    ? startIndex - 1 + returned >= page.getTotalResults()
+                    : returned < pageSize);
+
+            put(new Page<>(page.getResources(), last, null));
+            startIndex += returned;
+        }
+    }
+
+    private void fetchPagesInParallel(final int pageSize, final int totalResults) throws InterruptedException {
+        List<Integer> startIndexes = new ArrayList<>();
+        for (int startIndex = 1 + pageSize; startIndex <= totalResults; startIndex += pageSize) {
+            startIndexes.add(startIndex);
+        }
+        LOG.ok("Fetching {0} remaining pages with concurrency {1}", startIndexes.size(), concurrency);
+
+        // in order, pages are awaited in submission order: a completion queue would only retain them all
+        CompletionService<PagedResults<R>> completion = ordered ? null : new ExecutorCompletionService<>(executor);
+        Deque<Future<PagedResults<R>>> inFlight = new ArrayDeque<>();
+        int next = 0;
+        int delivered = 0;
+        try {
+            while (!closed && delivered < startIndexes.size()) {
+                while (inFlight.size() < concurrency && next < startIndexes.size()) {
+                    int startIndex = startIndexes.get(next++);
+                    Callable<PagedResults<R>> fetch = () -> fetchPage(startIndex);
+                    inFlight.add(ordered ? executor.submit(fetch) : completion.submit(fetch));
+                }
+
+                // a page leaves the in-flight set only once handed over, thus bounding the fetched pages
+                Future<PagedResults<R>> done;
+                if (ordered) {
+                    done = inFlight.poll();
+                } else {
+                    done = completion.take();
+                    inFlight.remove(done);
+                }
+
+                PagedResults<R> page;
+                try {
+                    page = done.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new ConnectorException(e.getCause());
+                }
+
+                delivered++;
+                put(new Page<>(page.getResources(), delivered == startIndexes.size(), null));
+            }
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private void put(final Page<R> page) throws InterruptedException {
+        pages.put(page);
+        lastPut = page.last;
+    }
+
+    private void error(final RuntimeException e) {
+        // an interrupt must not prevent the terminal page from being handed over, unless the consumer is gone
+        boolean interrupted = Thread.interrupted();
+        try {
+            put(new Page<>(Collections.emptyList(), true, e));
+        } catch (InterruptedException ie) {
+            interrupted = true;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext() && !lastTaken) {
+            Page<R> page;
+            try {
+                page = pages.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new ConnectorException("Interrupted while waiting for next search page", e);
+            }
+
+            if (page.error != null) {
+                close();
+                throw page.error;
+            }
+            current = page.resources.iterator();
+            lastTaken = page.last;
+        }
+        return current.hasNext();
+    }
+
+    @Override
+    public R next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            producer.cancel(true);
+            pages.clear();
+        }
+    }
+}
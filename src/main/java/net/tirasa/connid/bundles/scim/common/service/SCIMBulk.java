@@ -0,0 +1,393 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.ws.rs.core.Response.Status;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMBaseMeta;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMBasePatch;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMEnterpriseUser;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMGroup;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMUser;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.AlreadyExistsException;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+/**
+ * Buffers create, update and delete operations and sends them through the SCIM /Bulk endpoint, in as few requests
+ * as allowed by the configured max operations and payload size.
+ * Operations can reference resources created by previous operations via {@link Operation#getReference()}: references
+ * are resolved by the server within the same request, and by the connector across requests.
+ * Not thread safe: meant to be used for the duration of a single connector operation.
+ *
+ * @param <UT> User type
+ * @param <GT> Group type
+ * @param <P> Patch type
+ */
+public class SCIMBulk<UT extends SCIMUser<? extends SCIMBaseMeta, ? extends SCIMEnterpriseUser<?>>,
+        GT extends SCIMGroup<? extends SCIMBaseMeta>, P extends SCIMBasePatch> {
+
+    private static final Log LOG = Log.getLog(SCIMBulk.class);
+
+    public static final String BULK_ID_PREFIX = "bulkId:";
+
+    private static final String OPERATIONS = "Operations";
+
+    private static final Pattern REFERENCE = Pattern.compile("\"" + BULK_ID_PREFIX + "([^\"]+)\"");
+
+    // space taken by the request envelope, besides the operations
+    private static final int ENVELOPE_SIZE = 128;
+
+    /**
+     * Operation sent, or to be sent, as part of a Bulk request.
+     */
+    public final class Operation {
+
+        private final String method;
+
+        private final String bulkId = UUID.randomUUID().toString();
+
+        private final String path;
+
+        private final String data;
+
+        private final Consumer<String> onSuccess;
+
+        private String id;
+
+        private RuntimeException error;
+
+        private boolean done;
+
+        private Operation(
+                final String method,
+                final String path,
+                final String id,
+                final String data,
+                final Consumer<String> onSuccess) {
+
+            this.method = method;
+            this.path = path;
+            this.id = id;
+            this.data = data;
+            this.onSuccess = onSuccess;
+        }
+
+        public String getBulkId() {
+            return bulkId;
+        }
+
+        /**
+         * @return value to use, in other operations, in place of the id of the resource handled by this operation
+         */
+        public String getReference() {
+            return BULK_ID_PREFIX + bulkId;
+        }
+
+        /**
+         * Sends all pending operations if needed, then returns the outcome of this operation.
+         *
+         * @return id of the resource handled by this operation
+         */
+        public String join() {
+            if (!done) {
+                flush();
+            }
+            if (error != null) {
+                throw error;
+            }
+            return id;
+        }
+
+        private void succeed(final String id) {
+            this.id = id;
+            this.done = true;
+            if (onSuccess != null) {
+                onSuccess.accept(id);
+            }
+        }
+
+        private void fail(final RuntimeException error) {
+            this.error = error;
+            this.done = true;
+        }
+    }
+
+    private final AbstractSCIMService<UT, GT, ?, P> service;
+
+    private final List<Operation> pending = new ArrayList<>();
+
+    // ids of the resources handled by operations sent with previous requests, by bulkId
+    private final Map<String, String> resolved = new HashMap<>();
+
+    private final Map<String, RuntimeException> failed = new HashMap<>();
+
+    SCIMBulk(final AbstractSCIMService<UT, GT, ?, P> service) {
+        this.service = service;
+    }
+
+    public Operation createUser(final UT user) {
+        return add("POST", "Users", null, userPayload(user), user::setId);
+    }
+
+    public Operation updateUser(final UT user) {
+        if (StringUtil.isBlank(user.getId())) {
+            SCIMUtils.handleGeneralError("Missing required user id attribute for update");
+        }
+        return add(service.settings.getUpdateUserMethod().equalsIgnoreCase("PATCH") ? "PATCH" : "PUT",
+                "Users", user.getId(), userPayload(user), null);
+    }
+
+    public Operation updateUser(final String userId, final P userPatch) {
+        return add("PATCH", "Users", userId, payload(userPatch), null);
+    }
+
+    public Operation deleteUser(final String userId) {
+        return add("DELETE", "Users", userId, null, null);
+    }
+
+    public Operation createGroup(final GT group) {
+        return add("POST", "Groups", null, payload(group), group::setId);
+    }
+
+    public Operation updateGroup(final GT group) {
+        if (StringUtil.isBlank(group.getId())) {
+            SCIMUtils.handleGeneralError("Missing required group id attribute for update");
+        }
+        return add("PUT", "Groups", group.getId(), payload(group), null);
+    }
+
+    public Operation updateGroup(final String groupId, final P groupPatch) {
+        return add("PATCH", "Groups", groupId, payload(groupPatch), null);
+    }
+
+    public Operation deleteGroup(final String groupId) {
+        return add("DELETE", "Groups", groupId, null, null);
+    }
+
+    private String userPayload(final UT user) {
+        String payload = null;
+        try {
+            payload = service.buildUserPayload(user);
+        } catch (JsonProcessingException e) {
+            SCIMUtils.handleGeneralError("While converting user to node", e);
+        }
+        return payload;
+    }
+
+    private static String payload(final Object resource) {
+        String payload = null;
+        try {
+            payload = SCIMUtils.MAPPER.writeValueAsString(resource);
+        } catch (JsonProcessingException e) {
+            SCIMUtils.handleGeneralError("While building Bulk operation payload", e);
+        }
+        return payload;
+    }
+
+    private Operation add(
+            final String method,
+            final String endpoint,
+            final String id,
+            final String data,
+            final Consumer<String> onSuccess) {
+
+        if ("Groups".equals(endpoint)) {
+            service.groupReferences.invalidate(id);
+        }
+
+        Operation operation = new Operation(
+                method,
+                "/" + endpoint + (id == null ? StringUtil.EMPTY : "/" + SCIMUtils.getPath(id, service.config)),
+                id,
+                data,
+                onSuccess);
+        pending.add(operation);
+        return operation;
+    }
+
+    /**
+     * Sends all pending operations, splitting them in as many Bulk requests as needed.
+     * Failures are reported by each operation, see {@link Operation#join()}.
+     */
+    public void flush() {
+        List<ObjectNode> chunk = new ArrayList<>();
+        List<Operation> chunkOperations = new ArrayList<>();
+        long chunkSize = ENVELOPE_SIZE;
+
+        for (Operation operation : pending) {
+            ObjectNode node = toNode(operation);
+            if (node == null) {
+                continue;
+            }
+
+            long size = node.toString().getBytes(StandardCharsets.UTF_8).length + 1;
+            if (!chunk.isEmpty() && (chunk.size() >= service.settings.getBulkMaxOperations()
+                    || chunkSize + size > service.settings.getBulkMaxPayloadSize())) {
+
+                send(chunk, chunkOperations);
+                chunk = new ArrayList<>();
+                chunkOperations = new ArrayList<>();
+                chunkSize = ENVELOPE_SIZE;
+
+                // references to resources created by the request just sent can now be resolved
+                node = toNode(operation);
+                if (node == null) {
+                    continue;
+                }
+            }
+
+            chunk.add(node);
+            chunkOperations.add(operation);
+            chunkSize += size;
+        }
+        if (!chunk.isEmpty()) {
+            send(chunk, chunkOperations);
+        }
+
+        pending.clear();
+    }
+
+    /**
+     * Builds the Bulk operation node, replacing references to resources created by previous requests; if any of
+     * those failed, the operation fails as well and {@code null} is returned.
+     */
+    private ObjectNode toNode(final Operation operation) {
+        ObjectNode node = SCIMUtils.MAPPER.createObjectNode();
+        node.put("method", operation.method);
+        node.put("bulkId", operation.bulkId);
+        node.put("path", operation.path);
+
+        if (operation.data != null) {
+            StringBuilder data = new StringBuilder();
+            Matcher matcher = REFERENCE.matcher(operation.data);
+            while (matcher.find()) {
+                String bulkId = matcher.group(1);
+                if (failed.containsKey(bulkId)) {
+                    fail(operation, new ConnectorException(
+                            "Bulk operation " + operation.method + " " + operation.path
+                            + " references failed operation " + bulkId, failed.get(bulkId)));
+                    return null;
+                }
+                matcher.appendReplacement(data, Matcher.quoteReplacement(resolved.containsKey(bulkId)
+                        ? SCIMUtils.MAPPER.getNodeFactory().textNode(resolved.get(bulkId)).toString()
+                        : matcher.group()));
+            }
+            matcher.appendTail(data);
+
+            try {
+                node.set("data", SCIMUtils.MAPPER.readTree(data.toString()));
+            } catch (JsonProcessingException e) {
+                SCIMUtils.handleGeneralError("While building Bulk operation payload", e);
+            }
+        }
+        return node;
+    }
+
+    private void send(final List<ObjectNode> chunk, final List<Operation> operations) {
+        ObjectNode request = SCIMUtils.MAPPER.createObjectNode();
+        request.putArray("schemas").add(service.getBulkRequestSchema());
+        request.putArray(OPERATIONS).addAll(chunk);
+
+        LOG.ok("Sending Bulk request with {0} operations", chunk.size());
+
+        JsonNode response;
+        try {
+            response = service.doBulk(request.toString());
+        } catch (RuntimeException e) {
+            LOG.error(e, "While sending Bulk request");
+            operations.forEach(operation -> fail(operation, e));
+            return;
+        }
+
+        Map<String, Operation> byBulkId = new HashMap<>();
+        operations.forEach(operation -> byBulkId.put(operation.bulkId, operation));
+
+        ArrayNode results = response != null && response.get(OPERATIONS) instanceof ArrayNode
+                ? (ArrayNode) response.get(OPERATIONS)
+                : SCIMUtils.MAPPER.createArrayNode();
+        for (int i = 0; i < results.size(); i++) {
+            JsonNode result = results.get(i);
+            // bulkId is echoed back by the server; for operations other than POST, fall back to the position
+            Operation operation = result.hasNonNull("bulkId")
+                    ? byBulkId.remove(result.get("bulkId").asText())
+                    : i < operations.size() ? byBulkId.remove(operations.get(i).bulkId) : null;
+            if (operation != null) {
+                handle(operation, result);
+            }
+        }
+
+        // operations not processed, e.g. after failOnErrors was reached
+        byBulkId.values().forEach(operation -> fail(operation, new ConnectorException(
+                "Bulk operation " + operation.method + " " + operation.path + " was not processed")));
+    }
+
+    private void handle(final Operation operation, final JsonNode result) {
+        JsonNode status = result.get("status");
+        // SCIM 2.0 returns the status code as string, SCIM 1.1 as object
+        int code = status == null
+                ? Status.OK.getStatusCode()
+                : status.isObject() ? status.path("code").asInt() : status.asInt();
+
+        if (code >= 200 && code < 300) {
+            String id = operation.id;
+            if (result.path("response").hasNonNull(SCIMAttributeUtils.ATTRIBUTE_ID)) {
+                id = result.get("response").get(SCIMAttributeUtils.ATTRIBUTE_ID).asText();
+            } else if (result.hasNonNull("location")) {
+                String location = result.get("location").asText();
+                id = location.substring(location.lastIndexOf('/') + 1);
+            }
+
+            if (id == null) {
+                fail(operation, new ConnectorException(
+                        "While getting " + SCIMAttributeUtils.ATTRIBUTE_ID + " value for Bulk operation "
+                        + operation.method + " " + operation.path + " - Response : " + result));
+            } else {
+                resolved.put(operation.bulkId, id);
+                operation.succeed(id);
+            }
+        } else {
+            String message = "Bulk operation " + operation.method + " " + operation.path
+                    + " failed with status " + code + ": " + result;
+            fail(operation, code == Status.NOT_FOUND.getStatusCode()
+                    ? new NoSuchEntityException(message)
+                    : code == Status.CONFLICT.getStatusCode()
+                    ? new AlreadyExistsException(message)
+                    : new ConnectorException(message));
+        }
+    }
+
+    private void fail(final Operation operation, final RuntimeException error) {
+        LOG.error("Bulk operation {0} {1} failed: {2}", operation.method, operation.path, error.getMessage());
+        failed.put(operation.bulkId, error);
+        operation.fail(error);
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.Response;
+import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import org.apache.cxf.jaxrs.client.WebClient;
+
+/**
+ * Default transport, sending requests through the CXF clients built by {@link SCIMWebClientFactory}; asynchronous and
+ * PATCH requests go via the pooled HTTP/1.1 connections of the asynchronous conduit.
+ */
+public class SCIMCXFTransport implements SCIMTransport {
+
+    private static final String USE_ASYNC_CONDUIT = "use.async.http.conduit";
+
+    private final SCIMConnectorConfiguration config;
+
+    private final SCIMWebClientFactory webClientFactory;
+
+    public SCIMCXFTransport(final SCIMConnectorConfiguration config, final boolean bearerAuth) {
+        this.config = config;
+        this.webClientFactory = new SCIMWebClientFactory(config, bearerAuth);
+    }
+
+    private static SCIMResponse toSCIMResponse(final Response response) {
+        return new SCIMResponse(
+                response.getStatus(),
+                response.getStringHeaders(),
+                response.hasEntity() ? response.readEntity(InputStream.class) : null,
+                response::close);
+    }
+
+    @Override
+    public WebClient newRequest() {
+        return webClientFactory.newRequest();
+    }
+
+    @Override
+    public SCIMResponse execute(final WebClient webClient, final String method, final String payload) {
+        switch (method) {
+            case "GET":
+                return toSCIMResponse(webClient.get());
+
+            case "POST":
+                return toSCIMResponse(webClient.post(payload));
+
+            case "PUT":
+                return toSCIMResponse(webClient.put(payload));
+
+            case "DELETE":
+                return toSCIMResponse(webClient.delete());
+
+            default:
+                // PATCH is not supported by HttpURLConnection
+                WebClient.getConfig(webClient).getRequestContext().put(USE_ASYNC_CONDUIT, true);
+                return toSCIMResponse(webClient.invoke(method, payload));
+        }
+    }
+
+    @Override
+    public CompletableFuture<SCIMResponse> executeAsync(
+            final WebClient webClient,
+            final String method,
+            final String payload) {
+
+        CompletableFuture<SCIMResponse> future = new CompletableFuture<>();
+        // not a lambda, as CXF infers the response type from the callback class
+        InvocationCallback<Response> callback = new InvocationCallback<Response>() {
+
+            @Override
+            public void completed(final Response response) {
+                try {
+                    future.complete(toSCIMResponse(response));
+                } catch (RuntimeException e) {
+                    response.close();
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(final Throwable error) {
+                future.completeExceptionally(error);
+            }
+        };
+        try {
+            if (payload == null) {
+                webClient.async().method(method, callback);
+            } else {
+                webClient.async().method(method, Entity.entity(payload, config.getContentType()), callback);
+            }
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    public void close() {
+        webClientFactory.close();
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+/**
+ * Runs the independent calls of a single connector operation concurrently, up to the given parallelism, and returns
+ * only once all of them are done.
+ * When any call fails, the failure of the first call in submission order is thrown, with the failures of the other
+ * calls attached as suppressed, regardless of the order in which calls completed.
+ * Calls run on virtual threads when supported by the Java runtime, on daemon platform threads otherwise.
+ */
+public final class SCIMFanOut {
+
+    private static final Log LOG = Log.getLog(SCIMFanOut.class);
+
+    /**
+     * @return executor running each call on a new virtual thread when available, otherwise on a cached pool of
+     * daemon platform threads
+     */
+    public static ExecutorService newExecutor() {
+        try {
+            // available from Java 21 on
+            ExecutorService executor = (ExecutorService) Executors.class.
+                    getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            LOG.ok("Concurrent calls will run on virtual threads");
+            return executor;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.ok("Virtual threads not available, concurrent calls will run on platform threads");
+        }
+
+        AtomicInteger threadCount = new AtomicInteger(0);
+        return Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "scim-fanout-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private final ExecutorService executor;
+
+    private final int parallelism;
+
+    public SCIMFanOut(final ExecutorService executor, final int parallelism) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Invokes the given action on each of the given items, concurrently when parallelism allows.
+     *
+     * @param <T> item type
+     * @param items items
+     * @param action action, to be invoked once per item
+     */
+    public <T> void forEach(final Collection<? extends T> items, final Consumer<? super T> action) {
+        if (parallelism <= 1 || items.size() <= 1) {
+            items.forEach(action);
+            return;
+        }
+
+        Semaphore permits = new Semaphore(parallelism);
+        List<Future<?>> futures = new ArrayList<>(items.size());
+        RuntimeException error = null;
+        try {
+            for (T item : items) {
+                permits.acquire();
+                try {
+                    futures.add(executor.submit(() -> {
+                        try {
+                            action.accept(item);
+                        } finally {
+                            permits.release();
+                        }
+                    }));
+                } catch (RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    RuntimeException cause = e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new ConnectorException(e.getCause());
+                    if (error == null) {
+                        error = cause;
+                    } else {
+                        error.addSuppressed(cause);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new ConnectorException("Interrupted while waiting for concurrent calls", e);
+        }
+
+        if (error != null) {
+            throw error;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Authenticator;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.ProxySelector;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.core.HttpHeaders;
+import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.common.exceptions.ConfigurationException;
+
+/**
+ * Transport sending requests through the Java HTTP client, which negotiates HTTP/2 via ALPN when supported by the
+ * SCIM server and then multiplexes concurrent requests over a single connection, falling back to HTTP/1.1
+ * otherwise.
+ * Response entities are streamed as they are received.
+ * As with the CXF transport, TLS relies on the default SSL context of the Java runtime.
+ */
+public class SCIMHttpClientTransport implements SCIMTransport {
+
+    private static final Log LOG = Log.getLog(SCIMHttpClientTransport.class);
+
+    /**
+     * Headers set by the Java HTTP client itself, which cannot be set on requests.
+     */
+    private static final Set<String> RESTRICTED_HEADERS = Set.of(
+            "connection", "content-length", "expect", "host", "upgrade");
+
+    private final SCIMConnectorConfiguration config;
+
+    private final HttpClient client;
+
+    private final String basicAuthorization;
+
+    private final Duration requestTimeout;
+
+    public SCIMHttpClientTransport(final SCIMConnectorConfiguration config, final boolean bearerAuth) {
+        this.config = config;
+
+        HttpClient.Builder builder = HttpClient.newBuilder().
+                version(HttpClient.Version.HTTP_2).
+                followRedirects(config.getFollowHttpRedirects()
+                        ? HttpClient.Redirect.NORMAL
+                        : HttpClient.Redirect.NEVER);
+        if (config.getConnectionTimeout() > 0) {
+            builder.connectTimeout(Duration.ofMillis(config.getConnectionTimeout()));
+        }
+
+        if (StringUtil.isNotBlank(config.getProxyServerHost())) {
+            if (!"HTTP".equalsIgnoreCase(config.getProxyServerType())) {
+                throw new ConfigurationException("The JDK HTTP transport only supports HTTP proxies");
+            }
+            // Basic authentication on the proxy is not sent when tunneling HTTPS requests, as long as
+            // jdk.http.auth.tunneling.disabledSchemes includes Basic, which is checked on configuration validation
+            builder.proxy(ProxySelector.of(
+                    new InetSocketAddress(config.getProxyServerHost(), config.getProxyServerPort())));
+
+            if (StringUtil.isNotBlank(config.getProxyServerUser())
+                    && StringUtil.isNotBlank(config.getProxyServerPassword())) {
+                builder.authenticator(new Authenticator() {
+
+                    @Override
+                    protected PasswordAuthentication getPasswordAuthentication() {
+                        return getRequestorType() == RequestorType.PROXY
+                                ? new PasswordAuthentication(
+                                        config.getProxyServerUser(), config.getProxyServerPassword().toCharArray())
+                                : null;
+                    }
+                });
+            }
+        }
+        client = builder.build();
+
+        basicAuthorization = bearerAuth || StringUtil.isBlank(config.getUsername())
+                ? null
+                : "Basic " + Base64.getEncoder().encodeToString((config.getUsername() + ":"
+                        + (config.getPassword() == null ? "" : SecurityUtil.decrypt(config.getPassword()))).
+                        getBytes(StandardCharsets.UTF_8));
+
+        // 0 means no timeout, as with the CXF transport
+        requestTimeout = config.getReceiveTimeout() > 0 ? Duration.ofMillis(config.getReceiveTimeout()) : null;
+
+        LOG.ok("Java HTTP client for {0} built", config.getBaseAddress());
+    }
+
+    /**
+     * {@inheritDoc}
+     * Requests only hold URI and headers, as they are never sent through CXF: neither bus nor conduit are set up.
+     */
+    @Override
+    public WebClient newRequest() {
+        WebClient webClient = WebClient.create(config.getBaseAddress()).
+                type(config.getContentType()).accept(config.getAccept());
+        if (StringUtil.isNotBlank(config.getAuthHttpHeaderName())) {
+            webClient.header(config.getAuthHttpHeaderName(), SecurityUtil.decrypt(config.getAuthHttpHeaderValue()));
+        }
+        return webClient;
+    }
+
+    private static SCIMResponse toSCIMResponse(final HttpResponse<InputStream> response) {
+        return new SCIMResponse(response.statusCode(), response.headers().map(), response.body(), null);
+    }
+
+    protected HttpRequest buildRequest(final WebClient webClient, final String method, final String payload) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(webClient.getCurrentURI()).
+                method(method, payload == null
+                        ? HttpRequest.BodyPublishers.noBody()
+                        : HttpRequest.BodyPublishers.ofString(payload, StandardCharsets.UTF_8));
+
+        webClient.getHeaders().forEach((name, values) -> {
+            if (!RESTRICTED_HEADERS.contains(name.toLowerCase())) {
+                values.forEach(value -> builder.header(name, value));
+            }
+        });
+        if (basicAuthorization != null && !webClient.getHeaders().containsKey(HttpHeaders.AUTHORIZATION)) {
+            builder.header(HttpHeaders.AUTHORIZATION, basicAuthorization);
+        }
+        if (requestTimeout != null) {
+            builder.timeout(requestTimeout);
+        }
+
+        return builder.build();
+    }
+
+    @Override
+    public SCIMResponse execute(final WebClient webClient, final String method, final String payload) {
+        HttpRequest request = buildRequest(webClient, method, payload);
+        try {
+            return toSCIMResponse(client.send(request, HttpResponse.BodyHandlers.ofInputStream()));
+        } catch (IOException e) {
+            throw new ProcessingException("While sending " + method + " " + request.uri(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("Interrupted while sending " + method + " " + request.uri(), e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<SCIMResponse> executeAsync(
+            final WebClient webClient,
+            final String method,
+            final String payload) {
+
+        try {
+            return client.sendAsync(buildRequest(webClient, method, payload),
+                    HttpResponse.BodyHandlers.ofInputStream()).thenApply(SCIMHttpClientTransport::toSCIMResponse);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        // the Java HTTP client can be closed from Java 21 on, otherwise connections are released once unreferenced
+        if (client instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) client).close();
+            } catch (Exception e) {
+                LOG.error(e, "While closing Java HTTP client");
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Bounded cache of values by resource id, evicting the least recently used entries beyond the maximum size and the
+ * entries older than the given TTL; a maximum size of 0 disables caching.
+ *
+ * @param <V> value type
+ */
+public class SCIMResourceCache<V> {
+
+    private static final class CachedValue<V> {
+
+        private final V value;
+
+        private final long expiresAt;
+
+        CachedValue(final V value, final long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int maxSize;
+
+    private final long ttl;
+
+    private final Map<String, CachedValue<V>> entries;
+
+    public SCIMResourceCache(final int maxSize, final long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<String, CachedValue<V>>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = -2189244530318717440L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, CachedValue<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    public synchronized Optional<V> get(final String id) {
+        CachedValue<V> entry = entries.get(id);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (System.currentTimeMillis() >= entry.expiresAt) {
+            entries.remove(id);
+            return Optional.empty();
+        }
+        return Optional.of(entry.value);
+    }
+
+    public synchronized void put(final String id, final V value) {
+        if (isEnabled() && id != null && value != null) {
+            entries.put(id, new CachedValue<>(value, System.currentTimeMillis() + ttl));
+        }
+    }
+
+    public synchronized void invalidate(final String id) {
+        if (id != null) {
+            entries.remove(id);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import javax.ws.rs.core.HttpHeaders;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+/**
+ * Response of the SCIM server, as received by a {@link SCIMTransport}: status, headers and the entity stream, which
+ * can be read only once; to be closed when no longer needed.
+ */
+public final class SCIMResponse implements Closeable {
+
+    private static final Log LOG = Log.getLog(SCIMResponse.class);
+
+    private final int status;
+
+    private final Map<String, List<String>> headers;
+
+    private final InputStream entity;
+
+    private final Closeable resource;
+
+    /**
+     * @param status HTTP status
+     * @param headers HTTP headers
+     * @param entity entity stream, or {@code null} if none
+     * @param resource released on {@link #close()}, along with the entity stream
+     */
+    public SCIMResponse(
+            final int status,
+            final Map<String, List<String>> headers,
+            final InputStream entity,
+            final Closeable resource) {
+
+        this.status = status;
+        Map<String, List<String>> caseInsensitive = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        caseInsensitive.putAll(headers);
+        this.headers = Collections.unmodifiableMap(caseInsensitive);
+        this.entity = entity == null ? InputStream.nullInputStream() : entity;
+        this.resource = resource;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public boolean isSuccessful() {
+        return status >= 200 && status < 300;
+    }
+
+    /**
+     * @return HTTP headers, with case-insensitive names
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @param name header name
+     * @return first value of the given header, if any
+     */
+    public Optional<String> getHeader(final String name) {
+        return Optional.ofNullable(headers.get(name)).flatMap(values -> values.stream().findFirst());
+    }
+
+    /**
+     * @return entity stream, empty if the response has no entity
+     */
+    public InputStream getEntity() {
+        return entity;
+    }
+
+    /**
+     * Reads the whole entity, with the charset declared by the response, UTF-8 otherwise.
+     *
+     * @return entity, empty if the response has no entity
+     */
+    public String readEntity() {
+        try {
+            return new String(entity.readAllBytes(), charset());
+        } catch (IOException e) {
+            throw new ConnectorException("While reading response entity", e);
+        }
+    }
+
+    private Charset charset() {
+        return getHeader(HttpHeaders.CONTENT_TYPE).flatMap(type -> Arrays.stream(type.split(";")).skip(1).
+                map(String::trim).
+                filter(parameter -> parameter.regionMatches(true, 0, "charset=", 0, 8)).
+                map(parameter -> Charset.forName(parameter.substring(8).replace("\"", ""))).
+                findFirst()).
+                orElse(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        try {
+            entity.close();
+            if (resource != null) {
+                resource.close();
+            }
+        } catch (IOException e) {
+            LOG.ok(e, "While closing response");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SCIMResponse{status=" + status + '}';
+    }
+}
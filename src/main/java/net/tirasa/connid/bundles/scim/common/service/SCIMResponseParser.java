@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+import java.io.IOException;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
+
+/**
+ * Parser for SCIM responses, failing as soon as an {@code Errors} field is met at top level, so that responses can be
+ * read straight into the target type while still reporting errors returned by SCIM server.
+ */
+class SCIMResponseParser extends JsonParserDelegate {
+
+    SCIMResponseParser(final JsonParser parser) {
+        super(parser);
+    }
+
+    private JsonToken check(final JsonToken token) throws IOException {
+        if (token == JsonToken.FIELD_NAME && AbstractSCIMService.RESPONSE_ERRORS.equals(delegate.currentName())) {
+            JsonStreamContext parent = delegate.getParsingContext().getParent();
+            if (parent != null && parent.inRoot()) {
+                delegate.nextToken();
+                SCIMUtils.handleGeneralError("While executing SCIM request: " + SCIMUtils.MAPPER.readTree(delegate));
+            }
+        }
+        return token;
+    }
+
+    @Override
+    public JsonToken nextToken() throws IOException {
+        return check(delegate.nextToken());
+    }
+
+    @Override
+    public JsonToken nextValue() throws IOException {
+        JsonToken token = nextToken();
+        return token == JsonToken.FIELD_NAME ? nextToken() : token;
+    }
+}
@@ -15,26 +15,113 @@
  */
 package net.tirasa.connid.bundles.scim.common.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Predicate;
+import net.tirasa.connid.bundles.scim.common.dto.BaseResourceReference;
 import net.tirasa.connid.bundles.scim.common.dto.PagedResults;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMBaseMeta;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMBasePatch;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMBaseResource;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMEnterpriseUser;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMGroup;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMServiceProviderConfig;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMUser;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeProjection;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributesToGet;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
 
 public interface SCIMService<UT extends SCIMUser<? extends SCIMBaseMeta, ? extends SCIMEnterpriseUser<?>>, 
         GT extends SCIMGroup<? extends SCIMBaseMeta>, ERT extends SCIMBaseResource<? extends SCIMBaseMeta>,
-        P extends SCIMBasePatch> {
+        P extends SCIMBasePatch> extends AsyncSCIMService<UT, GT, P> {
 
     PagedResults<UT> getAllUsers(Integer valueOf, Integer pagesSize, Set<String> attributesToGet);
 
     List<UT> getAllUsers(Set<String> attributesToGet);
 
+    /**
+     * Streams all Users to the given handler, one at a time, until the handler returns {@code false}.
+     *
+     * @param filter SCIM filter expression, or {@code null} for all Users
+     * @param attributesToGet attributes to get
+     * @param handler User handler
+     */
+    void getAllUsers(String filter, Set<String> attributesToGet, Predicate<UT> handler);
+
+    /**
+     * Streams a page of Users to the given handler, one at a time, until the handler returns {@code false}.
+     *
+     * @param filter SCIM filter expression, or {@code null} for all Users
+     * @param startIndex start index
+     * @param count page size
+     * @param attributesToGet attributes to get
+     * @param handler User handler
+     * @return paging information, without resources
+     */
+    PagedResults<UT> getAllUsers(
+            String filter, Integer startIndex, Integer count, Set<String> attributesToGet, Predicate<UT> handler);
+
+    /**
+     * @param attributesToGet attributes to get
+     * @return reader for Users found by searches, if all the given attributes can be read without building Users
+     */
+    Optional<SCIMUserObjectReader> getUserObjectReader(SCIMAttributesToGet attributesToGet);
+
+    /**
+     * Streams all Users to the given handler as connector objects, read by the given reader, until the handler
+     * returns {@code false}.
+     *
+     * @param filter SCIM filter expression, or {@code null} for all Users
+     * @param attributesToGet attributes to get
+     * @param reader User reader
+     * @param handler connector object handler
+     */
+    void getAllUsers(
+            String filter,
+            Set<String> attributesToGet,
+            SCIMUserObjectReader reader,
+            Predicate<ConnectorObject> handler);
+
+    /**
+     * Streams one page of Users to the given handler as connector objects, read by the given reader, until the
+     * handler returns {@code false}.
+     *
+     * @param filter SCIM filter expression, or {@code null} for all Users
+     * @param startIndex start index
+     * @param count page size
+     * @param attributesToGet attributes to get
+     * @param reader User reader
+     * @param handler connector object handler
+     * @return paging information, without connector objects
+     */
+    PagedResults<ConnectorObject> getAllUsers(
+            String filter,
+            Integer startIndex,
+            Integer count,
+            Set<String> attributesToGet,
+            SCIMUserObjectReader reader,
+            Predicate<ConnectorObject> handler);
+
     UT getUser(String userId);
 
+    /**
+     * @param userId User id
+     * @param projection attributes to be returned, or {@code null} for the whole User
+     * @return User with the given id, only holding the projected attributes
+     */
+    UT getUser(String userId, SCIMAttributeProjection projection);
+
+    /**
+     * Reads the given Users, looking them up by id in batches when possible.
+     *
+     * @param userIds User ids
+     * @param projection attributes to be returned, including id, or {@code null} for the whole Users
+     * @return Users, in the same order as the given ids
+     */
+    List<UT> getUsers(Collection<String> userIds, SCIMAttributeProjection projection);
+
     List<UT> getAllUsers(String s, Set<String> attributesToGet);
 
     UT createUser(UT user);
@@ -53,8 +140,44 @@ public interface SCIMService<UT extends SCIMUser<? extends SCIMBaseMeta, ? exten
 
     List<GT> getAllGroups();
 
+    void getAllGroups(String filter, Predicate<GT> handler);
+
+    PagedResults<GT> getAllGroups(String filter, Integer startIndex, Integer count, Predicate<GT> handler);
+
     GT getGroup(String groupId);
 
+    /**
+     * @param groupId Group id
+     * @param projection attributes to be returned, or {@code null} for the whole Group
+     * @return Group with the given id, only holding the projected attributes
+     */
+    GT getGroup(String groupId, SCIMAttributeProjection projection);
+
+    /**
+     * Reads the given Groups, looking them up by id in batches when possible.
+     *
+     * @param groupIds Group ids
+     * @param projection attributes to be returned, including id, or {@code null} for the whole Groups
+     * @return Groups, in the same order as the given ids
+     */
+    List<GT> getGroups(Collection<String> groupIds, SCIMAttributeProjection projection);
+
+    /**
+     * Returns a reference (id, $ref and display name) to the given group, read from cache when available.
+     *
+     * @param groupId group id
+     * @return group reference
+     */
+    BaseResourceReference getGroupReference(String groupId);
+
+    /**
+     * Returns references to the given groups, read from cache when available and otherwise looked up in batches.
+     *
+     * @param groupIds group ids
+     * @return group references, in the same order as the given ids
+     */
+    List<BaseResourceReference> getGroupReferences(Collection<String> groupIds);
+
     List<GT> getAllGroups(String filter);
 
     GT createGroup(GT group);
@@ -66,4 +189,44 @@ public interface SCIMService<UT extends SCIMUser<? extends SCIMBaseMeta, ? exten
     GT updateGroup(String groupId, P groupPatch);
 
     ERT getEntitlement(String entitlementId);
+
+    /**
+     * @param entitlementIds entitlement ids
+     * @return entitlements, in the same order as the given ids, read with at most one request when possible
+     */
+    List<ERT> getEntitlements(Collection<String> entitlementIds);
+
+    /**
+     * @return features supported by the SCIM server, or {@code null} if they could not be read
+     */
+    SCIMServiceProviderConfig getServiceProviderConfig();
+
+    /**
+     * @return settings in effect, as configured and possibly restricted by {@link #restrictSettings}
+     */
+    SCIMServiceSettings getSettings();
+
+    /**
+     * Restricts the settings in effect to what the SCIM server declares to support.
+     *
+     * @param spc features supported by the SCIM server
+     */
+    void restrictSettings(SCIMServiceProviderConfig spc);
+
+    /**
+     * @return whether operations can be sent through the /Bulk endpoint, see {@link #newBulk()}
+     */
+    boolean isBulkEnabled();
+
+    /**
+     * @return new buffer of operations to be sent through the /Bulk endpoint
+     */
+    SCIMBulk<UT, GT, P> newBulk();
+
+    /**
+     * @return executor for the independent calls of a single connector operation
+     */
+    SCIMFanOut fanOut();
+
+    void dispose();
 }
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+/**
+ * Error response of the SCIM server, as per RFC 7644, section 3.12.
+ */
+public class SCIMServiceException extends ConnectorException {
+
+    private static final long serialVersionUID = -4302581468613640195L;
+
+    private final int status;
+
+    private final String scimType;
+
+    /**
+     * Constructs a new SCIMServiceException with the specified error message, HTTP status and SCIM error type.
+     *
+     * @param message
+     * Describes the error encountered.
+     * @param status
+     * HTTP status of the response.
+     * @param scimType
+     * SCIM error type, as {@code invalidFilter}, or {@code null} if not provided.
+     */
+    public SCIMServiceException(final String message, final int status, final String scimType) {
+        super(message);
+        this.status = status;
+        this.scimType = scimType;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getScimType() {
+        return scimType;
+    }
+}
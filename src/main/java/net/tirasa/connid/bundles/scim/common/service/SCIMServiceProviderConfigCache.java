@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMServiceProviderConfig;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
+
+/**
+ * Process-wide cache of the ServiceProviderConfig read from each SCIM server with given credentials, optionally backed
+ * by a snapshot file.
+ * Entries are reused within the configured TTL; once expired, if the SCIM server cannot be reached the last known
+ * entry is still returned.
+ */
+public final class SCIMServiceProviderConfigCache {
+
+    private static final Log LOG = Log.getLog(SCIMServiceProviderConfigCache.class);
+
+    private static final String FETCHED_AT = "fetchedAt";
+
+    private static final String CONFIG = "config";
+
+    private static final class Entry {
+
+        private final SCIMServiceProviderConfig config;
+
+        private final long fetchedAt;
+
+        Entry(final SCIMServiceProviderConfig config, final long fetchedAt) {
+            this.config = config;
+            this.fetchedAt = fetchedAt;
+        }
+
+        boolean isFresh(final long ttl) {
+            return System.currentTimeMillis() - fetchedAt < ttl;
+        }
+    }
+
+    private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the ServiceProviderConfig of the SCIM server at the configured base address, as read with the configured
+     * credentials, fetching it if not available or expired.
+     *
+     * @param config configuration
+     * @param fetcher reads ServiceProviderConfig from the SCIM server
+     * @return ServiceProviderConfig, if available
+     */
+    public static Optional<SCIMServiceProviderConfig> get(
+            final SCIMConnectorConfiguration config,
+            final Supplier<SCIMServiceProviderConfig> fetcher) {
+
+        // servers may declare different features depending on who is asking
+        String key = config.getBaseAddress() + '|' + SCIMUtils.credentialsDigest(config);
+        Path file = StringUtil.isBlank(config.getServiceProviderConfigFile())
+                ? null
+                : Paths.get(config.getServiceProviderConfigFile());
+
+        Entry entry = ENTRIES.get(key);
+        if (entry != null && entry.isFresh(config.getServiceProviderConfigTTL())) {
+            return Optional.of(entry.config);
+        }
+
+        synchronized (SCIMServiceProviderConfigCache.class) {
+            entry = ENTRIES.get(key);
+            if (entry == null && file != null) {
+                entry = load(file, key);
+            }
+            if (entry != null && entry.isFresh(config.getServiceProviderConfigTTL())) {
+                ENTRIES.put(key, entry);
+                return Optional.of(entry.config);
+            }
+
+            try {
+                SCIMServiceProviderConfig fetched = fetcher.get();
+                if (fetched != null) {
+                    LOG.ok("ServiceProviderConfig for {0}: {1}", key, fetched);
+                    entry = new Entry(fetched, System.currentTimeMillis());
+                    ENTRIES.put(key, entry);
+                    if (file != null) {
+                        store(file, key, entry);
+                    }
+                }
+            } catch (Exception e) {
+                LOG.error(e, "Could not read ServiceProviderConfig from {0}, using last known if any", key);
+            }
+
+            return Optional.ofNullable(entry).map(e -> e.config);
+        }
+    }
+
+    private static Entry load(final Path file, final String key) {
+        try {
+            if (!Files.isRegularFile(file)) {
+                return null;
+            }
+
+            JsonNode stored = SCIMUtils.MAPPER.readTree(file.toFile()).get(key);
+            return stored == null
+                    ? null
+                    : new Entry(
+                            SCIMUtils.MAPPER.treeToValue(stored.get(CONFIG), SCIMServiceProviderConfig.class),
+                            stored.get(FETCHED_AT).asLong());
+        } catch (Exception e) {
+            LOG.error(e, "Could not read ServiceProviderConfig from {0}", file);
+            return null;
+        }
+    }
+
+    private static void store(final Path file, final String key, final Entry entry) {
+        try {
+            ObjectNode snapshot = Files.isRegularFile(file)
+                    ? (ObjectNode) SCIMUtils.MAPPER.readTree(file.toFile())
+                    : SCIMUtils.MAPPER.createObjectNode();
+
+            ObjectNode stored = snapshot.putObject(key);
+            stored.put(FETCHED_AT, entry.fetchedAt);
+            stored.set(CONFIG, SCIMUtils.MAPPER.valueToTree(entry.config));
+
+            Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try {
+                SCIMUtils.MAPPER.writeValue(tmp.toFile(), snapshot);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+        } catch (Exception e) {
+            LOG.error(e, "Could not write ServiceProviderConfig to {0}", file);
+        }
+    }
+
+    private SCIMServiceProviderConfigCache() {
+        // private constructor for static utility class
+    }
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import net.tirasa.connid.bundles.scim.common.SCIMFilterCapabilities;
+import net.tirasa.connid.bundles.scim.common.SCIMProvider;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMServiceProviderConfig;
+
+/**
+ * Settings in effect for a SCIM service: the configured ones, possibly restricted by what the SCIM server declares
+ * to support. The configuration itself is never changed.
+ */
+public final class SCIMServiceSettings {
+
+    public static SCIMServiceSettings of(final SCIMConnectorConfiguration config) {
+        return new SCIMServiceSettings(
+                config.getUpdateUserMethod(),
+                config.getUpdateGroupMethod(),
+                config.getBulkEnabled(),
+                config.getBulkMaxOperations(),
+                config.getBulkMaxPayloadSize(),
+                config.getSearchPageSize(),
+                SCIMFilterCapabilities.forProvider(SCIMProvider.valueOf(config.getScimProvider().toUpperCase())));
+    }
+
+    private final String updateUserMethod;
+
+    private final String updateGroupMethod;
+
+    private final boolean bulkEnabled;
+
+    private final int bulkMaxOperations;
+
+    private final long bulkMaxPayloadSize;
+
+    private final int searchPageSize;
+
+    private final SCIMFilterCapabilities filterCapabilities;
+
+    private SCIMServiceSettings(
+            final String updateUserMethod,
+            final String updateGroupMethod,
+            final boolean bulkEnabled,
+            final int bulkMaxOperations,
+            final long bulkMaxPayloadSize,
+            final int searchPageSize,
+            final SCIMFilterCapabilities filterCapabilities) {
+
+        this.updateUserMethod = updateUserMethod;
+        this.updateGroupMethod = updateGroupMethod;
+        this.bulkEnabled = bulkEnabled;
+        this.bulkMaxOperations = bulkMaxOperations;
+        this.bulkMaxPayloadSize = bulkMaxPayloadSize;
+        this.searchPageSize = searchPageSize;
+        this.filterCapabilities = filterCapabilities;
+    }
+
+    /**
+     * Restricts these settings to what the SCIM server declares to support: features are only ever disabled, and
+     * limits only lowered.
+     *
+     * @param spc features supported by the SCIM server
+     * @return restricted settings
+     */
+    public SCIMServiceSettings restrictTo(final SCIMServiceProviderConfig spc) {
+        boolean patch = spc.getPatch().isSupported();
+        return new SCIMServiceSettings(
+                patch ? updateUserMethod : "PUT",
+                patch ? updateGroupMethod : "PUT",
+                bulkEnabled && spc.getBulk().isSupported(),
+                spc.getBulk().getMaxOperations() > 0
+                ? Math.min(bulkMaxOperations, spc.getBulk().getMaxOperations())
+                : bulkMaxOperations,
+                spc.getBulk().getMaxPayloadSize() > 0
+                ? Math.min(bulkMaxPayloadSize, spc.getBulk().getMaxPayloadSize())
+                : bulkMaxPayloadSize,
+                // pages larger than maxResults would be truncated, while unpaged searches are left as they are
+                searchPageSize > 0 && spc.getFilter().getMaxResults() > 0
+                ? Math.min(searchPageSize, spc.getFilter().getMaxResults())
+                : searchPageSize,
+                spc.getFilter().isSupported() ? filterCapabilities : SCIMFilterCapabilities.none());
+    }
+
+    public String getUpdateUserMethod() {
+        return updateUserMethod;
+    }
+
+    public String getUpdateGroupMethod() {
+        return updateGroupMethod;
+    }
+
+    public boolean isBulkEnabled() {
+        return bulkEnabled;
+    }
+
+    public int getBulkMaxOperations() {
+        return bulkMaxOperations;
+    }
+
+    public long getBulkMaxPayloadSize() {
+        return bulkMaxPayloadSize;
+    }
+
+    public int getSearchPageSize() {
+        return searchPageSize;
+    }
+
+    /**
+     * @return filter capabilities known for the configured provider, or none if the SCIM server declares not to
+     * support filters
+     */
+    public SCIMFilterCapabilities getFilterCapabilities() {
+        return filterCapabilities;
+    }
+
+    @Override
+    public String toString() {
+        return "SCIMServiceSettings{"
+                + "updateUserMethod=" + updateUserMethod
+                + ", updateGroupMethod=" + updateGroupMethod
+                + ", bulkEnabled=" + bulkEnabled
+                + ", bulkMaxOperations=" + bulkMaxOperations
+                + ", bulkMaxPayloadSize=" + bulkMaxPayloadSize
+                + ", searchPageSize=" + searchPageSize
+                + '}';
+    }
+}
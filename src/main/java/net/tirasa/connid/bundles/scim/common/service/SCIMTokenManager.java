@@ -0,0 +1,320 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.ws.rs.core.Response;
+import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.SecurityUtil;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+
+/**
+ * Holds the OAuth bearer token and obtains a new one from the configured token endpoint when needed.
+ * The token is refreshed in background once its expiration (from {@code expires_in}) gets close; concurrent
+ * refresh requests share the same in-flight call to the token endpoint, and failed background refreshes are retried
+ * with exponential backoff.
+ * The token is shared process-wide by all connector instances using the same token endpoint, client, user and
+ * credentials, see {@link #forConfiguration(SCIMConnectorConfiguration)}, while settings such as refresh ahead or
+ * token content type are always read from the configuration of each instance.
+ */
+public final class SCIMTokenManager {
+
+    private static final Log LOG = Log.getLog(SCIMTokenManager.class);
+
+    private static final String EXPIRES_IN = "expires_in";
+
+    /**
+     * Delay before retrying a failed refresh ahead of expiration, doubled at each further failure.
+     */
+    private static final long MIN_REFRESH_AHEAD_BACKOFF = 1000L;
+
+    private static final long MAX_REFRESH_AHEAD_BACKOFF = 60000L;
+
+    private static final ConcurrentMap<String, SharedToken> SHARED = new ConcurrentHashMap<>();
+
+    private static final Executor REFRESH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "scim-token-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static final class Token {
+
+        final String value;
+
+        // epoch millis, Long.MAX_VALUE when not known
+        final long expiresAt;
+
+        Token(final String value, final long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(final long now) {
+            return now >= expiresAt;
+        }
+
+        boolean isDue(final long now, final long refreshAhead) {
+            return expiresAt != Long.MAX_VALUE && now >= expiresAt - refreshAhead;
+        }
+    }
+
+    /**
+     * Token state shared by all managers with the same key, together with the number of managers using it.
+     */
+    static final class SharedToken {
+
+        final String key;
+
+        final AtomicReference<Token> token = new AtomicReference<>();
+
+        final AtomicReference<CompletableFuture<Token>> inFlight = new AtomicReference<>();
+
+        // only updated by the single in-flight refresh
+        volatile int refreshAheadFailures = 0;
+
+        volatile long refreshAheadNotBefore = 0;
+
+        // only updated within SHARED.compute
+        int users = 0;
+
+        SharedToken(final String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Returns a token manager for the given configuration, sharing the token with all other managers for the same
+     * token endpoint, client, user and credentials until {@link #release()}; with no token endpoint configured, the
+     * returned manager only serves the configured bearer token.
+     *
+     * @param config configuration
+     * @return token manager
+     */
+    public static SCIMTokenManager forConfiguration(final SCIMConnectorConfiguration config) {
+        if (StringUtil.isBlank(config.getAccessTokenBaseAddress())) {
+            return new SCIMTokenManager(config, new SharedToken(null));
+        }
+
+        SharedToken shared = SHARED.compute(key(config), (key, existing) -> {
+            SharedToken token = existing == null ? new SharedToken(key) : existing;
+            token.users++;
+            return token;
+        });
+        return new SCIMTokenManager(config, shared);
+    }
+
+    static int sharedCount() {
+        return SHARED.size();
+    }
+
+    private static String key(final SCIMConnectorConfiguration config) {
+        // changing credentials gets a new token
+        return config.getAccessTokenBaseAddress()
+                + '|' + config.getClientId()
+                + '|' + (StringUtil.isBlank(config.getUsername()) ? "" : config.getUsername())
+                + '|' + SCIMUtils.credentialsDigest(config);
+    }
+
+    private final SCIMConnectorConfiguration config;
+
+    private final SharedToken shared;
+
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    private SCIMTokenManager(final SCIMConnectorConfiguration config, final SharedToken shared) {
+        this.config = config;
+        this.shared = shared;
+
+        if (StringUtil.isNotBlank(config.getBearerToken())) {
+            shared.token.compareAndSet(null, new Token(config.getBearerToken(), Long.MAX_VALUE));
+        } else if (shared.token.get() == null) {
+            SCIMTokenStore store = store();
+            if (store != null) {
+                store.load(shared.key).filter(stored -> !stored.isExpired(System.currentTimeMillis())).
+                        ifPresent(stored -> {
+                            LOG.ok("Reusing bearer token from {0}", config.getAccessTokenCacheFile());
+                            shared.token.compareAndSet(null, stored);
+                        });
+            }
+        }
+    }
+
+    private SCIMTokenStore store() {
+        return shared.key != null
+                && StringUtil.isNotBlank(config.getAccessTokenCacheFile())
+                && StringUtil.isNotBlank(config.getClientSecret())
+                ? new SCIMTokenStore(Paths.get(config.getAccessTokenCacheFile()), config.getClientSecret())
+                : null;
+    }
+
+    /**
+     * Stops sharing the token with other managers; once released by all of them, the token is dropped from memory.
+     */
+    public void release() {
+        if (shared.key != null && released.compareAndSet(false, true)) {
+            SHARED.computeIfPresent(shared.key, (key, token) -> --token.users == 0 ? null : token);
+        }
+    }
+
+    /**
+     * Returns a valid token, obtaining a new one only if none is available or the current one has expired.
+     *
+     * @return bearer token
+     */
+    public String getToken() {
+        Token current = shared.token.get();
+        long now = System.currentTimeMillis();
+        if (current == null || current.isExpired(now)) {
+            return await(refresh(false)).value;
+        }
+
+        if (current.isDue(now, config.getAccessTokenRefreshAhead()) && now >= shared.refreshAheadNotBefore) {
+            refresh(true);
+        }
+        return current.value;
+    }
+
+    /**
+     * Returns a new token after the given one was rejected by the SCIM server; if another thread has already
+     * replaced it, the replacement is returned with no further call to the token endpoint.
+     *
+     * @param rejected token rejected by the SCIM server
+     * @return bearer token
+     */
+    public String refresh(final String rejected) {
+        Token current = shared.token.get();
+        if (current != null && !current.value.equals(rejected) && !current.isExpired(System.currentTimeMillis())) {
+            return current.value;
+        }
+        return await(refresh(false)).value;
+    }
+
+    private CompletableFuture<Token> refresh(final boolean background) {
+        while (true) {
+            CompletableFuture<Token> existing = shared.inFlight.get();
+            if (existing != null) {
+                return existing;
+            }
+
+            CompletableFuture<Token> future = new CompletableFuture<>();
+            if (shared.inFlight.compareAndSet(null, future)) {
+                Runnable task = () -> {
+                    try {
+                        Token fetched = fetch();
+                        shared.token.set(fetched);
+                        SCIMTokenStore store = store();
+                        if (store != null && fetched.expiresAt != Long.MAX_VALUE) {
+                            store.store(shared.key, fetched);
+                        }
+                        shared.refreshAheadFailures = 0;
+                        shared.refreshAheadNotBefore = 0;
+                        future.complete(fetched);
+                    } catch (RuntimeException e) {
+                        if (background) {
+                            backOff(e);
+                        }
+                        future.completeExceptionally(e);
+                    } finally {
+                        shared.inFlight.compareAndSet(future, null);
+                    }
+                };
+                if (background) {
+                    REFRESH_EXECUTOR.execute(task);
+                } else {
+                    task.run();
+                }
+                return future;
+            }
+        }
+    }
+
+    private void backOff(final RuntimeException error) {
+        shared.refreshAheadFailures++;
+        long delay = Math.min(MAX_REFRESH_AHEAD_BACKOFF,
+                MIN_REFRESH_AHEAD_BACKOFF << Math.min(shared.refreshAheadFailures - 1, 16));
+        shared.refreshAheadNotBefore = System.currentTimeMillis() + delay;
+        LOG.error(error, "While refreshing bearer token in background, current token is kept until expiration; "
+                + "next attempt in {0} ms", delay);
+    }
+
+    private static Token await(final CompletableFuture<Token> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new ConnectorException(e.getCause());
+        }
+    }
+
+    private Token fetch() {
+        if (StringUtil.isEmpty(config.getAccessTokenBaseAddress())) {
+            SCIMUtils.handleGeneralError("Invalid bearer token and no access token base address configured");
+        }
+        LOG.ok("Requesting new bearer token to {0}", config.getAccessTokenBaseAddress());
+
+        WebClient webClient = WebClient.create(config.getAccessTokenBaseAddress()).
+                type(config.getAccessTokenContentType()).accept(config.getAccessTokenAccept());
+
+        StringBuilder requestBuilder =
+                new StringBuilder("&client_id=").append(config.getClientId())
+                        .append("&client_secret=").append(config.getClientSecret());
+        // append also username and password if and only if they're not blank
+        if (StringUtil.isNotBlank(config.getUsername()) && config.getPassword() != null) {
+            requestBuilder.append("&username=").append(config.getUsername())
+                    .append("&password=").append(SecurityUtil.decrypt(config.getPassword()));
+        }
+
+        Token fetched = null;
+        long requestedAt = System.currentTimeMillis();
+        try {
+            Response response = webClient.post(requestBuilder.toString());
+            String body = response.readEntity(String.class);
+            JsonNode result = SCIMUtils.MAPPER.readTree(body);
+            if (result == null || !result.hasNonNull(config.getAccessTokenNodeId())) {
+                SCIMUtils.handleGeneralError("No access token found - " + body);
+            }
+
+            // lifetime is counted from the request, to be on the safe side
+            long expiresAt = result.hasNonNull(EXPIRES_IN) && result.get(EXPIRES_IN).asLong() > 0
+                    ? requestedAt + result.get(EXPIRES_IN).asLong() * 1000
+                    : Long.MAX_VALUE;
+            fetched = new Token(result.get(config.getAccessTokenNodeId()).textValue(), expiresAt);
+        } catch (ConnectorException e) {
+            throw e;
+        } catch (Exception ex) {
+            SCIMUtils.handleGeneralError("While obtaining authentication token", ex);
+        } finally {
+            webClient.close();
+        }
+
+        return fetched;
+    }
+}
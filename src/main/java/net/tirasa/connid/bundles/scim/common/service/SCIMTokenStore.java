@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.Properties;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.identityconnectors.common.logging.Log;
+
+/**
+ * On-disk cache of bearer tokens, one entry per token endpoint / client / user / credentials.
+ * Entries are encrypted with AES-GCM under a key derived from the client secret, so that only who already holds the
+ * credentials to request a token can read them back. Any failure just makes the cache miss.
+ */
+class SCIMTokenStore {
+
+    private static final Log LOG = Log.getLog(SCIMTokenStore.class);
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private static final int SALT_LENGTH = 16;
+
+    private static final int IV_LENGTH = 12;
+
+    private static final int KEY_ITERATIONS = 65536;
+
+    private static final String EXPIRES_AT = ".expiresAt";
+
+    private final Path file;
+
+    private final char[] secret;
+
+    SCIMTokenStore(final Path file, final String secret) {
+        this.file = file;
+        this.secret = secret.toCharArray();
+    }
+
+    Optional<SCIMTokenManager.Token> load(final String key) {
+        synchronized (SCIMTokenStore.class) {
+            try {
+                String entry = read().getProperty(entryName(key));
+                if (entry == null) {
+                    return Optional.empty();
+                }
+
+                ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(entry));
+                byte[] salt = new byte[SALT_LENGTH];
+                buffer.get(salt);
+                byte[] iv = new byte[IV_LENGTH];
+                buffer.get(iv);
+                byte[] encrypted = new byte[buffer.remaining()];
+                buffer.get(encrypted);
+
+                String[] decrypted = new String(
+                        cipher(Cipher.DECRYPT_MODE, key, salt, iv).doFinal(encrypted), StandardCharsets.UTF_8).
+                        split("\n", 2);
+                return Optional.of(new SCIMTokenManager.Token(decrypted[1], Long.parseLong(decrypted[0])));
+            } catch (Exception e) {
+                LOG.error(e, "Could not read bearer token from {0}", file);
+                return Optional.empty();
+            }
+        }
+    }
+
+    void store(final String key, final SCIMTokenManager.Token token) {
+        synchronized (SCIMTokenStore.class) {
+            try {
+                Properties entries = read();
+                long now = System.currentTimeMillis();
+                entries.stringPropertyNames().stream().
+                        filter(name -> name.endsWith(EXPIRES_AT) && isExpired(entries.getProperty(name), now)).
+                        forEach(name -> {
+                            entries.remove(name);
+                            entries.remove(name.substring(0, name.length() - EXPIRES_AT.length()));
+                        });
+
+                byte[] salt = new byte[SALT_LENGTH];
+                RANDOM.nextBytes(salt);
+                byte[] iv = new byte[IV_LENGTH];
+                RANDOM.nextBytes(iv);
+                byte[] encrypted = cipher(Cipher.ENCRYPT_MODE, key, salt, iv).
+                        doFinal((token.expiresAt + "\n" + token.value).getBytes(StandardCharsets.UTF_8));
+
+                // expiration is kept in clear, only to prune stale entries
+                entries.setProperty(entryName(key) + EXPIRES_AT, String.valueOf(token.expiresAt));
+                entries.setProperty(entryName(key), Base64.getEncoder().encodeToString(
+                        ByteBuffer.allocate(salt.length + iv.length + encrypted.length).
+                                put(salt).put(iv).put(encrypted).array()));
+
+                write(entries);
+            } catch (Exception e) {
+                LOG.error(e, "Could not write bearer token to {0}", file);
+            }
+        }
+    }
+
+    private static boolean isExpired(final String expiresAt, final long now) {
+        try {
+            return Long.parseLong(expiresAt) <= now;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static String entryName(final String key) throws GeneralSecurityException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+    }
+
+    private Cipher cipher(final int mode, final String key, final byte[] salt, final byte[] iv)
+            throws GeneralSecurityException {
+
+        byte[] derived = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").
+                generateSecret(new PBEKeySpec(secret, salt, KEY_ITERATIONS, 256)).getEncoded();
+
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(mode, new SecretKeySpec(derived, "AES"), new GCMParameterSpec(128, iv));
+        // binds the entry to its endpoint / client / user
+        cipher.updateAAD(key.getBytes(StandardCharsets.UTF_8));
+        return cipher;
+    }
+
+    private Properties read() throws Exception {
+        Properties entries = new Properties();
+        if (Files.isRegularFile(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                entries.load(in);
+            }
+        }
+        return entries;
+    }
+
+    private void write(final Properties entries) throws Exception {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try {
+                Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+            } catch (UnsupportedOperationException e) {
+                LOG.ok("Could not restrict permissions of {0}", file);
+            }
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                entries.store(out, null);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
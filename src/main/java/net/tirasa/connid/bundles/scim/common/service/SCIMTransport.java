@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import java.util.concurrent.CompletableFuture;
+import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import org.apache.cxf.jaxrs.client.WebClient;
+
+/**
+ * Sends requests to the SCIM server.
+ * Requests are always built as {@link WebClient} instances, holding URI and headers: the CXF transport sends them
+ * through the client itself, while other transports only take URI and headers from it.
+ * Responses are returned as {@link SCIMResponse}, whatever the client used.
+ */
+public interface SCIMTransport {
+
+    /**
+     * @param config connector configuration
+     * @param bearerAuth whether requests are authenticated with bearer token rather than with username and password
+     * @return transport selected by configuration
+     */
+    static SCIMTransport forConfiguration(final SCIMConnectorConfiguration config, final boolean bearerAuth) {
+        return "JDK".equalsIgnoreCase(config.getHttpTransport())
+                ? new SCIMHttpClientTransport(config, bearerAuth)
+                : new SCIMCXFTransport(config, bearerAuth);
+    }
+
+    /**
+     * @return new request, with the headers common to all requests, to be sent through this transport
+     */
+    WebClient newRequest();
+
+    /**
+     * @param webClient client, already configured for the request
+     * @param method HTTP method
+     * @param payload request payload, or {@code null} if none
+     * @return response
+     */
+    SCIMResponse execute(WebClient webClient, String method, String payload);
+
+    /**
+     * Sends the given request without waiting for its response.
+     *
+     * @param webClient client, already configured for the request
+     * @param method HTTP method
+     * @param payload request payload, or {@code null} if none
+     * @return response, available as soon as status and headers are received
+     */
+    CompletableFuture<SCIMResponse> executeAsync(WebClient webClient, String method, String payload);
+
+    void close();
+}
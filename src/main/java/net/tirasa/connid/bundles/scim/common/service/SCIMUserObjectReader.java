@@ -0,0 +1,264 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMBaseAttribute;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributesToGet;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMCustomAttributes;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
+import net.tirasa.connid.bundles.scim.v2.dto.Type;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+
+/**
+ * Reads Users from search responses straight into connector objects, without building User instances: only the
+ * requested simple attributes and the custom attributes are read, all other values are skipped while parsing.
+ * Values are converted as for User instances, so that the same connector objects are built.
+ */
+public final class SCIMUserObjectReader {
+
+    private static final Log LOG = Log.getLog(SCIMUserObjectReader.class);
+
+    private static final class SimpleProperty {
+
+        private final String attributeName;
+
+        private final Class<?> type;
+
+        private final Object defaultValue;
+
+        SimpleProperty(final String attributeName, final Class<?> type, final Object defaultValue) {
+            this.attributeName = attributeName;
+            this.type = type;
+            this.defaultValue = defaultValue;
+        }
+    }
+
+    /**
+     * String and Boolean properties by JSON name, by User class, with the value they have when not found in JSON.
+     */
+    private static final ClassValue<Map<String, SimpleProperty>> SIMPLE_PROPERTIES =
+            new ClassValue<Map<String, SimpleProperty>>() {
+
+        @Override
+        protected Map<String, SimpleProperty> computeValue(final Class<?> type) {
+            Map<String, Field> fields = new HashMap<>();
+            SCIMUtils.getAllFieldsList(type).stream().
+                    filter(f -> !Modifier.isStatic(f.getModifiers()) && !f.isAnnotationPresent(JsonIgnore.class)
+                    && (f.getType() == String.class || f.getType() == Boolean.class)).
+                    forEach(f -> fields.putIfAbsent(f.getName(), f));
+
+            Map<String, SimpleProperty> properties = new HashMap<>();
+            try {
+                Object defaults = type.getDeclaredConstructor().newInstance();
+                for (BeanPropertyDefinition property : SCIMUtils.MAPPER.getDeserializationConfig().
+                        introspect(SCIMUtils.MAPPER.constructType(type)).findProperties()) {
+
+                    Field field = fields.get(property.getInternalName());
+                    if (field != null && property.couldDeserialize()
+                            && property.getPrimaryType().getRawClass() == field.getType()) {
+
+                        properties.put(property.getName(),
+                                new SimpleProperty(field.getName(), field.getType(), field.get(defaults)));
+                    }
+                }
+            } catch (ReflectiveOperationException e) {
+                LOG.error(e, "While inspecting {0}, Users will not be read directly", type.getName());
+                return Collections.emptyMap();
+            }
+            return Collections.unmodifiableMap(properties);
+        }
+    };
+
+    /**
+     * Builds a reader for the given attributes to get, provided that all of them can be read directly.
+     *
+     * @param userType User class
+     * @param attributesToGet attributes to get
+     * @param customAttributes custom attributes
+     * @param useColon whether the extension schema URI and the attribute name are separated by colon or dot
+     * @return reader, or empty if any requested attribute needs a User instance to be built
+     */
+    public static Optional<SCIMUserObjectReader> of(
+            final Class<?> userType,
+            final SCIMAttributesToGet attributesToGet,
+            final SCIMCustomAttributes<?> customAttributes,
+            final boolean useColon) {
+
+        Map<String, SimpleProperty> available = SIMPLE_PROPERTIES.get(userType);
+        Map<String, SimpleProperty> byAttributeName = available.values().stream().
+                collect(Collectors.toMap(p -> p.attributeName, p -> p));
+        if (!byAttributeName.containsKey(SCIMAttributeUtils.ATTRIBUTE_ID)
+                || !byAttributeName.containsKey(SCIMAttributeUtils.USER_ATTRIBUTE_USERNAME)) {
+
+            return Optional.empty();
+        }
+
+        Set<String> fieldNames = SCIMUtils.getAllFieldsList(userType).stream().
+                map(Field::getName).collect(Collectors.toSet());
+        for (String name : attributesToGet.getNames()) {
+            // names with no dot nor colon which are not field names are not returned for User instances either
+            boolean readable = byAttributeName.containsKey(name)
+                    || customAttributes.isCustomAttribute(name, useColon)
+                    || (name.indexOf('.') == -1 && name.indexOf(':') == -1 && !fieldNames.contains(name));
+            if (!readable) {
+                LOG.ok("Attribute {0} cannot be read directly", name);
+                return Optional.empty();
+            }
+        }
+
+        Map<String, SimpleProperty> properties = new HashMap<>();
+        available.forEach((jsonName, property) -> {
+            if (attributesToGet.contains(property.attributeName)
+                    || SCIMAttributeUtils.ATTRIBUTE_ID.equals(property.attributeName)
+                    || SCIMAttributeUtils.USER_ATTRIBUTE_USERNAME.equals(property.attributeName)) {
+
+                properties.put(jsonName, property);
+            }
+        });
+
+        Map<String, Map<String, SCIMBaseAttribute<?>>> extensions = new HashMap<>();
+        customAttributes.getAttributesByExtensionUri().forEach((uri, attrs) -> {
+            Map<String, SCIMBaseAttribute<?>> byName = new HashMap<>();
+            attrs.forEach(attr -> byName.putIfAbsent(attr.getName(), attr));
+            extensions.put(uri, byName);
+        });
+
+        return Optional.of(new SCIMUserObjectReader(attributesToGet, properties, extensions, useColon));
+    }
+
+    private static Object toValue(final SCIMBaseAttribute<?> attr, final JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        Object value;
+        if (Type.integer.name().equals(attr.getType())) {
+            value = token.isNumeric() ? parser.getNumberValue().intValue() : 0;
+        } else if (Type.BOOLEAN.name().toLowerCase().equals(attr.getType())) {
+            value = token == JsonToken.VALUE_TRUE;
+        } else {
+            value = token == JsonToken.VALUE_STRING ? parser.getText() : null;
+        }
+        parser.skipChildren();
+        return value;
+    }
+
+    private final SCIMAttributesToGet attributesToGet;
+
+    private final Map<String, SimpleProperty> properties;
+
+    private final Map<String, Map<String, SCIMBaseAttribute<?>>> extensions;
+
+    private final boolean useColon;
+
+    private SCIMUserObjectReader(
+            final SCIMAttributesToGet attributesToGet,
+            final Map<String, SimpleProperty> properties,
+            final Map<String, Map<String, SCIMBaseAttribute<?>>> extensions,
+            final boolean useColon) {
+
+        this.attributesToGet = attributesToGet;
+        this.properties = properties;
+        this.extensions = extensions;
+        this.useColon = useColon;
+    }
+
+    /**
+     * Reads the User starting at the current token of the given parser.
+     *
+     * @param parser parser, positioned at the start of a User object
+     * @return connector object for the User read
+     * @throws IOException if the User cannot be read
+     */
+    public ConnectorObject read(final JsonParser parser) throws IOException {
+        Map<String, Object> values = new HashMap<>();
+        properties.values().forEach(property -> values.put(property.attributeName, property.defaultValue));
+        Map<String, List<Object>> customValues = new LinkedHashMap<>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+
+            SimpleProperty property = properties.get(field);
+            Map<String, SCIMBaseAttribute<?>> extension = extensions.get(field);
+            if (property != null) {
+                values.put(property.attributeName, SCIMUtils.reader(property.type).readValue(parser));
+            } else if (extension != null && token == JsonToken.START_OBJECT) {
+                readExtension(parser, extension, customValues);
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        ConnectorObjectBuilder builder = new ConnectorObjectBuilder();
+        builder.setObjectClass(ObjectClass.ACCOUNT);
+        builder.setUid((String) values.get(SCIMAttributeUtils.ATTRIBUTE_ID));
+        builder.setName((String) values.get(SCIMAttributeUtils.USER_ATTRIBUTE_USERNAME));
+
+        properties.values().stream().
+                filter(property -> attributesToGet.contains(property.attributeName)
+                && !SCIMUtils.isEmptyObject(values.get(property.attributeName))).
+                forEach(property -> builder.addAttribute(SCIMAttributeUtils.doBuildAttributeFromClassField(
+                values.get(property.attributeName), property.attributeName, property.type).build()));
+
+        customValues.forEach(builder::addAttribute);
+
+        return builder.build();
+    }
+
+    private void readExtension(
+            final JsonParser parser,
+            final Map<String, SCIMBaseAttribute<?>> extension,
+            final Map<String, List<Object>> customValues) throws IOException {
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            SCIMBaseAttribute<?> attr = extension.get(parser.currentName());
+            JsonToken token = parser.nextToken();
+            if (attr == null) {
+                parser.skipChildren();
+                continue;
+            }
+
+            List<Object> attrValues = new ArrayList<>();
+            // manage multiple types
+            if (token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    attrValues.add(toValue(attr, parser));
+                }
+            } else {
+                attrValues.add(toValue(attr, parser));
+            }
+            customValues.put(SCIMCustomAttributes.getQualifiedName(attr, useColon), attrValues);
+        }
+    }
+}
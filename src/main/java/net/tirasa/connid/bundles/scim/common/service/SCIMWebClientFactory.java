@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import java.util.Map;
+import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import org.apache.cxf.Bus;
+import org.apache.cxf.BusFactory;
+import org.apache.cxf.configuration.security.ProxyAuthorizationPolicy;
+import org.apache.cxf.jaxrs.client.JAXRSClientFactoryBean;
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.apache.cxf.transport.http.HTTPConduit;
+import org.apache.cxf.transport.http.HTTPConduitConfigurer;
+import org.apache.cxf.transports.http.configuration.ConnectionType;
+import org.apache.cxf.transports.http.configuration.HTTPClientPolicy;
+import org.apache.cxf.transports.http.configuration.ProxyServerType;
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.SecurityUtil;
+
+/**
+ * Long-lived HTTP client layer, built once per connector instance.
+ * A dedicated CXF bus holds a bounded pool of keep-alive connections for the asynchronous conduit, used by
+ * asynchronous and PATCH requests; conduit, proxy and authentication settings are applied by the bus to the conduit
+ * of each client returned by {@link #newRequest()}.
+ */
+public class SCIMWebClientFactory {
+
+    private static final Log LOG = Log.getLog(SCIMWebClientFactory.class);
+
+    private static final String ASYNC_PREFIX = "org.apache.cxf.transport.http.async.";
+
+    private static final String MAX_CONNECTIONS = ASYNC_PREFIX + "MAX_CONNECTIONS";
+
+    private static final String MAX_PER_HOST_CONNECTIONS = ASYNC_PREFIX + "MAX_PER_HOST_CONNECTIONS";
+
+    private static final String CONNECTION_MAX_IDLE = ASYNC_PREFIX + "CONNECTION_MAX_IDLE";
+
+    private static final String CONNECTION_TTL = ASYNC_PREFIX + "CONNECTION_TTL";
+
+    private final SCIMConnectorConfiguration config;
+
+    private final Bus bus;
+
+    private final JAXRSClientFactoryBean bean;
+
+    public SCIMWebClientFactory(final SCIMConnectorConfiguration config, final boolean bearerAuth) {
+        this.config = config;
+
+        bus = BusFactory.newInstance().createBus();
+        bus.setProperty(MAX_CONNECTIONS, String.valueOf(config.getMaxConnections()));
+        bus.setProperty(MAX_PER_HOST_CONNECTIONS, String.valueOf(config.getMaxConnectionsPerRoute()));
+        bus.setProperty(CONNECTION_MAX_IDLE, String.valueOf(config.getConnectionIdleTimeout()));
+        bus.setProperty(CONNECTION_TTL, String.valueOf(config.getConnectionTimeToLive()));
+        bus.setExtension((HTTPConduitConfigurer) (name, address, conduit) -> configure(conduit),
+                HTTPConduitConfigurer.class);
+
+        bean = new JAXRSClientFactoryBean();
+        bean.setBus(bus);
+        bean.setAddress(config.getBaseAddress());
+        if (!bearerAuth) {
+            bean.setUsername(config.getUsername());
+            bean.setPassword(config.getPassword() == null ? null : SecurityUtil.decrypt(config.getPassword()));
+        }
+
+        // include additional api key header if requested by configuration
+        if (StringUtil.isNotBlank(config.getAuthHttpHeaderName())) {
+            bean.setHeaders(Map.of(
+                    config.getAuthHttpHeaderName(), SecurityUtil.decrypt(config.getAuthHttpHeaderValue())));
+        }
+
+        LOG.ok("HTTP client pool for {0} built: max connections {1}, max per route {2}, idle timeout {3} ms, "
+                + "time to live {4} ms",
+                config.getBaseAddress(),
+                config.getMaxConnections(),
+                config.getMaxConnectionsPerRoute(),
+                config.getConnectionIdleTimeout(),
+                config.getConnectionTimeToLive());
+    }
+
+    private void configure(final HTTPConduit conduit) {
+        HTTPClientPolicy policy = conduit.getClient();
+        policy.setConnection(ConnectionType.KEEP_ALIVE);
+        policy.setConnectionTimeout(config.getConnectionTimeout());
+        policy.setReceiveTimeout(config.getReceiveTimeout());
+
+        if (StringUtil.isNotBlank(config.getProxyServerHost())) {
+            policy.setProxyServer(config.getProxyServerHost());
+            policy.setProxyServerPort(config.getProxyServerPort());
+            policy.setProxyServerType(ProxyServerType.valueOf(config.getProxyServerType().toUpperCase()));
+
+            if (StringUtil.isNotBlank(config.getProxyServerUser())
+                    && StringUtil.isNotBlank(config.getProxyServerPassword())) {
+                ProxyAuthorizationPolicy authorizationPolicy = new ProxyAuthorizationPolicy();
+                authorizationPolicy.setAuthorizationType("Basic");
+                authorizationPolicy.setUserName(config.getProxyServerUser());
+                authorizationPolicy.setPassword(config.getProxyServerPassword());
+                conduit.setProxyAuthorization(authorizationPolicy);
+            }
+        }
+
+        if (config.getFollowHttpRedirects()) {
+            policy.setAutoRedirect(true);
+        }
+        conduit.setClient(policy);
+    }
+
+    /**
+     * Returns a new client, with its own configuration and request context, ready to be enriched with per-request
+     * state as path, query and headers.
+     *
+     * @return new per-request client
+     */
+    public WebClient newRequest() {
+        WebClient webClient;
+        // the factory bean is not meant for concurrent use
+        synchronized (bean) {
+            webClient = bean.createWebClient();
+        }
+        return webClient.type(config.getContentType()).accept(config.getAccept());
+    }
+
+    public void close() {
+        LOG.ok("Shutting down HTTP client pool");
+        bus.shutdown(true);
+    }
+}
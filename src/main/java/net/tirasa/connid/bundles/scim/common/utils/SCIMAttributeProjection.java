@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.utils;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMBaseAttribute;
+import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2Attribute;
+import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2EnterpriseUser;
+
+/**
+ * Value of the SCIM {@code attributes} request parameter, restricting the attributes returned by the SCIM server.
+ * Projections for the attributes to get of searches are compiled once per distinct request and then shared.
+ */
+public final class SCIMAttributeProjection {
+
+    public static final String ATTRIBUTES = "attributes";
+
+    public static final String EXCLUDED_ATTRIBUTES = "excludedAttributes";
+
+    private static final int MAX_COMPILED = 256;
+
+    private static final Map<List<Object>, SCIMAttributeProjection> COMPILED = new ConcurrentHashMap<>();
+
+    /**
+     * Multi-valued complex attributes, whose ConnId attribute names are built as {@code attribute.type.subAttribute}.
+     */
+    private static final Set<String> TYPED_COMPLEX = Set.of(
+            SCIMAttributeUtils.SCIM_USER_ADDRESSES,
+            SCIMAttributeUtils.SCIM_USER_PHONE_NUMBERS,
+            SCIMAttributeUtils.SCIM_USER_IMS,
+            SCIMAttributeUtils.SCIM_USER_EMAILS,
+            SCIMAttributeUtils.SCIM_USER_ROLES,
+            SCIMAttributeUtils.SCIM_USER_PHOTOS,
+            SCIMAttributeUtils.SCIM_USER_X509CERTIFICATES,
+            SCIMAttributeUtils.SCIM_USER_ENTITLEMENTS);
+
+    private static final String TYPE = "type";
+
+    public static SCIMAttributeProjection attributes(final String... names) {
+        return new SCIMAttributeProjection(String.join(",", names));
+    }
+
+    /**
+     * Returns the projection for the given User attributes to get, compiling it on first use.
+     *
+     * @param <T> custom attribute type
+     * @param attributesToGet attributes to get, not empty
+     * @param customAttributesJSON custom attributes JSON, as taken from connector configuration
+     * @param attrType custom attribute type
+     * @param addCustomAttributes whether all custom attributes shall be requested
+     * @param useColon whether the extension schema URI and the attribute name are separated by colon or dot
+     * @param subAttributes whether only the requested sub-attributes of complex attributes shall be requested,
+     * rather than the whole complex attributes; {@code name} is then only requested if needed
+     * @return projection for the given attributes to get
+     */
+    public static <T extends SCIMBaseAttribute<T>> SCIMAttributeProjection compile(
+            final Set<String> attributesToGet,
+            final String customAttributesJSON,
+            final Class<T> attrType,
+            final boolean addCustomAttributes,
+            final boolean useColon,
+            final boolean subAttributes) {
+
+        List<Object> key = Arrays.asList(Set.copyOf(attributesToGet), Objects.toString(customAttributesJSON, ""),
+                attrType, addCustomAttributes, useColon, subAttributes);
+        SCIMAttributeProjection projection = COMPILED.get(key);
+        if (projection == null) {
+            if (COMPILED.size() >= MAX_COMPILED) {
+                COMPILED.clear();
+            }
+            projection = COMPILED.computeIfAbsent(key, k -> doCompile(
+                    attributesToGet,
+                    SCIMCustomAttributes.of(customAttributesJSON, attrType),
+                    addCustomAttributes,
+                    useColon,
+                    subAttributes));
+        }
+        return projection;
+    }
+
+    private static <T extends SCIMBaseAttribute<T>> SCIMAttributeProjection doCompile(
+            final Set<String> attributesToGet,
+            final SCIMCustomAttributes<T> customAttributes,
+            final boolean addCustomAttributes,
+            final boolean useColon,
+            final boolean subAttributes) {
+
+        if (attributesToGet.isEmpty()) {
+            return new SCIMAttributeProjection(SCIMAttributeUtils.defaultAttributesToGet());
+        }
+
+        Set<String> result = new LinkedHashSet<>();
+        for (String attributeToGet : attributesToGet) {
+            String[] path = attributeToGet.split("\\.");
+            if (attributeToGet.contains("__")
+                    || attributeToGet.contains(SCIMAttributeUtils.SCIM_USER_META + ".")
+                    || attributeToGet.toLowerCase().contains("password")) {
+                // nothing to do
+            } else if (attributeToGet.startsWith(SCIMv2EnterpriseUser.SCHEMA_URI)) {
+                String subAttribute = attributeToGet.substring(SCIMv2EnterpriseUser.SCHEMA_URI.length());
+                result.add(subAttributes && subAttribute.startsWith(".")
+                        ? SCIMv2EnterpriseUser.SCHEMA_URI + ":" + subAttribute.substring(1)
+                        : attributeToGet);
+            } else if (customAttributes.isCustomAttribute(attributeToGet, useColon)) {
+                // requested below, if needed
+            } else if (path.length > 1 && SCIMAttributeUtils.SCIM_USER_NAME.equals(path[0])) {
+                result.add(subAttributes ? attributeToGet : SCIMAttributeUtils.SCIM_USER_NAME);
+            } else if (path.length > 1 && TYPED_COMPLEX.contains(path[0])) {
+                if (subAttributes && path.length == 3) {
+                    // the type is needed as well to tell values apart
+                    result.add(path[0] + "." + path[2]);
+                    result.add(path[0] + "." + TYPE);
+                } else {
+                    result.add(path[0]);
+                }
+            } else if (path.length > 1 && SCIMAttributeUtils.SCIM_USER_GROUPS.equals(path[0])) {
+                result.add(SCIMAttributeUtils.SCIM_USER_GROUPS);
+            } else {
+                result.add(attributeToGet);
+            }
+        }
+
+        if (addCustomAttributes) {
+            for (T attribute : customAttributes.getAttributes()) {
+                result.add(attribute instanceof SCIMv2Attribute
+                        ? SCIMCustomAttributes.getQualifiedName(attribute, useColon)
+                        : attribute.getName());
+            }
+        }
+
+        result.add(SCIMAttributeUtils.USER_ATTRIBUTE_USERNAME);
+        result.add(SCIMAttributeUtils.ATTRIBUTE_ID);
+        if (!subAttributes) {
+            result.add(SCIMAttributeUtils.SCIM_USER_NAME);
+        }
+
+        return new SCIMAttributeProjection(String.join(",", result));
+    }
+
+    private final String value;
+
+    private SCIMAttributeProjection(final String value) {
+        this.value = value;
+    }
+
+    /**
+     * @return request parameter name
+     */
+    public String getParameter() {
+        return ATTRIBUTES;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void applyTo(final Map<String, String> params) {
+        params.put(ATTRIBUTES, value);
+    }
+
+    @Override
+    public String toString() {
+        return ATTRIBUTES + "=" + value;
+    }
+}
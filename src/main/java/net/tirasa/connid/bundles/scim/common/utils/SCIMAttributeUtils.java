@@ -54,6 +54,8 @@ public final class SCIMAttributeUtils {
 
     public static final String SCIM_USER_NAME = "name";
 
+    public static final String SCIM_USER_DISPLAY_NAME = "displayName";
+
     public static final String SCIM_USER_META = "meta";
 
     public static final String SCIM_USER_ADDRESSES = "addresses";
@@ -263,14 +265,10 @@ public final class SCIMAttributeUtils {
         userBuilder.addAttributeInfo(AttributeInfoBuilder.define("meta.attributes").setMultiValued(true).build());
 
         // custom attributes
-        SCIMUtils.extractSCIMSchemas(customAttributes, attrType).ifPresent(scimSchema -> {
+        SCIMCustomAttributes.of(customAttributes, attrType).getSchema().ifPresent(scimSchema -> {
             for (T attribute : scimSchema.getAttributes()) {
                 AttributeInfoBuilder attributeInfoBuilder = AttributeInfoBuilder.define(
-                        attribute instanceof SCIMv11Attribute
-                                ? SCIMv11Attribute.class.cast(attribute).getSchema()
-                                        .concat(useColon ? ":" : ".").concat(attribute.getName())
-                                : SCIMv2Attribute.class.cast(attribute).getExtensionSchema()
-                                        .concat(useColon ? ":" : ".").concat(attribute.getName()));
+                        SCIMCustomAttributes.getQualifiedName(attribute, useColon));
                 attributeInfoBuilder.setMultiValued(attribute.getMultiValued()).setRequired(attribute.getRequired())
                         .setUpdateable(attribute instanceof SCIMv11Attribute
                                 ? !SCIMv11Attribute.class.cast(attribute).getReadOnly()
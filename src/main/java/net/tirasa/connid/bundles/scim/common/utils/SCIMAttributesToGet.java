@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.utils;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Attributes to get, as requested to the connector, compiled into a plan telling which resource fields need to be
+ * converted: a field is only read when some requested attribute name starts with the field name, i.e. equals the
+ * field name or continues with a {@code .}; extension fields are matched by schema URI.
+ * Plans are shared by all callers requesting the same attributes.
+ */
+public final class SCIMAttributesToGet {
+
+    private static final int MAX_PLANS = 256;
+
+    private static final Map<Set<String>, SCIMAttributesToGet> PLANS = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the plan for the given attributes to get, compiling it on first use.
+     *
+     * @param attributesToGet requested attribute names
+     * @return plan for the given attribute names
+     */
+    public static SCIMAttributesToGet of(final Collection<String> attributesToGet) {
+        Set<String> names = Set.copyOf(attributesToGet);
+        SCIMAttributesToGet plan = PLANS.get(names);
+        if (plan == null) {
+            if (PLANS.size() >= MAX_PLANS) {
+                PLANS.clear();
+            }
+            plan = PLANS.computeIfAbsent(names, SCIMAttributesToGet::new);
+        }
+        return plan;
+    }
+
+    private final Set<String> names;
+
+    private final Set<String> heads;
+
+    private final Map<String, Boolean> extensions = new ConcurrentHashMap<>();
+
+    private SCIMAttributesToGet(final Set<String> names) {
+        this.names = names;
+        this.heads = names.stream().
+                map(name -> name.indexOf('.') == -1 ? name : name.substring(0, name.indexOf('.'))).
+                collect(Collectors.toUnmodifiableSet());
+    }
+
+    public Set<String> getNames() {
+        return names;
+    }
+
+    /**
+     * @param attributeName attribute name
+     * @return whether the given attribute was requested
+     */
+    public boolean contains(final String attributeName) {
+        return names.contains(attributeName);
+    }
+
+    /**
+     * @param fieldName resource field name
+     * @return whether any attribute built from the given field was requested
+     */
+    public boolean requiresField(final String fieldName) {
+        return heads.contains(fieldName);
+    }
+
+    /**
+     * @param schemaUri extension schema URI
+     * @return whether any attribute of the given extension was requested
+     */
+    public boolean requiresExtension(final String schemaUri) {
+        return extensions.computeIfAbsent(schemaUri, uri -> names.stream().
+                anyMatch(name -> name.startsWith(uri + ":") || name.startsWith(uri + ".")));
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMBaseAttribute;
+import net.tirasa.connid.bundles.scim.common.dto.SCIMSchema;
+import net.tirasa.connid.bundles.scim.v11.dto.SCIMv11Attribute;
+import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2Attribute;
+import org.identityconnectors.common.StringUtil;
+import org.identityconnectors.common.logging.Log;
+
+/**
+ * Custom attributes JSON, as taken from connector configuration, compiled into an immutable index by fully qualified
+ * attribute name, in both colon ({@code urn:...:extension:name}) and dot ({@code urn:...:extension.name}) forms.
+ * Compiled instances are shared by all callers reading the same JSON, which is hence only parsed once.
+ *
+ * @param <T> custom attribute type
+ */
+public final class SCIMCustomAttributes<T extends SCIMBaseAttribute<T>> {
+
+    private static final Log LOG = Log.getLog(SCIMCustomAttributes.class);
+
+    private static final Map<Class<?>, Map<String, SCIMCustomAttributes<?>>> COMPILED = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the compiled custom attributes for the given JSON, compiling it on first use.
+     *
+     * @param <T> custom attribute type
+     * @param json custom attributes JSON
+     * @param attrType custom attribute type
+     * @return compiled custom attributes, empty if the given JSON is blank or invalid
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends SCIMBaseAttribute<T>> SCIMCustomAttributes<T> of(
+            final String json, final Class<T> attrType) {
+
+        return (SCIMCustomAttributes<T>) COMPILED.computeIfAbsent(attrType, k -> new ConcurrentHashMap<>()).
+                computeIfAbsent(StringUtil.isBlank(json) ? StringUtil.EMPTY : json, k -> compile(k, attrType));
+    }
+
+    private static <T extends SCIMBaseAttribute<T>> SCIMCustomAttributes<T> compile(
+            final String json, final Class<T> attrType) {
+
+        if (StringUtil.isBlank(json)) {
+            return new SCIMCustomAttributes<>(null);
+        }
+
+        try {
+            SCIMSchema<T> scimSchema = SCIMUtils.MAPPER.readValue(json,
+                    SCIMUtils.MAPPER.getTypeFactory().constructParametricType(SCIMSchema.class, attrType));
+            // if SCIMv2Attribute populate transient field extensionSchema of the attribute since from SCIM 2.0 "schema"
+            // attribute has been removed
+            // refer to https://datatracker.ietf.org/doc/html/rfc7643#section-8.7.1
+            if (SCIMv2Attribute.class.equals(attrType)) {
+                scimSchema.getAttributes()
+                        .forEach(attr -> SCIMv2Attribute.class.cast(attr).setExtensionSchema(scimSchema.getId()));
+            }
+            scimSchema.setAttributes(Collections.unmodifiableList(scimSchema.getAttributes()));
+
+            return new SCIMCustomAttributes<>(scimSchema.getAttributes().isEmpty() ? null : scimSchema);
+        } catch (IOException ex) {
+            LOG.error(ex, "While parsing custom attributes JSON object, taken from connector configuration");
+        }
+
+        return new SCIMCustomAttributes<>(null);
+    }
+
+    /**
+     * @param attribute custom attribute
+     * @return extension schema URI of the given custom attribute
+     */
+    public static String getExtensionUri(final SCIMBaseAttribute<?> attribute) {
+        return attribute instanceof SCIMv11Attribute
+                ? SCIMv11Attribute.class.cast(attribute).getSchema()
+                : SCIMv2Attribute.class.cast(attribute).getExtensionSchema();
+    }
+
+    /**
+     * @param attribute custom attribute
+     * @param useColon whether the extension schema URI and the attribute name are separated by colon or dot
+     * @return fully qualified name of the given custom attribute
+     */
+    public static String getQualifiedName(final SCIMBaseAttribute<?> attribute, final boolean useColon) {
+        return getExtensionUri(attribute) + (useColon ? ":" : ".") + attribute.getName();
+    }
+
+    private final SCIMSchema<T> schema;
+
+    private final Map<String, List<T>> byExtensionUri;
+
+    private final Map<String, T> byColonName = new HashMap<>();
+
+    private final Map<String, T> byDotName = new HashMap<>();
+
+    private final Map<String, T> byColonNameIgnoreCase = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    private final Map<String, T> byDotNameIgnoreCase = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    private final Set<String> caseExactNames = new HashSet<>();
+
+    private SCIMCustomAttributes(final SCIMSchema<T> schema) {
+        this.schema = schema;
+
+        Map<String, List<T>> uris = new LinkedHashMap<>();
+        getAttributes().forEach(attribute -> {
+            Optional.ofNullable(getExtensionUri(attribute)).
+                    ifPresent(uri -> uris.computeIfAbsent(uri, k -> new ArrayList<>()).add(attribute));
+            byColonName.putIfAbsent(getQualifiedName(attribute, true), attribute);
+            byDotName.putIfAbsent(getQualifiedName(attribute, false), attribute);
+            byColonNameIgnoreCase.putIfAbsent(getQualifiedName(attribute, true), attribute);
+            byDotNameIgnoreCase.putIfAbsent(getQualifiedName(attribute, false), attribute);
+            if (Boolean.TRUE.equals(attribute.getCaseExact())) {
+                caseExactNames.add(getQualifiedName(attribute, true));
+                caseExactNames.add(getQualifiedName(attribute, false));
+            }
+        });
+        uris.replaceAll((uri, attributes) -> Collections.unmodifiableList(attributes));
+        this.byExtensionUri = Collections.unmodifiableMap(uris);
+    }
+
+    public boolean isEmpty() {
+        return schema == null;
+    }
+
+    /**
+     * @return custom attributes schema, with unmodifiable attributes, if any custom attribute is defined
+     */
+    public Optional<SCIMSchema<T>> getSchema() {
+        return Optional.ofNullable(schema);
+    }
+
+    public List<T> getAttributes() {
+        return schema == null ? Collections.emptyList() : schema.getAttributes();
+    }
+
+    public Set<String> getExtensionUris() {
+        return byExtensionUri.keySet();
+    }
+
+    /**
+     * @return fully qualified names, in both colon and dot forms, of the custom attributes defined as
+     * {@code caseExact}
+     */
+    public Set<String> getCaseExactNames() {
+        return Collections.unmodifiableSet(caseExactNames);
+    }
+
+    /**
+     * @return custom attributes, grouped by extension schema URI
+     */
+    public Map<String, List<T>> getAttributesByExtensionUri() {
+        return byExtensionUri;
+    }
+
+    /**
+     * @param qualifiedName fully qualified attribute name
+     * @param useColon whether the extension schema URI and the attribute name are separated by colon or dot
+     * @return custom attribute with the given name, if any
+     */
+    public Optional<T> get(final String qualifiedName, final boolean useColon) {
+        return Optional.ofNullable((useColon ? byColonName : byDotName).get(qualifiedName));
+    }
+
+    /**
+     * @param qualifiedName fully qualified attribute name, matched ignoring case
+     * @param useColon whether the extension schema URI and the attribute name are separated by colon or dot
+     * @return custom attribute with the given name, if any
+     */
+    public Optional<T> getIgnoreCase(final String qualifiedName, final boolean useColon) {
+        return Optional.ofNullable((useColon ? byColonNameIgnoreCase : byDotNameIgnoreCase).get(qualifiedName));
+    }
+
+    public boolean isCustomAttribute(final String qualifiedName, final boolean useColon) {
+        return (useColon ? byColonName : byDotName).containsKey(qualifiedName);
+    }
+}
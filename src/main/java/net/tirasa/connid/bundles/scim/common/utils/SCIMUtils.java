@@ -18,15 +18,20 @@ package net.tirasa.connid.bundles.scim.common.utils;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.io.IOException;
+import com.fasterxml.jackson.databind.ObjectReader;
 import java.lang.reflect.Field;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
@@ -35,11 +40,9 @@ import net.tirasa.connid.bundles.scim.common.dto.BaseResourceReference;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMBaseAttribute;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMSchema;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMUser;
-import net.tirasa.connid.bundles.scim.v11.dto.SCIMv11Attribute;
-import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2Attribute;
-import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2EnterpriseUser;
 import org.identityconnectors.common.StringUtil;
 import org.identityconnectors.common.logging.Log;
+import org.identityconnectors.common.security.SecurityUtil;
 import org.identityconnectors.framework.common.exceptions.ConnectorException;
 
 public final class SCIMUtils {
@@ -50,15 +53,58 @@ public final class SCIMUtils {
             .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
             .setDefaultPropertyInclusion(JsonInclude.Include.NON_EMPTY);
 
-    public static List<Field> getAllFieldsList(final Class<?> cls) {
-        List<Field> allFields = new ArrayList<>();
-        Class<?> currentClass = cls;
-        while (currentClass != null) {
-            Field[] declaredFields = currentClass.getDeclaredFields();
-            Collections.addAll(allFields, declaredFields);
-            currentClass = currentClass.getSuperclass();
+    private static final Map<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+    /**
+     * @param type target type
+     * @return reader for the given type, built on first use and then shared, as readers are immutable
+     */
+    public static ObjectReader reader(final Class<?> type) {
+        return READERS.computeIfAbsent(type, MAPPER::readerFor);
+    }
+
+    private static final ClassValue<List<Field>> ALL_FIELDS = new ClassValue<List<Field>>() {
+
+        @Override
+        protected List<Field> computeValue(final Class<?> type) {
+            List<Field> allFields = new ArrayList<>();
+            Class<?> currentClass = type;
+            while (currentClass != null) {
+                allFields.addAll(DECLARED_FIELDS.get(currentClass));
+                currentClass = currentClass.getSuperclass();
+            }
+            return Collections.unmodifiableList(allFields);
         }
-        return allFields;
+    };
+
+    private static final ClassValue<List<Field>> DECLARED_FIELDS = new ClassValue<List<Field>>() {
+
+        @Override
+        protected List<Field> computeValue(final Class<?> type) {
+            List<Field> declaredFields = new ArrayList<>();
+            for (Field field : type.getDeclaredFields()) {
+                field.trySetAccessible();
+                declaredFields.add(field);
+            }
+            return Collections.unmodifiableList(declaredFields);
+        }
+    };
+
+    /**
+     * @param cls class
+     * @return fields declared by the given class and its superclasses, already made accessible; computed once per
+     * class, as field lookup and access checks are expensive on hot paths
+     */
+    public static List<Field> getAllFieldsList(final Class<?> cls) {
+        return ALL_FIELDS.get(cls);
+    }
+
+    /**
+     * @param cls class
+     * @return fields declared by the given class, already made accessible; computed once per class
+     */
+    public static List<Field> getDeclaredFieldsList(final Class<?> cls) {
+        return DECLARED_FIELDS.get(cls);
     }
 
     public static void handleGeneralError(final String message) {
@@ -98,118 +144,15 @@ public final class SCIMUtils {
             final boolean addCustomAttrsToQueryParams,
             final boolean useColon) {
 
-        if (attributesToGet.isEmpty()) {
-            return SCIMAttributeUtils.defaultAttributesToGet();
-        }
-
-        SCIMSchema<T> customAttributesObj = StringUtil.isBlank(customAttributesJSON)
-                ? null
-                : extractSCIMSchemas(customAttributesJSON, attrType).orElse(null);
-        StringBuilder result = new StringBuilder();
-        for (String attributeToGet : attributesToGet) {
-            if (attributeToGet.contains("__")
-                    || attributeToGet.contains(SCIMAttributeUtils.SCIM_USER_META + ".")
-                    || attributeToGet.toLowerCase().contains("password")) {
-                // nothing to do
-            } else if (attributeToGet.contains(SCIMAttributeUtils.SCIM_USER_NAME + ".")) {
-                result.append(SCIMAttributeUtils.SCIM_USER_NAME).append(",");
-            } else if (attributeToGet.contains(SCIMAttributeUtils.SCIM_USER_ADDRESSES + ".")) {
-                result.append(SCIMAttributeUtils.SCIM_USER_ADDRESSES).append(",");
-            } else if (attributeToGet.contains(SCIMAttributeUtils.SCIM_USER_PHONE_NUMBERS + ".")) {
-                result.append(SCIMAttributeUtils.SCIM_USER_PHONE_NUMBERS).append(",");
-            } else if (attributeToGet.contains(SCIMAttributeUtils.SCIM_USER_IMS + ".")) {
-                result.append(SCIMAttributeUtils.SCIM_USER_IMS).append(",");
-            } else if (attributeToGet.contains(SCIMAttributeUtils.SCIM_USER_EMAILS + ".")) {
-                result.append(SCIMAttributeUtils.SCIM_USER_EMAILS).append(",");
-            } else if (attributeToGet.contains(SCIMAttributeUtils.SCIM_USER_ROLES + ".")) {
-                result.append(SCIMAttributeUtils.SCIM_USER_ROLES).append(",");
-            } else if (attributeToGet.contains(SCIMAttributeUtils.SCIM_USER_GROUPS + ".")) {
-                result.append(SCIMAttributeUtils.SCIM_USER_GROUPS).append(",");
-            } else if (attributeToGet.contains(SCIMAttributeUtils.SCIM_USER_PHOTOS + ".")) {
-                result.append(SCIMAttributeUtils.SCIM_USER_PHOTOS).append(",");
-            } else if (attributeToGet.contains(SCIMAttributeUtils.SCIM_USER_X509CERTIFICATES + ".")) {
-                result.append(SCIMAttributeUtils.SCIM_USER_X509CERTIFICATES).append(",");
-            } else if (attributeToGet.contains(SCIMAttributeUtils.SCIM_USER_ENTITLEMENTS + ".")) {
-                result.append(SCIMAttributeUtils.SCIM_USER_ENTITLEMENTS).append(",");
-            } else if (attributeToGet.startsWith(SCIMv2EnterpriseUser.SCHEMA_URI)) {
-                result.append(SCIMv2EnterpriseUser.SCHEMA_URI)
-                        .append(attributeToGet.replace(SCIMv2EnterpriseUser.SCHEMA_URI, StringUtil.EMPTY)).append(",");
-            } else if (customAttributesObj == null) {
-                result.append(attributeToGet).append(",");
-            } else if (!isCustomAttribute(customAttributesObj, attributeToGet, useColon)) {
-                result.append(attributeToGet).append(",");
-            }
-        }
-
-        if (customAttributesObj != null && addCustomAttrsToQueryParams) {
-            for (T attribute : customAttributesObj.getAttributes()) {
-                String attributeName = attribute instanceof SCIMv2Attribute
-                        ? SCIMv2Attribute.class.cast(attribute).getExtensionSchema() + (useColon ? ":" : ".")
-                        + attribute.getName() : attribute.getName();
-                if (!result.toString().contains(attributeName)) {
-                    result.append(attributeName).append(",");
-                }
-            }
-        }
-
-        if (!result.toString().contains(SCIMAttributeUtils.USER_ATTRIBUTE_USERNAME + ",")) {
-            result.append(SCIMAttributeUtils.USER_ATTRIBUTE_USERNAME).append(",");
-        }
-        if (!result.toString().contains(SCIMAttributeUtils.ATTRIBUTE_ID + ",")) {
-            result.append(SCIMAttributeUtils.ATTRIBUTE_ID).append(",");
-        }
-        if (!result.toString().contains(SCIMAttributeUtils.SCIM_USER_NAME + ",")) {
-            result.append(SCIMAttributeUtils.SCIM_USER_NAME).append(",");
-        }
-
-        return result.length() == 0
-                ? SCIMAttributeUtils.defaultAttributesToGet()
-                : result.substring(0, result.length() - 1);
-    }
-
-    private static <T extends SCIMBaseAttribute<T>> boolean isCustomAttribute(
-            final SCIMSchema<T> customAttributes,
-            final String attribute,
-            final boolean useColon) {
-        for (T customAttribute : customAttributes.getAttributes()) {
-            String externalAttributeName = customAttribute instanceof SCIMv11Attribute
-                    ? ((SCIMv11Attribute) customAttribute).getSchema()
-                            .concat(useColon ? ":" : ".")
-                            .concat(customAttribute.getName())
-                    : ((SCIMv2Attribute) customAttribute).getExtensionSchema()
-                            .concat(useColon ? ":" : ".")
-                            .concat(customAttribute.getName());
-            if (externalAttributeName.equals(attribute)) {
-                return true;
-            }
-        }
-        return false;
+        return SCIMAttributeProjection.compile(
+                attributesToGet, customAttributesJSON, attrType, addCustomAttrsToQueryParams, useColon, false).
+                getValue();
     }
 
     public static <T extends SCIMBaseAttribute<T>> Optional<SCIMSchema<T>> extractSCIMSchemas(
             final String json, final Class<T> attrType) {
 
-        if (StringUtil.isBlank(json)) {
-            return Optional.empty();
-        }
-
-        try {
-            SCIMSchema<T> scimSchema = SCIMUtils.MAPPER.readValue(json,
-                    SCIMUtils.MAPPER.getTypeFactory().constructParametricType(SCIMSchema.class, attrType));
-            // if SCIMv2Attribute populate transient field extensionSchema of the attribute since from SCIM 2.0 "schema"
-            // attribute has been removed
-            // refer to https://datatracker.ietf.org/doc/html/rfc7643#section-8.7.1
-            if (SCIMv2Attribute.class.equals(attrType)) {
-                scimSchema.getAttributes()
-                        .forEach(attr -> SCIMv2Attribute.class.cast(attr).setExtensionSchema(scimSchema.getId()));
-            }
-
-            return scimSchema.getAttributes().isEmpty() ? Optional.empty() : Optional.of(scimSchema);
-        } catch (IOException ex) {
-            LOG.error(ex, "While parsing custom attributes JSON object, taken from connector configuration");
-        }
-
-        return Optional.empty();
+        return SCIMCustomAttributes.of(json, attrType).getSchema();
     }
 
     public static <UT extends SCIMUser<?, ?>> BaseResourceReference buildGroupMember(
@@ -231,6 +174,72 @@ public final class SCIMUtils {
         return config.getEnableURLPathEncoding() ? URLEncoder.encode(id, StandardCharsets.UTF_8) : id;
     }
 
+    /**
+     * Digests all credentials of the given configuration, to tell apart cache entries without keeping credentials in
+     * clear.
+     *
+     * @param config configuration
+     * @return credentials digest
+     */
+    public static String credentialsDigest(final SCIMConnectorConfiguration config) {
+        String credentials = String.join("\n",
+                config.getBaseAddress(),
+                String.valueOf(config.getUsername()),
+                config.getPassword() == null ? "" : SecurityUtil.decrypt(config.getPassword()),
+                String.valueOf(config.getBearerToken()),
+                String.valueOf(config.getAccessTokenBaseAddress()),
+                String.valueOf(config.getClientId()),
+                String.valueOf(config.getClientSecret()));
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                    MessageDigest.getInstance("SHA-256").digest(credentials.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new ConnectorException(e);
+        }
+    }
+
+    /**
+     * Renders the given value as SCIM filter string literal, escaped as JSON string.
+     *
+     * @param value value
+     * @return SCIM filter string literal
+     */
+    public static String toFilterLiteral(final String value) {
+        StringBuilder literal = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    literal.append("\\\"");
+                    break;
+
+                case '\\':
+                    literal.append("\\\\");
+                    break;
+
+                case '\n':
+                    literal.append("\\n");
+                    break;
+
+                case '\r':
+                    literal.append("\\r");
+                    break;
+
+                case '\t':
+                    literal.append("\\t");
+                    break;
+
+                default:
+                    if (c < 0x20) {
+                        literal.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        literal.append(c);
+                    }
+            }
+        }
+        return literal.append('"').toString();
+    }
+
     public static String getTypeFromAttributeName(final String attributeName) {
         if (StringUtil.isBlank(attributeName)) {
             return null;
@@ -16,6 +16,7 @@
 package net.tirasa.connid.bundles.scim.v11;
 
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -23,11 +24,14 @@ import java.util.Set;
 import java.util.stream.Collectors;
 import net.tirasa.connid.bundles.scim.common.AbstractSCIMConnector;
 import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import net.tirasa.connid.bundles.scim.common.SCIMFilterCapabilities;
+import net.tirasa.connid.bundles.scim.common.SCIMFilterTranslator;
 import net.tirasa.connid.bundles.scim.common.SCIMProvider;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMBaseAttribute;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMBaseResource;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMSchema;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMCustomAttributes;
 import net.tirasa.connid.bundles.scim.v11.dto.SCIMv11Attribute;
 import net.tirasa.connid.bundles.scim.v11.dto.SCIMv11BasePatch;
 import net.tirasa.connid.bundles.scim.v11.dto.SCIMv11EnterpriseUser;
@@ -44,6 +48,7 @@ import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationOptions;
 import org.identityconnectors.framework.common.objects.Schema;
 import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.spi.Configuration;
 import org.identityconnectors.framework.spi.ConnectorClass;
 
 @ConnectorClass(displayNameKey = "SCIMv11Connector.connector.display", configurationClass =
@@ -54,11 +59,33 @@ public class SCIMv11Connector extends AbstractSCIMConnector<
 
     private Schema schema;
 
+    private SCIMCustomAttributes<SCIMv11Attribute> customAttributes;
+
+    @Override
+    public void init(final Configuration configuration) {
+        super.init(configuration);
+        customAttributes =
+                SCIMCustomAttributes.of(this.configuration.getCustomAttributesJSON(), SCIMv11Attribute.class);
+    }
+
     @Override
     protected SCIMv11Client buildSCIMClient(final SCIMConnectorConfiguration configuration) {
         return new SCIMv11Client(configuration);
     }
 
+    @Override
+    protected SCIMFilterTranslator buildFilterTranslator(final ObjectClass objectClass) {
+        Set<String> extensionSchemas = new HashSet<>();
+        extensionSchemas.add(SCIMv11EnterpriseUser.SCHEMA_URI);
+        extensionSchemas.addAll(customAttributes.getExtensionUris());
+        return new SCIMFilterTranslator(
+                objectClass,
+                filterCapabilities(SCIMFilterCapabilities.forProvider(provider).forSCIM11()),
+                extensionSchemas,
+                null,
+                customAttributes.getCaseExactNames());
+    }
+
     @Override
     public Schema schema() {
         LOG.ok("Building SCHEMA definition");
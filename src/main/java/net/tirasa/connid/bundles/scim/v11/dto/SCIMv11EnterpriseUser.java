@@ -33,6 +33,29 @@ public class SCIMv11EnterpriseUser implements SCIMEnterpriseUser<SCIMv11Enterpri
 
     private static final long serialVersionUID = -8540303884204701777L;
 
+    /**
+     * Per-class plans, held apart so that reflection on the mapped classes never meets them.
+     */
+    private static final class FieldPlans {
+
+        /**
+         * Fields mapped to attributes, by enterprise user class; computed once per class.
+         */
+        static final ClassValue<List<Field>> FIELDS = new ClassValue<List<Field>>() {
+
+            @Override
+            protected List<Field> computeValue(final Class<?> type) {
+                return SCIMUtils.getAllFieldsList(type).stream().
+                        filter(f -> !"SCHEMA_URI".equals(f.getName()) && !"serialVersionUID".equals(f.getName())).
+                        collect(Collectors.toUnmodifiableList());
+            }
+        };
+
+        private FieldPlans() {
+            // private constructor for static holder class
+        }
+    }
+
     public static class SCIMv11EnterpriseUserManager implements Serializable {
 
         private static final long serialVersionUID = -7930518578899296192L;
@@ -117,14 +140,11 @@ public class SCIMv11EnterpriseUser implements SCIMEnterpriseUser<SCIMv11Enterpri
 
         Set<Attribute> attrs = new HashSet<>();
 
-        for (Field field : SCIMUtils.getAllFieldsList(getClass()).stream().
-                filter(f -> !"SCHEMA_URI".equals(f.getName()) && !"serialVersionUID".equals(f.getName())).
-                collect(Collectors.toList())) {
+        for (Field field : FieldPlans.FIELDS.get(getClass())) {
 
             if (SCIMv11EnterpriseUser.SCIMv11EnterpriseUserManager.class.equals(field.getType()) && manager != null) {
                 attrs.addAll(manager.toAttributes());
             } else if (!field.isAnnotationPresent(JsonIgnore.class)) {
-                field.setAccessible(true);
                 // simple attribute can have the colon as separator
                 attrs.add(AttributeBuilder.build(
                         schemaUri + (useColon ? ":" : ".") + field.getName(), field.get(this)));
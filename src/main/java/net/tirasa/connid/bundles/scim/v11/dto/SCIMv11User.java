@@ -23,7 +23,7 @@ import java.util.function.Consumer;
 import net.tirasa.connid.bundles.scim.common.dto.AbstractSCIMUser;
 import net.tirasa.connid.bundles.scim.common.dto.BaseResourceReference;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMDefaultComplex;
-import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMCustomAttributes;
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.StringUtil;
 import org.identityconnectors.framework.common.objects.Attribute;
@@ -81,20 +81,11 @@ public class SCIMv11User extends AbstractSCIMUser<
             final String customAttributesJSON,
             final boolean useColon) {
 
-        SCIMUtils.extractSCIMSchemas(customAttributesJSON, SCIMv11Attribute.class).ifPresent(customAttributesObj -> {
-            for (Attribute attribute : attributes) {
-                if (!CollectionUtil.isEmpty(attribute.getValue())) {
-                    for (SCIMv11Attribute customAttribute : customAttributesObj.getAttributes()) {
-                        String externalAttributeName = customAttribute.getSchema().concat(useColon ? ":" : ".")
-                                .concat(customAttribute.getName());
-                        if (externalAttributeName.equals(attribute.getName())) {
-                            scimCustomAttributes.put(customAttribute, attribute.getValue());
-                            break;
-                        }
-                    }
-                }
-            }
-        });
+        SCIMCustomAttributes<SCIMv11Attribute> customAttributes =
+                SCIMCustomAttributes.of(customAttributesJSON, SCIMv11Attribute.class);
+        attributes.stream().filter(attribute -> !CollectionUtil.isEmpty(attribute.getValue())).
+                forEach(attribute -> customAttributes.get(attribute.getName(), useColon).ifPresent(
+                customAttribute -> scimCustomAttributes.put(customAttribute, attribute.getValue())));
     }
 
     @Override
@@ -15,24 +15,22 @@
  */
 package net.tirasa.connid.bundles.scim.v11.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
-import net.tirasa.connid.bundles.scim.common.dto.PagedResults;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMBaseResource;
 import net.tirasa.connid.bundles.scim.common.service.AbstractSCIMService;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeProjection;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
-import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
 import net.tirasa.connid.bundles.scim.v11.dto.SCIMv11Attribute;
 import net.tirasa.connid.bundles.scim.v11.dto.SCIMv11BasePatch;
 import net.tirasa.connid.bundles.scim.v11.dto.SCIMv11Group;
 import net.tirasa.connid.bundles.scim.v11.dto.SCIMv11GroupPatch;
 import net.tirasa.connid.bundles.scim.v11.dto.SCIMv11Meta;
 import net.tirasa.connid.bundles.scim.v11.dto.SCIMv11User;
-import org.apache.cxf.jaxrs.client.WebClient;
 import org.identityconnectors.framework.common.objects.Attribute;
 
 public class SCIMv11Client extends AbstractSCIMService<
@@ -48,8 +46,12 @@ public class SCIMv11Client extends AbstractSCIMService<
      */
     @Override
     public SCIMv11User getUser(final String userId) {
-        WebClient webClient = getWebclient("Users", null).path(SCIMUtils.getPath(userId, config));
-        return doGetUser(webClient, SCIMv11User.class, SCIMv11Attribute.class);
+        return getUser(userId, null);
+    }
+
+    @Override
+    public SCIMv11User getUser(final String userId, final SCIMAttributeProjection projection) {
+        return doGetUser(getWebclient("Users", userId, projection), SCIMv11User.class, SCIMv11Attribute.class);
     }
 
     /**
@@ -84,9 +86,12 @@ public class SCIMv11Client extends AbstractSCIMService<
 
     @Override
     public SCIMv11Group getGroup(final String groupId) {
-        return doGetGroup(
-                getWebclient("Groups", null).path(SCIMUtils.getPath(groupId, config)),
-                SCIMv11Group.class);
+        return getGroup(groupId, null);
+    }
+
+    @Override
+    public SCIMv11Group getGroup(final String groupId, final SCIMAttributeProjection projection) {
+        return doGetGroup(getWebclient("Groups", groupId, projection), SCIMv11Group.class);
     }
 
     @Override
@@ -94,6 +99,11 @@ public class SCIMv11Client extends AbstractSCIMService<
         throw new UnsupportedOperationException("getEntitlement is not supported in v11");
     }
 
+    @Override
+    public List<SCIMBaseResource<SCIMv11Meta>> getEntitlements(final Collection<String> entitlementIds) {
+        throw new UnsupportedOperationException("getEntitlements is not supported in v11");
+    }
+
     @Override
     public SCIMv11Group updateGroup(final SCIMv11Group group) {
         return doUpdateGroup(group, Collections.emptySet(), null, SCIMv11Group.class);
@@ -106,17 +116,29 @@ public class SCIMv11Client extends AbstractSCIMService<
     }
 
     @Override
-    protected PagedResults<SCIMv11User> deserializeUserPagedResults(final String node)
-            throws JsonProcessingException {
-        return SCIMUtils.MAPPER.readValue(node, new TypeReference<PagedResults<SCIMv11User>>() {
-        });
+    protected String getServiceProviderConfigPath() {
+        return "ServiceProviderConfigs";
+    }
+
+    @Override
+    protected String getBulkRequestSchema() {
+        return SCIMv11BasePatch.SCHEMA_URI;
+    }
+
+    @Override
+    protected String getSearchRequestSchema() {
+        // searches via POST were introduced by SCIM 2.0
+        return null;
+    }
+
+    @Override
+    protected Class<SCIMv11User> getUserType() {
+        return SCIMv11User.class;
     }
 
     @Override
-    protected PagedResults<SCIMv11Group> deserializeGroupPagedResults(final String node)
-            throws JsonProcessingException {
-        return SCIMUtils.MAPPER.readValue(node, new TypeReference<PagedResults<SCIMv11Group>>() {
-        });
+    protected Class<SCIMv11Group> getGroupType() {
+        return SCIMv11Group.class;
     }
 
     @Override
@@ -17,6 +17,7 @@ package net.tirasa.connid.bundles.scim.v2;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -26,6 +27,8 @@ import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import net.tirasa.connid.bundles.scim.common.AbstractSCIMConnector;
 import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import net.tirasa.connid.bundles.scim.common.SCIMFilterCapabilities;
+import net.tirasa.connid.bundles.scim.common.SCIMFilterTranslator;
 import net.tirasa.connid.bundles.scim.common.SCIMProvider;
 import net.tirasa.connid.bundles.scim.common.dto.BaseResourceReference;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMBaseAttribute;
@@ -33,7 +36,7 @@ import net.tirasa.connid.bundles.scim.common.dto.SCIMSchema;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMUserAddress;
 import net.tirasa.connid.bundles.scim.common.types.AddressCanonicalType;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
-import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMCustomAttributes;
 import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2Attribute;
 import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2EnterpriseUser;
 import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2Entitlement;
@@ -50,9 +53,11 @@ import org.identityconnectors.common.security.GuardedString;
 import org.identityconnectors.common.security.SecurityUtil;
 import org.identityconnectors.framework.common.objects.AttributeDelta;
 import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
 import org.identityconnectors.framework.common.objects.OperationalAttributes;
 import org.identityconnectors.framework.common.objects.Schema;
 import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.spi.Configuration;
 import org.identityconnectors.framework.spi.ConnectorClass;
 
 @ConnectorClass(displayNameKey = "SCIMv2Connector.connector.display",
@@ -64,11 +69,32 @@ public class SCIMv2Connector extends AbstractSCIMConnector<
 
     private Schema schema;
 
+    private SCIMCustomAttributes<SCIMv2Attribute> customAttributes;
+
+    @Override
+    public void init(final Configuration configuration) {
+        super.init(configuration);
+        customAttributes = SCIMCustomAttributes.of(this.configuration.getCustomAttributesJSON(), SCIMv2Attribute.class);
+    }
+
     @Override
     protected SCIMv2Client buildSCIMClient(final SCIMConnectorConfiguration configuration) {
         return new SCIMv2Client(configuration);
     }
 
+    @Override
+    protected SCIMFilterTranslator buildFilterTranslator(final ObjectClass objectClass) {
+        Set<String> extensionSchemas = new HashSet<>();
+        extensionSchemas.add(SCIMv2EnterpriseUser.SCHEMA_URI);
+        customAttributes.getSchema().ifPresent(customSchema -> extensionSchemas.add(customSchema.getId()));
+        return new SCIMFilterTranslator(
+                objectClass,
+                filterCapabilities(SCIMFilterCapabilities.forProvider(provider)),
+                extensionSchemas,
+                ":",
+                customAttributes.getCaseExactNames());
+    }
+
     @Override
     public Schema schema() {
         LOG.ok("Building SCHEMA definition");
@@ -275,18 +301,7 @@ public class SCIMv2Connector extends AbstractSCIMConnector<
                         memberOperations.add(new SCIMv2PatchOperation.Builder()
                                 .op(SCIMAttributeUtils.SCIM_ADD)
                                 .path(SCIMAttributeUtils.SCIM_GROUP_MEMBERS)
-                                .value(mod.getValuesToAdd().stream().map(vta -> {
-                                    SCIMv2User user = client.getUser(vta.toString());
-                                    BaseResourceReference resRef = null;
-                                    if (user == null) {
-                                        LOG.error("Unable to add member {0} to the group, user does not exist", vta);
-                                    } else {
-                                        resRef = new BaseResourceReference.Builder().value(user.getId())
-                                                .ref(configuration.getBaseAddress() + "Users/" + user.getId())
-                                                .display(user.getDisplayName()).build();
-                                    }
-                                    return resRef;
-                                }).filter(Objects::nonNull).collect(Collectors.toList()))
+                                .value(buildMemberReferences(mod.getValuesToAdd(), "Users/"))
                                 .build());
                     }
                     // replace ops
@@ -294,20 +309,7 @@ public class SCIMv2Connector extends AbstractSCIMConnector<
                         memberOperations.add(new SCIMv2PatchOperation.Builder()
                                 .op(SCIMAttributeUtils.SCIM_REPLACE)
                                 .path(SCIMAttributeUtils.SCIM_GROUP_MEMBERS)
-                                .value(mod.getValuesToReplace().stream().map(vtr -> {
-                                    SCIMv2User user = client.getUser(vtr.toString());
-                                    BaseResourceReference resRef = null;
-                                    if (user == null) {
-                                        LOG.error(
-                                                "Unable to replace member {0} on the group, user does not exist",
-                                                vtr);
-                                    } else {
-                                        resRef = new BaseResourceReference.Builder().value(user.getId())
-                                                .ref(configuration.getBaseAddress() + "User/" + user.getId())
-                                                .display(user.getDisplayName()).build();
-                                    }
-                                    return resRef;
-                                }).filter(Objects::nonNull).collect(Collectors.toList()))
+                                .value(buildMemberReferences(mod.getValuesToReplace(), "User/"))
                                 .build());
                     }
                 });
@@ -320,16 +322,9 @@ public class SCIMv2Connector extends AbstractSCIMConnector<
             final boolean useColon) {
 
         List<SCIMv2PatchOperation> operations = new ArrayList<>();
-        SCIMUtils.extractSCIMSchemas(configuration.getCustomAttributesJSON(), SCIMv2Attribute.class).ifPresent(
-                scimSchema -> {
-                    for (SCIMv2Attribute customAttribute : scimSchema.getAttributes()) {
-                        String extAttrName = SCIMv2Attribute.class.cast(customAttribute).getExtensionSchema().
-                                concat(useColon ? ":" : ".").concat(customAttribute.getName());
-                        // only single valued attributes are supported
-                        modifications.stream().filter(mod -> mod.getName().equals(extAttrName)).findFirst()
-                                .ifPresent(ad -> operations.addAll(buildPatchOperations(ad, customAttribute)));
-                    }
-                });
+        // only single valued attributes are supported
+        modifications.forEach(mod -> customAttributes.get(mod.getName(), useColon).
+                ifPresent(customAttribute -> operations.addAll(buildPatchOperations(mod, customAttribute))));
         return operations;
     }
 
@@ -393,14 +388,9 @@ public class SCIMv2Connector extends AbstractSCIMConnector<
                                 .op(SCIMAttributeUtils.SCIM_ADD)
                                 .path(SCIMAttributeUtils.SCIM_USER_GROUPS)
                                 .value(mod.getValuesToAdd().stream().map(vta -> {
-                                    SCIMv2Group group = client.getGroup(vta.toString());
-                                    BaseResourceReference resRef = null;
-                                    if (group == null) {
+                                    BaseResourceReference resRef = client.getGroupReference(vta.toString());
+                                    if (resRef == null) {
                                         LOG.error("Unable to add group {0} to the user, group does not exist", vta);
-                                    } else {
-                                        resRef = new BaseResourceReference.Builder().value(group.getId())
-                                                .ref(configuration.getBaseAddress() + "Groups/" + group.getId())
-                                                .display(group.getDisplayName()).build();
                                     }
                                     return resRef;
                                 }).filter(Objects::nonNull).collect(Collectors.toList()))
@@ -412,14 +402,9 @@ public class SCIMv2Connector extends AbstractSCIMConnector<
                                 .op(SCIMAttributeUtils.SCIM_REPLACE)
                                 .path(SCIMAttributeUtils.SCIM_USER_GROUPS)
                                 .value(mod.getValuesToReplace().stream().map(vtr -> {
-                                    SCIMv2Group group = client.getGroup(vtr.toString());
-                                    BaseResourceReference resRef = null;
-                                    if (group == null) {
+                                    BaseResourceReference resRef = client.getGroupReference(vtr.toString());
+                                    if (resRef == null) {
                                         LOG.error("Unable to replace group {0} to the user, group does not exist", vtr);
-                                    } else {
-                                        resRef = new BaseResourceReference.Builder().value(group.getId())
-                                                .ref(configuration.getBaseAddress() + "Groups/" + group.getId())
-                                                .display(group.getDisplayName()).build();
                                     }
                                     return resRef;
                                 }).filter(Objects::nonNull).collect(Collectors.toList()))
@@ -595,7 +580,7 @@ public class SCIMv2Connector extends AbstractSCIMConnector<
     protected void manageEntitlements(final SCIMv2User user, final List<String> values) {
         List<SCIMv2EntitlementResource> scimEntitlementRefs = values == null
                 ? Collections.emptyList()
-                : values.stream().map(client::getEntitlement).filter(Objects::nonNull).collect(Collectors.toList());
+                : client.getEntitlements(values);
         scimEntitlementRefs.forEach(e -> user.getEntitlements().add(new SCIMv2Entitlement.Builder().value(e.getId())
                 .ref(configuration.getBaseAddress() + "Entitlements/" + e.getId()).display(e.getDisplayName())
                 .primary(true).type(e.getType()).build()));
@@ -610,10 +595,21 @@ public class SCIMv2Connector extends AbstractSCIMConnector<
     }
 
     protected boolean isCustomAttribute(final String attrName, final boolean useColon) {
-        return SCIMUtils.extractSCIMSchemas(configuration.getCustomAttributesJSON(), SCIMv2Attribute.class).stream()
-                .anyMatch(scimSchema -> scimSchema.getAttributes().stream().anyMatch(
-                customAttribute -> attrName.equalsIgnoreCase(customAttribute.getExtensionSchema()
-                        .concat((useColon ? ":" : ".").concat(customAttribute.getName())))));
+        return customAttributes.getIgnoreCase(attrName, useColon).isPresent();
+    }
+
+    /**
+     * Looks up the given Users, in batches, to build member references.
+     *
+     * @param userIds User ids
+     * @param refPath path of User references, relative to base address
+     * @return member references, in the same order as the given ids
+     */
+    protected List<BaseResourceReference> buildMemberReferences(final List<Object> userIds, final String refPath) {
+        return client.getUsers(userIds.stream().map(Object::toString).collect(Collectors.toList()), MEMBER_PROJECTION).
+                stream().map(user -> new BaseResourceReference.Builder().value(user.getId())
+                .ref(configuration.getBaseAddress() + refPath + user.getId())
+                .display(user.getDisplayName()).build()).collect(Collectors.toList());
     }
 
     protected BaseResourceReference buildPatchValue(final SCIMv2User user) {
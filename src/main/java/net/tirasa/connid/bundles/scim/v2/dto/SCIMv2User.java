@@ -25,7 +25,7 @@ import java.util.stream.Collectors;
 import net.tirasa.connid.bundles.scim.common.dto.AbstractSCIMUser;
 import net.tirasa.connid.bundles.scim.common.dto.SCIMGenericComplex;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
-import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMCustomAttributes;
 import org.identityconnectors.common.CollectionUtil;
 import org.identityconnectors.common.StringUtil;
 import org.identityconnectors.framework.common.objects.Attribute;
@@ -83,21 +83,11 @@ public class SCIMv2User extends AbstractSCIMUser<
     @JsonIgnore
     public void fillSCIMCustomAttributes(final Set<Attribute> attributes, final String customAttributesJSON,
             final boolean useColon) {
-        SCIMUtils.extractSCIMSchemas(customAttributesJSON, SCIMv2Attribute.class).ifPresent(customAttributesObj -> {
-            for (Attribute attribute : attributes) {
-                if (!CollectionUtil.isEmpty(attribute.getValue())) {
-                    for (SCIMv2Attribute customAttribute : customAttributesObj.getAttributes()) {
-                        String externalAttributeName = SCIMv2Attribute.class.cast(customAttribute).getExtensionSchema()
-                                .concat(useColon ? ":" : ".")
-                                .concat(customAttribute.getName());
-                        if (externalAttributeName.equals(attribute.getName())) {
-                            scimCustomAttributes.put(customAttribute, attribute.getValue());
-                            break;
-                        }
-                    }
-                }
-            }
-        });
+        SCIMCustomAttributes<SCIMv2Attribute> customAttributes =
+                SCIMCustomAttributes.of(customAttributesJSON, SCIMv2Attribute.class);
+        attributes.stream().filter(attribute -> !CollectionUtil.isEmpty(attribute.getValue())).
+                forEach(attribute -> customAttributes.get(attribute.getName(), useColon).ifPresent(
+                customAttribute -> scimCustomAttributes.put(customAttribute, attribute.getValue())));
     }
 
     @Override
@@ -15,14 +15,14 @@
  */
 package net.tirasa.connid.bundles.scim.v2.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
 import net.tirasa.connid.bundles.scim.common.dto.BaseResourceReference;
-import net.tirasa.connid.bundles.scim.common.dto.PagedResults;
 import net.tirasa.connid.bundles.scim.common.service.AbstractSCIMService;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeProjection;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeUtils;
 import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
 import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2Attribute;
@@ -46,9 +46,12 @@ public class SCIMv2Client extends AbstractSCIMService<SCIMv2User, SCIMv2Group, S
      */
     @Override
     public SCIMv2User getUser(final String userId) {
-        return doGetUser(
-                getWebclient("Users", null).path(SCIMUtils.getPath(userId, config)),
-                SCIMv2User.class, SCIMv2Attribute.class);
+        return getUser(userId, null);
+    }
+
+    @Override
+    public SCIMv2User getUser(final String userId, final SCIMAttributeProjection projection) {
+        return doGetUser(getWebclient("Users", userId, projection), SCIMv2User.class, SCIMv2Attribute.class);
     }
 
     /**
@@ -81,15 +84,24 @@ public class SCIMv2Client extends AbstractSCIMService<SCIMv2User, SCIMv2Group, S
 
     @Override
     public SCIMv2Group getGroup(final String groupId) {
-        return doGetGroup(
-                getWebclient("Groups", null).path(SCIMUtils.getPath(groupId, config)),
-                SCIMv2Group.class);
+        return getGroup(groupId, null);
+    }
+
+    @Override
+    public SCIMv2Group getGroup(final String groupId, final SCIMAttributeProjection projection) {
+        return doGetGroup(getWebclient("Groups", groupId, projection), SCIMv2Group.class);
     }
 
     @Override
     public SCIMv2EntitlementResource getEntitlement(final String entitlementId) {
-        return doGetEntitlement(getWebclient("Entitlements", null).path(
-                SCIMUtils.getPath(entitlementId, config)), SCIMv2EntitlementResource.class);
+        return entitlements.get(entitlementId).map(this::copyEntitlement).orElseGet(() -> doGetEntitlement(
+                getWebclient("Entitlements", null).path(SCIMUtils.getPath(entitlementId, config)),
+                SCIMv2EntitlementResource.class));
+    }
+
+    @Override
+    public List<SCIMv2EntitlementResource> getEntitlements(final Collection<String> entitlementIds) {
+        return doGetEntitlements(entitlementIds, SCIMv2EntitlementResource.class);
     }
 
     @Override
@@ -113,17 +125,13 @@ public class SCIMv2Client extends AbstractSCIMService<SCIMv2User, SCIMv2Group, S
     }
 
     @Override
-    protected PagedResults<SCIMv2User> deserializeUserPagedResults(final String node)
-            throws JsonProcessingException {
-        return SCIMUtils.MAPPER.readValue(node, new TypeReference<PagedResults<SCIMv2User>>() {
-        });
+    protected Class<SCIMv2User> getUserType() {
+        return SCIMv2User.class;
     }
 
     @Override
-    protected PagedResults<SCIMv2Group> deserializeGroupPagedResults(final String node)
-            throws JsonProcessingException {
-        return SCIMUtils.MAPPER.readValue(node, new TypeReference<PagedResults<SCIMv2Group>>() {
-        });
+    protected Class<SCIMv2Group> getGroupType() {
+        return SCIMv2Group.class;
     }
 
     @Override
@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2EnterpriseUser;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.ConnectorObjectBuilder;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.Uid;
+import org.identityconnectors.framework.common.objects.filter.Filter;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.junit.jupiter.api.Test;
+
+public class SCIMFilterTranslatorTests {
+
+    private static final SCIMFilterTranslator TRANSLATOR = new SCIMFilterTranslator(
+            ObjectClass.ACCOUNT,
+            SCIMFilterCapabilities.forProvider(SCIMProvider.STANDARD),
+            Collections.singleton(SCIMv2EnterpriseUser.SCHEMA_URI),
+            ":");
+
+    private static String translate(final Filter filter) {
+        List<String> translated = TRANSLATOR.translate(filter);
+        assertEquals(1, translated.size());
+        return translated.get(0);
+    }
+
+    @Test
+    void leaves() {
+        assertEquals("userName eq \"bjensen\"", translate(FilterBuilder.equalTo(new Name("bjensen"))));
+        assertEquals("displayName sw \"Bar\"",
+                translate(FilterBuilder.startsWith(AttributeBuilder.build("displayName", "Bar"))));
+        assertEquals("title ew \"er\"", translate(FilterBuilder.endsWith(AttributeBuilder.build("title", "er"))));
+        assertEquals("name.familyName co \"ens\"",
+                translate(FilterBuilder.contains(AttributeBuilder.build("name.familyName", "ens"))));
+        assertEquals("meta.lastModified gt \"2011-05-13T04:42:34Z\"",
+                translate(FilterBuilder.greaterThan(
+                        AttributeBuilder.build("meta.lastModified", "2011-05-13T04:42:34Z"))));
+        assertEquals("active eq true", translate(FilterBuilder.equalTo(AttributeBuilder.buildEnabled(true))));
+    }
+
+    @Test
+    void paths() {
+        assertEquals("emails[type eq \"work\" and value eq \"bjensen@example.com\"]",
+                translate(FilterBuilder.equalTo(AttributeBuilder.build("emails.work.value", "bjensen@example.com"))));
+        assertEquals("groups.value eq \"1234\"",
+                translate(FilterBuilder.equalTo(AttributeBuilder.build("groups.default.value", "1234"))));
+        assertEquals(SCIMv2EnterpriseUser.SCHEMA_URI + ":manager.value eq \"26118915-6090-4610\"",
+                translate(FilterBuilder.equalTo(AttributeBuilder.build(
+                        SCIMv2EnterpriseUser.SCHEMA_URI + ".manager.value", "26118915-6090-4610"))));
+    }
+
+    @Test
+    void composite() {
+        assertEquals("(userName sw \"a\" or userName sw \"b\") and active eq true",
+                translate(FilterBuilder.and(
+                        FilterBuilder.or(
+                                FilterBuilder.startsWith(AttributeBuilder.build("userName", "a")),
+                                FilterBuilder.startsWith(AttributeBuilder.build("userName", "b"))),
+                        FilterBuilder.equalTo(AttributeBuilder.buildEnabled(true)))));
+        assertEquals("not (title co \"x\")",
+                translate(FilterBuilder.not(FilterBuilder.contains(AttributeBuilder.build("title", "x")))));
+        assertEquals("roles.value eq \"a\" and roles.value eq \"b\"",
+                translate(FilterBuilder.containsAllValues(AttributeBuilder.build("roles.default.value", "a", "b"))));
+    }
+
+    @Test
+    void escaping() {
+        assertEquals("userName eq \"a\\\"b\\\\c\"", translate(FilterBuilder.equalTo(new Name("a\"b\\c"))));
+    }
+
+    @Test
+    void untranslatable() {
+        // the untranslatable part is left to the framework
+        assertEquals("userName eq \"bjensen\"", translate(FilterBuilder.and(
+                FilterBuilder.equalTo(new Name("bjensen")),
+                FilterBuilder.equalTo(AttributeBuilder.build("password", new GuardedString("x".toCharArray()))))));
+        assertTrue(TRANSLATOR.translate(FilterBuilder.equalTo(
+                AttributeBuilder.build("password", new GuardedString("x".toCharArray())))).isEmpty());
+    }
+
+    @Test
+    void equalsIgnoreCase() {
+        assertEquals("userName eq \"BJensen\"", translate(FilterBuilder.equalsIgnoreCase(new Name("BJensen"))));
+
+        // caseExact attributes are compared in memory, as "eq" would be case-sensitive
+        assertTrue(TRANSLATOR.translate(FilterBuilder.equalsIgnoreCase(new Uid("2819C223"))).isEmpty());
+        SCIMFilterTranslator.Split split = TRANSLATOR.split(FilterBuilder.and(
+                FilterBuilder.equalTo(new Name("bjensen")),
+                FilterBuilder.equalsIgnoreCase(AttributeBuilder.build("externalId", "BJensen"))));
+        assertEquals("userName eq \"bjensen\"", split.getPushedDown());
+        assertEquals(FilterBuilder.equalsIgnoreCase(AttributeBuilder.build("externalId", "BJensen")).toString(),
+                split.getResidual().toString());
+
+        SCIMFilterTranslator custom = new SCIMFilterTranslator(
+                ObjectClass.ACCOUNT,
+                SCIMFilterCapabilities.forProvider(SCIMProvider.STANDARD),
+                Collections.singleton("urn:example:custom"),
+                ":",
+                Collections.singleton("urn:example:custom:badge"));
+        assertTrue(custom.translate(FilterBuilder.equalsIgnoreCase(
+                AttributeBuilder.build("urn:example:custom:badge", "AB12"))).isEmpty());
+        assertEquals(List.of("urn:example:custom:team eq \"AB12\""), custom.translate(FilterBuilder.equalsIgnoreCase(
+                AttributeBuilder.build("urn:example:custom:team", "AB12"))));
+    }
+
+    @Test
+    void attributeCapabilitiesByObjectClass() {
+        SCIMFilterCapabilities users = new SCIMFilterCapabilities(
+                SCIMFilterCapabilities.ALL_OPERATORS,
+                Collections.singleton("userName"),
+                Collections.emptySet(),
+                false);
+        assertFalse(users.supportsAttribute(ObjectClass.ACCOUNT, "id"));
+        assertTrue(users.supportsAttribute(ObjectClass.GROUP, "id"));
+        // not taken as Users
+        ObjectClass entitlement = new ObjectClass("Entitlement");
+        assertFalse(users.supportsAttribute(entitlement, "userName"));
+
+        assertTrue(SCIMFilterCapabilities.forProvider(SCIMProvider.STANDARD).supportsAttribute(entitlement, "id"));
+    }
+
+    @Test
+    void split() {
+        SCIMFilterTranslator aws = new SCIMFilterTranslator(
+                ObjectClass.ACCOUNT,
+                SCIMFilterCapabilities.forProvider(SCIMProvider.AWS),
+                Collections.emptySet(),
+                ":");
+
+        Filter title = FilterBuilder.startsWith(AttributeBuilder.build("title", "Dir"));
+        SCIMFilterTranslator.Split split = aws.split(FilterBuilder.and(
+                FilterBuilder.equalTo(new Name("bjensen")),
+                FilterBuilder.and(title, FilterBuilder.equalTo(AttributeBuilder.build("externalId", "x")))));
+        assertEquals("userName eq \"bjensen\"", split.getPushedDown());
+        // "and" is not supported: the second equality is evaluated in memory as well
+        assertEquals(FilterBuilder.and(FilterBuilder.equalTo(AttributeBuilder.build("externalId", "x")), title).
+                toString(), split.getResidual().toString());
+
+        split = aws.split(FilterBuilder.or(
+                FilterBuilder.equalTo(new Name("bjensen")), FilterBuilder.equalTo(new Name("jsmith"))));
+        assertNull(split.getPushedDown());
+        assertNotNull(split.getResidual());
+
+        split = TRANSLATOR.split(FilterBuilder.equalTo(new Name("bjensen")));
+        assertEquals("userName eq \"bjensen\"", split.getPushedDown());
+        assertNull(split.getResidual());
+    }
+
+    @Test
+    void evaluate() {
+        ConnectorObject object = new ConnectorObjectBuilder().
+                setUid("1").
+                setName("bjensen").
+                addAttribute("title", "Director").
+                addAttribute("meta.created", "2011-05-13T04:42:34Z").
+                build();
+
+        Predicate<ConnectorObject> predicate = SCIMFilterEvaluator.compile(FilterBuilder.and(
+                FilterBuilder.startsWith(AttributeBuilder.build("title", "dir")),
+                FilterBuilder.not(FilterBuilder.greaterThan(
+                        AttributeBuilder.build("meta.created", "2012-01-01T00:00:00Z")))));
+        assertTrue(predicate.test(object));
+
+        predicate = SCIMFilterEvaluator.compile(FilterBuilder.or(
+                FilterBuilder.equalTo(new Name("jsmith")),
+                FilterBuilder.endsWith(AttributeBuilder.build("title", "manager"))));
+        assertFalse(predicate.test(object));
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import net.tirasa.connid.bundles.scim.common.dto.PagedResults;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class PagedResourcesIteratorTests {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private ExecutorService executor;
+
+    private static PagedResults<Integer> page(final int startIndex, final int count, final int totalResults) {
+        return page(startIndex, count, totalResults, totalResults);
+    }
+
+    private static PagedResults<Integer> page(
+            final int startIndex, final int count, final int available, final int totalResults) {
+
+        PagedResults<Integer> page = new PagedResults<>();
+        page.setStartIndex(startIndex);
+        page.setTotalResults(totalResults);
+        page.setResources(IntStream.range(startIndex, Math.min(startIndex + count, available + 1)).
+                boxed().collect(Collectors.toList()));
+        page.setItemsPerPage(page.getResources().size());
+        return page;
+    }
+
+    private static List<Integer> drain(final PagedResourcesIterator<Integer> iterator) {
+        List<Integer> resources = new ArrayList<>();
+        iterator.forEachRemaining(resources::add);
+        return resources;
+    }
+
+    @BeforeEach
+    void setUp() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void sequential() {
+        try (PagedResourcesIterator<Integer> iterator = new PagedResourcesIterator<>(
+                startIndex -> page(startIndex, 10, 95), 2, 1, true, executor)) {
+
+            List<Integer> resources = assertTimeoutPreemptively(TIMEOUT, () -> drain(iterator));
+            assertEquals(IntStream.rangeClosed(1, 95).boxed().collect(Collectors.toList()), resources);
+        }
+    }
+
+    @Test
+    void singlePage() {
+        List<Integer> fetched = new CopyOnWriteArrayList<>();
+        IntFunction<PagedResults<Integer>> fetcher = startIndex -> {
+            fetched.add(startIndex);
+            // as a server ignoring count
+            return page(startIndex, 100, 25);
+        };
+        try (PagedResourcesIterator<Integer> iterator = new PagedResourcesIterator<>(fetcher, 2, 4, true, executor)) {
+            List<Integer> resources = assertTimeoutPreemptively(TIMEOUT, () -> drain(iterator));
+            assertEquals(IntStream.rangeClosed(1, 25).boxed().collect(Collectors.toList()), resources);
+        }
+        assertEquals(List.of(1), fetched);
+    }
+
+    @Test
+    void missingTotalResults() {
+        for (int concurrency : new int[] { 1, 4 }) {
+            List<Integer> fetched = new CopyOnWriteArrayList<>();
+            IntFunction<PagedResults<Integer>> fetcher = startIndex -> {
+                fetched.add(startIndex);
+                return page(startIndex, 10, 95, 0);
+            };
+            try (PagedResourcesIterator<Integer> iterator = new PagedResourcesIterator<>(
+                    fetcher, 2, concurrency, true, executor)) {
+
+                List<Integer> resources = assertTimeoutPreemptively(TIMEOUT, () -> drain(iterator));
+                assertEquals(IntStream.rangeClosed(1, 95).boxed().collect(Collectors.toList()), resources);
+            }
+            // stopped at the first short page
+            assertEquals(10, fetched.size());
+        }
+    }
+
+    @Test
+    void totalResultsLowerThanReturned() {
+        List<Integer> fetched = new CopyOnWriteArrayList<>();
+        IntFunction<PagedResults<Integer>> fetcher = startIndex -> {
+            fetched.add(startIndex);
+            // as a server returning everything, but the page size as totalResults
+            return page(startIndex, 100, 30, 10);
+        };
+        try (PagedResourcesIterator<Integer> iterator = new PagedResourcesIterator<>(fetcher, 2, 1, true, executor)) {
+            List<Integer> resources = assertTimeoutPreemptively(TIMEOUT, () -> drain(iterator));
+            assertEquals(IntStream.rangeClosed(1, 30).boxed().collect(Collectors.toList()), resources);
+        }
+        // stopped at the first empty page
+        assertEquals(List.of(1, 31), fetched);
+    }
+
+    @Test
+    void errorInProducer() {
+        IntFunction<PagedResults<Integer>> fetcher = startIndex -> {
+            if (startIndex > 10) {
+                throw new OutOfMemoryError("test");
+            }
+            return page(startIndex, 10, 95);
+        };
+        try (PagedResourcesIterator<Integer> iterator = new PagedResourcesIterator<>(fetcher, 2, 1, true, executor)) {
+            ConnectorException e = assertThrows(ConnectorException.class,
+                    () -> assertTimeoutPreemptively(TIMEOUT, () -> drain(iterator)));
+            assertTrue(e.getCause() instanceof OutOfMemoryError);
+        }
+    }
+
+    @Test
+    void producerInterrupted() throws InterruptedException {
+        CountDownLatch fetching = new CountDownLatch(1);
+        IntFunction<PagedResults<Integer>> fetcher = startIndex -> {
+            if (startIndex > 10) {
+                fetching.countDown();
+                try {
+                    Thread.sleep(TIMEOUT.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ConnectorException(e);
+                }
+            }
+            return page(startIndex, 10, 95);
+        };
+        try (PagedResourcesIterator<Integer> iterator = new PagedResourcesIterator<>(fetcher, 2, 1, true, executor)) {
+            assertEquals(1, iterator.next());
+
+            fetching.await();
+            // as when the service is disposed while a search is running
+            executor.shutdownNow();
+
+            assertThrows(ConnectorException.class, () -> assertTimeoutPreemptively(TIMEOUT, () -> drain(iterator)));
+        }
+    }
+
+    @Test
+    void orderedInParallel() {
+        Random random = new Random();
+        IntFunction<PagedResults<Integer>> fetcher = startIndex -> {
+            // later pages may well complete first
+            try {
+                Thread.sleep(random.nextInt(20));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return page(startIndex, 10, 195);
+        };
+        try (PagedResourcesIterator<Integer> iterator = new PagedResourcesIterator<>(fetcher, 2, 4, true, executor)) {
+            List<Integer> resources = assertTimeoutPreemptively(TIMEOUT, () -> drain(iterator));
+            assertEquals(IntStream.rangeClosed(1, 195).boxed().collect(Collectors.toList()), resources);
+        }
+    }
+
+    @Test
+    void unorderedInParallel() {
+        try (PagedResourcesIterator<Integer> iterator = new PagedResourcesIterator<>(
+                startIndex -> page(startIndex, 10, 195), 2, 4, false, executor)) {
+
+            List<Integer> resources = assertTimeoutPreemptively(TIMEOUT, () -> drain(iterator));
+            Collections.sort(resources);
+            assertEquals(IntStream.rangeClosed(1, 195).boxed().collect(Collectors.toList()), resources);
+        }
+    }
+
+    @Test
+    void handedOverPagesAreReleased() throws InterruptedException {
+        List<WeakReference<List<Integer>>> fetched = new CopyOnWriteArrayList<>();
+        IntFunction<PagedResults<Integer>> fetcher = startIndex -> {
+            PagedResults<Integer> page = page(startIndex, 10, 500);
+            fetched.add(new WeakReference<>(page.getResources()));
+            return page;
+        };
+        int maxPagesInFlight = 2;
+        int concurrency = 4;
+        try (PagedResourcesIterator<Integer> iterator = new PagedResourcesIterator<>(
+                fetcher, maxPagesInFlight, concurrency, true, executor)) {
+
+            // handle half of the pages, while the remaining ones are still being fetched
+            assertTimeoutPreemptively(TIMEOUT, () -> IntStream.range(0, 250).forEach(i -> iterator.next()));
+
+            // besides the first and the current ones, only pages queued or being fetched can be still referenced
+            int bound = 2 + maxPagesInFlight + concurrency;
+            long retained = Long.MAX_VALUE;
+            for (int i = 0; i < 10 && retained > bound; i++) {
+                System.gc();
+                Thread.sleep(50);
+                retained = fetched.stream().filter(ref -> ref.get() != null).count();
+            }
+            assertTrue(retained <= bound, retained + " pages retained");
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.ws.rs.ProcessingException;
+import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.exceptions.ConfigurationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SCIMHttpClientTransportTests {
+
+    private HttpServer server;
+
+    private volatile long delay = 0;
+
+    private volatile Headers received;
+
+    private SCIMHttpClientTransport transport;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            received = exchange.getRequestHeaders();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            byte[] entity = "{\"id\":\"1\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/scim+json");
+            exchange.sendResponseHeaders(200, entity.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(entity);
+            } catch (IOException e) {
+                // the client gave up waiting
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        if (transport != null) {
+            transport.close();
+        }
+        server.stop(0);
+    }
+
+    private SCIMHttpClientTransport newTransport(final Consumer<SCIMConnectorConfiguration> customizer) {
+        SCIMConnectorConfiguration conf = new SCIMConnectorConfiguration();
+        conf.setBaseAddress("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+        conf.setUsername("username");
+        conf.setPassword(new GuardedString("password".toCharArray()));
+        conf.setHttpTransport("JDK");
+        customizer.accept(conf);
+
+        transport = new SCIMHttpClientTransport(conf, false);
+        return transport;
+    }
+
+    @Test
+    void headersAndBasicAuthentication() {
+        SCIMHttpClientTransport jdk = newTransport(conf -> {
+        });
+
+        try (SCIMResponse response = jdk.execute(jdk.newRequest().path("Users").
+                header("X-Custom", "value").header("Connection", "close"), "GET", null)) {
+
+            assertEquals(200, response.getStatus());
+            assertEquals("application/scim+json", response.getHeader("content-type").orElse(null));
+            assertEquals("{\"id\":\"1\"}", response.readEntity());
+        }
+
+        assertEquals("Basic " + Base64.getEncoder().encodeToString(
+                "username:password".getBytes(StandardCharsets.UTF_8)), received.getFirst("Authorization"));
+        assertEquals("value", received.getFirst("X-Custom"));
+    }
+
+    @Test
+    void receiveTimeout() {
+        delay = 2000;
+        SCIMHttpClientTransport jdk = newTransport(conf -> conf.setReceiveTimeout(200L));
+
+        long start = System.currentTimeMillis();
+        ProcessingException error = assertThrows(ProcessingException.class,
+                () -> jdk.execute(jdk.newRequest().path("Users"), "GET", null));
+        assertTrue(error.getCause() instanceof HttpTimeoutException);
+
+        ExecutionException asyncError = assertThrows(ExecutionException.class,
+                () -> jdk.executeAsync(jdk.newRequest().path("Users"), "GET", null).
+                        get(5, TimeUnit.SECONDS));
+        assertTrue(asyncError.getCause() instanceof HttpTimeoutException);
+        assertTrue(System.currentTimeMillis() - start < delay);
+    }
+
+    @Test
+    void noReceiveTimeout() {
+        delay = 500;
+        SCIMHttpClientTransport jdk = newTransport(conf -> conf.setReceiveTimeout(0L));
+
+        try (SCIMResponse response = jdk.execute(jdk.newRequest().path("Users"), "GET", null)) {
+            assertEquals(200, response.getStatus());
+        }
+    }
+
+    @Test
+    void onlyHttpProxies() {
+        assertThrows(ConfigurationException.class, () -> newTransport(conf -> {
+            conf.setProxyServerHost("localhost");
+            conf.setProxyServerPort(1080);
+            conf.setProxyServerType("SOCKS");
+        }));
+    }
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SCIMTokenManagerTests {
+
+    private HttpServer server;
+
+    private final AtomicInteger tokenRequests = new AtomicInteger(0);
+
+    private volatile int tokenStatus = 200;
+
+    private volatile long expiresIn = 3600;
+
+    private final List<SCIMTokenManager> managers = new ArrayList<>();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/token", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            int count = tokenRequests.incrementAndGet();
+            try {
+                // slow enough for concurrent callers to overlap
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            byte[] entity = (tokenStatus == 200
+                    ? "{\"access_token\":\"token" + count + "\",\"expires_in\":" + expiresIn + "}"
+                    : "{\"error\":\"server_error\"}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(tokenStatus, entity.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(entity);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        managers.forEach(SCIMTokenManager::release);
+        server.stop(0);
+    }
+
+    private SCIMTokenManager newManager(final SCIMConnectorConfiguration conf) {
+        SCIMTokenManager manager = SCIMTokenManager.forConfiguration(conf);
+        managers.add(manager);
+        return manager;
+    }
+
+    private SCIMConnectorConfiguration newConfiguration(final String clientId) {
+        SCIMConnectorConfiguration conf = new SCIMConnectorConfiguration();
+        conf.setBaseAddress("http://localhost/scim");
+        conf.setAccessTokenBaseAddress(
+                "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/token");
+        conf.setClientId(clientId);
+        conf.setClientSecret("secret");
+        return conf;
+    }
+
+    @Test
+    void singleFlight() throws Exception {
+        SCIMTokenManager manager = newManager(newConfiguration("singleFlight"));
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> tokens = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tokens.add(callers.submit(manager::getToken));
+            }
+            for (Future<String> token : tokens) {
+                assertEquals("token1", token.get());
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, tokenRequests.get());
+    }
+
+    @Test
+    void refreshAheadBacksOffAfterFailure() throws InterruptedException {
+        // due for refresh right away, as expiring within the default refresh ahead
+        expiresIn = 30;
+        SCIMTokenManager manager = newManager(newConfiguration("refreshAhead"));
+        assertEquals("token1", manager.getToken());
+        assertEquals(1, tokenRequests.get());
+
+        tokenStatus = 500;
+        long until = System.currentTimeMillis() + 500;
+        while (System.currentTimeMillis() < until) {
+            // the current token is still valid, and kept while failing to refresh it
+            assertEquals("token1", manager.getToken());
+            Thread.sleep(5);
+        }
+        // a single failed refresh, then waiting before retrying
+        assertEquals(2, tokenRequests.get());
+
+        tokenStatus = 200;
+        until = System.currentTimeMillis() + 3000;
+        while (!"token3".equals(manager.getToken()) && System.currentTimeMillis() < until) {
+            Thread.sleep(50);
+        }
+        assertEquals("token3", manager.getToken());
+        assertTrue(tokenRequests.get() >= 3);
+    }
+
+    @Test
+    void sharedOnlyWithSameCredentials() {
+        SCIMTokenManager first = newManager(newConfiguration("shared"));
+        SCIMTokenManager second = newManager(newConfiguration("shared"));
+        SCIMConnectorConfiguration otherConf = newConfiguration("shared");
+        otherConf.setClientSecret("other");
+        SCIMTokenManager other = newManager(otherConf);
+
+        assertEquals("token1", first.getToken());
+        assertEquals("token1", second.getToken());
+        assertEquals("token2", other.getToken());
+        assertEquals(2, tokenRequests.get());
+    }
+
+    @Test
+    void settingsReadFromEachConfiguration() throws InterruptedException {
+        expiresIn = 30;
+        SCIMConnectorConfiguration noRefreshAhead = newConfiguration("settings");
+        noRefreshAhead.setAccessTokenRefreshAhead(0L);
+        SCIMTokenManager first = newManager(noRefreshAhead);
+        assertEquals("token1", first.getToken());
+        assertEquals("token1", first.getToken());
+        assertEquals(1, tokenRequests.get());
+
+        // same token, refreshed ahead of expiration as configured for this instance
+        SCIMTokenManager second = newManager(newConfiguration("settings"));
+        assertEquals("token1", second.getToken());
+        long until = System.currentTimeMillis() + 3000;
+        while (tokenRequests.get() < 2 && System.currentTimeMillis() < until) {
+            Thread.sleep(20);
+        }
+        assertEquals(2, tokenRequests.get());
+    }
+
+    @Test
+    void releasedOnceUnused() {
+        int before = SCIMTokenManager.sharedCount();
+
+        SCIMTokenManager first = SCIMTokenManager.forConfiguration(newConfiguration("released"));
+        SCIMTokenManager second = SCIMTokenManager.forConfiguration(newConfiguration("released"));
+        assertEquals("token1", first.getToken());
+        assertEquals(before + 1, SCIMTokenManager.sharedCount());
+
+        first.release();
+        // releasing more than once has no further effect
+        first.release();
+        assertEquals(before + 1, SCIMTokenManager.sharedCount());
+        assertEquals("token1", second.getToken());
+
+        second.release();
+        assertEquals(before, SCIMTokenManager.sharedCount());
+
+        SCIMTokenManager third = newManager(newConfiguration("released"));
+        assertEquals("token2", third.getToken());
+    }
+}
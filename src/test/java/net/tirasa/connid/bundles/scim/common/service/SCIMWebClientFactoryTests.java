@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.function.Consumer;
+import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import org.apache.cxf.jaxrs.client.WebClient;
+import org.apache.cxf.transports.http.configuration.ConnectionType;
+import org.apache.cxf.transports.http.configuration.HTTPClientPolicy;
+import org.identityconnectors.common.security.GuardedString;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class SCIMWebClientFactoryTests {
+
+    private static final String BASE_ADDRESS = "http://localhost:8080/scim/v2/";
+
+    private SCIMWebClientFactory factory;
+
+    @AfterEach
+    void close() {
+        if (factory != null) {
+            factory.close();
+        }
+    }
+
+    private SCIMWebClientFactory newFactory(final Consumer<SCIMConnectorConfiguration> customizer) {
+        SCIMConnectorConfiguration conf = new SCIMConnectorConfiguration();
+        conf.setBaseAddress(BASE_ADDRESS);
+        conf.setUsername("username");
+        conf.setPassword(new GuardedString("password".toCharArray()));
+        customizer.accept(conf);
+
+        factory = new SCIMWebClientFactory(conf, false);
+        return factory;
+    }
+
+    @Test
+    void independentRequests() {
+        SCIMWebClientFactory clients = newFactory(conf -> {
+            conf.setAuthHttpHeaderName("X-API-Key");
+            conf.setAuthHttpHeaderValue(new GuardedString("secret".toCharArray()));
+        });
+
+        WebClient users = clients.newRequest().path("Users").query("count", 10).header("If-Match", "W/\"1\"");
+        WebClient groups = clients.newRequest();
+        assertNotSame(users, groups);
+        assertNotSame(WebClient.getConfig(users), WebClient.getConfig(groups));
+
+        // per-request state is not shared
+        assertEquals(BASE_ADDRESS + "Users?count=10", users.getCurrentURI().toString());
+        assertEquals(BASE_ADDRESS, groups.getCurrentURI().toString());
+        assertNull(groups.getHeaders().get("If-Match"));
+
+        // while the factory settings are applied to each
+        for (WebClient client : new WebClient[] { users, groups }) {
+            assertEquals("secret", client.getHeaders().getFirst("X-API-Key"));
+            assertEquals("application/json", client.getHeaders().getFirst("Accept"));
+        }
+    }
+
+    @Test
+    void conduitSettings() {
+        SCIMWebClientFactory clients = newFactory(conf -> {
+            conf.setConnectionTimeout(5000L);
+            conf.setReceiveTimeout(20000L);
+            conf.setFollowHttpRedirects(true);
+            conf.setProxyServerHost("proxy.example.com");
+            conf.setProxyServerPort(3128);
+            conf.setProxyServerType("HTTP");
+        });
+
+        HTTPClientPolicy policy = WebClient.getConfig(clients.newRequest()).getHttpConduit().getClient();
+        assertEquals(ConnectionType.KEEP_ALIVE, policy.getConnection());
+        assertEquals(5000L, policy.getConnectionTimeout());
+        assertEquals(20000L, policy.getReceiveTimeout());
+        assertTrue(policy.isAutoRedirect());
+        assertEquals("proxy.example.com", policy.getProxyServer());
+        assertEquals(3128, policy.getProxyServerPort());
+    }
+}
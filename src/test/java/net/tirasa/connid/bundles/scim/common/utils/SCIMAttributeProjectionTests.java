@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2Attribute;
+import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2EnterpriseUser;
+import org.junit.jupiter.api.Test;
+
+public class SCIMAttributeProjectionTests {
+
+    private static final String URI = "urn:mem:params:scim:schemas:extension:LuckyNumberExtension";
+
+    private static final String JSON = "{\"id\":\"" + URI + "\",\"name\":\"LuckyNumbers\",\"attributes\":["
+            + "{\"name\":\"luckyNumber\",\"type\":\"integer\",\"multiValued\":false,\"caseExact\":false},"
+            + "{\"name\":\"badge\",\"type\":\"string\",\"multiValued\":false,\"caseExact\":true}]}";
+
+    private static final Set<String> ATTRIBUTES_TO_GET = Set.of(
+            "title", "name.familyName", "emails.work.value", SCIMv2EnterpriseUser.SCHEMA_URI + ".employeeNumber",
+            URI + ":badge", "__NAME__", "meta.created", "password");
+
+    private static Set<String> values(final SCIMAttributeProjection projection) {
+        return Set.of(projection.getValue().split(","));
+    }
+
+    @Test
+    void compiledOnce() {
+        SCIMAttributeProjection projection = SCIMAttributeProjection.compile(
+                Set.of("title", "userName"), null, SCIMv2Attribute.class, false, true, false);
+
+        assertSame(projection, SCIMAttributeProjection.compile(
+                Set.of("userName", "title"), "", SCIMv2Attribute.class, false, true, false));
+        assertNotSame(projection, SCIMAttributeProjection.compile(
+                Set.of("userName", "title"), null, SCIMv2Attribute.class, false, true, true));
+    }
+
+    @Test
+    void wholeComplexAttributes() {
+        SCIMAttributeProjection projection = SCIMAttributeProjection.compile(
+                ATTRIBUTES_TO_GET, JSON, SCIMv2Attribute.class, false, true, false);
+
+        assertEquals(Set.of("title", "name", "emails", SCIMv2EnterpriseUser.SCHEMA_URI + ".employeeNumber",
+                "userName", "id"), values(projection));
+
+        Map<String, String> params = new HashMap<>();
+        projection.applyTo(params);
+        assertEquals(Map.of(SCIMAttributeProjection.ATTRIBUTES, projection.getValue()), params);
+    }
+
+    @Test
+    void subAttributes() {
+        assertEquals(Set.of("title", "name.familyName", "emails.value", "emails.type",
+                SCIMv2EnterpriseUser.SCHEMA_URI + ":employeeNumber", "userName", "id"),
+                values(SCIMAttributeProjection.compile(
+                        ATTRIBUTES_TO_GET, JSON, SCIMv2Attribute.class, false, true, true)));
+    }
+
+    @Test
+    void customAttributes() {
+        assertEquals(Set.of("title", URI + ":luckyNumber", URI + ":badge", "userName", "id", "name"),
+                values(SCIMAttributeProjection.compile(
+                        Set.of("title", URI + ":badge"), JSON, SCIMv2Attribute.class, true, true, false)));
+    }
+
+    @Test
+    void defaults() {
+        assertEquals(SCIMAttributeUtils.defaultAttributesToGet(), SCIMAttributeProjection.compile(
+                Set.of(), null, SCIMv2Attribute.class, false, true, false).getValue());
+    }
+}
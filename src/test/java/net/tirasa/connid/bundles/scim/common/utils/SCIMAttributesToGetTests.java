@@ -0,0 +1,60 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class SCIMAttributesToGetTests {
+
+    private static final String ENTERPRISE = "urn:ietf:params:scim:schemas:extension:enterprise:2.0:User";
+
+    @Test
+    void sharedPlans() {
+        SCIMAttributesToGet plan = SCIMAttributesToGet.of(List.of("userName", "name.familyName"));
+
+        assertSame(plan, SCIMAttributesToGet.of(List.of("name.familyName", "userName", "userName")));
+        assertEquals(Set.of("userName", "name.familyName"), plan.getNames());
+    }
+
+    @Test
+    void fields() {
+        SCIMAttributesToGet plan = SCIMAttributesToGet.of(List.of("userName", "name.familyName", "emails.work.value"));
+
+        assertTrue(plan.contains("name.familyName"));
+        assertFalse(plan.contains("name"));
+
+        assertTrue(plan.requiresField("userName"));
+        assertTrue(plan.requiresField("name"));
+        assertTrue(plan.requiresField("emails"));
+        assertFalse(plan.requiresField("user"));
+        assertFalse(plan.requiresField("title"));
+    }
+
+    @Test
+    void extensions() {
+        assertTrue(SCIMAttributesToGet.of(List.of(ENTERPRISE + ":employeeNumber")).requiresExtension(ENTERPRISE));
+        assertTrue(SCIMAttributesToGet.of(List.of(ENTERPRISE + ".employeeNumber")).requiresExtension(ENTERPRISE));
+        assertFalse(SCIMAttributesToGet.of(List.of("userName", ENTERPRISE + "X:employeeNumber")).
+                requiresExtension(ENTERPRISE));
+    }
+}
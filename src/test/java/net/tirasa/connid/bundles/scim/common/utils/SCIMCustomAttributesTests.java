@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.common.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Set;
+import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2Attribute;
+import org.junit.jupiter.api.Test;
+
+public class SCIMCustomAttributesTests {
+
+    private static final String URI = "urn:mem:params:scim:schemas:extension:LuckyNumberExtension";
+
+    private static final String JSON = "{\"id\":\"" + URI + "\",\"name\":\"LuckyNumbers\",\"attributes\":["
+            + "{\"name\":\"luckyNumber\",\"type\":\"integer\",\"multiValued\":false,\"caseExact\":false},"
+            + "{\"name\":\"badge\",\"type\":\"string\",\"multiValued\":false,\"caseExact\":true}]}";
+
+    @Test
+    void compiledOnce() {
+        SCIMCustomAttributes<SCIMv2Attribute> compiled = SCIMCustomAttributes.of(JSON, SCIMv2Attribute.class);
+        assertSame(compiled, SCIMCustomAttributes.of(JSON, SCIMv2Attribute.class));
+
+        assertFalse(compiled.isEmpty());
+        assertEquals(Set.of(URI), compiled.getExtensionUris());
+        assertEquals(2, compiled.getAttributesByExtensionUri().get(URI).size());
+        assertThrows(UnsupportedOperationException.class, () -> compiled.getAttributes().clear());
+    }
+
+    @Test
+    void lookups() {
+        SCIMCustomAttributes<SCIMv2Attribute> compiled = SCIMCustomAttributes.of(JSON, SCIMv2Attribute.class);
+
+        assertEquals("luckyNumber", compiled.get(URI + ":luckyNumber", true).orElseThrow().getName());
+        assertEquals("luckyNumber", compiled.get(URI + ".luckyNumber", false).orElseThrow().getName());
+        assertTrue(compiled.get(URI + ".luckyNumber", true).isEmpty());
+        assertTrue(compiled.isCustomAttribute(URI + ":badge", true));
+        assertFalse(compiled.isCustomAttribute(URI + ":BADGE", true));
+        assertEquals("badge", compiled.getIgnoreCase(URI + ":BADGE", true).orElseThrow().getName());
+
+        assertEquals(Set.of(URI + ":badge", URI + ".badge"), compiled.getCaseExactNames());
+    }
+
+    @Test
+    void blankOrInvalid() {
+        for (String json : List.of("", "{not json")) {
+            SCIMCustomAttributes<SCIMv2Attribute> compiled = SCIMCustomAttributes.of(json, SCIMv2Attribute.class);
+            assertTrue(compiled.isEmpty());
+            assertTrue(compiled.getAttributes().isEmpty());
+            assertTrue(compiled.get(URI + ":badge", true).isEmpty());
+        }
+    }
+}
@@ -23,7 +23,10 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -62,14 +65,14 @@ public class SCIMV11MockedTests {
 
             when(webClient.post(any())).thenAnswer(ic -> {
                 Object payload = ic.getArgument(0);
-                return Response.status(Response.Status.CREATED).entity(
+                return Response.status(Response.Status.CREATED).entity(stream(
                         "{\"id\":\"" + UUID.randomUUID().toString() + "\","
-                        + payload.toString().substring(1)).
+                        + payload.toString().substring(1))).
                         build();
             });
 
             when(webClient.get()).thenAnswer(ic -> {
-                return Response.status(Response.Status.OK).entity(
+                return Response.status(Response.Status.OK).entity(stream(
                         "{\"schemas\":null,\"id\":\"d046ef30-a13a-490f-9a43-765a90abde33\","
                         + "\"externalId\":\"virtual-test-5\",\"active\":true,\"accountStatus\":\"Active\","
                         + "\"secondaryAccountStatus\":\"INVITED\",\"addresses\":null,"
@@ -84,13 +87,20 @@ public class SCIMV11MockedTests {
                         + "\\\"marketplaceId\\\":\\\"5af39194\\\"}\"},"
                         + "\"meta\":{\"resourceType\":\"User\",\"created\":\"2023-06-27T14:30:39.510Z\","
                         + "\"lastModified\":\"2023-06-27T14:30:39.510Z\","
-                        + "\"location\":\"https://localhost/Users/d046ef30-a13a-490f-9a43-765a90abde33\"}}").
+                        + "\"location\":\"https://localhost/Users/d046ef30-a13a-490f-9a43-765a90abde33\"}}")).
                         build();
             });
             
             when(webClient.replaceHeader(anyString(), any())).thenReturn(webClient);
         }
 
+        /**
+         * Response entities are streamed, as when received from the SCIM server.
+         */
+        private static InputStream stream(final String entity) {
+            return new ByteArrayInputStream(entity.getBytes(StandardCharsets.UTF_8));
+        }
+
         @Override
         protected WebClient getWebclient(final String path, final Map<String, String> params) {
             return webClient;
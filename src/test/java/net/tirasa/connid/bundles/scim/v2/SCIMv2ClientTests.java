@@ -0,0 +1,707 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.v2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import net.tirasa.connid.bundles.scim.common.SCIMProvider;
+import net.tirasa.connid.bundles.scim.common.dto.BaseResourceReference;
+import net.tirasa.connid.bundles.scim.common.dto.PagedResults;
+import net.tirasa.connid.bundles.scim.common.service.NoSuchEntityException;
+import net.tirasa.connid.bundles.scim.common.service.SCIMBulk;
+import net.tirasa.connid.bundles.scim.common.service.SCIMServiceSettings;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributeProjection;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributesToGet;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
+import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2Group;
+import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2Patch;
+import net.tirasa.connid.bundles.scim.v2.dto.SCIMv2User;
+import net.tirasa.connid.bundles.scim.v2.service.SCIMv2Client;
+import org.identityconnectors.common.security.GuardedString;
+import org.identityconnectors.framework.common.exceptions.ConnectorException;
+import org.identityconnectors.framework.common.objects.AttributeBuilder;
+import org.identityconnectors.framework.common.objects.ConnectorObject;
+import org.identityconnectors.framework.common.objects.Name;
+import org.identityconnectors.framework.common.objects.ObjectClass;
+import org.identityconnectors.framework.common.objects.OperationOptionsBuilder;
+import org.identityconnectors.framework.common.objects.filter.FilterBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs {@link SCIMv2Client} against an embedded HTTP server, replying as set by each test.
+ */
+public class SCIMv2ClientTests {
+
+    @FunctionalInterface
+    interface Handler {
+
+        void handle(HttpExchange exchange, String body) throws IOException;
+    }
+
+    private HttpServer server;
+
+    private volatile Handler handler;
+
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+
+    private SCIMv2Client client;
+
+    static void reply(final HttpExchange exchange, final int status, final String body) throws IOException {
+        byte[] entity = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/scim+json");
+        exchange.sendResponseHeaders(status, entity.length == 0 ? -1 : entity.length);
+        if (entity.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(entity);
+            }
+        }
+        exchange.close();
+    }
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI());
+            try {
+                handler.handle(exchange, body);
+            } catch (RuntimeException e) {
+                reply(exchange, 500, "");
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        if (client != null) {
+            client.dispose();
+        }
+        server.stop(0);
+    }
+
+    private SCIMConnectorConfiguration newConfiguration(final Consumer<SCIMConnectorConfiguration> customizer) {
+        SCIMConnectorConfiguration conf = new SCIMConnectorConfiguration();
+        conf.setBaseAddress("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+        conf.setUsername("username");
+        conf.setPassword(new GuardedString("password".toCharArray()));
+        conf.setHttpTransport("JDK");
+        customizer.accept(conf);
+        conf.validate();
+        return conf;
+    }
+
+    private SCIMv2Client newClient(final Consumer<SCIMConnectorConfiguration> customizer) {
+        client = new SCIMv2Client(newConfiguration(customizer));
+        return client;
+    }
+
+    @Test
+    void noSearchAfterDispose() {
+        handler = (exchange, body) -> reply(exchange, 200, "{\"totalResults\":0,\"Resources\":[]}");
+        SCIMv2Client scim = newClient(conf -> conf.setSearchPageSize(10));
+        scim.dispose();
+
+        assertThrows(ConnectorException.class, () -> scim.getAllUsers(null, null, user -> true));
+        assertTrue(requests.isEmpty());
+    }
+
+    @Test
+    void listResponseWithoutResources() {
+        handler = (exchange, body) -> reply(exchange, 200,
+                "{\"schemas\":[\"urn:ietf:params:scim:api:messages:2.0:ListResponse\"],\"totalResults\":0}");
+        SCIMv2Client scim = newClient(conf -> {
+        });
+
+        List<SCIMv2User> found = new ArrayList<>();
+        PagedResults<SCIMv2User> page = scim.getAllUsers(null, 1, 10, Set.of(), found::add);
+        assertEquals(0, page.getTotalResults());
+        assertTrue(found.isEmpty());
+    }
+
+    @Test
+    void listResponseStreamed() {
+        // Resources before paging information, among unknown fields
+        handler = (exchange, body) -> reply(exchange, 200, "{\"Resources\":["
+                + "{\"id\":\"1\",\"userName\":\"bjensen\"},"
+                + "{\"id\":\"2\",\"userName\":\"jsmith\"},"
+                + "{\"id\":\"3\",\"userName\":\"mdoe\"}],"
+                + "\"custom\":{\"nested\":[1,{\"totalResults\":9}]},"
+                + "\"totalResults\":3,\"startIndex\":1,\"itemsPerPage\":3}");
+        SCIMv2Client scim = newClient(conf -> {
+        });
+
+        List<String> found = new ArrayList<>();
+        PagedResults<SCIMv2User> page = scim.getAllUsers(null, 1, 10, Set.of(), user -> found.add(user.getUserName()));
+        assertEquals(List.of("bjensen", "jsmith", "mdoe"), found);
+        assertEquals(3, page.getTotalResults());
+        assertEquals(1, page.getStartIndex());
+        assertEquals(3, page.getItemsPerPage());
+
+        // reading stops as soon as the handler asks to
+        found.clear();
+        scim.getAllUsers(null, 1, 10, Set.of(), user -> {
+            found.add(user.getUserName());
+            return false;
+        });
+        assertEquals(List.of("bjensen"), found);
+    }
+
+    private static String users(final int startIndex, final int count, final int totalResults) {
+        return IntStream.range(startIndex, Math.min(startIndex + count, totalResults + 1)).
+                mapToObj(i -> "{\"id\":\"" + i + "\",\"userName\":\"user" + i + "\"}").
+                collect(Collectors.joining(",", "{\"totalResults\":" + totalResults + ",\"Resources\":[", "]}"));
+    }
+
+    @Test
+    void autoPagination() {
+        handler = (exchange, body) -> {
+            String query = exchange.getRequestURI().getQuery();
+            int startIndex = Integer.parseInt(query.replaceAll(".*startIndex=(\\d+).*", "$1"));
+            reply(exchange, 200, users(startIndex, 10, 25));
+        };
+        SCIMv2Client scim = newClient(conf -> conf.setSearchPageSize(10));
+
+        List<String> found = new ArrayList<>();
+        scim.getAllUsers(null, Set.of(), user -> found.add(user.getId()));
+        assertEquals(IntStream.rangeClosed(1, 25).mapToObj(String::valueOf).collect(Collectors.toList()), found);
+
+        assertEquals(3, requests.size());
+        assertTrue(requests.stream().allMatch(request -> request.contains("count=10")), requests.toString());
+    }
+
+    @Test
+    void extensionAttributesOfEachResource() {
+        String extension = "urn:mem:params:scim:schemas:extension:LuckyNumberExtension";
+        handler = (exchange, body) -> reply(exchange, 200, "{\"totalResults\":3,\"Resources\":["
+                + "{\"id\":\"1\",\"userName\":\"bjensen\",\"" + extension + "\":{\"luckyNumber\":7}},"
+                + "{\"id\":\"2\",\"userName\":\"jsmith\",\"" + extension + "\":{\"luckyNumber\":13}},"
+                + "{\"id\":\"3\",\"userName\":\"mdoe\"}]}");
+        SCIMv2Client scim = newClient(conf -> conf.setCustomAttributesJSON("{\"id\":\"" + extension + "\","
+                + "\"attributes\":[{\"name\":\"luckyNumber\",\"type\":\"integer\",\"multiValued\":false}]}"));
+
+        List<SCIMv2User> found = new ArrayList<>();
+        scim.getAllUsers(null, 1, 10, Set.of(), found::add);
+        assertEquals(3, found.size());
+        assertEquals(List.of(List.of(7)), new ArrayList<>(found.get(0).getReturnedCustomAttributes().values()));
+        assertEquals(List.of(List.of(13)), new ArrayList<>(found.get(1).getReturnedCustomAttributes().values()));
+        // nothing borrowed from other resources
+        assertTrue(found.get(2).getReturnedCustomAttributes().isEmpty());
+    }
+
+    @Test
+    void fanOutCancelledOnDispose() throws Exception {
+        SCIMv2Client scim = newClient(conf -> conf.setFanOutParallelism(2));
+        CountDownLatch started = new CountDownLatch(2);
+        List<Boolean> interrupted = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> calls = CompletableFuture.runAsync(() -> scim.fanOut().forEach(List.of(1, 2), i -> {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.add(true);
+                throw new ConnectorException(e);
+            }
+        }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        scim.dispose();
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> calls.get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof ConnectorException);
+        assertEquals(2, interrupted.size());
+        assertThrows(ConnectorException.class, scim::fanOut);
+    }
+
+    @Test
+    void asyncRequestRetriedWithRefreshedToken() throws Exception {
+        CountDownLatch tokenEndpoint = new CountDownLatch(1);
+        AtomicInteger tokens = new AtomicInteger(0);
+        List<String> authorizations = new CopyOnWriteArrayList<>();
+        handler = (exchange, body) -> {
+            if ("/token".equals(exchange.getRequestURI().getPath())) {
+                try {
+                    tokenEndpoint.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                reply(exchange, 200,
+                        "{\"access_token\":\"token" + tokens.incrementAndGet() + "\",\"expires_in\":3600}");
+                return;
+            }
+
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            authorizations.add(authorization);
+            if ("Bearer token1".equals(authorization)) {
+                reply(exchange, 401, "");
+            } else {
+                reply(exchange, 200, "{\"id\":\"1\",\"userName\":\"bjensen\"}");
+            }
+        };
+        SCIMv2Client scim = newClient(conf -> {
+            conf.setUsername(null);
+            conf.setPassword(null);
+            conf.setAccessTokenBaseAddress(
+                    "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/token");
+            conf.setClientId("asyncRetry");
+            conf.setClientSecret("secret");
+        });
+
+        // the token is requested without blocking the caller
+        long start = System.currentTimeMillis();
+        CompletableFuture<SCIMv2User> user = scim.getUserAsync("1", null);
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        tokenEndpoint.countDown();
+
+        assertEquals("bjensen", user.get(5, TimeUnit.SECONDS).getUserName());
+        assertEquals(2, tokens.get());
+        assertEquals(List.of("Bearer token1", "Bearer token2"), authorizations);
+    }
+
+    @Test
+    void asyncResponseReadByServiceExecutor() throws Exception {
+        handler = (exchange, body) -> reply(exchange, 200, "{\"id\":\"1\",\"userName\":\"bjensen\"}");
+        AtomicReference<String> readBy = new AtomicReference<>();
+        client = new SCIMv2Client(newConfiguration(conf -> {
+        })) {
+
+            @Override
+            protected BiConsumer<SCIMv2User, JsonNode> getUserPostProcessor() {
+                return (user, node) -> readBy.set(Thread.currentThread().getName());
+            }
+        };
+
+        assertEquals("bjensen", client.getUserAsync("1", null).get(5, TimeUnit.SECONDS).getUserName());
+        assertTrue(readBy.get().startsWith("scim-search-"), readBy.get());
+    }
+
+    @Test
+    void splitFilterOnProjectedSearch() {
+        handler = (exchange, body) -> reply(exchange, 200, "{\"totalResults\":2,\"Resources\":["
+                + "{\"id\":\"1\",\"userName\":\"bjensen\",\"title\":\"Director\"},"
+                + "{\"id\":\"2\",\"userName\":\"bjensen\",\"title\":\"Engineer\"}]}");
+
+        SCIMv2Connector connector = new SCIMv2Connector();
+        // AWS only supports "eq" on few attributes: the filter on title is evaluated in memory
+        connector.init(newConfiguration(conf -> conf.setScimProvider(SCIMProvider.AWS.name())));
+        try {
+            List<ConnectorObject> found = new ArrayList<>();
+            connector.executeQuery(
+                    ObjectClass.ACCOUNT,
+                    FilterBuilder.and(
+                            FilterBuilder.equalTo(new Name("bjensen")),
+                            FilterBuilder.startsWith(AttributeBuilder.build("title", "Dir"))),
+                    found::add,
+                    new OperationOptionsBuilder().setAttributesToGet("userName").build());
+
+            assertEquals(1, requests.size());
+            String query = URLDecoder.decode(requests.get(0), StandardCharsets.UTF_8);
+            assertTrue(query.contains("filter=userName eq \"bjensen\""), query);
+            assertTrue(query.contains("title"), query);
+
+            assertEquals(1, found.size());
+            assertEquals("1", found.get(0).getUid().getUidValue());
+            assertNotNull(found.get(0).getAttributeByName("userName"));
+            // requested for the residual filter only
+            assertNull(found.get(0).getAttributeByName("title"));
+        } finally {
+            connector.dispose();
+        }
+    }
+
+    private List<ConnectorObject> searchUsers(final boolean directSearchMapping, final String... attributesToGet) {
+        SCIMv2Connector connector = new SCIMv2Connector();
+        connector.init(newConfiguration(conf -> conf.setDirectSearchMapping(directSearchMapping)));
+        try {
+            List<ConnectorObject> found = new ArrayList<>();
+            connector.executeQuery(
+                    ObjectClass.ACCOUNT,
+                    null,
+                    found::add,
+                    new OperationOptionsBuilder().setAttributesToGet(attributesToGet).build());
+            return found;
+        } finally {
+            connector.dispose();
+        }
+    }
+
+    @Test
+    void directSearchMapping() {
+        handler = (exchange, body) -> reply(exchange, 200, "{\"totalResults\":2,\"Resources\":["
+                + "{\"id\":\"1\",\"userName\":\"bjensen\",\"title\":\"Director\",\"active\":true,"
+                + "\"name\":{\"familyName\":\"Jensen\"},\"emails\":[{\"value\":\"bjensen@example.com\"}],"
+                + "\"urn:ietf:params:scim:schemas:extension:enterprise:2.0:User\":{\"employeeNumber\":\"701984\"}},"
+                + "{\"id\":\"2\",\"userName\":\"jsmith\",\"unknown\":{\"nested\":[1,2]}}]}");
+
+        List<ConnectorObject> direct = searchUsers(true, "userName", "title", "active");
+        List<ConnectorObject> mapped = searchUsers(false, "userName", "title", "active");
+
+        assertEquals(2, direct.size());
+        assertEquals(mapped.stream().map(ConnectorObject::getAttributes).collect(Collectors.toList()),
+                direct.stream().map(ConnectorObject::getAttributes).collect(Collectors.toList()));
+        assertEquals("Director", direct.get(0).getAttributeByName("title").getValue().get(0));
+        assertNull(direct.get(0).getAttributeByName("name.familyName"));
+
+        // complex attributes are not read directly
+        SCIMv2Client scim = newClient(conf -> {
+        });
+        assertTrue(scim.getUserObjectReader(SCIMAttributesToGet.of(List.of("userName", "title", "active"))).
+                isPresent());
+        assertFalse(scim.getUserObjectReader(SCIMAttributesToGet.of(List.of("emails.work.value"))).
+                isPresent());
+        assertEquals(List.of("Jensen"),
+                searchUsers(true, "name.familyName").get(0).getAttributeByName("name.familyName").getValue());
+    }
+
+    @Test
+    void bulkSplitResolvingReferences() {
+        List<JsonNode> bulks = new CopyOnWriteArrayList<>();
+        AtomicInteger ids = new AtomicInteger(0);
+        handler = (exchange, body) -> {
+            JsonNode request = SCIMUtils.MAPPER.readTree(body);
+            bulks.add(request);
+
+            ArrayNode results = SCIMUtils.MAPPER.createArrayNode();
+            request.get("Operations").forEach(operation -> {
+                ObjectNode result = results.addObject();
+                result.put("method", operation.get("method").asText());
+                result.put("bulkId", operation.get("bulkId").asText());
+                if ("POST".equals(operation.get("method").asText())) {
+                    result.put("location", operation.get("path").asText() + "/id" + ids.incrementAndGet());
+                    result.put("status", "201");
+                } else {
+                    result.put("status", "404");
+                }
+            });
+            reply(exchange, 200, "{\"Operations\":" + results + "}");
+        };
+        SCIMv2Client scim = newClient(conf -> {
+            conf.setBulkEnabled(true);
+            conf.setBulkMaxOperations(2);
+        });
+
+        SCIMBulk<SCIMv2User, SCIMv2Group, SCIMv2Patch> bulk = scim.newBulk();
+        SCIMv2User user = new SCIMv2User();
+        user.setUserName("bjensen");
+        SCIMBulk<SCIMv2User, SCIMv2Group, SCIMv2Patch>.Operation createUser = bulk.createUser(user);
+        SCIMBulk<SCIMv2User, SCIMv2Group, SCIMv2Patch>.Operation deleteUser = bulk.deleteUser("missing");
+        SCIMBulk<SCIMv2User, SCIMv2Group, SCIMv2Patch>.Operation createGroup = bulk.createGroup(
+                new SCIMv2Group.Builder().displayName("Group").members(List.of(
+                        new BaseResourceReference.Builder().value(createUser.getReference()).build())).build());
+
+        assertEquals("id1", createUser.join());
+        assertEquals("id1", user.getId());
+        assertThrows(NoSuchEntityException.class, deleteUser::join);
+        assertEquals("id2", createGroup.join());
+
+        // the member created by the first request is referenced by id in the second one
+        assertEquals(2, bulks.size());
+        assertEquals(2, bulks.get(0).get("Operations").size());
+        String second = bulks.get(1).toString();
+        assertTrue(second.contains("\"value\":\"id1\""), second);
+        assertFalse(second.contains(SCIMBulk.BULK_ID_PREFIX), second);
+    }
+
+    @Test
+    void serviceProviderConfigOnlyRestricts() {
+        handler = (exchange, body) -> reply(exchange, 200, "{"
+                + "\"patch\":{\"supported\":false},"
+                + "\"bulk\":{\"supported\":true,\"maxOperations\":10,\"maxPayloadSize\":1048576},"
+                + "\"filter\":{\"supported\":true,\"maxResults\":50}}");
+
+        SCIMConnectorConfiguration conf = newConfiguration(c -> {
+            c.setDiscoverServiceProviderConfig(true);
+            c.setUpdateUserMethod("PATCH");
+        });
+        SCIMv2Connector connector = new SCIMv2Connector();
+        connector.init(conf);
+        try {
+            SCIMServiceSettings settings = connector.getClient().getSettings();
+            assertEquals("PUT", settings.getUpdateUserMethod());
+            // bulk and paging are never enabled when not configured
+            assertFalse(settings.isBulkEnabled());
+            assertEquals(0, settings.getSearchPageSize());
+
+            // the configuration is left as it was
+            assertEquals("PATCH", conf.getUpdateUserMethod());
+            assertFalse(conf.getBulkEnabled());
+        } finally {
+            connector.dispose();
+        }
+    }
+
+    @Test
+    void cachedEntitlementsAreCopied() {
+        String entitlement = "{\"id\":\"e1\",\"displayName\":\"Entitlement 1\",\"type\":\"Profile\"}";
+        handler = (exchange, body) -> reply(exchange, 200, exchange.getRequestURI().getPath().endsWith("/e1")
+                ? entitlement
+                : "{\"totalResults\":1,\"Resources\":[" + entitlement + "]}");
+        SCIMv2Client scim = newClient(conf -> {
+        });
+
+        scim.getEntitlements(List.of("e1")).get(0).setDisplayName("changed");
+        assertEquals("Entitlement 1", scim.getEntitlements(List.of("e1")).get(0).getDisplayName());
+
+        scim.getEntitlement("e1").setDisplayName("changed");
+        assertEquals("Entitlement 1", scim.getEntitlement("e1").getDisplayName());
+
+        // all but the first one were served from cache
+        assertEquals(1, requests.size());
+    }
+
+    private static String group(final String id) {
+        return "{\"id\":\"" + id + "\",\"displayName\":\"Group " + id + "\"}";
+    }
+
+    @Test
+    void prewarmedGroupReferences() {
+        for (boolean requestAttributesOnSearch : new boolean[] { true, false }) {
+            requests.clear();
+            handler = (exchange, body) -> reply(exchange, 200,
+                    "{\"totalResults\":2,\"Resources\":[" + group("g1") + "," + group("g2") + "]}");
+            SCIMv2Client scim = newClient(conf -> {
+                conf.setPrewarmGroupReferenceCache(true);
+                conf.setRequestAttributesOnSearch(requestAttributesOnSearch);
+            });
+
+            assertEquals("Group g2", scim.getGroupReference("g2").getDisplay());
+            scim.dispose();
+
+            // the reference is served by a single scan of all groups
+            assertEquals(1, requests.size());
+            String search = URLDecoder.decode(requests.get(0), StandardCharsets.UTF_8);
+            assertTrue(search.startsWith("GET /Groups"), search);
+            assertEquals(requestAttributesOnSearch, search.contains("attributes=id,displayName"), search);
+        }
+    }
+
+    @Test
+    void projectedInternalReads() {
+        for (boolean requestAttributesOnSearch : new boolean[] { true, false }) {
+            requests.clear();
+            handler = (exchange, body) -> reply(exchange, 200, exchange.getRequestURI().getPath().startsWith("/Users")
+                    ? "{\"id\":\"1\",\"userName\":\"bjensen\"}"
+                    : group("g1"));
+            SCIMv2Client scim = newClient(conf -> conf.setRequestAttributesOnSearch(requestAttributesOnSearch));
+
+            // cache misses only read what the reference is made of
+            assertEquals("Group g1", scim.getGroupReference("g1").getDisplay());
+            assertEquals("bjensen", scim.getUser("1", SCIMAttributeProjection.attributes("id", "userName")).
+                    getUserName());
+            scim.dispose();
+
+            List<String> decoded = requests.stream().
+                    map(request -> URLDecoder.decode(request, StandardCharsets.UTF_8)).collect(Collectors.toList());
+            assertEquals(requestAttributesOnSearch
+                    ? List.of("GET /Groups/g1?attributes=id,displayName", "GET /Users/1?attributes=id,userName")
+                    : List.of("GET /Groups/g1", "GET /Users/1"), decoded);
+        }
+    }
+
+    @Test
+    void errorsReportedWhileReading() {
+        handler = (exchange, body) -> reply(exchange, 200, exchange.getRequestURI().getPath().endsWith("/g1")
+                // Errors nested in an unknown field are just skipped
+                ? "{\"id\":\"g1\",\"custom\":{\"Errors\":[\"none\"]},\"displayName\":\"Group g1\"}"
+                : "{\"id\":\"g2\",\"Errors\":[{\"description\":\"boom\"}],\"displayName\":\"Group g2\"}");
+        SCIMv2Client scim = newClient(conf -> {
+        });
+
+        assertEquals("Group g1", scim.getGroup("g1").getDisplayName());
+
+        ConnectorException error = assertThrows(ConnectorException.class, () -> scim.getGroup("g2"));
+        assertTrue(error.getMessage().contains("boom"), error.getMessage());
+    }
+
+    @Test
+    void batchedLookupFallingBackToSingleReads() {
+        handler = (exchange, body) -> {
+            String path = exchange.getRequestURI().getPath();
+            if (path.endsWith("/Groups")) {
+                // g3 is not returned by the search
+                reply(exchange, 200, "{\"totalResults\":2,\"Resources\":[" + group("g1") + "," + group("g2") + "]}");
+            } else {
+                reply(exchange, 200, group(path.substring(path.lastIndexOf('/') + 1)));
+            }
+        };
+        SCIMv2Client scim = newClient(conf -> {
+        });
+
+        List<SCIMv2Group> groups = scim.getGroups(List.of("g1", "g2", "g3"), null);
+        assertEquals(List.of("g1", "g2", "g3"), groups.stream().map(SCIMv2Group::getId).collect(Collectors.toList()));
+
+        assertEquals(2, requests.size());
+        String search = URLDecoder.decode(requests.get(0), StandardCharsets.UTF_8);
+        assertTrue(search.contains("filter=id eq \"g1\" or id eq \"g2\" or id eq \"g3\""), search);
+        assertTrue(requests.get(1).startsWith("GET /Groups/g3"), requests.get(1));
+    }
+
+    @Test
+    void batchedLookupRejected() {
+        handler = (exchange, body) -> {
+            String path = exchange.getRequestURI().getPath();
+            if (path.endsWith("/Groups")) {
+                reply(exchange, 400, "{\"schemas\":[\"urn:ietf:params:scim:api:messages:2.0:Error\"],"
+                        + "\"scimType\":\"invalidFilter\",\"status\":\"400\"}");
+            } else {
+                reply(exchange, 200, group(path.substring(path.lastIndexOf('/') + 1)));
+            }
+        };
+        SCIMv2Client scim = newClient(conf -> {
+        });
+
+        assertEquals(3, scim.getGroups(List.of("g1", "g2", "g3"), null).size());
+        // the search, then single reads
+        assertEquals(4, requests.size());
+    }
+
+    @Test
+    void batchedLookupFailed() {
+        handler = (exchange, body) -> reply(exchange, 503, "");
+        SCIMv2Client scim = newClient(conf -> {
+        });
+
+        assertThrows(ConnectorException.class, () -> scim.getGroups(List.of("g1", "g2", "g3"), null));
+        // no single reads after the failed search
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    void singleReadsWithoutFilteringOnIds() {
+        handler = (exchange, body) -> {
+            String path = exchange.getRequestURI().getPath();
+            reply(exchange, 200, group(path.substring(path.lastIndexOf('/') + 1)));
+        };
+        // AWS does support neither "or" nor filtering Groups on id
+        SCIMv2Client scim = newClient(conf -> conf.setScimProvider(SCIMProvider.AWS.name()));
+
+        List<SCIMv2Group> groups = scim.getGroups(List.of("g1", "g2", "g3"), null);
+        assertEquals(3, groups.size());
+
+        assertEquals(3, requests.size());
+        assertTrue(requests.stream().noneMatch(request -> request.contains("filter")), requests.toString());
+    }
+
+    private static final String USERS = "{\"totalResults\":1,\"Resources\":[{\"id\":\"1\",\"userName\":\"bjensen\"}]}";
+
+    private static final String FILTER = "userName eq \"bjensen\"";
+
+    @Test
+    void searchFallsBackToGetWhenPostIsNotSupported() {
+        handler = (exchange, body) -> {
+            if ("POST".equals(exchange.getRequestMethod())) {
+                reply(exchange, 405, "");
+            } else {
+                reply(exchange, 200, USERS);
+            }
+        };
+        SCIMv2Client scim = newClient(conf -> conf.setMaxQueryLengthOnGet(10));
+
+        List<String> found = new ArrayList<>();
+        scim.getAllUsers(FILTER, Set.of(), user -> found.add(user.getId()));
+        scim.getAllUsers(FILTER, Set.of(), user -> found.add(user.getId()));
+
+        assertEquals(List.of("1", "1"), found);
+        assertEquals(3, requests.size());
+        assertTrue(requests.get(0).startsWith("POST /Users/.search"), requests.get(0));
+        assertTrue(requests.get(1).startsWith("GET /Users?"), requests.get(1));
+        // no further attempt via POST
+        assertTrue(requests.get(2).startsWith("GET /Users?"), requests.get(2));
+    }
+
+    @Test
+    void searchDoesNotFallBackOnServerError() {
+        handler = (exchange, body) -> reply(exchange, "POST".equals(exchange.getRequestMethod()) ? 500 : 200, USERS);
+        SCIMv2Client scim = newClient(conf -> conf.setMaxQueryLengthOnGet(10));
+
+        assertThrows(ConnectorException.class, () -> scim.getAllUsers(FILTER, Set.of(), user -> true));
+        assertEquals(1, requests.size());
+    }
+
+    @Test
+    void searchDoesNotFallBackOnBadRequest() {
+        handler = (exchange, body) -> reply(exchange, "POST".equals(exchange.getRequestMethod()) ? 400 : 200,
+                "POST".equals(exchange.getRequestMethod())
+                ? "{\"schemas\":[\"urn:ietf:params:scim:api:messages:2.0:Error\"],"
+                + "\"scimType\":\"invalidFilter\",\"status\":\"400\"}"
+                : USERS);
+        SCIMv2Client scim = newClient(conf -> conf.setMaxQueryLengthOnGet(10));
+
+        assertThrows(ConnectorException.class, () -> scim.getAllUsers(FILTER, Set.of(), user -> true));
+        assertThrows(ConnectorException.class, () -> scim.getAllUsers(FILTER, Set.of(), user -> true));
+        // the filter is rejected, not the method: searches go on via POST
+        assertEquals(List.of("POST", "POST"), requests.stream().
+                map(request -> request.substring(0, request.indexOf(' '))).collect(Collectors.toList()));
+    }
+
+    @Test
+    void searchDoesNotFallBackWhenPostIsConfigured() {
+        handler = (exchange, body) -> reply(exchange, "POST".equals(exchange.getRequestMethod()) ? 405 : 200, USERS);
+        SCIMv2Client scim = newClient(conf -> conf.setSearchMethod("POST"));
+
+        assertThrows(ConnectorException.class, () -> scim.getAllUsers(FILTER, Set.of(), user -> true));
+        assertEquals(1, requests.size());
+        assertTrue(requests.get(0).startsWith("POST /Users/.search"), requests.get(0));
+    }
+
+    @Test
+    void searchWithPostOnEncodedQueryLength() {
+        handler = (exchange, body) -> reply(exchange, 200, USERS);
+        SCIMv2Client scim = newClient(conf -> {
+            conf.setRequestAttributesOnSearch(false);
+            // longer than the filter as is, shorter than the URL-encoded query
+            conf.setMaxQueryLengthOnGet(FILTER.length() + 10);
+        });
+
+        scim.getAllUsers(FILTER, Set.of(), user -> true);
+        assertEquals(1, requests.size());
+        assertTrue(requests.get(0).startsWith("POST /Users/.search"), requests.get(0));
+    }
+}
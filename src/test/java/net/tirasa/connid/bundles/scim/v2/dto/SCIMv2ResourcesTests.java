@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2018 ConnId (connid-dev@googlegroups.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.tirasa.connid.bundles.scim.v2.dto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import net.tirasa.connid.bundles.scim.common.SCIMConnectorConfiguration;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMAttributesToGet;
+import net.tirasa.connid.bundles.scim.common.utils.SCIMUtils;
+import org.identityconnectors.framework.common.objects.Attribute;
+import org.junit.jupiter.api.Test;
+
+public class SCIMv2ResourcesTests {
+
+    private static final String USER = "{\"id\":\"1\",\"userName\":\"bjensen\",\"active\":true,"
+            + "\"name\":{\"familyName\":\"Jensen\",\"givenName\":\"Barbara\"},"
+            + "\"emails\":[{\"value\":\"bjensen@example.com\",\"type\":\"work\",\"primary\":true}],"
+            + "\"title\":\"Director\","
+            + "\"urn:ietf:params:scim:schemas:extension:enterprise:2.0:User\":{\"employeeNumber\":\"701984\"}}";
+
+    private static final String GROUP =
+            "{\"id\":\"g1\",\"displayName\":\"Tour Guides\",\"members\":[{\"value\":\"1\"}]}";
+
+    private static Map<String, List<Object>> byName(final Set<Attribute> attrs) {
+        return attrs.stream().filter(attr -> attr.getValue() != null).
+                collect(Collectors.toMap(Attribute::getName, Attribute::getValue));
+    }
+
+    @Test
+    void userAttributes() throws Exception {
+        SCIMConnectorConfiguration conf = new SCIMConnectorConfiguration();
+        Map<String, List<Object>> attrs = byName(
+                SCIMUtils.MAPPER.readValue(USER, SCIMv2User.class).toAttributes(SCIMv2User.class, conf));
+
+        assertEquals(List.of("1"), attrs.get("id"));
+        assertEquals(List.of("bjensen"), attrs.get("userName"));
+        assertEquals(List.of(true), attrs.get("active"));
+        assertEquals(List.of("Director"), attrs.get("title"));
+        assertEquals(List.of("Jensen"), attrs.get("name.familyName"));
+        assertEquals(List.of("Barbara"), attrs.get("name.givenName"));
+        assertEquals(List.of("bjensen@example.com"), attrs.get("emails.work.value"));
+        assertEquals("true", String.valueOf(attrs.get("emails.work.primary").get(0)));
+        assertEquals(List.of("701984"),
+                attrs.get("urn:ietf:params:scim:schemas:extension:enterprise:2.0:User:employeeNumber"));
+        assertFalse(attrs.containsKey("RESOURCE_NAME"));
+        assertFalse(attrs.containsKey("SCHEMA_URI"));
+
+        // the field plans are shared: another instance of the same class is mapped alike
+        assertEquals(attrs, byName(
+                SCIMUtils.MAPPER.readValue(USER, SCIMv2User.class).toAttributes(SCIMv2User.class, conf)));
+    }
+
+    @Test
+    void requestedUserAttributes() throws Exception {
+        Set<Attribute> attrs = SCIMUtils.MAPPER.readValue(USER, SCIMv2User.class).toAttributes(
+                SCIMv2User.class,
+                new SCIMConnectorConfiguration(),
+                SCIMAttributesToGet.of(List.of("userName", "name.familyName")));
+
+        Set<String> names = attrs.stream().map(Attribute::getName).collect(Collectors.toSet());
+        assertTrue(names.contains("userName"));
+        assertTrue(names.contains("name.familyName"));
+        assertTrue(names.stream().allMatch(name -> "userName".equals(name) || name.startsWith("name.")),
+                names.toString());
+    }
+
+    @Test
+    void groupAttributes() throws Exception {
+        Set<Attribute> attrs = SCIMUtils.MAPPER.readValue(GROUP, SCIMv2Group.class).
+                toAttributes(SCIMv2Group.class, new SCIMConnectorConfiguration());
+
+        Map<String, List<Object>> byName = byName(attrs);
+        assertEquals(List.of("g1"), byName.get("id"));
+        assertEquals(List.of("Tour Guides"), byName.get("displayName"));
+        assertEquals(1, byName.get("members").size());
+        assertEquals(Set.of("id", "displayName", "members", "meta", "schemas"),
+                attrs.stream().map(Attribute::getName).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void requestedGroupAttributes() throws Exception {
+        Set<Attribute> attrs = SCIMUtils.MAPPER.readValue(GROUP, SCIMv2Group.class).toAttributes(
+                SCIMv2Group.class,
+                new SCIMConnectorConfiguration(),
+                SCIMAttributesToGet.of(List.of("displayName")));
+
+        assertEquals(Set.of("displayName"), attrs.stream().map(Attribute::getName).collect(Collectors.toSet()));
+    }
+}